@@ -40,6 +40,8 @@ import io.undertow.server.handlers.PathTemplateHandler;
 import io.undertow.server.handlers.PredicateContextHandler;
 import io.undertow.server.handlers.PredicateHandler;
 import io.undertow.server.handlers.ProxyPeerAddressHandler;
+import io.undertow.server.handlers.RateLimit;
+import io.undertow.server.handlers.RateLimitingHandler;
 import io.undertow.server.handlers.RedirectHandler;
 import io.undertow.server.handlers.RequestDumpingHandler;
 import io.undertow.server.handlers.RequestLimit;
@@ -57,6 +59,7 @@ import io.undertow.websockets.WebSocketConnectionCallback;
 import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
 
 import java.util.List;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Utility class with convenience methods for dealing with handlers
@@ -440,6 +443,31 @@ public class Handlers {
         return new RequestLimitingHandler(requestLimit, next);
     }
 
+    /**
+     * Returns a handler that limits the rate of requests from each remote IP address.
+     *
+     * @param requests The number of requests that are allowed per period
+     * @param period   The period
+     * @param unit     The unit of the period
+     * @param next     The next handler
+     * @return         The handler
+     */
+    public static RateLimitingHandler rateLimitingHandler(final int requests, final long period, final TimeUnit unit, HttpHandler next) {
+        return new RateLimitingHandler(requests, period, unit, next);
+    }
+
+    /**
+     * Returns a handler that limits the rate of requests per key.
+     *
+     * @param rateLimit The rate limit object that can be shared between handlers, to apply the same limits across multiple handlers
+     * @param key       The attribute the rate is limited by
+     * @param next      The next handler
+     * @return          The handler
+     */
+    public static RateLimitingHandler rateLimitingHandler(final RateLimit rateLimit, final ExchangeAttribute key, HttpHandler next) {
+        return new RateLimitingHandler(rateLimit, key, next);
+    }
+
     /**
      * Returns a handler that can act as a load balancing reverse proxy.
      *
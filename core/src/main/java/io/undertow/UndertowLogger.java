@@ -176,4 +176,8 @@ public interface UndertowLogger extends BasicLogger {
     @LogMessage(level = Logger.Level.ERROR)
     @Message(id = 5034, value = "Remote endpoint failed to send initial settings frame in HTTP2 connection")
     void remoteEndpointFailedToSendInitialSettings();
+
+    @LogMessage(level = Logger.Level.WARN)
+    @Message(id = 5035, value = "Could not store session %s in serialized form, it will be kept on the heap")
+    void failedToStoreSerializedSession(String sessionId, @Cause Exception e);
 }
@@ -24,6 +24,7 @@ import java.nio.channels.ClosedChannelException;
 
 import io.undertow.predicate.PredicateBuilder;
 import io.undertow.server.handlers.builder.HandlerBuilder;
+import io.undertow.util.HttpString;
 import org.jboss.logging.Messages;
 import org.jboss.logging.annotations.Cause;
 import org.jboss.logging.annotations.Message;
@@ -338,4 +339,25 @@ public interface UndertowMessages {
 
     @Message(id = 104, value = "Incorrect HTTP2 preface")
     IOException incorrectHttp2Preface();
+
+    @Message(id = 105, value = "No space left in the session store")
+    IllegalStateException sessionStoreFull();
+
+    @Message(id = 106, value = "No codec can encode session attribute %s of type %s")
+    IOException noCodecForSessionAttribute(String name, String type);
+
+    @Message(id = 107, value = "Unknown session attribute codec %s")
+    IOException unknownSessionAttributeCodec(int codec);
+
+    @Message(id = 108, value = "Path %s must start with a /")
+    IllegalArgumentException pathMustStartWithSlash(String path);
+
+    @Message(id = 109, value = "Could not compile predicate")
+    IllegalStateException couldNotCompilePredicate(@Cause Throwable cause);
+
+    @Message(id = 110, value = "Exchange has already been completed and handed back to the connection")
+    IllegalStateException exchangeAlreadyRecycled();
+
+    @Message(id = 111, value = "Header %s has already been added to the header block")
+    IllegalArgumentException duplicateHeaderInBlock(HttpString name);
 }
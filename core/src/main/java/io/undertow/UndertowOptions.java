@@ -156,6 +156,17 @@ public class UndertowOptions {
      */
     public static final Option<Boolean> ALLOW_EQUALS_IN_COOKIE_VALUE = Option.simple(UndertowOptions.class, "ALLOW_EQUALS_IN_COOKIE_VALUE", Boolean.class);
 
+    /**
+     * If this is true then HTTP/1.x connections will reuse the {@link io.undertow.server.HttpServerExchange} of a completed
+     * request for the next request on the same connection, instead of allocating a new exchange with new header maps.
+     * <p/>
+     * Handlers must not hold on to an exchange, or anything obtained from it, once the exchange is complete. If assertions
+     * are enabled exchanges are never reused, instead use of an exchange after it has been handed back will fail.
+     * <p/>
+     * default is false
+     */
+    public static final Option<Boolean> REUSE_EXCHANGES = Option.simple(UndertowOptions.class, "REUSE_EXCHANGES", Boolean.class);
+
     /**
      * If we should attempt to use SPDY for HTTPS connections.
      */
@@ -39,6 +39,10 @@ class EqualsPredicate implements Predicate {
         this.attributes = attributes;
     }
 
+    ExchangeAttribute[] getAttributes() {
+        return attributes;
+    }
+
     @Override
     public boolean resolve(final HttpServerExchange value) {
         if(attributes.length < 2) {
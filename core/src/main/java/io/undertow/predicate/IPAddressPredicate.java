@@ -0,0 +1,83 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.predicate;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.IPAddressMatcher;
+
+import java.net.InetSocketAddress;
+import java.util.Collections;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Predicate that returns true if the address of the remote peer matches one of the given patterns. The patterns use
+ * the same syntax as {@link io.undertow.server.handlers.IPAddressAccessControlHandler}.
+ *
+ * @author agent
+ */
+class IPAddressPredicate implements Predicate {
+
+    private final IPAddressMatcher matcher;
+
+    IPAddressPredicate(String[] peers) {
+        IPAddressMatcher.Builder builder = IPAddressMatcher.builder();
+        for (String peer : peers) {
+            builder.addAllow(peer);
+        }
+        this.matcher = builder.build();
+    }
+
+    @Override
+    public boolean resolve(final HttpServerExchange value) {
+        InetSocketAddress peer = value.getSourceAddress();
+        if (peer == null || peer.getAddress() == null) {
+            return false;
+        }
+        return matcher.isAllowed(peer.getAddress(), false);
+    }
+
+    public static class Builder implements PredicateBuilder {
+
+        @Override
+        public String name() {
+            return "ip-match";
+        }
+
+        @Override
+        public Map<String, Class<?>> parameters() {
+            return Collections.<String, Class<?>>singletonMap("value", String[].class);
+        }
+
+        @Override
+        public Set<String> requiredParameters() {
+            return Collections.singleton("value");
+        }
+
+        @Override
+        public String defaultParameter() {
+            return "value";
+        }
+
+        @Override
+        public Predicate build(final Map<String, Object> config) {
+            String[] peers = (String[]) config.get("value");
+            return new IPAddressPredicate(peers);
+        }
+    }
+}
@@ -40,6 +40,10 @@ class MethodPredicate implements Predicate {
         this.methods = values;
     }
 
+    HttpString[] getMethods() {
+        return methods;
+    }
+
 
     @Override
     public boolean resolve(final HttpServerExchange value) {
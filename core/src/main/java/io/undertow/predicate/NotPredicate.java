@@ -31,6 +31,10 @@ class NotPredicate implements Predicate {
         this.predicate = predicate;
     }
 
+    Predicate getPredicate() {
+        return predicate;
+    }
+
     @Override
     public boolean resolve(final HttpServerExchange value) {
         return !predicate.resolve(value);
@@ -31,6 +31,10 @@ class OrPredicate implements Predicate {
         this.predicates = predicates;
     }
 
+    Predicate[] getPredicates() {
+        return predicates;
+    }
+
     @Override
     public boolean resolve(final HttpServerExchange value) {
         for (final Predicate predicate : predicates) {
@@ -0,0 +1,534 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.predicate;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.undertow.UndertowMessages;
+import io.undertow.attribute.ConstantExchangeAttribute;
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.builder.PredicatedHandler;
+import io.undertow.util.HttpString;
+import org.jboss.classfilewriter.AccessFlag;
+import org.jboss.classfilewriter.ClassFile;
+import org.jboss.classfilewriter.ClassMethod;
+import org.jboss.classfilewriter.code.BranchEnd;
+import org.jboss.classfilewriter.code.CodeAttribute;
+import org.jboss.classfilewriter.util.DescriptorUtils;
+
+/**
+ * Compiles parsed predicate trees into generated classes.
+ * <p/>
+ * The predicates that are built by the {@link PredicateParser} are evaluated through a virtual call per node of the
+ * tree. The compiler turns a tree into a single class with a straight line <code>resolve</code> method: nested
+ * <code>and</code>, <code>or</code> and <code>not</code> predicates become conditional jumps, constant sub trees
+ * are folded away, method checks are inlined as {@link HttpString} comparisons and <code>equals</code> checks
+ * against a constant compare against a string literal. All other predicates are invoked directly from the
+ * generated code.
+ * <p/>
+ * Within an <code>and</code> or <code>or</code> the cheapest checks are evaluated first. Predicates that write to
+ * the {@link Predicate#PREDICATE_CONTEXT}, such as <code>regex</code> and <code>path-prefix</code>, are never moved
+ * relative to other predicates, so the result of a compiled predicate and the values it leaves in the predicate
+ * context are always the same as those of the original tree.
+ * <p/>
+ * This requires jboss-classfilewriter, which is an optional dependency.
+ *
+ * @author agent
+ */
+public class PredicateCompiler {
+
+    private static final String CLASS_NAME_PREFIX = PredicateCompiler.class.getPackage().getName() + ".CompiledPredicate$$";
+    private static final String PREDICATE_CLASS = Predicate.class.getName();
+    private static final String EXCHANGE_CLASS = HttpServerExchange.class.getName();
+    private static final String HTTP_STRING_CLASS = HttpString.class.getName();
+    private static final String ATTRIBUTE_CLASS = ExchangeAttribute.class.getName();
+    private static final String EXCHANGE_DESCRIPTOR = DescriptorUtils.makeDescriptor(HttpServerExchange.class);
+    private static final String HTTP_STRING_DESCRIPTOR = DescriptorUtils.makeDescriptor(HttpString.class);
+    private static final String STRING_DESCRIPTOR = DescriptorUtils.makeDescriptor(String.class);
+    private static final String OBJECT_DESCRIPTOR = DescriptorUtils.makeDescriptor(Object.class);
+
+    private static final int THIS_VAR = 0;
+    private static final int CONSTANTS_VAR = 1;
+    private static final int EXCHANGE_VAR = 1;
+
+    private static final AtomicInteger classCounter = new AtomicInteger();
+
+    private final GeneratedClassLoader classLoader;
+
+    public PredicateCompiler() {
+        this(PredicateCompiler.class.getClassLoader());
+    }
+
+    /**
+     * @param parent The class loader that the generated classes are defined in, it must be able to load the
+     *               predicates that are being compiled
+     */
+    public PredicateCompiler(final ClassLoader parent) {
+        this.classLoader = new GeneratedClassLoader(parent);
+    }
+
+    /**
+     * Compiles a predicate
+     *
+     * @param predicate The predicate
+     * @return The compiled predicate
+     */
+    public Predicate compile(final Predicate predicate) {
+        final Node node = normalize(predicate);
+        if (node instanceof Constant) {
+            return ((Constant) node).value ? TruePredicate.instance() : FalsePredicate.instance();
+        }
+        if (node instanceof Invoke) {
+            //nothing to gain from generating a class
+            return ((Invoke) node).predicate;
+        }
+        final String className = CLASS_NAME_PREFIX + classCounter.incrementAndGet();
+        final Constants constants = new Constants();
+        final byte[] bytes = generate(className, node, constants);
+        try {
+            final Class<?> clazz = classLoader.define(className, bytes);
+            return (Predicate) clazz.getConstructor(Object[].class).newInstance(new Object[]{constants.values.toArray()});
+        } catch (Exception | LinkageError e) {
+            throw UndertowMessages.MESSAGES.couldNotCompilePredicate(e);
+        }
+    }
+
+    /**
+     * Compiles the predicates of a rule set, as returned by
+     * {@link io.undertow.server.handlers.builder.PredicatedHandlersParser}
+     *
+     * @param handlers The predicated handlers
+     * @return The predicated handlers with compiled predicates
+     */
+    public List<PredicatedHandler> compile(final List<PredicatedHandler> handlers) {
+        final List<PredicatedHandler> result = new ArrayList<>(handlers.size());
+        for (PredicatedHandler handler : handlers) {
+            result.add(new PredicatedHandler(compile(handler.getPredicate()), handler.getHandler()));
+        }
+        return result;
+    }
+
+    /**
+     * Turns a predicate into a tree of nodes, flattening nested <code>and</code> and <code>or</code> predicates and
+     * folding constants. A constant that decides a junction is only folded if the nodes before it are pure.
+     */
+    static Node normalize(final Predicate predicate) {
+        if (predicate instanceof TruePredicate) {
+            return Constant.TRUE;
+        } else if (predicate instanceof FalsePredicate) {
+            return Constant.FALSE;
+        } else if (predicate instanceof AndPredicate) {
+            return junction(true, ((AndPredicate) predicate).getPredicates());
+        } else if (predicate instanceof OrPredicate) {
+            return junction(false, ((OrPredicate) predicate).getPredicates());
+        } else if (predicate instanceof NotPredicate) {
+            final Node node = normalize(((NotPredicate) predicate).getPredicate());
+            if (node instanceof Constant) {
+                return ((Constant) node).value ? Constant.FALSE : Constant.TRUE;
+            } else if (node instanceof Not) {
+                return ((Not) node).node;
+            }
+            return new Not(node);
+        } else if (predicate instanceof MethodPredicate) {
+            final HttpString[] methods = ((MethodPredicate) predicate).getMethods();
+            final List<Node> nodes = new ArrayList<>(methods.length);
+            for (HttpString method : methods) {
+                nodes.add(new MethodEquals(method));
+            }
+            return junction(false, nodes);
+        } else if (predicate instanceof EqualsPredicate) {
+            final Node node = equals(((EqualsPredicate) predicate).getAttributes());
+            if (node != null) {
+                return node;
+            }
+        }
+        return new Invoke(predicate, cost(predicate), isPure(predicate));
+    }
+
+    private static Node junction(final boolean and, final Predicate[] predicates) {
+        final List<Node> nodes = new ArrayList<>(predicates.length);
+        for (Predicate predicate : predicates) {
+            nodes.add(normalize(predicate));
+        }
+        return junction(and, nodes);
+    }
+
+    private static Node junction(final boolean and, final List<Node> nodes) {
+        final List<Node> flattened = new ArrayList<>(nodes.size());
+        for (Node node : nodes) {
+            if (node instanceof Junction && ((Junction) node).and == and) {
+                flattened.addAll(Arrays.asList(((Junction) node).children));
+            } else {
+                flattened.add(node);
+            }
+        }
+        final List<Node> children = new ArrayList<>(flattened.size());
+        for (Node node : flattened) {
+            if (node instanceof Constant) {
+                if (((Constant) node).value != and) {
+                    //false in an and, or true in an or decides the result, so pure nodes before it can be dropped.
+                    //nodes with side effects must still be evaluated up to the constant, as they write to the predicate context
+                    while (!children.isEmpty() && children.get(children.size() - 1).pure) {
+                        children.remove(children.size() - 1);
+                    }
+                    if (children.isEmpty()) {
+                        return node;
+                    }
+                    children.add(node);
+                    break;
+                }
+            } else {
+                children.add(node);
+            }
+        }
+        if (children.isEmpty()) {
+            return and ? Constant.TRUE : Constant.FALSE;
+        } else if (children.size() == 1) {
+            return children.get(0);
+        }
+        orderByCost(children);
+        return new Junction(and, children.toArray(new Node[children.size()]));
+    }
+
+    /**
+     * Sorts each run of pure nodes by cost. Nodes with side effects keep their position, as later nodes may depend
+     * on the values they add to the predicate context.
+     */
+    private static void orderByCost(final List<Node> nodes) {
+        int start = 0;
+        for (int i = 0; i <= nodes.size(); ++i) {
+            if (i == nodes.size() || !nodes.get(i).pure) {
+                if (i - start > 1) {
+                    Collections.sort(nodes.subList(start, i), COST_ORDER);
+                }
+                start = i + 1;
+            }
+        }
+    }
+
+    /**
+     * @return A node for an equals predicate that compares with a constant, or <code>null</code> if the predicate
+     *         should be invoked as is
+     */
+    private static Node equals(final ExchangeAttribute[] attributes) {
+        if (attributes.length < 2) {
+            return Constant.TRUE;
+        }
+        if (attributes.length != 2) {
+            return null;
+        }
+        final boolean firstConstant = attributes[0] instanceof ConstantExchangeAttribute;
+        final boolean secondConstant = attributes[1] instanceof ConstantExchangeAttribute;
+        if (firstConstant && secondConstant) {
+            final String first = attributes[0].readAttribute(null);
+            final String second = attributes[1].readAttribute(null);
+            return (first == null ? second == null : first.equals(second)) ? Constant.TRUE : Constant.FALSE;
+        } else if (firstConstant || secondConstant) {
+            final String constant = attributes[firstConstant ? 0 : 1].readAttribute(null);
+            if (constant != null) {
+                return new ConstantEquals(constant, attributes[firstConstant ? 1 : 0]);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A rough relative cost of evaluating a predicate
+     */
+    private static int cost(final Predicate predicate) {
+        if (predicate instanceof MaxContentSizePredicate || predicate instanceof MinContentSizePredicate) {
+            return 2;
+        } else if (predicate instanceof ExistsPredicate || predicate instanceof ContainsPredicate || predicate instanceof PathSuffixPredicate) {
+            return 3;
+        } else if (predicate instanceof PathMatchPredicate || predicate instanceof PathPrefixPredicate || predicate instanceof IPAddressPredicate) {
+            return 4;
+        } else if (predicate instanceof PathTemplatePredicate) {
+            return 6;
+        } else if (predicate instanceof RegularExpressionPredicate) {
+            return 10;
+        }
+        return 5;
+    }
+
+    /**
+     * @return <code>true</code> if the predicate is known not to write to the predicate context
+     */
+    private static boolean isPure(final Predicate predicate) {
+        return predicate instanceof MaxContentSizePredicate ||
+                predicate instanceof MinContentSizePredicate ||
+                predicate instanceof ExistsPredicate ||
+                predicate instanceof ContainsPredicate ||
+                predicate instanceof EqualsPredicate ||
+                predicate instanceof PathSuffixPredicate ||
+                predicate instanceof PathMatchPredicate ||
+                predicate instanceof IPAddressPredicate ||
+                predicate instanceof AuthenticationRequiredPredicate;
+    }
+
+    private static byte[] generate(final String className, final Node root, final Constants constants) {
+        final ClassFile file = new ClassFile(className, Object.class.getName(), PREDICATE_CLASS);
+
+        final ClassMethod resolve = file.addMethod(AccessFlag.PUBLIC, "resolve", "Z", EXCHANGE_DESCRIPTOR);
+        final CodeAttribute c = resolve.getCodeAttribute();
+        final List<BranchEnd> falseBranches = new ArrayList<>();
+        root.branch(file, c, constants, false, falseBranches);
+        c.iconst(1);
+        c.returnInstruction();
+        for (BranchEnd branch : falseBranches) {
+            c.branchEnd(branch);
+        }
+        c.iconst(0);
+        c.returnInstruction();
+
+        //the constructor copies the constants that are referenced by the resolve method into fields
+        final ClassMethod ctor = file.addMethod(AccessFlag.PUBLIC, "<init>", "V", "[" + OBJECT_DESCRIPTOR);
+        final CodeAttribute ctorCode = ctor.getCodeAttribute();
+        ctorCode.aload(THIS_VAR);
+        ctorCode.invokespecial(Object.class.getName(), "<init>", "()V");
+        for (int i = 0; i < constants.values.size(); ++i) {
+            final String type = constants.types.get(i);
+            file.addField(AccessFlag.PRIVATE | AccessFlag.FINAL, constantField(i), DescriptorUtils.makeDescriptor(type));
+            ctorCode.aload(THIS_VAR);
+            ctorCode.aload(CONSTANTS_VAR);
+            ctorCode.iconst(i);
+            ctorCode.aaload();
+            ctorCode.checkcast(type);
+            ctorCode.putfield(className, constantField(i), DescriptorUtils.makeDescriptor(type));
+        }
+        ctorCode.returnInstruction();
+        return file.toBytecode();
+    }
+
+    private static String constantField(final int index) {
+        return "c" + index;
+    }
+
+    /**
+     * The objects that are referenced by the generated code, and the types of the fields that hold them
+     */
+    static final class Constants {
+        final List<Object> values = new ArrayList<>();
+        final List<String> types = new ArrayList<>();
+
+        /**
+         * Adds a constant, and writes code that loads the field that holds it onto the stack
+         */
+        void load(final ClassFile file, final CodeAttribute c, final Object constant, final String type) {
+            final int index = values.size();
+            values.add(constant);
+            types.add(type);
+            c.aload(THIS_VAR);
+            c.getfield(file.getName(), constantField(index), DescriptorUtils.makeDescriptor(type));
+        }
+    }
+
+    private static final Comparator<Node> COST_ORDER = new Comparator<Node>() {
+        @Override
+        public int compare(final Node o1, final Node o2) {
+            return Integer.compare(o1.cost, o2.cost);
+        }
+    };
+
+    abstract static class Node {
+        final int cost;
+        final boolean pure;
+
+        Node(final int cost, final boolean pure) {
+            this.cost = cost;
+            this.pure = pure;
+        }
+
+        /**
+         * Writes code that jumps to one of the given branches if the node resolves to <code>jumpIf</code>, and
+         * otherwise falls through. The stack is empty before and after the code.
+         */
+        abstract void branch(ClassFile file, CodeAttribute c, Constants constants, boolean jumpIf, List<BranchEnd> target);
+    }
+
+    /**
+     * A node that leaves a boolean on the stack, that is then tested with a single jump
+     */
+    abstract static class Leaf extends Node {
+
+        Leaf(final int cost, final boolean pure) {
+            super(cost, pure);
+        }
+
+        @Override
+        void branch(final ClassFile file, final CodeAttribute c, final Constants constants, final boolean jumpIf, final List<BranchEnd> target) {
+            load(file, c, constants);
+            target.add(jumpIf ? c.ifne() : c.ifeq());
+        }
+
+        abstract void load(ClassFile file, CodeAttribute c, Constants constants);
+    }
+
+    static final class Constant extends Node {
+        static final Constant TRUE = new Constant(true);
+        static final Constant FALSE = new Constant(false);
+
+        final boolean value;
+
+        private Constant(final boolean value) {
+            super(0, true);
+            this.value = value;
+        }
+
+        /**
+         * A constant is only left in the tree after nodes with side effects. It is tested like any other node, so the
+         * generated code never contains unreachable instructions.
+         */
+        @Override
+        void branch(final ClassFile file, final CodeAttribute c, final Constants constants, final boolean jumpIf, final List<BranchEnd> target) {
+            c.iconst(value ? 1 : 0);
+            target.add(jumpIf ? c.ifne() : c.ifeq());
+        }
+    }
+
+    static final class Not extends Node {
+        final Node node;
+
+        Not(final Node node) {
+            super(node.cost, node.pure);
+            this.node = node;
+        }
+
+        @Override
+        void branch(final ClassFile file, final CodeAttribute c, final Constants constants, final boolean jumpIf, final List<BranchEnd> target) {
+            node.branch(file, c, constants, !jumpIf, target);
+        }
+    }
+
+    static final class Junction extends Node {
+        final boolean and;
+        final Node[] children;
+
+        Junction(final boolean and, final Node[] children) {
+            super(totalCost(children), allPure(children));
+            this.and = and;
+            this.children = children;
+        }
+
+        private static int totalCost(final Node[] children) {
+            int cost = 0;
+            for (Node child : children) {
+                cost += child.cost;
+            }
+            return cost;
+        }
+
+        private static boolean allPure(final Node[] children) {
+            for (Node child : children) {
+                if (!child.pure) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        void branch(final ClassFile file, final CodeAttribute c, final Constants constants, final boolean jumpIf, final List<BranchEnd> target) {
+            //a false child decides an and, and a true child decides an or
+            final boolean decidedBy = !and;
+            if (jumpIf == decidedBy) {
+                for (Node child : children) {
+                    child.branch(file, c, constants, decidedBy, target);
+                }
+            } else {
+                final List<BranchEnd> decided = new ArrayList<>();
+                for (int i = 0; i < children.length - 1; ++i) {
+                    children[i].branch(file, c, constants, decidedBy, decided);
+                }
+                children[children.length - 1].branch(file, c, constants, jumpIf, target);
+                for (BranchEnd branch : decided) {
+                    c.branchEnd(branch);
+                }
+            }
+        }
+    }
+
+    static final class MethodEquals extends Leaf {
+        final HttpString method;
+
+        MethodEquals(final HttpString method) {
+            super(1, true);
+            this.method = method;
+        }
+
+        @Override
+        void load(final ClassFile file, final CodeAttribute c, final Constants constants) {
+            constants.load(file, c, method, HTTP_STRING_CLASS);
+            c.aload(EXCHANGE_VAR);
+            c.invokevirtual(EXCHANGE_CLASS, "getRequestMethod", "()" + HTTP_STRING_DESCRIPTOR);
+            c.invokevirtual(HTTP_STRING_CLASS, "equals", "(" + OBJECT_DESCRIPTOR + ")Z");
+        }
+    }
+
+    static final class ConstantEquals extends Leaf {
+        final String constant;
+        final ExchangeAttribute attribute;
+
+        ConstantEquals(final String constant, final ExchangeAttribute attribute) {
+            super(2, true);
+            this.constant = constant;
+            this.attribute = attribute;
+        }
+
+        @Override
+        void load(final ClassFile file, final CodeAttribute c, final Constants constants) {
+            c.ldc(constant);
+            constants.load(file, c, attribute, ATTRIBUTE_CLASS);
+            c.aload(EXCHANGE_VAR);
+            c.invokeinterface(ATTRIBUTE_CLASS, "readAttribute", "(" + EXCHANGE_DESCRIPTOR + ")" + STRING_DESCRIPTOR);
+            c.invokevirtual(String.class.getName(), "equals", "(" + OBJECT_DESCRIPTOR + ")Z");
+        }
+    }
+
+    static final class Invoke extends Leaf {
+        final Predicate predicate;
+
+        Invoke(final Predicate predicate, final int cost, final boolean pure) {
+            super(cost, pure);
+            this.predicate = predicate;
+        }
+
+        @Override
+        void load(final ClassFile file, final CodeAttribute c, final Constants constants) {
+            constants.load(file, c, predicate, PREDICATE_CLASS);
+            c.aload(EXCHANGE_VAR);
+            c.invokeinterface(PREDICATE_CLASS, "resolve", "(" + EXCHANGE_DESCRIPTOR + ")Z");
+        }
+    }
+
+    private static final class GeneratedClassLoader extends ClassLoader {
+
+        GeneratedClassLoader(final ClassLoader parent) {
+            super(parent);
+        }
+
+        Class<?> define(final String name, final byte[] bytes) {
+            return defineClass(name, bytes, 0, bytes.length);
+        }
+    }
+}
@@ -115,6 +115,15 @@ public class Predicates {
         return new PathPrefixPredicate(paths);
     }
 
+    /**
+     * Creates a predicate that returns true if the address of the remote peer matches any of the provided patterns.
+     *
+     * @see io.undertow.server.handlers.IPAddressAccessControlHandler#addAllow(String)
+     */
+    public static Predicate ipMatch(final String... peers) {
+        return new IPAddressPredicate(peers);
+    }
+
     /**
      * Predicate that returns true if the Content-Size of a request is above a
      * given value.
@@ -44,6 +44,11 @@ public class RegularExpressionPredicate implements Predicate {
     private final ExchangeAttribute matchAttribute;
     private final boolean requireFullMatch;
 
+    /**
+     * Matchers are reused by the thread that created them, as creating a matcher allocates its group arrays
+     */
+    private final ThreadLocal<Matcher> matchers = new ThreadLocal<>();
+
     public RegularExpressionPredicate(final String regex, final ExchangeAttribute matchAttribute, final boolean requireFullMatch) {
         this.requireFullMatch = requireFullMatch;
         pattern = Pattern.compile(regex);
@@ -56,7 +61,14 @@ public class RegularExpressionPredicate implements Predicate {
 
     @Override
     public boolean resolve(final HttpServerExchange value) {
-        Matcher matcher = pattern.matcher(matchAttribute.readAttribute(value));
+        final String input = matchAttribute.readAttribute(value);
+        Matcher matcher = matchers.get();
+        if (matcher == null) {
+            matcher = pattern.matcher(input);
+            matchers.set(matcher);
+        } else {
+            matcher.reset(input);
+        }
         final boolean matches;
         if (requireFullMatch) {
             matches = matcher.matches();
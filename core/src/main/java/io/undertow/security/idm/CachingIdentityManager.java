@@ -0,0 +1,238 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.security.idm;
+
+import static io.undertow.UndertowMessages.MESSAGES;
+
+import java.nio.charset.Charset;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import io.undertow.server.handlers.cache.LRUCache;
+
+/**
+ * An {@link IdentityManager} that caches the result of password verification in front of another identity manager.
+ *
+ * Entries are keyed by a salted hash of the account id and the password, the password itself is never stored. The salt
+ * is generated per instance so the keys are of no use outside of this cache. Both successful and failed verifications
+ * are cached, each with their own time to live, and the cache is bounded in size.
+ *
+ * Only {@link PasswordCredential}s are cached, all other verifications are passed straight through to the delegate. When
+ * the data in the underlying store changes {@link #invalidate(String)} or {@link #invalidateAll()} should be called.
+ *
+ * @author agent
+ */
+public class CachingIdentityManager implements IdentityManager {
+
+    private static final String HASH_ALG = "SHA-256";
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final AtomicLongFieldUpdater<CachingIdentityManager> hitsUpdater = AtomicLongFieldUpdater.newUpdater(CachingIdentityManager.class, "hits");
+    private static final AtomicLongFieldUpdater<CachingIdentityManager> missesUpdater = AtomicLongFieldUpdater.newUpdater(CachingIdentityManager.class, "misses");
+
+    private final IdentityManager delegate;
+    private final LRUCache<CacheKey, CachedResult> accounts;
+    private final LRUCache<CacheKey, CachedResult> failures;
+    private final int maxEntries;
+    private final byte[] salt;
+
+    /**
+     * Sequence used to order cache entries against invalidations.
+     */
+    private final AtomicLong sequence = new AtomicLong();
+    private final ConcurrentMap<String, Long> invalidations = new ConcurrentHashMap<>();
+    private volatile long invalidatedBefore;
+
+    private volatile long hits;
+    private volatile long misses;
+
+    /**
+     * @param delegate        the identity manager that performs the actual verification
+     * @param maxEntries      the maximum number of successful and of failed verifications to cache
+     * @param ttl             how long a successful verification is cached, in milliseconds
+     * @param negativeTtl     how long a failed verification is cached, in milliseconds. A value of 0 disables negative caching
+     */
+    public CachingIdentityManager(final IdentityManager delegate, final int maxEntries, final int ttl, final int negativeTtl) {
+        if (delegate == null) {
+            throw MESSAGES.argumentCannotBeNull("delegate");
+        }
+        this.delegate = delegate;
+        this.maxEntries = maxEntries;
+        this.accounts = new LRUCache<>(maxEntries, ttl);
+        this.failures = negativeTtl > 0 ? new LRUCache<CacheKey, CachedResult>(maxEntries, negativeTtl) : null;
+        this.salt = new byte[32];
+        new SecureRandom().nextBytes(salt);
+        // Make sure the algorithm is available
+        getDigest();
+    }
+
+    @Override
+    public Account verify(final Account account) {
+        return delegate.verify(account);
+    }
+
+    @Override
+    public Account verify(final String id, final Credential credential) {
+        if (id == null || !(credential instanceof PasswordCredential)) {
+            return delegate.verify(id, credential);
+        }
+        final CacheKey key = createKey(id, (PasswordCredential) credential);
+        CachedResult result = accounts.get(key);
+        if (result == null && failures != null) {
+            result = failures.get(key);
+        }
+        if (result != null && isValid(result)) {
+            hitsUpdater.incrementAndGet(this);
+            return result.account;
+        }
+        missesUpdater.incrementAndGet(this);
+        // The sequence is taken before verification, so an invalidation that happens concurrently wins
+        final long seq = sequence.incrementAndGet();
+        final Account account = delegate.verify(id, credential);
+        // Remove any invalidated entry first, the cache will not replace an existing entry
+        accounts.remove(key);
+        if (failures != null) {
+            failures.remove(key);
+        }
+        if (account != null) {
+            accounts.add(key, new CachedResult(id, account, seq));
+        } else if (failures != null) {
+            failures.add(key, new CachedResult(id, null, seq));
+        }
+        return account;
+    }
+
+    @Override
+    public Account verify(final Credential credential) {
+        return delegate.verify(credential);
+    }
+
+    /**
+     * Invalidate all cached verifications for the given account id.
+     *
+     * @param id the account id
+     */
+    public void invalidate(final String id) {
+        if (invalidations.size() >= maxEntries) {
+            // Too many individual invalidations to track, just invalidate everything
+            invalidateAll();
+            return;
+        }
+        invalidations.put(id, sequence.incrementAndGet());
+    }
+
+    /**
+     * Invalidate all cached verifications.
+     */
+    public void invalidateAll() {
+        invalidatedBefore = sequence.incrementAndGet();
+        invalidations.clear();
+    }
+
+    public IdentityManager getDelegate() {
+        return delegate;
+    }
+
+    /**
+     * @return the number of verifications answered from the cache
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return the number of verifications passed to the delegate
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    private boolean isValid(final CachedResult result) {
+        if (result.sequence <= invalidatedBefore) {
+            return false;
+        }
+        final Long invalidated = invalidations.get(result.id);
+        return invalidated == null || result.sequence > invalidated;
+    }
+
+    private CacheKey createKey(final String id, final PasswordCredential credential) {
+        final MessageDigest digest = getDigest();
+        digest.update(salt);
+        digest.update(id.getBytes(UTF_8));
+        // Separate the id from the password so different splits of the same characters do not collide
+        digest.update((byte) 0);
+        final char[] password = credential.getPassword();
+        final byte[] passwordBytes = new byte[password.length * 2];
+        for (int i = 0; i < password.length; ++i) {
+            passwordBytes[i * 2] = (byte) (password[i] >> 8);
+            passwordBytes[i * 2 + 1] = (byte) password[i];
+        }
+        digest.update(passwordBytes);
+        Arrays.fill(passwordBytes, (byte) 0);
+        return new CacheKey(digest.digest());
+    }
+
+    private static MessageDigest getDigest() {
+        try {
+            return MessageDigest.getInstance(HASH_ALG);
+        } catch (NoSuchAlgorithmException e) {
+            throw MESSAGES.hashAlgorithmNotFound(HASH_ALG);
+        }
+    }
+
+    private static final class CacheKey {
+
+        private final byte[] hash;
+        private final int hashCode;
+
+        private CacheKey(final byte[] hash) {
+            this.hash = hash;
+            this.hashCode = Arrays.hashCode(hash);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(final Object o) {
+            return o instanceof CacheKey && Arrays.equals(hash, ((CacheKey) o).hash);
+        }
+    }
+
+    private static final class CachedResult {
+
+        private final String id;
+        private final Account account;
+        private final long sequence;
+
+        private CachedResult(final String id, final Account account, final long sequence) {
+            this.id = id;
+            this.account = account;
+            this.sequence = sequence;
+        }
+    }
+
+}
@@ -0,0 +1,260 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.security.impl;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * A store for nonce state with time based expiry.
+ *
+ * The store is split into lock striped segments selected by the hash of the nonce. Each segment keeps its entries on a
+ * hashed timing wheel, on every access to a segment the wheel is advanced to the current time and all entries in the
+ * slots that have been passed are expired in one batch. This means no timer task is required per nonce, and an expired
+ * entry is never returned even if it has not yet been physically removed.
+ *
+ * @author agent
+ */
+class NonceStore<V> {
+
+    private static final int DEFAULT_SEGMENTS = 16;
+    private static final int WHEEL_SIZE = 1024;
+    private static final long DEFAULT_TICK = 1000;
+
+    /**
+     * Rough per entry overhead in bytes (entry, hash map node and string header), used to estimate the memory used
+     * by the store.
+     */
+    private static final int ENTRY_OVERHEAD = 128;
+
+    private final Segment<V>[] segments;
+    private final int segmentMask;
+    private final long tickDuration;
+
+    NonceStore() {
+        this(DEFAULT_SEGMENTS, DEFAULT_TICK);
+    }
+
+    @SuppressWarnings("unchecked")
+    NonceStore(final int segmentCount, final long tickDuration) {
+        int size = 1;
+        while (size < segmentCount) {
+            size <<= 1;
+        }
+        this.segments = new Segment[size];
+        this.segmentMask = size - 1;
+        this.tickDuration = tickDuration;
+        final long currentTick = System.currentTimeMillis() / tickDuration;
+        for (int i = 0; i < size; ++i) {
+            segments[i] = new Segment<>(currentTick);
+        }
+    }
+
+    /**
+     * @param key the nonce
+     * @param now the current time
+     * @return the value for the nonce, or {@code null} if it is not present or has expired
+     */
+    V get(final String key, final long now) {
+        return segmentFor(key).get(key, now, tickDuration);
+    }
+
+    /**
+     * Add a value if there is no live value present for the key.
+     *
+     * @param key       the nonce
+     * @param value     the value
+     * @param expiresAt the time at which the entry expires
+     * @param now       the current time
+     * @return the existing value, or {@code null} if the value was added (or had already expired)
+     */
+    V putIfAbsent(final String key, final V value, final long expiresAt, final long now) {
+        return segmentFor(key).put(key, value, expiresAt, now, tickDuration, true);
+    }
+
+    /**
+     * Add a value, replacing any existing value for the key.
+     *
+     * @param key       the nonce
+     * @param value     the value
+     * @param expiresAt the time at which the entry expires
+     * @param now       the current time
+     * @return the previous live value, or {@code null} if there was none
+     */
+    V put(final String key, final V value, final long expiresAt, final long now) {
+        return segmentFor(key).put(key, value, expiresAt, now, tickDuration, false);
+    }
+
+    V remove(final String key, final long now) {
+        return segmentFor(key).remove(key, now, tickDuration);
+    }
+
+    /**
+     * @return the number of entries in the store, including expired entries that have not been swept yet
+     */
+    int size() {
+        int size = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                size += segment.entries.size();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return an estimate of the memory used by the entries of this store in bytes
+     */
+    long estimatedMemoryUsage() {
+        long total = 0;
+        for (Segment<V> segment : segments) {
+            synchronized (segment) {
+                total += (long) segment.entries.size() * ENTRY_OVERHEAD + segment.keyChars * 2L;
+            }
+        }
+        return total;
+    }
+
+    private Segment<V> segmentFor(final String key) {
+        int h = key.hashCode();
+        h ^= (h >>> 16);
+        return segments[h & segmentMask];
+    }
+
+    private static final class Segment<V> {
+
+        private final Map<String, Entry<V>> entries = new HashMap<>();
+        @SuppressWarnings("unchecked")
+        private final Entry<V>[] wheel = new Entry[WHEEL_SIZE];
+        private long currentTick;
+        private long keyChars;
+
+        private Segment(final long currentTick) {
+            this.currentTick = currentTick;
+        }
+
+        synchronized V get(final String key, final long now, final long tickDuration) {
+            expire(now, tickDuration);
+            final Entry<V> entry = entries.get(key);
+            if (entry == null || entry.expiresAt <= now) {
+                return null;
+            }
+            return entry.value;
+        }
+
+        synchronized V put(final String key, final V value, final long expiresAt, final long now, final long tickDuration, final boolean onlyIfAbsent) {
+            expire(now, tickDuration);
+            final Entry<V> existing = entries.get(key);
+            V previous = null;
+            if (existing != null) {
+                if (existing.expiresAt > now) {
+                    previous = existing.value;
+                    if (onlyIfAbsent) {
+                        return previous;
+                    }
+                }
+                removeEntry(existing);
+            }
+            if (expiresAt <= now) {
+                return previous;
+            }
+            final long expiryTick = (expiresAt + tickDuration - 1) / tickDuration;
+            final Entry<V> entry = new Entry<>(key, value, expiresAt, expiryTick);
+            entries.put(key, entry);
+            keyChars += key.length();
+            final int slot = (int) (expiryTick & (WHEEL_SIZE - 1));
+            final Entry<V> head = wheel[slot];
+            entry.next = head;
+            if (head != null) {
+                head.prev = entry;
+            }
+            wheel[slot] = entry;
+            return previous;
+        }
+
+        synchronized V remove(final String key, final long now, final long tickDuration) {
+            expire(now, tickDuration);
+            final Entry<V> entry = entries.get(key);
+            if (entry == null) {
+                return null;
+            }
+            removeEntry(entry);
+            return entry.expiresAt > now ? entry.value : null;
+        }
+
+        /**
+         * Advance the wheel to the given time, expiring every entry in the slots that have been passed. Entries that
+         * hash to a passed slot but are due in a later rotation of the wheel are left in place.
+         */
+        private void expire(final long now, final long tickDuration) {
+            final long tick = now / tickDuration;
+            if (tick <= currentTick) {
+                return;
+            }
+            final long steps = Math.min(tick - currentTick, WHEEL_SIZE);
+            for (long i = 1; i <= steps; ++i) {
+                final int slot = (int) ((currentTick + i) & (WHEEL_SIZE - 1));
+                Entry<V> entry = wheel[slot];
+                while (entry != null) {
+                    final Entry<V> next = entry.next;
+                    if (entry.expiryTick <= tick) {
+                        removeEntry(entry);
+                    }
+                    entry = next;
+                }
+            }
+            currentTick = tick;
+        }
+
+        private void removeEntry(final Entry<V> entry) {
+            if (entries.get(entry.key) == entry) {
+                entries.remove(entry.key);
+            }
+            keyChars -= entry.key.length();
+            final int slot = (int) (entry.expiryTick & (WHEEL_SIZE - 1));
+            if (entry.prev == null) {
+                wheel[slot] = entry.next;
+            } else {
+                entry.prev.next = entry.next;
+            }
+            if (entry.next != null) {
+                entry.next.prev = entry.prev;
+            }
+            entry.prev = null;
+            entry.next = null;
+        }
+    }
+
+    private static final class Entry<V> {
+
+        private final String key;
+        private final V value;
+        private final long expiresAt;
+        private final long expiryTick;
+        private Entry<V> prev;
+        private Entry<V> next;
+
+        private Entry(final String key, final V value, final long expiresAt, final long expiryTick) {
+            this.key = key;
+            this.value = value;
+            this.expiresAt = expiresAt;
+            this.expiryTick = expiryTick;
+        }
+    }
+
+}
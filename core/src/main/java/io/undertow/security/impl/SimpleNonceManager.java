@@ -29,16 +29,11 @@ import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
 import java.util.Collections;
-import java.util.HashMap;
-import java.util.HashSet;
+import java.util.Date;
 import java.util.Map;
 import java.util.Random;
-import java.util.Set;
 import java.util.WeakHashMap;
-import java.util.concurrent.TimeUnit;
-
-import org.xnio.XnioExecutor;
-import org.xnio.XnioExecutor.Key;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import io.undertow.util.FlexBase64;
 
@@ -56,6 +51,9 @@ import io.undertow.util.FlexBase64;
  * ensure the same count is not used again - if successfully used without a nonce count add to a blacklist until expiration? A
  * nonce used without a nonce count will essentially be single use with each request getting a new nonce.
  *
+ * Both groups are held in a {@link NonceStore}, a lock striped store that expires entries in batches using a timing wheel
+ * so no timer task is needed per nonce.
+ *
  * @author <a href="mailto:darran.lofthouse@jboss.com">Darran Lofthouse</a>
  */
 public class SimpleNonceManager implements SessionNonceManager {
@@ -68,13 +66,12 @@ public class SimpleNonceManager implements SessionNonceManager {
      *
      * In that situation they are considered single use and must not be used again.
      */
-    private final Set<String> invalidNonces = Collections.synchronizedSet(new HashSet<String>());
+    private final NonceStore<Nonce> invalidNonces = new NonceStore<>();
 
     /**
-     * Map of known currently valid nonces, a SortedMap is used to order the nonces by their creation time stamp allowing a
-     * simple iteration over the keys to identify expired nonces.
+     * Store of known currently valid nonces, entries are expired by the store once their overall time out has passed.
      */
-    private final Map<String, Nonce> knownNonces = Collections.synchronizedMap(new HashMap<String, Nonce>());
+    private final NonceStore<Nonce> knownNonces = new NonceStore<>();
 
     /**
      * A WeakHashMap to map expired nonces to their replacement nonce. For an item to be added to this Collection the value will
@@ -119,6 +116,13 @@ public class SimpleNonceManager implements SessionNonceManager {
      */
     private final long cacheTimePostExpiry = 5 * 60 * 1000;
 
+    private static final AtomicLongFieldUpdater<SimpleNonceManager> validationsUpdater = AtomicLongFieldUpdater.newUpdater(SimpleNonceManager.class, "validations");
+    private static final AtomicLongFieldUpdater<SimpleNonceManager> rejectedValidationsUpdater = AtomicLongFieldUpdater.newUpdater(SimpleNonceManager.class, "rejectedValidations");
+
+    private volatile long metricsStartTime = System.currentTimeMillis();
+    private volatile long validations;
+    private volatile long rejectedValidations;
+
     public SimpleNonceManager() {
         this(DEFAULT_HASH_ALG);
     }
@@ -154,7 +158,8 @@ public class SimpleNonceManager implements SessionNonceManager {
             return createNewNonceString();
         }
 
-        if (invalidNonces.contains(lastNonce)) {
+        long now = System.currentTimeMillis();
+        if (invalidNonces.get(lastNonce, now) != null) {
             // The nonce supplied has already been used.
             return createNewNonceString();
         }
@@ -169,44 +174,31 @@ public class SimpleNonceManager implements SessionNonceManager {
                 holder = new NonceHolder(nonce);
             }
 
-            synchronized (knownNonces) {
-                Nonce value = knownNonces.get(nonce);
-                if (value == null) {
-                    // Not a likely scenario but if this occurs then most likely the nonce mapped to has also expired so we will
-                    // just send a new nonce.
-                    nonce = createNewNonceString();
-                } else {
-                    long now = System.currentTimeMillis();
-                    // The cacheTimePostExpiry is not included here as this is our opportunity to inform the client to use a
-                    // replacement nonce without a stale round trip.
-                    long earliestAccepted = now - firstUseTimeOut;
-                    if (value.timeStamp < earliestAccepted || value.timeStamp > now) {
-                        XnioExecutor executor = exchange.getIoThread();
-                        Nonce replacement = createNewNonce(holder);
-                        if (value.executorKey != null) {
-                            // The outcome doesn't matter - if we have the value we have all we need.
-                            value.executorKey.remove();
-                        }
-
-                        nonce = replacement.nonce;
-                        // Create a record of the forward mapping so if any requests do need to be marked stale they can be
-                        // pointed towards the correct nonce to use.
-                        forwardMapping.put(holder, nonce);
-                        // Bring over any existing session key.
-                        replacement.setSessionKey(value.getSessionKey());
-                        // At this point we will not accept the nonce again so remove it from the list of known nonces but do
-                        // register the replacement.
-                        knownNonces.remove(holder.nonce);
-                        // There are two reasons for registering the replacement 1 - to preserve any session key, 2 - To keep a
-                        // reference to the now invalid key so it
-                        // can be used as a key in a weak hash map.
-                        knownNonces.put(nonce, replacement);
-                        earliestAccepted = now - (overallTimeOut + cacheTimePostExpiry);
-                        long timeTillExpiry = replacement.timeStamp - earliestAccepted;
-                        replacement.executorKey = executor.executeAfter(new KnownNonceCleaner(nonce), timeTillExpiry,
-                                TimeUnit.MILLISECONDS);
-
-                    }
+            Nonce value = knownNonces.get(nonce, now);
+            if (value == null) {
+                // Not a likely scenario but if this occurs then most likely the nonce mapped to has also expired so we will
+                // just send a new nonce.
+                nonce = createNewNonceString();
+            } else {
+                // The cacheTimePostExpiry is not included here as this is our opportunity to inform the client to use a
+                // replacement nonce without a stale round trip.
+                long earliestAccepted = now - firstUseTimeOut;
+                if (value.timeStamp < earliestAccepted || value.timeStamp > now) {
+                    Nonce replacement = createNewNonce(holder);
+
+                    nonce = replacement.nonce;
+                    // Create a record of the forward mapping so if any requests do need to be marked stale they can be
+                    // pointed towards the correct nonce to use.
+                    forwardMapping.put(holder, nonce);
+                    // Bring over any existing session key.
+                    replacement.setSessionKey(value.getSessionKey());
+                    // At this point we will not accept the nonce again so remove it from the list of known nonces but do
+                    // register the replacement.
+                    knownNonces.remove(holder.nonce, now);
+                    // There are two reasons for registering the replacement 1 - to preserve any session key, 2 - To keep a
+                    // reference to the now invalid key so it
+                    // can be used as a key in a weak hash map.
+                    knownNonces.put(nonce, replacement, replacement.timeStamp + overallTimeOut + cacheTimePostExpiry, now);
                 }
             }
         }
@@ -235,18 +227,27 @@ public class SimpleNonceManager implements SessionNonceManager {
      */
     @Override
     public boolean validateNonce(String nonce, int nonceCount, HttpServerExchange exchange) {
-        XnioExecutor executor = exchange.getIoThread();
+        validationsUpdater.incrementAndGet(this);
+        if (doValidateNonce(nonce, nonceCount)) {
+            return true;
+        }
+        rejectedValidationsUpdater.incrementAndGet(this);
+        return false;
+    }
+
+    private boolean doValidateNonce(String nonce, int nonceCount) {
+        long now = System.currentTimeMillis();
         if (nonceCount < 0) {
-            if (invalidNonces.contains(nonce)) {
+            if (invalidNonces.get(nonce, now) != null) {
                 // Without a nonce count the nonce is only usable once.
                 return false;
             }
             // Not already known so will drop into first use validation.
-        } else if (knownNonces.containsKey(nonce)) {
+        } else if (knownNonces.get(nonce, now) != null) {
             // At this point we need to validate that the nonce is still within it's time limits,
             // If a new nonce had been selected then a known nonce would not have been found.
             // The nonce will also have it's nonce count checked.
-            return validateNonceWithCount(new Nonce(nonce), nonceCount, executor);
+            return validateNonceWithCount(new Nonce(nonce), nonceCount);
 
         } else if (forwardMapping.containsKey(new NonceHolder(nonce))) {
             // We could have let this drop through as the next validation would fail anyway but
@@ -260,7 +261,6 @@ public class SimpleNonceManager implements SessionNonceManager {
             return false;
         }
 
-        long now = System.currentTimeMillis();
         // NOTE - This check is for the first use, overall validity is checked in validateNonceWithCount.
         long earliestAccepted = now - firstUseTimeOut;
         if (value.timeStamp < earliestAccepted || value.timeStamp > now) {
@@ -270,68 +270,54 @@ public class SimpleNonceManager implements SessionNonceManager {
 
         if (nonceCount < 0) {
             // Allow a single use but reject all further uses.
-            return addInvalidNonce(value, executor);
+            return addInvalidNonce(value);
         } else {
-            return validateNonceWithCount(value, nonceCount, executor);
+            return validateNonceWithCount(value, nonceCount);
         }
     }
 
-    private boolean validateNonceWithCount(Nonce nonce, int nonceCount, final XnioExecutor executor) {
-        // This point could have been reached either because the knownNonces map contained the key or because
-        // it didn't and a count was supplied - either way need to double check the contents of knownNonces once
-        // the lock is in place.
-        synchronized (knownNonces) {
-            Nonce value = knownNonces.get(nonce.nonce);
-            long now = System.currentTimeMillis();
-            // For the purpose of this validation we also add the cacheTimePostExpiry - when nextNonce is subsequently
-            // called it will decide if we are in the interval to replace the nonce.
-            long earliestAccepted = now - (overallTimeOut + cacheTimePostExpiry);
-            if (value == null) {
-                if (nonce.timeStamp < 0) {
-                    // Means it was in there, now it isn't - most likely a timestamp expiration mid check - abandon validation.
-                    return false;
-                }
-
-                if (nonce.timeStamp > earliestAccepted && nonce.timeStamp < now) {
-                    knownNonces.put(nonce.nonce, nonce);
-                    long timeTillExpiry = nonce.timeStamp - earliestAccepted;
-                    nonce.executorKey = executor.executeAfter(new KnownNonceCleaner(nonce.nonce), timeTillExpiry,
-                            TimeUnit.MILLISECONDS);
-                    return true;
-                }
-
+    private boolean validateNonceWithCount(Nonce nonce, int nonceCount) {
+        // This point could have been reached either because the knownNonces store contained the key or because
+        // it didn't and a count was supplied - either way need to double check the contents of knownNonces, the
+        // store is only locked per operation so the registration of a new nonce is done with a putIfAbsent.
+        long now = System.currentTimeMillis();
+        Nonce value = knownNonces.get(nonce.nonce, now);
+        // For the purpose of this validation we also add the cacheTimePostExpiry - when nextNonce is subsequently
+        // called it will decide if we are in the interval to replace the nonce.
+        long earliestAccepted = now - (overallTimeOut + cacheTimePostExpiry);
+        if (value == null) {
+            if (nonce.timeStamp < 0) {
+                // Means it was in there, now it isn't - most likely a timestamp expiration mid check - abandon validation.
                 return false;
-            } else {
-                // We have it, just need to verify that it has not expired and that the nonce key is valid.
-                if (value.timeStamp < earliestAccepted || value.timeStamp > now) {
-                    // The embedded timestamp is either expired or somehow is after now!!
-                    return false;
-                }
+            }
 
-                if (value.getMaxNonceCount() < nonceCount) {
-                    value.setMaxNonceCount(nonceCount);
+            if (nonce.timeStamp > earliestAccepted && nonce.timeStamp < now) {
+                value = knownNonces.putIfAbsent(nonce.nonce, nonce, nonce.timeStamp + overallTimeOut + cacheTimePostExpiry, now);
+                if (value == null) {
                     return true;
                 }
-
+                // Registered concurrently, validate the count against the winner.
+            } else {
                 return false;
             }
+        }
 
+        // We have it, just need to verify that it has not expired and that the nonce count has not been used.
+        if (value.timeStamp < earliestAccepted || value.timeStamp > now) {
+            // The embedded timestamp is either expired or somehow is after now!!
+            return false;
         }
 
+        return value.useNonceCount(nonceCount);
     }
 
-    private boolean addInvalidNonce(final Nonce nonce, final XnioExecutor executor) {
+    private boolean addInvalidNonce(final Nonce nonce) {
         long now = System.currentTimeMillis();
         long invalidBefore = now - firstUseTimeOut;
 
         long timeTillInvalid = nonce.timeStamp - invalidBefore;
         if (timeTillInvalid > 0) {
-            if (invalidNonces.add(nonce.nonce)) {
-                executor.executeAfter(new InvalidNonceCleaner(nonce.nonce), timeTillInvalid, TimeUnit.MILLISECONDS);
-                return true;
-            } else {
-                return false;
-            }
+            return invalidNonces.putIfAbsent(nonce.nonce, nonce, nonce.timeStamp + firstUseTimeOut, now) == null;
         } else {
             // So close to expiring any record of this nonce being used could have been cleared so
             // don't take a chance and just say no.
@@ -416,6 +402,58 @@ public class SimpleNonceManager implements SessionNonceManager {
         return digest.digest(secret.getBytes(UTF_8));
     }
 
+    /**
+     * @return the time the nonce metrics were started or last reset
+     */
+    public Date getMetricsStartDate() {
+        return new Date(metricsStartTime);
+    }
+
+    /**
+     * @return the number of nonce validations since the metrics were started
+     */
+    public long getValidations() {
+        return validations;
+    }
+
+    /**
+     * @return the number of nonce validations that were rejected since the metrics were started
+     */
+    public long getRejectedValidations() {
+        return rejectedValidations;
+    }
+
+    /**
+     * @return the average number of nonce validations per second since the metrics were started
+     */
+    public double getValidationsPerSecond() {
+        final long elapsed = System.currentTimeMillis() - metricsStartTime;
+        if (elapsed <= 0) {
+            return 0;
+        }
+        return validations * 1000.0 / elapsed;
+    }
+
+    /**
+     * @return the number of nonces currently tracked, both in use and single use nonces that have been used
+     */
+    public int getStoredNonceCount() {
+        return knownNonces.size() + invalidNonces.size();
+    }
+
+    /**
+     * @return an estimate of the memory used by the nonce stores in bytes
+     */
+    public long getEstimatedStoreMemory() {
+        return knownNonces.estimatedMemoryUsage() + invalidNonces.estimatedMemoryUsage();
+    }
+
+    public void resetMetrics() {
+        validations = 0;
+        rejectedValidations = 0;
+        metricsStartTime = System.currentTimeMillis();
+    }
+
     public void associateHash(String nonce, byte[] hash) {
         // TODO Auto-generated method stub
 
@@ -461,13 +499,14 @@ public class SimpleNonceManager implements SessionNonceManager {
         private final String nonce;
 
         private final long timeStamp;
-        // TODO we will also add a mechanism to track the gaps as the only restriction is that a NC can only be used one.
+        // The highest nonce count seen, and a bitmap of the counts used below it. Bit n is set if the count
+        // maxNonceCount - n has been used, this allows counts to arrive out of order while each is only accepted once.
         private int maxNonceCount;
+        private long nonceCountWindow;
         // We keep this as it is used in the wek hash map as a forward mapping as long as the nonce to map to is still alive.
         @SuppressWarnings("unused")
         private final NonceHolder previousNonce;
         private byte[] sessionKey;
-        private Key executorKey;
 
         private Nonce(final String nonce) {
             this(nonce, -1, -1);
@@ -489,6 +528,7 @@ public class SimpleNonceManager implements SessionNonceManager {
             this.nonce = nonce;
             this.timeStamp = timeStamp;
             this.maxNonceCount = initialNC;
+            this.nonceCountWindow = initialNC < 0 ? 0 : 1;
             this.previousNonce = previousNonce;
         }
 
@@ -500,46 +540,35 @@ public class SimpleNonceManager implements SessionNonceManager {
             this.sessionKey = sessionKey;
         }
 
-        int getMaxNonceCount() {
+        synchronized int getMaxNonceCount() {
             return maxNonceCount;
         }
 
-        void setMaxNonceCount(int maxNonceCount) {
-            this.maxNonceCount = maxNonceCount;
-        }
-
-    }
-
-    private class InvalidNonceCleaner implements Runnable {
-
-        private final String nonce;
-
-        private InvalidNonceCleaner(final String nonce) {
-            if (nonce == null) {
-                throw new NullPointerException("nonce must not be null.");
+        /**
+         * Mark a nonce count as used.
+         *
+         * @param nonceCount the nonce count
+         * @return true if the count had not been used before and is within the window
+         */
+        synchronized boolean useNonceCount(int nonceCount) {
+            if (nonceCount > maxNonceCount) {
+                final int shift = nonceCount - maxNonceCount;
+                nonceCountWindow = shift >= Long.SIZE ? 1 : (nonceCountWindow << shift) | 1;
+                maxNonceCount = nonceCount;
+                return true;
             }
-            this.nonce = nonce;
-        }
-
-        public void run() {
-            invalidNonces.remove(nonce);
-        }
-
-    }
-
-    private class KnownNonceCleaner implements Runnable {
-        private final String nonce;
-
-        private KnownNonceCleaner(final String nonce) {
-            if (nonce == null) {
-                throw new NullPointerException("nonce must not be null.");
+            final int offset = maxNonceCount - nonceCount;
+            if (offset >= Long.SIZE) {
+                return false;
             }
-            this.nonce = nonce;
+            final long bit = 1L << offset;
+            if ((nonceCountWindow & bit) != 0) {
+                return false;
+            }
+            nonceCountWindow |= bit;
+            return true;
         }
 
-        public void run() {
-            knownNonces.remove(nonce);
-        }
     }
 
 }
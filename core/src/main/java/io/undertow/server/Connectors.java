@@ -192,6 +192,7 @@ public class Connectors {
     }
 
     public static void executeRootHandler(final HttpHandler handler, final HttpServerExchange exchange) {
+        exchange.enterCall();
         try {
             exchange.setInCall(true);
             handler.handleRequest(exchange);
@@ -219,9 +220,40 @@ public class Connectors {
             }
             UndertowLogger.REQUEST_LOGGER.errorf(t, "Undertow request failed %s", exchange);
             exchange.endExchange();
+        } finally {
+            exchange.exitCall();
         }
     }
 
+    /**
+     * If this is true exchanges are reused even if assertions are enabled, so that tests can run the reuse path.
+     */
+    static volatile boolean recycleWithAssertions = false;
+
+    /**
+     * Attempts to reset a completed exchange, so it can be used for the next request on the same connection.
+     * <p/>
+     * If assertions are enabled the exchange is never reset, instead it is marked as recycled, so that any
+     * further use of it will fail.
+     *
+     * @param exchange      The completed exchange
+     * @param maxEntitySize The maximum entity size of the next request
+     * @return <code>true</code> if the exchange was reset and can be used for the next request
+     */
+    public static boolean recycleExchange(final HttpServerExchange exchange, final long maxEntitySize) {
+        if (!exchange.isRecyclable()) {
+            return false;
+        }
+        boolean assertionsEnabled = false;
+        assert assertionsEnabled = true;
+        if (assertionsEnabled && !recycleWithAssertions) {
+            exchange.markRecycled();
+            return false;
+        }
+        exchange.reset(maxEntitySize);
+        return true;
+    }
+
     /**
      * Returns the existing request channel, if it exists. Otherwise returns null
      *
@@ -39,6 +39,7 @@ import io.undertow.util.HeaderMap;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
 import io.undertow.util.NetworkUtils;
+import io.undertow.util.PathTemplateMatch;
 import io.undertow.util.Protocols;
 import org.jboss.logging.Logger;
 import org.xnio.Buffers;
@@ -67,11 +68,13 @@ import java.nio.channels.Channel;
 import java.nio.channels.FileChannel;
 import java.security.AccessController;
 import java.util.ArrayDeque;
+import java.util.Arrays;
 import java.util.Deque;
 import java.util.Map;
 import java.util.TreeMap;
 import java.util.concurrent.Executor;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import static org.xnio.Bits.allAreSet;
 import static org.xnio.Bits.anyAreClear;
@@ -98,6 +101,8 @@ public final class HttpServerExchange extends AbstractAttachable {
      */
     static final AttachmentKey<Pooled<ByteBuffer>[]> BUFFERED_REQUEST_DATA = AttachmentKey.create(Pooled[].class);
 
+    private static final AtomicIntegerFieldUpdater<HttpServerExchange> activeCallsUpdater = AtomicIntegerFieldUpdater.newUpdater(HttpServerExchange.class, "activeCalls");
+
     private final ServerConnection connection;
     private final HeaderMap requestHeaders;
     private final HeaderMap responseHeaders;
@@ -271,6 +276,20 @@ public final class HttpServerExchange extends AbstractAttachable {
     private static final int FLAG_SHOULD_RESUME_READS = 1 << 18;
     private static final int FLAG_SHOLD_RESUME_WRITES = 1 << 19;
 
+    /**
+     * Flag that is set once the exchange has been handed back to its connection for reuse. This is only set
+     * if assertions are enabled, in which case the exchange is not actually reused.
+     */
+    private static final int FLAG_RECYCLED = 1 << 20;
+
+    /**
+     * The number of threads that are currently running {@link Connectors#executeRootHandler(HttpHandler, HttpServerExchange)}
+     * or the exchange complete listeners for this exchange. The connection can start the next request before the thread
+     * that completed this exchange has returned, so an exchange can only be reused once this is zero.
+     */
+    @SuppressWarnings("unused")
+    private volatile int activeCalls;
+
     /**
      * The source address for the request. If this is null then the actual source address from the channel is used
      */
@@ -709,6 +728,7 @@ public final class HttpServerExchange extends AbstractAttachable {
      * @throws IllegalStateException If this exchange has already been dispatched
      */
     public HttpServerExchange dispatch(final Executor executor, final Runnable runnable) {
+        assert checkNotRecycled();
         if (executor != null) {
             this.dispatchExecutor = executor;
         }
@@ -784,6 +804,96 @@ public final class HttpServerExchange extends AbstractAttachable {
         return this;
     }
 
+    void enterCall() {
+        activeCallsUpdater.incrementAndGet(this);
+    }
+
+    void exitCall() {
+        activeCallsUpdater.decrementAndGet(this);
+    }
+
+    /**
+     * @return <code>true</code> if the exchange is complete and no thread is still running a handler or the
+     *         completion for it
+     */
+    boolean isRecyclable() {
+        return isComplete() && activeCalls == 0 && anyAreClear(state, FLAG_RECYCLED);
+    }
+
+    /**
+     * Marks the exchange as handed back to the connection, after which any further use of it will fail
+     * an assertion.
+     */
+    void markRecycled() {
+        state |= FLAG_RECYCLED;
+    }
+
+    private boolean checkNotRecycled() {
+        if (anyAreSet(state, FLAG_RECYCLED)) {
+            throw UndertowMessages.MESSAGES.exchangeAlreadyRecycled();
+        }
+        return true;
+    }
+
+    /**
+     * Resets this exchange to the state of a newly created exchange, so it can be used for the next request
+     * on the same connection. The header maps and the internal arrays are kept, so they do not have to be
+     * allocated again.
+     *
+     * @param maxEntitySize The maximum entity size of the next request
+     */
+    void reset(final long maxEntitySize) {
+        requestHeaders.clear();
+        responseHeaders.clear();
+        clearAttachments();
+        if (exchangeCompleteListeners != null) {
+            Arrays.fill(exchangeCompleteListeners, null);
+        }
+        exchangeCompletionListenersCount = 0;
+        if (defaultResponseListeners != null) {
+            Arrays.fill(defaultResponseListeners, null);
+        }
+        if (queryParameters != null) {
+            queryParameters.clear();
+        }
+        if (pathParameters != null) {
+            pathParameters.clear();
+        }
+        //request cookies are parsed lazily from the headers, so they cannot be cleared
+        requestCookies = null;
+        if (responseCookies != null) {
+            responseCookies.clear();
+        }
+        responseChannel = null;
+        requestChannel = null;
+        blockingHttpExchange = null;
+        protocol = null;
+        securityContext = null;
+        state = 200;
+        requestMethod = null;
+        requestScheme = null;
+        requestURI = null;
+        requestPath = null;
+        relativePath = null;
+        resolvedPath = "";
+        queryString = "";
+        if (requestWrappers != null) {
+            Arrays.fill(requestWrappers, null);
+        }
+        requestWrapperCount = 0;
+        if (responseWrappers != null) {
+            Arrays.fill(responseWrappers, null);
+        }
+        responseWrapperCount = 0;
+        sender = null;
+        requestStartTime = -1;
+        this.maxEntitySize = maxEntitySize;
+        dispatchTask = null;
+        dispatchExecutor = null;
+        sourceAddress = null;
+        destinationAddress = null;
+    }
+
 
     /**
      * Upgrade the channel to a raw socket. This method set the response code to 101, and then marks both the
@@ -825,6 +935,7 @@ public final class HttpServerExchange extends AbstractAttachable {
     }
 
     public HttpServerExchange addExchangeCompleteListener(final ExchangeCompletionListener listener) {
+        assert checkNotRecycled();
         final int exchangeCompletionListenersCount = this.exchangeCompletionListenersCount++;
         ExchangeCompletionListener[] exchangeCompleteListeners = this.exchangeCompleteListeners;
         if (exchangeCompleteListeners == null || exchangeCompleteListeners.length == exchangeCompletionListenersCount) {
@@ -908,6 +1019,7 @@ public final class HttpServerExchange extends AbstractAttachable {
      * @return the request headers
      */
     public HeaderMap getRequestHeaders() {
+        assert checkNotRecycled();
         return requestHeaders;
     }
 
@@ -928,6 +1040,7 @@ public final class HttpServerExchange extends AbstractAttachable {
      * @return the response headers
      */
     public HeaderMap getResponseHeaders() {
+        assert checkNotRecycled();
         return responseHeaders;
     }
 
@@ -1005,6 +1118,18 @@ public final class HttpServerExchange extends AbstractAttachable {
         return this;
     }
 
+    /**
+     * Returns the value of a parameter of the path template that was matched for this request, for example by a
+     * {@link RoutingHandler}. The value is taken straight from the request path, so no parameter map is created.
+     *
+     * @param name The parameter name
+     * @return The parameter value, or <code>null</code> if no template was matched or it has no such parameter
+     */
+    public String getPathTemplateParameter(final String name) {
+        final PathTemplateMatch match = getAttachment(PathTemplateMatch.ATTACHMENT_KEY);
+        return match == null ? null : match.getParameter(name);
+    }
+
     /**
      * @return A mutable map of request cookies
      */
@@ -1066,6 +1191,7 @@ public final class HttpServerExchange extends AbstractAttachable {
      * @return the channel for the inbound request, or {@code null} if another party already acquired the channel
      */
     public StreamSourceChannel getRequestChannel() {
+        assert checkNotRecycled();
         if (requestChannel != null) {
             return null;
         }
@@ -1135,10 +1261,20 @@ public final class HttpServerExchange extends AbstractAttachable {
             int i = exchangeCompletionListenersCount - 1;
             ExchangeCompletionListener next = exchangeCompleteListeners[i];
             exchangeCompletionListenersCount = -1;
-            next.exchangeEvent(this, new ExchangeCompleteNextListener(exchangeCompleteListeners, this, i));
+            enterCall();
+            try {
+                next.exchangeEvent(this, new ExchangeCompleteNextListener(exchangeCompleteListeners, this, i));
+            } finally {
+                exitCall();
+            }
         } else if (exchangeCompletionListenersCount == 0) {
             exchangeCompletionListenersCount = -1;
-            connection.exchangeComplete(this);
+            enterCall();
+            try {
+                connection.exchangeComplete(this);
+            } finally {
+                exitCall();
+            }
         }
     }
 
@@ -1163,6 +1299,7 @@ public final class HttpServerExchange extends AbstractAttachable {
      * @return the response channel, or {@code null} if another party already acquired the channel
      */
     public StreamSinkChannel getResponseChannel() {
+        assert checkNotRecycled();
         if (responseChannel != null) {
             return null;
         }
@@ -1192,6 +1329,7 @@ public final class HttpServerExchange extends AbstractAttachable {
      * @see #getResponseChannel()
      */
     public Sender getResponseSender() {
+        assert checkNotRecycled();
         if (blockingHttpExchange != null) {
             return blockingHttpExchange.getSender();
         }
@@ -1216,6 +1354,7 @@ public final class HttpServerExchange extends AbstractAttachable {
      * @throws IllegalStateException if a response or upgrade was already sent
      */
     public HttpServerExchange setResponseCode(final int responseCode) {
+        assert checkNotRecycled();
         if (responseCode < 0 || responseCode > 999) {
             throw new IllegalArgumentException("Invalid response code");
         }
@@ -1633,7 +1772,13 @@ public final class HttpServerExchange extends AbstractAttachable {
                 final ExchangeCompletionListener next = list[i];
                 next.exchangeEvent(exchange, this);
             } else if(i == -1) {
-                exchange.connection.exchangeComplete(exchange);
+                //listeners may proceed from another thread, which also has to return before the exchange is reused
+                exchange.enterCall();
+                try {
+                    exchange.connection.exchangeComplete(exchange);
+                } finally {
+                    exchange.exitCall();
+                }
             }
         }
     }
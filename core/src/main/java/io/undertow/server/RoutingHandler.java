@@ -27,21 +27,30 @@ import io.undertow.util.PathTemplate;
 import io.undertow.util.PathTemplateMatch;
 import io.undertow.util.PathTemplateMatcher;
 
-import java.util.List;
 import java.util.Map;
 import java.util.Map.Entry;
-import java.util.concurrent.CopyOnWriteArrayList;
 
 /**
  * A Handler that handles the common case of routing via path template and method name.
+ * <p/>
+ * Requests are dispatched using a routing table that is built when the first request arrives after the routes have
+ * changed. Matched path parameters are only turned into strings when they are read, either through the
+ * {@link PathTemplateMatch} attachment or {@link HttpServerExchange#getPathTemplateParameter(String)}.
  *
  * @author Stuart Douglas
  */
 public class RoutingHandler implements HttpHandler {
 
+    private static final HandlerHolder[] NO_HANDLERS = new HandlerHolder[0];
+
     private final Map<HttpString, PathTemplateMatcher<RoutingMatch>> matches = new CopyOnWriteMap<>();
     private final PathTemplateMatcher<RoutingMatch> allMethodsMatcher = new PathTemplateMatcher<>();
 
+    /**
+     * The routing table, or <code>null</code> if the routes have changed since it was built
+     */
+    private volatile RoutingTable routingTable;
+
     private volatile HttpHandler fallbackHandler = ResponseCodeHandler.HANDLE_404;
     private volatile HttpHandler invalidMethodHandler = ResponseCodeHandler.HANDLE_405;
 
@@ -62,7 +71,7 @@ public class RoutingHandler implements HttpHandler {
     @Override
     public void handleRequest(HttpServerExchange exchange) throws Exception {
 
-        PathTemplateMatcher<RoutingMatch> matcher = matches.get(exchange.getRequestMethod());
+        PathTemplateMatcher<RoutingMatch> matcher = routingTable().get(exchange.getRequestMethod());
         if (matcher == null) {
             invalidMethodHandler.handleRequest(exchange);
             return;
@@ -78,8 +87,8 @@ public class RoutingHandler implements HttpHandler {
         }
         exchange.putAttachment(PathTemplateMatch.ATTACHMENT_KEY, match);
         if (rewriteQueryParameters) {
-            for (Map.Entry<String, String> entry : match.getParameters().entrySet()) {
-                exchange.addQueryParam(entry.getKey(), entry.getValue());
+            for (int i = 0; i < match.getParameterCount(); ++i) {
+                exchange.addQueryParam(match.getParameterName(i), match.getParameterValue(i));
             }
         }
         for (HandlerHolder handler : match.getValue().predicatedHandlers) {
@@ -96,13 +105,27 @@ public class RoutingHandler implements HttpHandler {
     }
 
     public synchronized RoutingHandler add(final String method, final String template, HttpHandler handler) {
-        return add(new HttpString(method), template, handler);
+        return add(Methods.fromString(method), template, handler);
+    }
+
+    private RoutingTable routingTable() {
+        RoutingTable routingTable = this.routingTable;
+        if (routingTable == null) {
+            synchronized (this) {
+                routingTable = this.routingTable;
+                if (routingTable == null) {
+                    this.routingTable = routingTable = new RoutingTable(matches);
+                }
+            }
+        }
+        return routingTable;
     }
 
     public synchronized RoutingHandler add(HttpString method, String template, HttpHandler handler) {
         PathTemplateMatcher<RoutingMatch> matcher = matches.get(method);
         if (matcher == null) {
             matches.put(method, matcher = new PathTemplateMatcher<>());
+            routingTable = null;
         }
         RoutingMatch res = matcher.get(template);
         if (res == null) {
@@ -134,13 +157,14 @@ public class RoutingHandler implements HttpHandler {
     }
 
     public synchronized RoutingHandler add(final String method, final String template, Predicate predicate, HttpHandler handler) {
-        return add(new HttpString(method), template, predicate, handler);
+        return add(Methods.fromString(method), template, predicate, handler);
     }
 
     public synchronized RoutingHandler add(HttpString method, String template, Predicate predicate, HttpHandler handler) {
         PathTemplateMatcher<RoutingMatch> matcher = matches.get(method);
         if (matcher == null) {
             matches.put(method, matcher = new PathTemplateMatcher<>());
+            routingTable = null;
         }
         RoutingMatch res = matcher.get(template);
         if (res == null) {
@@ -149,7 +173,7 @@ public class RoutingHandler implements HttpHandler {
         if (allMethodsMatcher.get(template) == null) {
             allMethodsMatcher.add(template, res);
         }
-        res.predicatedHandlers.add(new HandlerHolder(predicate, handler));
+        res.addPredicatedHandler(new HandlerHolder(predicate, handler));
         return this;
     }
 
@@ -175,6 +199,7 @@ public class RoutingHandler implements HttpHandler {
             PathTemplateMatcher<RoutingMatch> matcher = matches.get(method);
             if (matcher == null) {
                 matches.put(method, matcher = new PathTemplateMatcher<>());
+                routingTable = null;
             }
             matcher.addAll(entry.getValue());
             // If we use allMethodsMatcher.addAll() we can have duplicate
@@ -212,9 +237,55 @@ public class RoutingHandler implements HttpHandler {
 
     private static class RoutingMatch {
 
-        final List<HandlerHolder> predicatedHandlers = new CopyOnWriteArrayList<>();
+        volatile HandlerHolder[] predicatedHandlers = NO_HANDLERS;
         volatile HttpHandler defaultHandler;
 
+        /**
+         * Must be called while holding the lock of the routing handler
+         */
+        void addPredicatedHandler(final HandlerHolder handler) {
+            final HandlerHolder[] old = predicatedHandlers;
+            final HandlerHolder[] handlers = new HandlerHolder[old.length + 1];
+            System.arraycopy(old, 0, handlers, 0, old.length);
+            handlers[old.length] = handler;
+            predicatedHandlers = handlers;
+        }
+    }
+
+    /**
+     * The matchers of each method, in arrays that are indexed by method.
+     */
+    private static final class RoutingTable {
+
+        private final HttpString[] methods;
+        private final PathTemplateMatcher<RoutingMatch>[] matchers;
+
+        @SuppressWarnings("unchecked")
+        RoutingTable(final Map<HttpString, PathTemplateMatcher<RoutingMatch>> matches) {
+            methods = new HttpString[matches.size()];
+            matchers = new PathTemplateMatcher[matches.size()];
+            int i = 0;
+            for (Entry<HttpString, PathTemplateMatcher<RoutingMatch>> entry : matches.entrySet()) {
+                methods[i] = entry.getKey();
+                matchers[i++] = entry.getValue();
+            }
+        }
+
+        PathTemplateMatcher<RoutingMatch> get(final HttpString method) {
+            //the request parser uses the constants from Methods for the standard methods, so the identity check
+            //normally finds the method without comparing any bytes
+            for (int i = 0; i < methods.length; ++i) {
+                if (methods[i] == method) {
+                    return matchers[i];
+                }
+            }
+            for (int i = 0; i < methods.length; ++i) {
+                if (methods[i].equals(method)) {
+                    return matchers[i];
+                }
+            }
+            return null;
+        }
     }
 
     private static class HandlerHolder {
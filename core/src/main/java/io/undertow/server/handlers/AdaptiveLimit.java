@@ -0,0 +1,206 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Adjusts the maximum number of concurrent requests of a {@link RequestLimit} from the observed request latency, in
+ * the style of TCP Vegas.
+ * <p/>
+ * The time that admitted requests take to complete is averaged over a sample window. The lowest average seen is taken
+ * as the latency of an unloaded server, and the ratio between the two gives an estimate of how many requests are
+ * queued up behind the limit in the backend:
+ * <p/>
+ * queued = limit * (1 - minimum latency / latency)
+ * <p/>
+ * If few requests are queued the limit is raised, if many are queued it is lowered, with thresholds that scale with
+ * the logarithm of the limit. The limit is also lowered when the {@link RequestLimit} has to reject a request or a
+ * request times out in its queue. The limit is not raised while less than half of it is in use, as the latency then
+ * says nothing about what would happen with more requests.
+ * <p/>
+ * The minimum latency is reset periodically, so the limit adapts to backends whose unloaded latency changes.
+ *
+ * @author agent
+ * @see RequestLimit#setAdaptiveLimit(AdaptiveLimit)
+ */
+public class AdaptiveLimit {
+
+    /**
+     * The number of windows after which the minimum latency is measured again
+     */
+    private static final int MIN_LATENCY_RESET_WINDOWS = 600;
+
+    private static final AtomicLongFieldUpdater<AdaptiveLimit> windowStartUpdater = AtomicLongFieldUpdater.newUpdater(AdaptiveLimit.class, "windowStart");
+    private static final AtomicLongFieldUpdater<AdaptiveLimit> latencySumUpdater = AtomicLongFieldUpdater.newUpdater(AdaptiveLimit.class, "latencySum");
+    private static final AtomicIntegerFieldUpdater<AdaptiveLimit> samplesUpdater = AtomicIntegerFieldUpdater.newUpdater(AdaptiveLimit.class, "samples");
+    private static final AtomicIntegerFieldUpdater<AdaptiveLimit> maxInFlightUpdater = AtomicIntegerFieldUpdater.newUpdater(AdaptiveLimit.class, "maxInFlight");
+
+    private final int initialLimit;
+    private final int minLimit;
+    private final int maxLimit;
+    private final long windowNanos;
+
+    @SuppressWarnings("unused")
+    private volatile long windowStart;
+    @SuppressWarnings("unused")
+    private volatile long latencySum;
+    @SuppressWarnings("unused")
+    private volatile int samples;
+    @SuppressWarnings("unused")
+    private volatile int maxInFlight;
+    private volatile boolean dropped;
+
+    private volatile long minLatency = Long.MAX_VALUE;
+    private volatile long latency;
+    private int windows;
+
+    /**
+     * Creates a limit that is adjusted every 100 milliseconds
+     *
+     * @param initialLimit The limit to start with
+     * @param minLimit     The lowest limit
+     * @param maxLimit     The highest limit
+     */
+    public AdaptiveLimit(final int initialLimit, final int minLimit, final int maxLimit) {
+        this(initialLimit, minLimit, maxLimit, 100, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * @param initialLimit The limit to start with
+     * @param minLimit     The lowest limit
+     * @param maxLimit     The highest limit
+     * @param window       The time over which latency is averaged before the limit is adjusted
+     * @param unit         The unit of the window
+     */
+    public AdaptiveLimit(final int initialLimit, final int minLimit, final int maxLimit, final long window, final TimeUnit unit) {
+        if (minLimit < 1) {
+            throw new IllegalArgumentException("Minimum limit must be at least 1");
+        }
+        if (maxLimit < minLimit || initialLimit < minLimit || initialLimit > maxLimit) {
+            throw new IllegalArgumentException("Initial limit must be between the minimum and maximum limits");
+        }
+        this.initialLimit = initialLimit;
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.windowNanos = unit.toNanos(window);
+    }
+
+    public int getInitialLimit() {
+        return initialLimit;
+    }
+
+    public int getMinLimit() {
+        return minLimit;
+    }
+
+    public int getMaxLimit() {
+        return maxLimit;
+    }
+
+    /**
+     * @return The lowest average latency in nanoseconds, that is taken as the latency of the unloaded backend
+     */
+    public long getMinLatency() {
+        final long minLatency = this.minLatency;
+        return minLatency == Long.MAX_VALUE ? 0 : minLatency;
+    }
+
+    /**
+     * @return The average latency in nanoseconds of the last window
+     */
+    public long getLatency() {
+        return latency;
+    }
+
+    /**
+     * Records the latency of a completed request.
+     *
+     * @param now      The current time from {@link System#nanoTime()}
+     * @param latency  The time the request took in nanoseconds
+     * @param inFlight The number of requests that were running when the request completed
+     * @param limit    The current limit
+     * @return The new limit, or -1 if the limit should not change
+     */
+    int addSample(final long now, final long latency, final int inFlight, final int limit) {
+        latencySumUpdater.addAndGet(this, latency);
+        samplesUpdater.incrementAndGet(this);
+        int max;
+        do {
+            max = maxInFlight;
+        } while (inFlight > max && !maxInFlightUpdater.compareAndSet(this, max, inFlight));
+        final long start = windowStart;
+        if (start == 0) {
+            //the first window starts with the first sample
+            windowStartUpdater.compareAndSet(this, 0, now);
+            return -1;
+        }
+        if (now - start < windowNanos || !windowStartUpdater.compareAndSet(this, start, now)) {
+            return -1;
+        }
+        //only the thread that closed the window gets here
+        final int samples = samplesUpdater.getAndSet(this, 0);
+        final long sum = latencySumUpdater.getAndSet(this, 0);
+        final int windowInFlight = maxInFlightUpdater.getAndSet(this, 0);
+        final boolean dropped = this.dropped;
+        this.dropped = false;
+        if (samples == 0) {
+            return -1;
+        }
+        return update(Math.max(1, sum / samples), windowInFlight, limit, dropped);
+    }
+
+    /**
+     * Records that a request was rejected or timed out in the queue
+     */
+    void drop() {
+        dropped = true;
+    }
+
+    private synchronized int update(final long latency, final int inFlight, final int limit, final boolean dropped) {
+        this.latency = latency;
+        if (++windows >= MIN_LATENCY_RESET_WINDOWS) {
+            windows = 0;
+            minLatency = latency;
+        } else if (latency < minLatency) {
+            minLatency = latency;
+        }
+        final double log = Math.max(1, Math.log10(limit));
+        final double newLimit;
+        if (dropped) {
+            newLimit = limit * 0.9;
+        } else if (inFlight * 2 < limit) {
+            return -1;
+        } else {
+            final double queued = Math.ceil(limit * (1 - (double) minLatency / latency));
+            if (queued <= log) {
+                newLimit = limit + 6 * log;
+            } else if (queued < 3 * log) {
+                newLimit = limit + log;
+            } else if (queued > 6 * log) {
+                newLimit = limit - log;
+            } else {
+                return -1;
+            }
+        }
+        final int res = Math.max(minLimit, Math.min(maxLimit, (int) newLimit));
+        return res == limit ? -1 : res;
+    }
+}
@@ -0,0 +1,284 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Represents a limit on the rate of requests per key, that is used by {@link RateLimitingHandler}.
+ * <p/>
+ * Two algorithms are supported. A token bucket allows bursts of up to the burst size, and refills at the configured
+ * number of requests per period. A sliding window allows the configured number of requests in any period, estimated
+ * from the counts of the current and the previous fixed window.
+ * <p/>
+ * The state of each key is kept in a table that is split into shards, each with its own lock, so requests for
+ * different keys rarely contend. The state is brought up to date when a key is accessed, so no timers are needed.
+ * Each shard holds a bounded number of keys, and evicts the least recently used key when it is full. Keys that have
+ * been idle for long enough that their state has returned to the initial state are also evicted when new keys are
+ * added, as forgetting them does not change any result.
+ * <p/>
+ * The reason why this is abstracted out into a separate class is so that multiple handlers can share the same state.
+ *
+ * @author agent
+ * @see RateLimitingHandler
+ */
+public class RateLimit {
+
+    public enum Algorithm {
+        TOKEN_BUCKET,
+        SLIDING_WINDOW
+    }
+
+    private static final int SHARDS = 64;
+
+    private static final AtomicLongFieldUpdater<RateLimit> allowedRequestsUpdater = AtomicLongFieldUpdater.newUpdater(RateLimit.class, "allowedRequests");
+    private static final AtomicLongFieldUpdater<RateLimit> rejectedRequestsUpdater = AtomicLongFieldUpdater.newUpdater(RateLimit.class, "rejectedRequests");
+
+    private final Algorithm algorithm;
+    private final int requests;
+    private final int burst;
+    private final long periodNanos;
+    /**
+     * The time after which an idle key is back in its initial state
+     */
+    private final long idleNanos;
+    private final Shard[] shards;
+
+    @SuppressWarnings("unused")
+    private volatile long allowedRequests;
+    @SuppressWarnings("unused")
+    private volatile long rejectedRequests;
+
+    /**
+     * Creates a token bucket limit with a burst size that equals the number of requests per period
+     *
+     * @param requests The number of requests that are allowed per period
+     * @param period   The period
+     * @param unit     The unit of the period
+     * @param maxKeys  The maximum number of keys that are tracked
+     */
+    public RateLimit(final int requests, final long period, final TimeUnit unit, final int maxKeys) {
+        this(Algorithm.TOKEN_BUCKET, requests, requests, period, unit, maxKeys);
+    }
+
+    /**
+     * @param algorithm The algorithm
+     * @param requests  The number of requests that are allowed per period
+     * @param burst     The size of the token bucket, which is ignored by the sliding window algorithm
+     * @param period    The period
+     * @param unit      The unit of the period
+     * @param maxKeys   The maximum number of keys that are tracked
+     */
+    public RateLimit(final Algorithm algorithm, final int requests, final int burst, final long period, final TimeUnit unit, final int maxKeys) {
+        if (requests < 1) {
+            throw new IllegalArgumentException("Requests must be at least 1");
+        }
+        if (burst < 1) {
+            throw new IllegalArgumentException("Burst must be at least 1");
+        }
+        if (period <= 0) {
+            throw new IllegalArgumentException("Period must be positive");
+        }
+        if (maxKeys < 1) {
+            throw new IllegalArgumentException("Maximum keys must be at least 1");
+        }
+        this.algorithm = algorithm;
+        this.requests = requests;
+        this.burst = burst;
+        this.periodNanos = unit.toNanos(period);
+        if (algorithm == Algorithm.TOKEN_BUCKET) {
+            this.idleNanos = periodNanos * burst / requests + 1;
+        } else {
+            this.idleNanos = periodNanos * 2;
+        }
+        final int shards = Math.min(SHARDS, Integer.highestOneBit(maxKeys));
+        final int keysPerShard = (maxKeys + shards - 1) / shards;
+        this.shards = new Shard[shards];
+        for (int i = 0; i < shards; ++i) {
+            this.shards[i] = new Shard(keysPerShard);
+        }
+    }
+
+    /**
+     * Takes a permit for a key
+     *
+     * @param key The key
+     * @return <code>true</code> if the request is allowed
+     */
+    public boolean tryAcquire(final String key) {
+        return tryAcquire(key, System.nanoTime());
+    }
+
+    boolean tryAcquire(final String key, final long now) {
+        int hash = key.hashCode();
+        hash ^= (hash >>> 16);
+        final Shard shard = shards[hash & (shards.length - 1)];
+        final boolean allowed;
+        synchronized (shard) {
+            State state = shard.get(key);
+            if (state == null) {
+                shard.evictIdle(now);
+                state = new State(now);
+                if (algorithm == Algorithm.TOKEN_BUCKET) {
+                    state.tokens = burst;
+                }
+                shard.put(key, state);
+            }
+            if (algorithm == Algorithm.TOKEN_BUCKET) {
+                allowed = takeToken(state, now);
+            } else {
+                allowed = countInWindow(state, now);
+            }
+            state.lastAccess = now;
+        }
+        if (allowed) {
+            allowedRequestsUpdater.incrementAndGet(this);
+        } else {
+            rejectedRequestsUpdater.incrementAndGet(this);
+        }
+        return allowed;
+    }
+
+    private boolean takeToken(final State state, final long now) {
+        final long elapsed = now - state.time;
+        if (elapsed > 0) {
+            state.tokens = Math.min(burst, state.tokens + (double) elapsed * requests / periodNanos);
+            state.time = now;
+        }
+        if (state.tokens >= 1) {
+            state.tokens -= 1;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean countInWindow(final State state, final long now) {
+        long elapsed = now - state.time;
+        if (elapsed >= periodNanos) {
+            //move on to the window the current time is in
+            final long windows = elapsed / periodNanos;
+            state.previous = windows == 1 ? state.current : 0;
+            state.current = 0;
+            state.time += windows * periodNanos;
+            elapsed -= windows * periodNanos;
+        }
+        final double estimate = state.previous * (1 - (double) elapsed / periodNanos) + state.current;
+        if (estimate < requests) {
+            ++state.current;
+            return true;
+        }
+        return false;
+    }
+
+    public Algorithm getAlgorithm() {
+        return algorithm;
+    }
+
+    public int getRequests() {
+        return requests;
+    }
+
+    public int getBurst() {
+        return burst;
+    }
+
+    public long getPeriod(final TimeUnit unit) {
+        return unit.convert(periodNanos, TimeUnit.NANOSECONDS);
+    }
+
+    /**
+     * @return The number of keys that are currently tracked
+     */
+    public int getKeyCount() {
+        int count = 0;
+        for (Shard shard : shards) {
+            synchronized (shard) {
+                count += shard.size();
+            }
+        }
+        return count;
+    }
+
+    /**
+     * @return The number of requests that were allowed
+     */
+    public long getAllowedRequests() {
+        return allowedRequests;
+    }
+
+    /**
+     * @return The number of requests that were rejected
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests;
+    }
+
+    /**
+     * The state of a key. For a token bucket the time is when the tokens were last refilled, for a sliding window it
+     * is the start of the current window.
+     */
+    private static final class State {
+        long time;
+        long lastAccess;
+        double tokens;
+        int current;
+        int previous;
+
+        State(final long now) {
+            this.time = now;
+            this.lastAccess = now;
+        }
+    }
+
+    /**
+     * A part of the key table, which is kept in access order so the least recently used key is evicted first
+     */
+    private final class Shard extends LinkedHashMap<String, State> {
+
+        private static final long serialVersionUID = 1L;
+
+        private final int maxKeys;
+
+        Shard(final int maxKeys) {
+            super(16, 0.75f, true);
+            this.maxKeys = maxKeys;
+        }
+
+        /**
+         * Removes keys that have been idle for long enough that they are back in their initial state
+         */
+        void evictIdle(final long now) {
+            final Iterator<State> it = values().iterator();
+            while (it.hasNext()) {
+                if (now - it.next().lastAccess < idleNanos) {
+                    return;
+                }
+                it.remove();
+            }
+        }
+
+        @Override
+        protected boolean removeEldestEntry(final Map.Entry<String, State> eldest) {
+            return size() > maxKeys;
+        }
+    }
+}
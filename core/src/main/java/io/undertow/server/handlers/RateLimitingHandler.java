@@ -0,0 +1,196 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.attribute.ExchangeAttribute;
+import io.undertow.attribute.RemoteIPAttribute;
+import io.undertow.server.HandlerWrapper;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.builder.HandlerBuilder;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+
+/**
+ * A handler which limits the rate of requests per key. The key is read from an exchange attribute, such as the
+ * remote IP address, a header or the authenticated principal. Requests over the limit are rejected with a 429 by
+ * default.
+ *
+ * @author agent
+ * @see RateLimit
+ */
+public class RateLimitingHandler implements HttpHandler {
+
+    private static final int DEFAULT_MAX_KEYS = 10000;
+
+    private final HttpHandler next;
+    private final RateLimit rateLimit;
+    private final ExchangeAttribute key;
+    private volatile HttpHandler failureHandler;
+
+    /**
+     * Construct a new instance that limits the rate of requests per remote IP address.
+     *
+     * @param requests The number of requests that are allowed per period
+     * @param period   The period
+     * @param unit     The unit of the period
+     * @param next     The next handler
+     */
+    public RateLimitingHandler(final int requests, final long period, final TimeUnit unit, final HttpHandler next) {
+        this(new RateLimit(requests, period, unit, DEFAULT_MAX_KEYS), RemoteIPAttribute.INSTANCE, next);
+    }
+
+    /**
+     * Construct a new instance. This version takes a {@link RateLimit} directly which may be shared with other
+     * handlers.
+     *
+     * @param rateLimit The rate limit
+     * @param key       The attribute the rate is limited by
+     * @param next      The next handler
+     */
+    public RateLimitingHandler(final RateLimit rateLimit, final ExchangeAttribute key, final HttpHandler next) {
+        if (next == null) {
+            throw new IllegalArgumentException("next is null");
+        }
+        this.rateLimit = rateLimit;
+        this.key = key;
+        this.next = next;
+        this.failureHandler = new RetryAfterHandler(rateLimit);
+    }
+
+    @Override
+    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+        String value = key.readAttribute(exchange);
+        if (value == null) {
+            value = "";
+        }
+        if (rateLimit.tryAcquire(value)) {
+            next.handleRequest(exchange);
+        } else {
+            failureHandler.handleRequest(exchange);
+        }
+    }
+
+    public RateLimit getRateLimit() {
+        return rateLimit;
+    }
+
+    public HttpHandler getFailureHandler() {
+        return failureHandler;
+    }
+
+    /**
+     * @param failureHandler The handler that is invoked for requests over the limit
+     */
+    public RateLimitingHandler setFailureHandler(final HttpHandler failureHandler) {
+        this.failureHandler = failureHandler;
+        return this;
+    }
+
+    /**
+     * Rejects a request with a 429, and a Retry-After header with the time in which a request is allowed again.
+     */
+    private static final class RetryAfterHandler implements HttpHandler {
+
+        private final String retryAfter;
+
+        private RetryAfterHandler(final RateLimit rateLimit) {
+            final long periodMillis = rateLimit.getPeriod(TimeUnit.MILLISECONDS);
+            this.retryAfter = Long.toString(Math.max(1, (periodMillis / rateLimit.getRequests() + 999) / 1000));
+        }
+
+        @Override
+        public void handleRequest(final HttpServerExchange exchange) throws Exception {
+            exchange.setResponseCode(StatusCodes.TOO_MANY_REQUESTS);
+            exchange.getResponseHeaders().put(Headers.RETRY_AFTER, retryAfter);
+            exchange.endExchange();
+        }
+    }
+
+    public static class Builder implements HandlerBuilder {
+
+        @Override
+        public String name() {
+            return "rate-limit";
+        }
+
+        @Override
+        public Map<String, Class<?>> parameters() {
+            Map<String, Class<?>> params = new HashMap<>();
+            params.put("requests", int.class);
+            params.put("period", long.class);
+            params.put("burst", int.class);
+            params.put("key", ExchangeAttribute.class);
+            params.put("algorithm", String.class);
+            params.put("max-keys", int.class);
+            return params;
+        }
+
+        @Override
+        public Set<String> requiredParameters() {
+            return Collections.singleton("requests");
+        }
+
+        @Override
+        public String defaultParameter() {
+            return "requests";
+        }
+
+        @Override
+        public HandlerWrapper build(Map<String, Object> config) {
+            final int requests = (Integer) config.get("requests");
+            final Long period = (Long) config.get("period");
+            final Integer burst = (Integer) config.get("burst");
+            final ExchangeAttribute key = (ExchangeAttribute) config.get("key");
+            final String algorithm = (String) config.get("algorithm");
+            final Integer maxKeys = (Integer) config.get("max-keys");
+            final RateLimit rateLimit = new RateLimit(
+                    algorithm == null ? RateLimit.Algorithm.TOKEN_BUCKET : RateLimit.Algorithm.valueOf(algorithm.toUpperCase(Locale.ENGLISH).replace('-', '_')),
+                    requests,
+                    burst == null ? requests : burst,
+                    period == null ? 1000 : period,
+                    TimeUnit.MILLISECONDS,
+                    maxKeys == null ? DEFAULT_MAX_KEYS : maxKeys);
+            return new Wrapper(rateLimit, key == null ? RemoteIPAttribute.INSTANCE : key);
+        }
+
+    }
+
+    private static class Wrapper implements HandlerWrapper {
+
+        private final RateLimit rateLimit;
+        private final ExchangeAttribute key;
+
+        private Wrapper(RateLimit rateLimit, ExchangeAttribute key) {
+            this.rateLimit = rateLimit;
+            this.key = key;
+        }
+
+        @Override
+        public HttpHandler wrap(HttpHandler handler) {
+            return new RateLimitingHandler(rateLimit, key, handler);
+        }
+    }
+}
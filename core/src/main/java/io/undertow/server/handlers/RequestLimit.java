@@ -23,9 +23,11 @@ import io.undertow.server.ExchangeCompletionListener;
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.util.SameThreadExecutor;
+import org.xnio.XnioExecutor;
 
-import java.util.Queue;
-import java.util.concurrent.LinkedBlockingQueue;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.concurrent.TimeUnit;
 import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import static org.xnio.Bits.longBitMask;
@@ -37,7 +39,12 @@ import static org.xnio.Bits.longBitMask;
  * <p/>
  * When the number of active requests goes over the configured max requests then requests will be suspended and queued.
  * <p/>
- * If the queue is full requests will be rejected with a 513.
+ * If the queue is full requests will be rejected with a 513. Queued requests can also be given a timeout, after which
+ * they are rejected in the same way. Once the queue holds more requests than the LIFO threshold the most recently
+ * queued requests are resumed first, as under sustained overload the oldest requests are the most likely to have been
+ * given up on by their clients.
+ * <p/>
+ * The maximum can either be fixed, or adjusted from the observed latency by an {@link AdaptiveLimit}.
  * <p/>
  * The reason why this is abstracted out into a separate class is so that multiple handlers can share the same state. This
  * allows for fine grained control of resources.
@@ -48,8 +55,14 @@ import static org.xnio.Bits.longBitMask;
 public class RequestLimit {
     @SuppressWarnings("unused")
     private volatile long state;
+    @SuppressWarnings("unused")
+    private volatile long rejectedRequests;
+    @SuppressWarnings("unused")
+    private volatile long timedOutRequests;
 
     private static final AtomicLongFieldUpdater<RequestLimit> stateUpdater = AtomicLongFieldUpdater.newUpdater(RequestLimit.class, "state");
+    private static final AtomicLongFieldUpdater<RequestLimit> rejectedRequestsUpdater = AtomicLongFieldUpdater.newUpdater(RequestLimit.class, "rejectedRequests");
+    private static final AtomicLongFieldUpdater<RequestLimit> timedOutRequestsUpdater = AtomicLongFieldUpdater.newUpdater(RequestLimit.class, "timedOutRequests");
 
     private static final long MASK_MAX = longBitMask(32, 63);
     private static final long MASK_CURRENT = longBitMask(0, 30);
@@ -59,19 +72,23 @@ public class RequestLimit {
      */
     private volatile HttpHandler failureHandler = new ResponseCodeHandler(513);
 
-    private final Queue<SuspendedRequest> queue;
+    /**
+     * The queued requests, guarded by the queue itself
+     */
+    private final Deque<SuspendedRequest> queue = new ArrayDeque<>();
+    private final int queueSize;
+    private volatile int queuedRequests;
+
+    private volatile long queueTimeout = -1;
+    private volatile int lifoThreshold = -1;
+    private volatile AdaptiveLimit adaptiveLimit;
 
     private final ExchangeCompletionListener COMPLETION_LISTENER = new ExchangeCompletionListener() {
 
         @Override
         public void exchangeEvent(final HttpServerExchange exchange, final NextListener nextListener) {
             try {
-                final SuspendedRequest task = queue.poll();
-                if (task != null) {
-                    task.exchange.dispatch(task.next);
-                } else {
-                    decrementRequests();
-                }
+                requestComplete();
             } finally {
                 nextListener.proceed();
             }
@@ -95,11 +112,21 @@ public class RequestLimit {
         }
         state = (maximumConcurrentRequests & 0xFFFFFFFFL) << 32;
 
-        this.queue = new LinkedBlockingQueue<>(queueSize <= 0 ? Integer.MAX_VALUE : queueSize);
+        this.queueSize = queueSize <= 0 ? Integer.MAX_VALUE : queueSize;
+    }
+
+    /**
+     * Construct a new instance with a maximum that is adjusted from the observed latency.
+     *
+     * @param adaptiveLimit The adaptive limit, that also supplies the initial maximum
+     * @param queueSize     The maximum number of requests to queue
+     */
+    public RequestLimit(AdaptiveLimit adaptiveLimit, int queueSize) {
+        this(adaptiveLimit.getInitialLimit(), queueSize);
+        this.adaptiveLimit = adaptiveLimit;
     }
 
     public void handleRequest(final HttpServerExchange exchange, final HttpHandler next) throws Exception {
-        exchange.addExchangeCompleteListener(COMPLETION_LISTENER);
         long oldVal, newVal;
         do {
             oldVal = state;
@@ -109,18 +136,109 @@ public class RequestLimit {
                 exchange.dispatch(SameThreadExecutor.INSTANCE, new Runnable() {
                     @Override
                     public void run() {
-                        if (!queue.offer(new SuspendedRequest(exchange, next))) {
-                            Connectors.executeRootHandler(failureHandler, exchange);
-                        }
+                        enqueue(new SuspendedRequest(exchange, next));
                     }
                 });
                 return;
             }
             newVal = oldVal + 1;
         } while (!stateUpdater.compareAndSet(this, oldVal, newVal));
+        addCompletionListener(exchange);
         next.handleRequest(exchange);
     }
 
+    /**
+     * Adds the listener that gives back the permit of an admitted request once it is complete
+     */
+    private void addCompletionListener(final HttpServerExchange exchange) {
+        final AdaptiveLimit adaptiveLimit = this.adaptiveLimit;
+        if (adaptiveLimit == null) {
+            exchange.addExchangeCompleteListener(COMPLETION_LISTENER);
+        } else {
+            exchange.addExchangeCompleteListener(new LatencyListener(adaptiveLimit, System.nanoTime()));
+        }
+    }
+
+    private void enqueue(final SuspendedRequest request) {
+        final boolean queued;
+        synchronized (queue) {
+            queued = queue.size() < queueSize;
+            if (queued) {
+                queue.addLast(request);
+                queuedRequests = queue.size();
+                //the timeout is only scheduled once the request is queued, so it can always find it
+                final long timeout = queueTimeout;
+                if (timeout > 0) {
+                    request.timeoutKey = request.exchange.getIoThread().executeAfter(request, timeout, TimeUnit.MILLISECONDS);
+                }
+            }
+        }
+        if (!queued) {
+            rejectedRequestsUpdater.incrementAndGet(this);
+            reject(request.exchange);
+            return;
+        }
+        //a request may have completed after this one found the limit reached, in which case nothing else would resume it
+        resumeQueuedRequests();
+    }
+
+    private void reject(final HttpServerExchange exchange) {
+        final AdaptiveLimit adaptiveLimit = this.adaptiveLimit;
+        if (adaptiveLimit != null) {
+            adaptiveLimit.drop();
+        }
+        Connectors.executeRootHandler(failureHandler, exchange);
+    }
+
+    private SuspendedRequest pollQueue() {
+        final SuspendedRequest request;
+        synchronized (queue) {
+            final int lifoThreshold = this.lifoThreshold;
+            if (lifoThreshold >= 0 && queue.size() > lifoThreshold) {
+                request = queue.pollLast();
+            } else {
+                request = queue.pollFirst();
+            }
+            queuedRequests = queue.size();
+        }
+        if (request != null) {
+            request.cancelTimeout();
+        }
+        return request;
+    }
+
+    /**
+     * Resumes queued requests while there is room below the maximum
+     */
+    private void resumeQueuedRequests() {
+        while (queuedRequests != 0) {
+            final long oldVal = state;
+            final long current = oldVal & MASK_CURRENT;
+            final long max = (oldVal & MASK_MAX) >> 32L;
+            if (current >= max) {
+                return;
+            }
+            if (!stateUpdater.compareAndSet(this, oldVal, oldVal + 1)) {
+                continue;
+            }
+            final SuspendedRequest request = pollQueue();
+            if (request == null) {
+                //another thread took the request, give the permit back and check the queue again
+                stateUpdater.decrementAndGet(this);
+            } else {
+                addCompletionListener(request.exchange);
+                request.exchange.dispatch(request.next);
+            }
+        }
+    }
+
+    private void requestComplete() {
+        stateUpdater.decrementAndGet(this);
+        if (queuedRequests != 0) {
+            resumeQueuedRequests();
+        }
+    }
+
     /**
      * Get the maximum concurrent requests.
      *
@@ -140,28 +258,45 @@ public class RequestLimit {
             throw new IllegalArgumentException("Maximum concurrent requests must be at least 1");
         }
         long oldVal, newVal;
-        int current, oldMax;
+        int oldMax;
         do {
             oldVal = state;
-            current = (int) (oldVal & MASK_CURRENT);
             oldMax = (int) ((oldVal & MASK_MAX) >> 32L);
-            newVal = current | newMax & 0xFFFFFFFFL << 32L;
+            newVal = (oldVal & MASK_CURRENT) | (newMax & 0xFFFFFFFFL) << 32L;
         } while (!stateUpdater.compareAndSet(this, oldVal, newVal));
-        while (current < newMax) {
-            // more space opened up!  Process queue entries for a while
-            final SuspendedRequest request = queue.poll();
-            if (request != null) {
-                // now bump up the counter by one; this *could* put us over the max if it changed in the meantime but that's OK
-                newVal = stateUpdater.getAndIncrement(this);
-                current = (int) (newVal & MASK_CURRENT);
-                request.exchange.dispatch(request.next);
-            }
+        if (newMax > oldMax) {
+            // more space opened up!  Process queue entries
+            resumeQueuedRequests();
         }
         return oldMax;
     }
 
-    private void decrementRequests() {
-        stateUpdater.decrementAndGet(this);
+    /**
+     * @return The number of requests that are currently running
+     */
+    public int getActiveRequests() {
+        return (int) (state & MASK_CURRENT);
+    }
+
+    /**
+     * @return The number of requests that are currently queued
+     */
+    public int getQueuedRequests() {
+        return queuedRequests;
+    }
+
+    /**
+     * @return The number of requests that were rejected because the queue was full
+     */
+    public long getRejectedRequests() {
+        return rejectedRequests;
+    }
+
+    /**
+     * @return The number of requests that were rejected because they were queued for longer than the queue timeout
+     */
+    public long getTimedOutRequests() {
+        return timedOutRequests;
     }
 
     public HttpHandler getFailureHandler() {
@@ -172,13 +307,106 @@ public class RequestLimit {
         this.failureHandler = failureHandler;
     }
 
-    private static final class SuspendedRequest {
+    public long getQueueTimeout() {
+        return queueTimeout;
+    }
+
+    /**
+     * Sets the maximum time a request may be queued for, after which it is rejected using the failure handler.
+     *
+     * @param queueTimeout The timeout in milliseconds, or -1 for no timeout
+     */
+    public RequestLimit setQueueTimeout(long queueTimeout) {
+        this.queueTimeout = queueTimeout;
+        return this;
+    }
+
+    public int getLifoThreshold() {
+        return lifoThreshold;
+    }
+
+    /**
+     * Sets the number of queued requests above which the most recently queued request is resumed first.
+     *
+     * @param lifoThreshold The threshold, 0 to always resume the most recent request, or -1 to always resume requests
+     *                      in the order they were queued
+     */
+    public RequestLimit setLifoThreshold(int lifoThreshold) {
+        this.lifoThreshold = lifoThreshold;
+        return this;
+    }
+
+    public AdaptiveLimit getAdaptiveLimit() {
+        return adaptiveLimit;
+    }
+
+    /**
+     * Sets the adaptive limit that adjusts the maximum concurrent requests. Requests that are already running are not
+     * sampled.
+     *
+     * @param adaptiveLimit The adaptive limit, or <code>null</code> to keep the maximum fixed at its current value
+     */
+    public RequestLimit setAdaptiveLimit(AdaptiveLimit adaptiveLimit) {
+        this.adaptiveLimit = adaptiveLimit;
+        return this;
+    }
+
+    private final class SuspendedRequest implements Runnable {
         final HttpServerExchange exchange;
         final HttpHandler next;
+        volatile XnioExecutor.Key timeoutKey;
 
         private SuspendedRequest(HttpServerExchange exchange, HttpHandler next) {
             this.exchange = exchange;
             this.next = next;
         }
+
+        void cancelTimeout() {
+            final XnioExecutor.Key timeoutKey = this.timeoutKey;
+            if (timeoutKey != null) {
+                timeoutKey.remove();
+            }
+        }
+
+        /**
+         * Invoked when the request has been queued for longer than the queue timeout
+         */
+        @Override
+        public void run() {
+            final boolean removed;
+            synchronized (queue) {
+                removed = queue.remove(this);
+                queuedRequests = queue.size();
+            }
+            if (removed) {
+                timedOutRequestsUpdater.incrementAndGet(RequestLimit.this);
+                reject(exchange);
+            }
+        }
+    }
+
+    private final class LatencyListener implements ExchangeCompletionListener {
+
+        private final AdaptiveLimit adaptiveLimit;
+        private final long start;
+
+        private LatencyListener(final AdaptiveLimit adaptiveLimit, final long start) {
+            this.adaptiveLimit = adaptiveLimit;
+            this.start = start;
+        }
+
+        @Override
+        public void exchangeEvent(final HttpServerExchange exchange, final NextListener nextListener) {
+            try {
+                final long now = System.nanoTime();
+                final int limit = adaptiveLimit.addSample(now, now - start, getActiveRequests(), getMaximumConcurrentRequests());
+                if (limit > 0) {
+                    setMaximumConcurrentRequests(limit);
+                }
+                requestComplete();
+            } finally {
+                nextListener.proceed();
+            }
+        }
     }
 }
@@ -20,10 +20,14 @@ package io.undertow.server.handlers;
 
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderBlock;
 import io.undertow.util.HttpString;
 
 /**
  * Set a fixed response header.
+ * <p/>
+ * If the handler is created with a {@link HeaderBlock} all headers of the block are set, and the pre-encoded
+ * block is written out in place of the individual headers.
  *
  * @author Stuart Douglas
  */
@@ -31,23 +35,37 @@ public class SetHeaderHandler implements HttpHandler {
 
     private final HttpString header;
     private final String value;
+    private final HeaderBlock headerBlock;
     private final HttpHandler next;
 
     public SetHeaderHandler(final String header, final String value) {
         this.next = ResponseCodeHandler.HANDLE_404;
         this.value = value;
         this.header = new HttpString(header);
+        this.headerBlock = null;
     }
 
     public SetHeaderHandler(final HttpHandler next, final String header, final String value) {
         this.next = next;
         this.value = value;
         this.header = new HttpString(header);
+        this.headerBlock = null;
+    }
+
+    public SetHeaderHandler(final HttpHandler next, final HeaderBlock headerBlock) {
+        this.next = next;
+        this.value = null;
+        this.header = null;
+        this.headerBlock = headerBlock;
     }
 
     @Override
     public void handleRequest(final HttpServerExchange exchange) throws Exception {
-        exchange.getResponseHeaders().put(header, value);
+        if (headerBlock != null) {
+            exchange.getResponseHeaders().putAll(headerBlock);
+        } else {
+            exchange.getResponseHeaders().put(header, value);
+        }
         next.handleRequest(exchange);
     }
 }
@@ -0,0 +1,220 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers.cache;
+
+import java.util.Collection;
+
+/**
+ * The directives of a <code>Cache-Control</code> header that are relevant to a shared cache.
+ * <p/>
+ * Durations are in seconds, and are <code>-1</code> if the directive is not present. An invalid
+ * <code>max-age</code> or <code>s-maxage</code> value is treated as <code>0</code>, so the response is
+ * immediately stale.
+ *
+ * @author agent
+ */
+public final class CacheControl {
+
+    private static final CacheControl EMPTY = new CacheControl(false, false, false, false, -1, -1, -1);
+
+    private final boolean noStore;
+    private final boolean noCache;
+    private final boolean privateResponse;
+    private final boolean publicResponse;
+    private final long maxAge;
+    private final long sharedMaxAge;
+    private final long staleWhileRevalidate;
+
+    private CacheControl(final boolean noStore, final boolean noCache, final boolean privateResponse, final boolean publicResponse, final long maxAge, final long sharedMaxAge, final long staleWhileRevalidate) {
+        this.noStore = noStore;
+        this.noCache = noCache;
+        this.privateResponse = privateResponse;
+        this.publicResponse = publicResponse;
+        this.maxAge = maxAge;
+        this.sharedMaxAge = sharedMaxAge;
+        this.staleWhileRevalidate = staleWhileRevalidate;
+    }
+
+    /**
+     * Parses all the values of a <code>Cache-Control</code> header
+     *
+     * @param values The header values, may be <code>null</code>
+     * @return The parsed directives
+     */
+    public static CacheControl parse(final Collection<String> values) {
+        if (values == null || values.isEmpty()) {
+            return EMPTY;
+        }
+        final Parser parser = new Parser();
+        for (String value : values) {
+            parser.parse(value);
+        }
+        return parser.create();
+    }
+
+    /**
+     * Parses a single <code>Cache-Control</code> header value
+     *
+     * @param value The header value, may be <code>null</code>
+     * @return The parsed directives
+     */
+    public static CacheControl parse(final String value) {
+        if (value == null) {
+            return EMPTY;
+        }
+        final Parser parser = new Parser();
+        parser.parse(value);
+        return parser.create();
+    }
+
+    public boolean isNoStore() {
+        return noStore;
+    }
+
+    public boolean isNoCache() {
+        return noCache;
+    }
+
+    public boolean isPrivate() {
+        return privateResponse;
+    }
+
+    public boolean isPublic() {
+        return publicResponse;
+    }
+
+    public long getMaxAge() {
+        return maxAge;
+    }
+
+    public long getSharedMaxAge() {
+        return sharedMaxAge;
+    }
+
+    public long getStaleWhileRevalidate() {
+        return staleWhileRevalidate;
+    }
+
+    /**
+     * @return The number of seconds a shared cache may consider the response fresh, <code>s-maxage</code> takes
+     *         precedence over <code>max-age</code>. Returns <code>-1</code> if neither is present.
+     */
+    public long getSharedFreshnessLifetime() {
+        return sharedMaxAge != -1 ? sharedMaxAge : maxAge;
+    }
+
+    /**
+     * @return <code>true</code> if a shared cache may store the response without revalidating it on every use
+     */
+    public boolean isSharedCacheable() {
+        return !noStore && !noCache && !privateResponse && getSharedFreshnessLifetime() != -1;
+    }
+
+    private static final class Parser {
+        boolean noStore;
+        boolean noCache;
+        boolean privateResponse;
+        boolean publicResponse;
+        long maxAge = -1;
+        long sharedMaxAge = -1;
+        long staleWhileRevalidate = -1;
+
+        void parse(final String value) {
+            int pos = 0;
+            final int length = value.length();
+            while (pos < length) {
+                int end = pos;
+                boolean quoted = false;
+                while (end < length) {
+                    final char c = value.charAt(end);
+                    if (c == '"') {
+                        quoted = !quoted;
+                    } else if (c == ',' && !quoted) {
+                        break;
+                    }
+                    ++end;
+                }
+                directive(value, pos, end);
+                pos = end + 1;
+            }
+        }
+
+        private void directive(final String value, final int start, final int end) {
+            final int equals = value.indexOf('=', start);
+            final String name;
+            String argument = null;
+            if (equals == -1 || equals >= end) {
+                name = value.substring(start, end).trim();
+            } else {
+                name = value.substring(start, equals).trim();
+                argument = value.substring(equals + 1, end).trim();
+                if (argument.length() > 1 && argument.charAt(0) == '"' && argument.charAt(argument.length() - 1) == '"') {
+                    argument = argument.substring(1, argument.length() - 1);
+                }
+            }
+            if (name.equalsIgnoreCase("no-store")) {
+                noStore = true;
+            } else if (name.equalsIgnoreCase("no-cache")) {
+                noCache = true;
+            } else if (name.equalsIgnoreCase("private")) {
+                privateResponse = true;
+            } else if (name.equalsIgnoreCase("public")) {
+                publicResponse = true;
+            } else if (name.equalsIgnoreCase("max-age")) {
+                maxAge = min(maxAge, seconds(argument, 0));
+            } else if (name.equalsIgnoreCase("s-maxage")) {
+                sharedMaxAge = min(sharedMaxAge, seconds(argument, 0));
+            } else if (name.equalsIgnoreCase("stale-while-revalidate")) {
+                staleWhileRevalidate = min(staleWhileRevalidate, seconds(argument, -1));
+            }
+        }
+
+        /**
+         * Duplicated directives use the most conservative value
+         */
+        private static long min(final long current, final long value) {
+            if (current == -1 || value == -1) {
+                return current == -1 ? value : current;
+            }
+            return Math.min(current, value);
+        }
+
+        private static long seconds(final String argument, final long invalid) {
+            if (argument == null || argument.isEmpty()) {
+                return invalid;
+            }
+            long result = 0;
+            for (int i = 0; i < argument.length(); ++i) {
+                final char c = argument.charAt(i);
+                if (c < '0' || c > '9') {
+                    return invalid;
+                }
+                result = result * 10 + (c - '0');
+                if (result > Integer.MAX_VALUE) {
+                    //delta-seconds that overflow are treated as the largest supported value
+                    return Integer.MAX_VALUE;
+                }
+            }
+            return result;
+        }
+
+        CacheControl create() {
+            return new CacheControl(noStore, noCache, privateResponse, publicResponse, maxAge, sharedMaxAge, staleWhileRevalidate);
+        }
+    }
+}
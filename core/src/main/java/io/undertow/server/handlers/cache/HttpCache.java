@@ -0,0 +1,445 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers.cache;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.HeaderValues;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+
+/**
+ * A shared HTTP cache, that stores complete responses for use by a {@link HttpCacheHandler}.
+ * <p/>
+ * Responses are stored together with their status code and all their end to end headers, so a cached copy is
+ * served exactly as the origin sent it. Responses that carry a <code>Vary</code> header are stored per variant, the
+ * variant key is made up of the values of the request headers that the response varies on. The variant keys that
+ * were stored for a request URI are tracked, so all variants can be removed together. Entries are evicted
+ * in least recently used order once the maximum number of entries is reached, and are considered fresh for the
+ * <code>s-maxage</code> or <code>max-age</code> of the response.
+ * <p/>
+ * The cache also keeps track of the requests that are currently fetching a response from the origin, so
+ * concurrent misses for the same key can wait for a single request instead of all going to the origin.
+ *
+ * @author agent
+ */
+public class HttpCache {
+
+    static final HttpString[] NO_VARY = new HttpString[0];
+
+    private static final AtomicLongFieldUpdater<HttpCache> hitsUpdater = AtomicLongFieldUpdater.newUpdater(HttpCache.class, "hits");
+    private static final AtomicLongFieldUpdater<HttpCache> staleHitsUpdater = AtomicLongFieldUpdater.newUpdater(HttpCache.class, "staleHits");
+    private static final AtomicLongFieldUpdater<HttpCache> missesUpdater = AtomicLongFieldUpdater.newUpdater(HttpCache.class, "misses");
+    private static final AtomicLongFieldUpdater<HttpCache> coalescedRequestsUpdater = AtomicLongFieldUpdater.newUpdater(HttpCache.class, "coalescedRequests");
+
+    private final LRUCache<String, Variants> variations;
+    private final LRUCache<String, CachedResponse> responses;
+    private final ConcurrentMap<String, Fetch> fetches = new ConcurrentHashMap<>();
+    private final int maxEntries;
+    private final int maxEntrySize;
+
+    @SuppressWarnings("unused")
+    private volatile long hits;
+    @SuppressWarnings("unused")
+    private volatile long staleHits;
+    @SuppressWarnings("unused")
+    private volatile long misses;
+    @SuppressWarnings("unused")
+    private volatile long coalescedRequests;
+
+    /**
+     * @param maxEntries   The maximum number of cached responses
+     * @param maxEntrySize The maximum size of a response body that will be cached
+     */
+    public HttpCache(final int maxEntries, final int maxEntrySize) {
+        this.variations = new LRUCache<>(maxEntries, -1);
+        this.responses = new LRUCache<>(maxEntries, -1);
+        this.maxEntries = maxEntries;
+        this.maxEntrySize = maxEntrySize;
+    }
+
+    public int getMaxEntrySize() {
+        return maxEntrySize;
+    }
+
+    /**
+     * Removes the cached response for the request URI of the exchange, along with all its other variants
+     *
+     * @param exchange The exchange whose response should be removed
+     */
+    public synchronized void invalidate(final HttpServerExchange exchange) {
+        final Variants variants = variations.remove(primaryKey(exchange));
+        if (variants != null) {
+            removeVariants(variants);
+        }
+    }
+
+    /**
+     * Removes every stored variant. Must be called while holding the lock.
+     */
+    private void removeVariants(final Variants variants) {
+        for (String variantKey : variants.keys) {
+            responses.remove(variantKey);
+        }
+    }
+
+    /**
+     * @return The number of requests that were served a fresh cached response
+     */
+    public long getHits() {
+        return hits;
+    }
+
+    /**
+     * @return The number of requests that were served a stale response while it was being revalidated
+     */
+    public long getStaleHits() {
+        return staleHits;
+    }
+
+    /**
+     * @return The number of requests that went to the origin
+     */
+    public long getMisses() {
+        return misses;
+    }
+
+    /**
+     * @return The number of requests that waited for another request to fetch the response from the origin
+     */
+    public long getCoalescedRequests() {
+        return coalescedRequests;
+    }
+
+    void hit(final boolean stale) {
+        if (stale) {
+            staleHitsUpdater.incrementAndGet(this);
+        } else {
+            hitsUpdater.incrementAndGet(this);
+        }
+    }
+
+    void miss() {
+        missesUpdater.incrementAndGet(this);
+    }
+
+    void coalesced() {
+        coalescedRequestsUpdater.incrementAndGet(this);
+    }
+
+    /**
+     * @return The primary cache key of the request, made up of the host and the request URI
+     */
+    static String primaryKey(final HttpServerExchange exchange) {
+        final String host = exchange.getRequestHeaders().getFirst(Headers.HOST);
+        final String query = exchange.getQueryString();
+        final StringBuilder builder = new StringBuilder();
+        if (host != null) {
+            builder.append(host);
+        }
+        builder.append(' ').append(exchange.getRequestURI());
+        if (query != null && !query.isEmpty()) {
+            builder.append('?').append(query);
+        }
+        return builder.toString();
+    }
+
+    /**
+     * @return The key of the variant of the response that matches the given request headers
+     */
+    static String variantKey(final String primaryKey, final HttpString[] vary, final HeaderMap requestHeaders) {
+        if (vary.length == 0) {
+            return primaryKey;
+        }
+        final StringBuilder builder = new StringBuilder(primaryKey);
+        for (HttpString name : vary) {
+            builder.append('\n').append(name).append(':');
+            final HeaderValues values = requestHeaders.get(name);
+            if (values != null) {
+                for (int i = 0; i < values.size(); ++i) {
+                    if (i > 0) {
+                        builder.append(',');
+                    }
+                    builder.append(values.get(i).trim());
+                }
+            }
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Parses the <code>Vary</code> header of a response
+     *
+     * @return The header names, or <code>null</code> if the response varies on <code>*</code> and cannot be cached
+     */
+    static HttpString[] parseVary(final HeaderValues values) {
+        if (values == null || values.isEmpty()) {
+            return NO_VARY;
+        }
+        final List<HttpString> names = new ArrayList<>();
+        for (String value : values) {
+            for (String name : value.split(",")) {
+                name = name.trim();
+                if (name.equals("*")) {
+                    return null;
+                }
+                if (!name.isEmpty()) {
+                    final HttpString header = HttpString.tryFromString(name);
+                    if (!names.contains(header)) {
+                        names.add(header);
+                    }
+                }
+            }
+        }
+        //sort the names, so differently ordered vary headers result in the same key
+        Collections.sort(names);
+        return names.toArray(new HttpString[names.size()]);
+    }
+
+    /**
+     * @return The vary header names that were last stored for the primary key, or <code>null</code> if there is no
+     *         cached response for the key
+     */
+    HttpString[] getVary(final String primaryKey) {
+        final Variants variants = variations.get(primaryKey);
+        return variants == null ? null : variants.vary;
+    }
+
+    CachedResponse get(final String variantKey) {
+        return responses.get(variantKey);
+    }
+
+    /**
+     * Stores a response. This is synchronized with {@link #invalidate(HttpServerExchange)}, so a response that is
+     * stored while its request URI is invalidated is either removed with the other variants or stored afterwards.
+     */
+    synchronized void store(final String primaryKey, final HttpString[] vary, final String variantKey, final CachedResponse response) {
+        Variants variants = variations.get(primaryKey);
+        if (variants == null || !Arrays.equals(variants.vary, vary)) {
+            //the variants of the old vary headers can no longer be looked up
+            final Variants old = variations.remove(primaryKey);
+            if (old != null) {
+                removeVariants(old);
+            }
+            variants = new Variants(vary);
+            variations.add(primaryKey, variants);
+        }
+        if (variants.keys.add(variantKey) && variants.keys.size() > maxEntries) {
+            //forget the variants that have been evicted, there can never be more than the maximum number of entries
+            final Iterator<String> it = variants.keys.iterator();
+            while (it.hasNext()) {
+                if (responses.get(it.next()) == null) {
+                    it.remove();
+                }
+            }
+        }
+        //the LRU cache does not replace existing values
+        responses.remove(variantKey);
+        responses.add(variantKey, response);
+    }
+
+    /**
+     * Registers a fetch of the given key from the origin
+     *
+     * @return <code>null</code> if the fetch was registered, otherwise the fetch that is already in progress
+     */
+    Fetch beginFetch(final Fetch fetch) {
+        return fetches.putIfAbsent(fetch.key, fetch);
+    }
+
+    void endFetch(final Fetch fetch) {
+        fetches.remove(fetch.key, fetch);
+    }
+
+    /**
+     * The vary header names that were last stored for a request URI, and the keys of the variants that were stored
+     * with them. The variants may have been evicted from the cache in the meantime. Only accessed while holding the lock
+     * of the cache.
+     */
+    private static final class Variants {
+
+        private final HttpString[] vary;
+        private final Set<String> keys = new HashSet<>();
+
+        private Variants(final HttpString[] vary) {
+            this.vary = vary;
+        }
+    }
+
+    /**
+     * A complete cached response.
+     */
+    static final class CachedResponse {
+
+        private final int responseCode;
+        private final HttpString[] headerNames;
+        private final String[] headerValues;
+        private final byte[] body;
+        private final long created;
+        private final long freshUntil;
+        private final long staleUntil;
+
+        CachedResponse(final int responseCode, final HeaderMap responseHeaders, final byte[] body, final long created, final CacheControl cacheControl) {
+            this.responseCode = responseCode;
+            this.body = body;
+            this.created = created;
+            this.freshUntil = created + cacheControl.getSharedFreshnessLifetime() * 1000;
+            final long staleWhileRevalidate = cacheControl.getStaleWhileRevalidate();
+            this.staleUntil = staleWhileRevalidate == -1 ? freshUntil : freshUntil + staleWhileRevalidate * 1000;
+            int count = 0;
+            for (HeaderValues values : responseHeaders) {
+                if (isEndToEnd(values.getHeaderName())) {
+                    count += values.size();
+                }
+            }
+            headerNames = new HttpString[count];
+            headerValues = new String[count];
+            int pos = 0;
+            for (HeaderValues values : responseHeaders) {
+                if (isEndToEnd(values.getHeaderName())) {
+                    for (String value : values) {
+                        headerNames[pos] = values.getHeaderName();
+                        headerValues[pos++] = value;
+                    }
+                }
+            }
+        }
+
+        private static boolean isEndToEnd(final HttpString name) {
+            return !name.equals(Headers.CONNECTION) &&
+                    !name.equals(Headers.KEEP_ALIVE) &&
+                    !name.equals(Headers.TRANSFER_ENCODING) &&
+                    !name.equals(Headers.CONTENT_LENGTH) &&
+                    !name.equals(Headers.AGE);
+        }
+
+        int getResponseCode() {
+            return responseCode;
+        }
+
+        byte[] getBody() {
+            return body;
+        }
+
+        boolean isFresh(final long now) {
+            return now < freshUntil;
+        }
+
+        boolean isStaleWhileRevalidate(final long now) {
+            return now < staleUntil;
+        }
+
+        /**
+         * Copies the stored status and headers onto the response
+         */
+        void apply(final HttpServerExchange exchange, final long now) {
+            exchange.setResponseCode(responseCode);
+            final HeaderMap responseHeaders = exchange.getResponseHeaders();
+            for (int i = 0; i < headerNames.length; ++i) {
+                responseHeaders.add(headerNames[i], headerValues[i]);
+            }
+            responseHeaders.put(Headers.AGE, Long.toString(Math.max(0, now - created) / 1000));
+            responseHeaders.put(Headers.CONTENT_LENGTH, Integer.toString(body.length));
+        }
+    }
+
+    /**
+     * A request that is fetching a response from the origin, and the requests that are waiting for it.
+     */
+    static final class Fetch {
+
+        private final String key;
+        private List<HttpCacheHandler.Waiter> waiters;
+        private boolean complete;
+        private volatile HttpString[] vary;
+        private volatile String variantKey;
+        private volatile CachedResponse response;
+
+        Fetch(final String key) {
+            this.key = key;
+        }
+
+        /**
+         * @return The response that was stored by the fetch, or <code>null</code> if the response was not cacheable
+         */
+        CachedResponse getResponse() {
+            return response;
+        }
+
+        HttpString[] getVary() {
+            return vary;
+        }
+
+        String getVariantKey() {
+            return variantKey;
+        }
+
+        void stored(final HttpString[] vary, final String variantKey, final CachedResponse response) {
+            this.vary = vary;
+            this.variantKey = variantKey;
+            this.response = response;
+        }
+
+        /**
+         * @return <code>false</code> if the fetch has already completed
+         */
+        synchronized boolean addWaiter(final HttpCacheHandler.Waiter waiter) {
+            if (complete) {
+                return false;
+            }
+            if (waiters == null) {
+                waiters = new ArrayList<>();
+            }
+            waiters.add(waiter);
+            return true;
+        }
+
+        /**
+         * @return <code>true</code> if the waiter was removed before the fetch completed
+         */
+        synchronized boolean removeWaiter(final HttpCacheHandler.Waiter waiter) {
+            return !complete && waiters != null && waiters.remove(waiter);
+        }
+
+        /**
+         * Marks the fetch as complete
+         *
+         * @return The waiters that need to be resumed
+         */
+        synchronized List<HttpCacheHandler.Waiter> complete() {
+            complete = true;
+            final List<HttpCacheHandler.Waiter> result = waiters;
+            waiters = null;
+            if (result == null) {
+                return Collections.emptyList();
+            }
+            return result;
+        }
+    }
+}
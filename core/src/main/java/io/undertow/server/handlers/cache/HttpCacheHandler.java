@@ -0,0 +1,301 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers.cache;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.Handlers;
+import io.undertow.server.ConduitWrapper;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.server.handlers.encoding.AllowedContentEncodings;
+import io.undertow.util.ConduitFactory;
+import io.undertow.util.DateUtils;
+import io.undertow.util.ETagUtils;
+import io.undertow.util.HeaderMap;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.SameThreadExecutor;
+import org.xnio.XnioExecutor;
+import org.xnio.conduits.StreamSinkConduit;
+
+import static io.undertow.util.Methods.GET;
+import static io.undertow.util.Methods.HEAD;
+
+/**
+ * Handler that transparently caches complete responses in a shared {@link HttpCache}.
+ * <p/>
+ * Unlike the {@link CacheHandler} the handlers that generate the response do not need to be aware of the cache, the
+ * decision to cache a response is based on its <code>Cache-Control</code> header. A <code>GET</code> response is
+ * stored if it has a <code>s-maxage</code> or <code>max-age</code> and is not <code>no-store</code>,
+ * <code>no-cache</code> or <code>private</code>. Responses that set cookies or vary on <code>*</code> are never
+ * stored, and responses to authorized requests are only stored if they are explicitly <code>public</code> or have a
+ * <code>s-maxage</code>.
+ * <p/>
+ * When a response is not in the cache, or is no longer fresh, only a single request for the same variant is sent
+ * to the origin. Concurrent requests for the variant are suspended until that request completes, and are then served
+ * the fetched response. If the fetch did not result in a cacheable response they are sent to the origin. Requests
+ * for a response that has expired within its <code>stale-while-revalidate</code> window are served the stale
+ * response while a single request revalidates it.
+ * <p/>
+ * This should be installed early in the handler chain, before any content encoding handlers.
+ *
+ * @author agent
+ */
+public class HttpCacheHandler implements HttpHandler {
+
+    private final HttpCache cache;
+    private volatile HttpHandler next = ResponseCodeHandler.HANDLE_404;
+    private volatile long coalescingTimeout;
+
+    public HttpCacheHandler(final HttpCache cache, final HttpHandler next) {
+        this.cache = cache;
+        this.next = next;
+    }
+
+    public HttpCacheHandler(final HttpCache cache) {
+        this.cache = cache;
+    }
+
+    @Override
+    public void handleRequest(final HttpServerExchange exchange) throws Exception {
+        final HttpString method = exchange.getRequestMethod();
+        final boolean head = method.equals(HEAD);
+        if (!head && !method.equals(GET)) {
+            next.handleRequest(exchange);
+            return;
+        }
+        final String primaryKey = HttpCache.primaryKey(exchange);
+        final HttpString[] vary = cache.getVary(primaryKey);
+        final String key = vary == null ? primaryKey : HttpCache.variantKey(primaryKey, vary, exchange.getRequestHeaders());
+        final HttpCache.CachedResponse response = vary == null ? null : cache.get(key);
+        final long now = System.currentTimeMillis();
+        if (response != null && response.isFresh(now)) {
+            cache.hit(false);
+            serve(exchange, response, now);
+            return;
+        }
+        if (head) {
+            //a response to a HEAD request has no body, so it cannot be cached
+            cache.miss();
+            next.handleRequest(exchange);
+            return;
+        }
+        final HttpCache.Fetch fetch = new HttpCache.Fetch(key);
+        final HttpCache.Fetch existing = cache.beginFetch(fetch);
+        if (existing == null) {
+            cache.miss();
+            fetch(exchange, primaryKey, fetch);
+        } else if (response != null && response.isStaleWhileRevalidate(now)) {
+            cache.hit(true);
+            serve(exchange, response, now);
+        } else {
+            cache.coalesced();
+            exchange.dispatch(SameThreadExecutor.INSTANCE, new Runnable() {
+                @Override
+                public void run() {
+                    new Waiter(exchange, primaryKey, existing).suspend();
+                }
+            });
+        }
+    }
+
+    /**
+     * Sends the request to the origin, and stores the response if it is cacheable
+     */
+    private void fetch(final HttpServerExchange exchange, final String primaryKey, final HttpCache.Fetch fetch) throws Exception {
+        exchange.addExchangeCompleteListener(new ExchangeCompletionListener() {
+            @Override
+            public void exchangeEvent(final HttpServerExchange exchange, final NextListener nextListener) {
+                try {
+                    cache.endFetch(fetch);
+                    for (Waiter waiter : fetch.complete()) {
+                        waiter.resume();
+                    }
+                } finally {
+                    nextListener.proceed();
+                }
+            }
+        });
+        exchange.addResponseWrapper(new ConduitWrapper<StreamSinkConduit>() {
+            @Override
+            public StreamSinkConduit wrap(final ConduitFactory<StreamSinkConduit> factory, final HttpServerExchange exchange) {
+                if (!isCacheableResponseCode(exchange.getResponseCode())) {
+                    return factory.create();
+                }
+                final HeaderMap responseHeaders = exchange.getResponseHeaders();
+                final CacheControl cacheControl = CacheControl.parse(responseHeaders.get(Headers.CACHE_CONTROL));
+                if (!cacheControl.isSharedCacheable() || responseHeaders.contains(Headers.SET_COOKIE)) {
+                    return factory.create();
+                }
+                if (exchange.getRequestHeaders().contains(Headers.AUTHORIZATION) && !cacheControl.isPublic() && cacheControl.getSharedMaxAge() == -1) {
+                    return factory.create();
+                }
+                final HttpString[] vary = HttpCache.parseVary(responseHeaders.get(Headers.VARY));
+                if (vary == null) {
+                    return factory.create();
+                }
+                final AllowedContentEncodings contentEncodings = exchange.getAttachment(AllowedContentEncodings.ATTACHMENT_KEY);
+                if (contentEncodings != null && !contentEncodings.isIdentity()) {
+                    //we can't cache content encoded responses, as we have no idea how big they will end up being
+                    return factory.create();
+                }
+                final String lengthString = responseHeaders.getFirst(Headers.CONTENT_LENGTH);
+                final long length = lengthString == null ? -1 : Long.parseLong(lengthString);
+                if (length > cache.getMaxEntrySize()) {
+                    return factory.create();
+                }
+                return new HttpCachingStreamSinkConduit(factory.create(), exchange, cache, fetch, primaryKey, vary, cacheControl, length);
+            }
+        });
+        next.handleRequest(exchange);
+    }
+
+    private static boolean isCacheableResponseCode(final int code) {
+        switch (code) {
+            case 200:
+            case 203:
+            case 204:
+            case 300:
+            case 301:
+            case 404:
+            case 405:
+            case 410:
+            case 414:
+            case 501:
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private static void serve(final HttpServerExchange exchange, final HttpCache.CachedResponse response, final long now) {
+        response.apply(exchange, now);
+        if (response.getResponseCode() == 200) {
+            final String lastModified = exchange.getResponseHeaders().getFirst(Headers.LAST_MODIFIED);
+            if (!ETagUtils.handleIfNoneMatch(exchange, ETagUtils.getETag(exchange), true) ||
+                    (lastModified != null && !DateUtils.handleIfModifiedSince(exchange, DateUtils.parseDate(lastModified)))) {
+                exchange.setResponseCode(304);
+                exchange.getResponseHeaders().remove(Headers.CONTENT_LENGTH);
+                exchange.endExchange();
+                return;
+            }
+        }
+        if (exchange.getRequestMethod().equals(HEAD) || response.getBody().length == 0) {
+            exchange.endExchange();
+            return;
+        }
+        exchange.getResponseSender().send(ByteBuffer.wrap(response.getBody()));
+    }
+
+    public HttpHandler getNext() {
+        return next;
+    }
+
+    public HttpCacheHandler setNext(final HttpHandler next) {
+        Handlers.handlerNotNull(next);
+        this.next = next;
+        return this;
+    }
+
+    public HttpCache getCache() {
+        return cache;
+    }
+
+    public long getCoalescingTimeout() {
+        return coalescingTimeout;
+    }
+
+    /**
+     * Sets the maximum amount of time that a request waits for another request to fetch the response from the
+     * origin, after which it is sent to the origin itself. A value of <code>0</code> means that requests wait until
+     * the fetch completes.
+     *
+     * @param coalescingTimeout The timeout in milliseconds
+     */
+    public HttpCacheHandler setCoalescingTimeout(final long coalescingTimeout) {
+        this.coalescingTimeout = coalescingTimeout;
+        return this;
+    }
+
+    /**
+     * A request that is suspended until another request has fetched its response
+     */
+    final class Waiter implements HttpHandler {
+        private final HttpServerExchange exchange;
+        private final String primaryKey;
+        private final HttpCache.Fetch fetch;
+        private volatile XnioExecutor.Key timeoutKey;
+
+        private Waiter(final HttpServerExchange exchange, final String primaryKey, final HttpCache.Fetch fetch) {
+            this.exchange = exchange;
+            this.primaryKey = primaryKey;
+            this.fetch = fetch;
+        }
+
+        void suspend() {
+            final long timeout = coalescingTimeout;
+            if (timeout > 0) {
+                timeoutKey = exchange.getIoThread().executeAfter(new Runnable() {
+                    @Override
+                    public void run() {
+                        timeout();
+                    }
+                }, timeout, TimeUnit.MILLISECONDS);
+            }
+            if (!fetch.addWaiter(this)) {
+                //the fetch completed in the meantime
+                resume();
+            }
+        }
+
+        void resume() {
+            final XnioExecutor.Key key = timeoutKey;
+            if (key != null) {
+                key.remove();
+            }
+            final HttpCache.CachedResponse response = fetch.getResponse();
+            if (response != null && fetch.getVariantKey().equals(HttpCache.variantKey(primaryKey, fetch.getVary(), exchange.getRequestHeaders()))) {
+                exchange.dispatch(this);
+            } else {
+                //the response was not cacheable, or is a different variant
+                exchange.dispatch(next);
+            }
+        }
+
+        /**
+         * Serves the fetched response
+         */
+        @Override
+        public void handleRequest(final HttpServerExchange exchange) throws Exception {
+            serve(exchange, fetch.getResponse(), System.currentTimeMillis());
+        }
+
+        /**
+         * Called when the request has waited for longer than the coalescing timeout
+         */
+        private void timeout() {
+            if (fetch.removeWaiter(this)) {
+                exchange.dispatch(next);
+            }
+        }
+    }
+}
@@ -0,0 +1,147 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers.cache;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HttpString;
+import org.xnio.IoUtils;
+import org.xnio.channels.StreamSourceChannel;
+import org.xnio.conduits.AbstractStreamSinkConduit;
+import org.xnio.conduits.ConduitWritableByteChannel;
+import org.xnio.conduits.StreamSinkConduit;
+
+/**
+ * Conduit that copies a response that is being fetched from the origin, and stores it in a {@link HttpCache} once
+ * it has been completely written.
+ * <p/>
+ * If the response turns out to be larger than the maximum entry size of the cache it is not stored.
+ *
+ * @author agent
+ */
+final class HttpCachingStreamSinkConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
+
+    private static final int INITIAL_SIZE = 1024;
+
+    private final HttpServerExchange exchange;
+    private final HttpCache cache;
+    private final HttpCache.Fetch fetch;
+    private final String primaryKey;
+    private final HttpString[] vary;
+    private final CacheControl cacheControl;
+    private final long length;
+    private byte[] data;
+    private int written;
+
+    /**
+     * @param length The content length of the response, or <code>-1</code> if it is not known
+     */
+    HttpCachingStreamSinkConduit(final StreamSinkConduit next, final HttpServerExchange exchange, final HttpCache cache, final HttpCache.Fetch fetch,
+                                 final String primaryKey, final HttpString[] vary, final CacheControl cacheControl, final long length) {
+        super(next);
+        this.exchange = exchange;
+        this.cache = cache;
+        this.fetch = fetch;
+        this.primaryKey = primaryKey;
+        this.vary = vary;
+        this.cacheControl = cacheControl;
+        this.length = length;
+        this.data = new byte[length == -1 ? Math.min(INITIAL_SIZE, cache.getMaxEntrySize()) : (int) length];
+    }
+
+    @Override
+    public long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
+        return src.transferTo(position, count, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public long transferFrom(final StreamSourceChannel source, final long count, final ByteBuffer throughBuffer) throws IOException {
+        return IoUtils.transfer(source, count, throughBuffer, new ConduitWritableByteChannel(this));
+    }
+
+    @Override
+    public int write(final ByteBuffer src) throws IOException {
+        final int pos = src.position();
+        final int totalWritten = super.write(src);
+        if (totalWritten > 0 && data != null) {
+            final ByteBuffer copy = src.duplicate();
+            copy.position(pos);
+            copy.limit(pos + totalWritten);
+            copy(copy);
+        }
+        return totalWritten;
+    }
+
+    @Override
+    public long write(final ByteBuffer[] srcs, final int offs, final int len) throws IOException {
+        final int[] positions = new int[len];
+        for (int i = 0; i < len; ++i) {
+            positions[i] = srcs[offs + i].position();
+        }
+        final long totalWritten = super.write(srcs, offs, len);
+        if (totalWritten > 0 && data != null) {
+            long leftToCopy = totalWritten;
+            for (int i = 0; i < len && leftToCopy > 0; ++i) {
+                final ByteBuffer copy = srcs[offs + i].duplicate();
+                copy.limit(copy.position());
+                copy.position(positions[i]);
+                leftToCopy -= copy.remaining();
+                copy(copy);
+            }
+        }
+        return totalWritten;
+    }
+
+    private void copy(final ByteBuffer buffer) {
+        final int remaining = buffer.remaining();
+        if (written + remaining > data.length) {
+            if (length != -1 || written + remaining > cache.getMaxEntrySize()) {
+                //more data than expected, or too large to cache
+                data = null;
+                return;
+            }
+            data = Arrays.copyOf(data, Math.min(cache.getMaxEntrySize(), Math.max(data.length * 2, written + remaining)));
+        }
+        buffer.get(data, written, remaining);
+        written += remaining;
+    }
+
+    @Override
+    public void terminateWrites() throws IOException {
+        if (data != null && (length == -1 || written == length)) {
+            final byte[] body = written == data.length ? data : Arrays.copyOf(data, written);
+            data = null;
+            final String variantKey = HttpCache.variantKey(primaryKey, vary, exchange.getRequestHeaders());
+            final HttpCache.CachedResponse response = new HttpCache.CachedResponse(exchange.getResponseCode(), exchange.getResponseHeaders(), body, System.currentTimeMillis(), cacheControl);
+            cache.store(primaryKey, vary, variantKey, response);
+            fetch.stored(vary, variantKey, response);
+        }
+        data = null;
+        super.terminateWrites();
+    }
+
+    @Override
+    public void truncateWrites() throws IOException {
+        data = null;
+        super.truncateWrites();
+    }
+}
@@ -160,7 +160,7 @@ public class ResponseCache {
             exchange.getResponseHeaders().put(Headers.CONTENT_LANGUAGE, existingKey.getLanguage());
         }
         if(etag != null) {
-            exchange.getResponseHeaders().put(Headers.CONTENT_LANGUAGE, etag.toString());
+            exchange.getResponseHeaders().put(Headers.ETAG, etag.toString());
         }
 
         //TODO: support if-range
@@ -24,6 +24,8 @@ import java.net.InetSocketAddress;
 import java.net.URI;
 import java.util.ArrayDeque;
 import java.util.Deque;
+import java.util.IdentityHashMap;
+import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
 
@@ -186,6 +188,7 @@ public class ProxyConnectionPool implements Closeable {
 
         int connections = --hostData.connections;
         hostData.availableConnections.remove(connection);
+        hostData.borrowedConnections.remove(connection.clientConnection);
         if (connections < maxConnections) {
             CallbackHolder task = hostData.awaitingConnections.poll();
             while (task != null && task.isCancelled()) {
@@ -435,6 +438,45 @@ public class ProxyConnectionPool implements Closeable {
         }
     }
 
+    /**
+     * Polls an idle connection from the cache of the current IO thread, without opening a new one. This allows
+     * out of band users such as health checks to reuse pooled connections instead of creating their own.
+     * <p>
+     * The connection is still accounted to this pool and has to be handed back using
+     * {@link #returnIdleConnection(ClientConnection)} from the same IO thread once the caller is done with it.
+     *
+     * @return an open idle connection, or {@code null} if there is none cached for the current thread
+     */
+    public ClientConnection pollIdleConnection() {
+        if (closed) {
+            return null;
+        }
+        final HostThreadData data = getData();
+        ConnectionHolder connectionHolder = data.availableConnections.poll();
+        while (connectionHolder != null && !connectionHolder.clientConnection.isOpen()) {
+            connectionHolder = data.availableConnections.poll();
+        }
+        if (connectionHolder == null) {
+            return null;
+        }
+        data.borrowedConnections.put(connectionHolder.clientConnection, connectionHolder);
+        return connectionHolder.clientConnection;
+    }
+
+    /**
+     * Returns a connection obtained through {@link #pollIdleConnection()}. If the connection has been closed in
+     * the meantime it is simply discarded.
+     *
+     * @param connection    the borrowed connection
+     */
+    public void returnIdleConnection(final ClientConnection connection) {
+        final HostThreadData data = getData();
+        final ConnectionHolder connectionHolder = data.borrowedConnections.remove(connection);
+        if (connectionHolder != null) {
+            returnConnection(connectionHolder);
+        }
+    }
+
     private final class HostThreadData {
 
         int connections = 0;
@@ -443,6 +485,7 @@ public class ProxyConnectionPool implements Closeable {
 
         final Deque<ConnectionHolder> availableConnections = new ArrayDeque<>();
         final Deque<CallbackHolder> awaitingConnections = new ArrayDeque<>();
+        final Map<ClientConnection, ConnectionHolder> borrowedConnections = new IdentityHashMap<>();
         final Runnable timeoutTask = new Runnable() {
             @Override
             public void run() {
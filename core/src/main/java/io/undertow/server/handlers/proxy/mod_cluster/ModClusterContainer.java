@@ -25,6 +25,7 @@ import java.util.Collections;
 import java.util.List;
 import java.util.Map;
 import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ThreadLocalRandom;
 import java.util.concurrent.TimeUnit;
 
 import io.undertow.UndertowLogger;
@@ -179,10 +180,12 @@ class ModClusterContainer {
             balancer = balancerConfig.build();
             balancers.put(balancerRef, balancer);
         }
-        final Node node = new Node(config, balancer, ioThread, bufferPool, this);
+        // Spread the health checks across the i/o threads, rather than using the thread which received the CONFIG
+        final XnioIoThread healthCheckThread = ioThread.getWorker().getIoThread();
+        final Node node = new Node(config, balancer, healthCheckThread, bufferPool, this);
         nodes.put(jvmRoute, node);
         // Schedule the health check
-        scheduleHealthCheck(node, ioThread);
+        scheduleHealthCheck(node, healthCheckThread);
         // Reset the load factor periodically
         if (updateLoadTask.cancelKey == null) {
             updateLoadTask.cancelKey = ioThread.executeAtInterval(updateLoadTask, modCluster.getHealthCheckInterval(), TimeUnit.MILLISECONDS);
@@ -515,7 +518,7 @@ class ModClusterContainer {
         assert Thread.holdsLock(this);
         HealthCheckTask task = healthChecks.get(ioThread);
         if (task == null) {
-            task = new HealthCheckTask(removeBrokenNodesThreshold, healthChecker);
+            task = new HealthCheckTask(removeBrokenNodesThreshold, healthChecker, ioThread, modCluster.getHealthCheckInterval() / 2);
             healthChecks.put(ioThread, task);
             task.cancelKey = ioThread.executeAtInterval(task, modCluster.getHealthCheckInterval(), TimeUnit.MILLISECONDS);
         }
@@ -554,18 +557,33 @@ class ModClusterContainer {
 
         private final long threshold;
         private final NodeHealthChecker healthChecker;
+        private final XnioIoThread ioThread;
+        private final long maxJitter;
         private final ArrayList<Node> nodes = new ArrayList<>();
         private volatile XnioExecutor.Key cancelKey;
 
-        HealthCheckTask(long threshold, NodeHealthChecker healthChecker) {
+        HealthCheckTask(long threshold, NodeHealthChecker healthChecker, XnioIoThread ioThread, long maxJitter) {
             this.threshold = threshold;
             this.healthChecker = healthChecker;
+            this.ioThread = ioThread;
+            this.maxJitter = maxJitter;
         }
 
         @Override
         public void run() {
             for (final Node node : nodes) {
-                node.checkHealth(threshold, healthChecker);
+                // Spread the pings over the interval, so that they don't all hit at once
+                final long jitter = maxJitter > 0 ? ThreadLocalRandom.current().nextLong(maxJitter) : 0;
+                if (jitter == 0) {
+                    node.checkHealth(threshold, healthChecker);
+                } else {
+                    ioThread.executeAfter(new Runnable() {
+                        @Override
+                        public void run() {
+                            node.checkHealth(threshold, healthChecker);
+                        }
+                    }, jitter, TimeUnit.MILLISECONDS);
+                }
             }
         }
     }
@@ -30,9 +30,11 @@ import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
 
 import io.undertow.UndertowLogger;
+import io.undertow.client.ClientConnection;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.handlers.proxy.ConnectionPoolManager;
 import io.undertow.server.handlers.proxy.ProxyConnectionPool;
+import org.xnio.IoUtils;
 import org.xnio.OptionMap;
 import org.xnio.Pool;
 import org.xnio.XnioIoThread;
@@ -74,6 +76,7 @@ class Node {
     private final Pool<ByteBuffer> bufferPool;
 
     private volatile int state = ERROR; // This gets cleared with the first status report
+    private volatile ClientConnection pingConnection; // Keep-alive connection used for health checks
 
     private static final int ERROR = 1 << 31;
     private static final int REMOVED = 1 << 30;
@@ -134,6 +137,35 @@ class Node {
         return ioThread;
     }
 
+    /**
+     * Get the keep-alive connection used for the health checks.
+     *
+     * @return the ping connection, {@code null} if there is none
+     */
+    ClientConnection getPingConnection() {
+        return pingConnection;
+    }
+
+    /**
+     * Set the keep-alive connection used for the health checks, closing the previous one.
+     *
+     * @param connection    the ping connection
+     * @return {@code false} if the node has been removed and the connection was closed
+     */
+    boolean setPingConnection(final ClientConnection connection) {
+        final ClientConnection previous = this.pingConnection;
+        this.pingConnection = connection;
+        if (previous != null && previous != connection) {
+            IoUtils.safeClose(previous);
+        }
+        if (anyAreSet(state, REMOVED)) {
+            this.pingConnection = null;
+            IoUtils.safeClose(connection);
+            return false;
+        }
+        return true;
+    }
+
     public Status getStatus() {
         final int status = this.state;
         if (anyAreSet(status, ERROR)) {
@@ -371,6 +403,11 @@ class Node {
             newState = oldState | REMOVED;
             if (stateUpdater.compareAndSet(this, oldState, newState)) {
                 connectionPool.close();
+                final ClientConnection pingConnection = this.pingConnection;
+                if (pingConnection != null) {
+                    this.pingConnection = null;
+                    IoUtils.safeClose(pingConnection);
+                }
                 return;
             }
         }
@@ -166,7 +166,8 @@ class NodePingUtil {
     }
 
     /**
-     * Internally ping a node. This should probably use the connections from the nodes pool, if there are any available.
+     * Internally ping a node. This will use an idle connection from the nodes pool if there is one available on the
+     * i/o thread, otherwise the keep-alive ping connection of the node, which gets opened on demand.
      *
      * @param node          the node
      * @param callback      the ping callback
@@ -178,12 +179,10 @@ class NodePingUtil {
      */
     static void internalPingNode(Node node, PingCallback callback, NodeHealthChecker healthChecker, XnioIoThread ioThread, Pool<ByteBuffer> bufferPool, UndertowClient client, XnioSsl xnioSsl, OptionMap options) {
 
-        final URI uri = node.getNodeConfig().getConnectionURI();
         final long timeout = node.getNodeConfig().getPing();
-        final RequestExchangeListener exchangeListener = new RequestExchangeListener(callback, healthChecker, true);
-        final HttpClientPingTask r = new HttpClientPingTask(uri, exchangeListener, ioThread, client, xnioSsl, bufferPool, options);
+        final NodePingTask r = new NodePingTask(node, callback, healthChecker, ioThread, client, xnioSsl, bufferPool, options);
         // Schedule timeout task
-        scheduleCancelTask(ioThread, exchangeListener, timeout, TimeUnit.SECONDS);
+        scheduleCancelTask(ioThread, r.exchangeListener, timeout, TimeUnit.SECONDS);
         ioThread.execute(r);
     }
 
@@ -199,42 +198,110 @@ class NodePingUtil {
 
         @Override
         public void run() {
+            sendPingRequest(proxyConnection.getConnection(), exchangeListener);
+        }
+
+    }
+
+    static class NodePingTask implements Runnable, PingCallback {
+
+        private final Node node;
+        private final PingCallback callback;
+        private final XnioIoThread thread;
+        private final UndertowClient client;
+        private final XnioSsl xnioSsl;
+        private final Pool<ByteBuffer> bufferPool;
+        private final OptionMap options;
+        private final RequestExchangeListener exchangeListener;
+
+        private volatile ClientConnection connection;
+        private volatile boolean pooled;
+
+        NodePingTask(Node node, PingCallback callback, NodeHealthChecker healthChecker, XnioIoThread thread, UndertowClient client, XnioSsl xnioSsl, Pool<ByteBuffer> bufferPool, OptionMap options) {
+            this.node = node;
+            this.callback = callback;
+            this.thread = thread;
+            this.client = client;
+            this.xnioSsl = xnioSsl;
+            this.bufferPool = bufferPool;
+            this.options = options;
+            this.exchangeListener = new RequestExchangeListener(this, healthChecker, false);
+        }
 
-            // TODO AJP has a special ping thing
-            proxyConnection.getConnection().sendRequest(PING_REQUEST, new ClientCallback<ClientExchange>() {
+        @Override
+        public void run() {
+            if (exchangeListener.isDone()) {
+                return;
+            }
+            // Prefer an idle connection from the pool of this thread
+            final ClientConnection idle = node.getConnectionPool().pollIdleConnection();
+            if (idle != null) {
+                pooled = true;
+                sendPing(idle);
+                return;
+            }
+            // Otherwise reuse the keep-alive ping connection
+            final ClientConnection pingConnection = node.getPingConnection();
+            if (pingConnection != null && pingConnection.isOpen()) {
+                sendPing(pingConnection);
+                return;
+            }
+            client.connect(new ClientCallback<ClientConnection>() {
                 @Override
-                public void completed(final ClientExchange result) {
-                    if (exchangeListener.isDone()) {
-                        IoUtils.safeClose(proxyConnection.getConnection());
+                public void completed(final ClientConnection clientConnection) {
+                    if (!node.setPingConnection(clientConnection)) {
+                        // The node got removed in the meantime
+                        exchangeListener.taskFailed();
                         return;
                     }
-                    exchangeListener.exchange = result;
-                    result.setResponseListener(exchangeListener);
-                    try {
-                        result.getRequestChannel().shutdownWrites();
-                        if (!result.getRequestChannel().flush()) {
-                            result.getRequestChannel().getWriteSetter().set(ChannelListeners.flushingChannelListener(null, new ChannelExceptionHandler<StreamSinkChannel>() {
-                                @Override
-                                public void handleException(StreamSinkChannel channel, IOException exception) {
-                                    IoUtils.safeClose(proxyConnection.getConnection());
-                                    exchangeListener.taskFailed();
-                                }
-                            }));
-                            result.getRequestChannel().resumeWrites();
-                        }
-                    } catch (IOException e) {
-                        IoUtils.safeClose(proxyConnection.getConnection());
-                        exchangeListener.taskFailed();
+                    if (exchangeListener.isDone()) {
+                        return;
                     }
+                    sendPing(clientConnection);
                 }
 
                 @Override
                 public void failed(IOException e) {
                     exchangeListener.taskFailed();
                 }
-            });
+            }, node.getNodeConfig().getConnectionURI(), thread, xnioSsl, bufferPool, options);
+        }
+
+        private void sendPing(final ClientConnection clientConnection) {
+            this.connection = clientConnection;
+            sendPingRequest(clientConnection, exchangeListener);
         }
 
+        @Override
+        public void completed() {
+            release(true);
+            callback.completed();
+        }
+
+        @Override
+        public void failed() {
+            release(false);
+            callback.failed();
+        }
+
+        /**
+         * Release the connection used for the ping. Connections which failed or timed out are in an unknown state
+         * and get closed, the close listener of the pool takes care of the accounting.
+         *
+         * @param reusable    whether the connection can be used for further requests
+         */
+        private void release(final boolean reusable) {
+            final ClientConnection connection = this.connection;
+            if (connection == null) {
+                return;
+            }
+            if (!reusable) {
+                IoUtils.safeClose(connection);
+            }
+            if (pooled) {
+                node.getConnectionPool().returnIdleConnection(connection);
+            }
+        }
     }
 
     static class HostPingTask extends CancellableTask implements Runnable {
@@ -308,7 +375,6 @@ class NodePingUtil {
         @Override
         public void run() {
 
-            // TODO AJP has a special ping thing
             client.connect(new ClientCallback<ClientConnection>() {
                 @Override
                 public void completed(final ClientConnection clientConnection) {
@@ -316,39 +382,7 @@ class NodePingUtil {
                         IoUtils.safeClose(clientConnection);
                         return;
                     }
-                    clientConnection.sendRequest(PING_REQUEST, new ClientCallback<ClientExchange>() {
-
-                        @Override
-                        public void completed(ClientExchange result) {
-                            exchangeListener.exchange = result;
-                            if (exchangeListener.isDone()) {
-                                return;
-                            }
-                            result.setResponseListener(exchangeListener);
-                            try {
-                                result.getRequestChannel().shutdownWrites();
-                                if (!result.getRequestChannel().flush()) {
-                                    result.getRequestChannel().getWriteSetter().set(ChannelListeners.flushingChannelListener(null, new ChannelExceptionHandler<StreamSinkChannel>() {
-                                        @Override
-                                        public void handleException(StreamSinkChannel channel, IOException exception) {
-                                            IoUtils.safeClose(clientConnection);
-                                            exchangeListener.taskFailed();
-                                        }
-                                    }));
-                                    result.getRequestChannel().resumeWrites();
-                                }
-                            } catch (IOException e) {
-                                IoUtils.safeClose(clientConnection);
-                                exchangeListener.taskFailed();
-                            }
-                        }
-
-                        @Override
-                        public void failed(IOException e) {
-                            exchangeListener.taskFailed();
-                            IoUtils.safeClose(clientConnection);
-                        }
-                    });
+                    sendPingRequest(clientConnection, exchangeListener);
                 }
 
                 @Override
@@ -360,6 +394,49 @@ class NodePingUtil {
         }
     }
 
+    /**
+     * Send the ping request over an established connection. AJP backends get the same OPTIONS request as HTTP ones,
+     * the AJP client translates it into a regular AJP request.
+     *
+     * @param connection          the connection
+     * @param exchangeListener    the listener, which gets notified once the response has been read
+     */
+    static void sendPingRequest(final ClientConnection connection, final RequestExchangeListener exchangeListener) {
+        connection.sendRequest(PING_REQUEST, new ClientCallback<ClientExchange>() {
+            @Override
+            public void completed(final ClientExchange result) {
+                if (exchangeListener.isDone()) {
+                    IoUtils.safeClose(connection);
+                    return;
+                }
+                exchangeListener.exchange = result;
+                result.setResponseListener(exchangeListener);
+                try {
+                    result.getRequestChannel().shutdownWrites();
+                    if (!result.getRequestChannel().flush()) {
+                        result.getRequestChannel().getWriteSetter().set(ChannelListeners.flushingChannelListener(null, new ChannelExceptionHandler<StreamSinkChannel>() {
+                            @Override
+                            public void handleException(StreamSinkChannel channel, IOException exception) {
+                                IoUtils.safeClose(connection);
+                                exchangeListener.taskFailed();
+                            }
+                        }));
+                        result.getRequestChannel().resumeWrites();
+                    }
+                } catch (IOException e) {
+                    IoUtils.safeClose(connection);
+                    exchangeListener.taskFailed();
+                }
+            }
+
+            @Override
+            public void failed(IOException e) {
+                IoUtils.safeClose(connection);
+                exchangeListener.taskFailed();
+            }
+        });
+    }
+
     static class RequestExchangeListener extends CancellableTask implements ClientCallback<ClientExchange> {
 
         private ClientExchange exchange;
@@ -23,6 +23,7 @@ import io.undertow.conduits.AbstractFramedStreamSinkConduit;
 import io.undertow.conduits.ConduitListener;
 import io.undertow.server.Connectors;
 import io.undertow.server.HttpServerExchange;
+import io.undertow.util.HeaderBlock;
 import io.undertow.util.HeaderMap;
 import io.undertow.util.Headers;
 import io.undertow.util.HttpString;
@@ -79,6 +80,46 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
         HEADER_MAP = Collections.unmodifiableMap(headers);
     }
 
+    /**
+     * Encodes header blocks in the AJP header format
+     */
+    private static final HeaderBlock.Encoder HEADER_BLOCK_ENCODER = new HeaderBlock.Encoder() {
+        @Override
+        public byte[] encode(final HeaderBlock block) {
+            int length = 0;
+            for (int i = 0; i < block.size(); ++i) {
+                length += block.getName(i).length() + block.getValue(i).length() + 6;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            for (int i = 0; i < block.size(); ++i) {
+                putHeader(buffer, block.getName(i), block.getValue(i));
+            }
+            buffer.flip();
+            final byte[] data = new byte[buffer.remaining()];
+            buffer.get(data);
+            return data;
+        }
+    };
+
+    private static final int MIN_CACHED_STATUS = 100;
+    private static final int MAX_CACHED_STATUS = 599;
+
+    /**
+     * The pre-encoded status code and reason phrase, indexed by status code
+     */
+    private static final byte[][] STATUS_LINES;
+
+    static {
+        STATUS_LINES = new byte[MAX_CACHED_STATUS - MIN_CACHED_STATUS + 1][];
+        for (int code = MIN_CACHED_STATUS; code <= MAX_CACHED_STATUS; ++code) {
+            final String reason = StatusCodes.getReason(code);
+            final ByteBuffer buffer = ByteBuffer.allocate(reason.length() + 5);
+            putInt(buffer, code);
+            putString(buffer, reason);
+            STATUS_LINES[code - MIN_CACHED_STATUS] = buffer.array();
+        }
+    }
+
     private static final int FLAG_START = 1; //indicates that the header has not been generated yet.
     private static final int FLAG_WRITE_RESUMED = 1 << 2;
     private static final int FLAG_WRITE_READ_BODY_CHUNK_FROM_LISTENER = 1 << 3;
@@ -142,13 +183,23 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
         buf.put((byte) 0);
     }
 
-    private void putHttpString(final ByteBuffer buf, HttpString value) {
+    private static void putHttpString(final ByteBuffer buf, HttpString value) {
         final int length = value.length();
         putInt(buf, length);
         value.appendTo(buf);
         buf.put((byte) 0);
     }
 
+    private static void putHeader(final ByteBuffer buf, final HttpString header, final String headerValue) {
+        Integer headerCode = HEADER_MAP.get(header);
+        if (headerCode != null) {
+            putInt(buf, headerCode);
+        } else {
+            putHttpString(buf, header);
+        }
+        putString(buf, headerValue);
+    }
+
     /**
      * Handles generating the header if required, and adding it to the frame queue.
      *
@@ -170,8 +221,13 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
             buffer.put((byte) 0); //we fill the size in later
             buffer.put((byte) 0);
             buffer.put((byte) 4);
-            putInt(buffer, exchange.getResponseCode());
-            putString(buffer, StatusCodes.getReason(exchange.getResponseCode()));
+            final int code = exchange.getResponseCode();
+            if (code >= MIN_CACHED_STATUS && code <= MAX_CACHED_STATUS) {
+                buffer.put(STATUS_LINES[code - MIN_CACHED_STATUS]);
+            } else {
+                putInt(buffer, code);
+                putString(buffer, StatusCodes.getReason(code));
+            }
 
             int headers = 0;
             //we need to count the headers
@@ -182,8 +238,21 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
 
             putInt(buffer, headers);
 
+            HeaderBlock headerBlock = responseHeaders.getHeaderBlock();
+            if (headerBlock != null) {
+                //the block is only used if all of its headers are unmodified, and it fits into the buffer
+                final byte[] encoded = headerBlock.getEncoded(HEADER_BLOCK_ENCODER);
+                if (encoded.length <= buffer.remaining() && headerBlock.isIntact(responseHeaders)) {
+                    buffer.put(encoded);
+                } else {
+                    headerBlock = null;
+                }
+            }
 
             for (final HttpString header : responseHeaders.getHeaderNames()) {
+                if (headerBlock != null && headerBlock.contains(header)) {
+                    continue;
+                }
                 for (String headerValue : responseHeaders.get(header)) {
                     if(buffer.remaining() < header.length() + headerValue.length() + 6) {
                         //if there is not enough room in the buffer we need to allocate more
@@ -201,13 +270,7 @@ final class AjpServerResponseConduit extends AbstractFramedStreamSinkConduit {
                         buffer = pooled.getResource();
                     }
 
-                    Integer headerCode = HEADER_MAP.get(header);
-                    if (headerCode != null) {
-                        putInt(buffer, headerCode);
-                    } else {
-                        putHttpString(buffer, header);
-                    }
-                    putString(buffer, headerValue);
+                    putHeader(buffer, header, headerValue);
                 }
             }
             if(byteBuffers == null) {
@@ -113,6 +113,11 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
     private final List<ChannelListener<C>> closeTasks = new CopyOnWriteArrayList<>();
     private boolean flushingSenders = false;
 
+    /**
+     * The number of outstanding calls to {@link #cork()}. While this is non zero queued frames are not flushed.
+     */
+    private int corked;
+
     private final Set<AbstractFramedStreamSourceChannel<C, R, S>> receivers = new HashSet<>();
 
     /**
@@ -541,7 +546,7 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
             throw UndertowMessages.MESSAGES.channelIsClosed();
         }
         newFrames.add(channel);
-        if (!flushingSenders) {
+        if (!flushingSenders && corked == 0) {
             if(channel.getIoThread() == Thread.currentThread()) {
                 flushSenders();
             } else {
@@ -555,6 +560,35 @@ public abstract class AbstractFramedChannel<C extends AbstractFramedChannel<C, R
         }
     }
 
+    /**
+     * Holds back frames that are queued from now on until {@link #uncork()} is called, so that several messages can be
+     * written out using a single gathering write. Every call must be matched by a call to {@link #uncork()}.
+     * <p/>
+     * Frames may still be written out before the channel is uncorked if a flush is triggered for some other reason.
+     */
+    public synchronized void cork() {
+        ++corked;
+    }
+
+    /**
+     * Releases frames that were held back by {@link #cork()}, and flushes them once the last cork has been removed.
+     */
+    public synchronized void uncork() {
+        if (--corked > 0 || flushingSenders || newFrames.isEmpty()) {
+            return;
+        }
+        if (getIoThread() == Thread.currentThread()) {
+            flushSenders();
+        } else {
+            getIoThread().execute(new Runnable() {
+                @Override
+                public void run() {
+                    flushSenders();
+                }
+            });
+        }
+    }
+
     /**
      * Returns true if the protocol specific final frame has been received.
      *
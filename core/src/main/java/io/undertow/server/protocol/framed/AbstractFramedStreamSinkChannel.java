@@ -111,6 +111,19 @@ public abstract class AbstractFramedStreamSinkChannel<C extends AbstractFramedCh
         this.buffer = channel.getBufferPool().allocate();
     }
 
+    /**
+     * Creates a channel that sends data that has already been written into the given buffer, rather than into a buffer
+     * from the pool. The data must end at the buffer's position, as it is flipped when writes are shutdown. The buffer
+     * is freed once it has been written out or the channel is closed.
+     *
+     * @param channel The framed channel
+     * @param buffer  The buffer that holds the data to send
+     */
+    protected AbstractFramedStreamSinkChannel(C channel, Pooled<ByteBuffer> buffer) {
+        this.channel = channel;
+        this.buffer = buffer;
+    }
+
     public long transferFrom(final FileChannel src, final long position, final long count) throws IOException {
         return src.transferTo(position, count, this);
     }
@@ -0,0 +1,123 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.protocol.http;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Scans buffers for delimiters eight bytes at a time, by treating each <code>long</code> read from the buffer as a
+ * vector of bytes. This is used by the fast path of the {@link HttpRequestParser}.
+ * <p/>
+ * Words are always handled in big endian order, so that the first byte of a word is its most significant byte,
+ * whatever the order of the buffer. All the byte tests are exact, a carry can never spill into the next byte.
+ *
+ * @author agent
+ */
+final class ByteScanner {
+
+    private static final long ONES = 0x0101010101010101L;
+    private static final long LOW_BITS = 0x7F7F7F7F7F7F7F7FL;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+    private static final long CONTROL_OFFSET = 0x6060606060606060L;
+
+    private ByteScanner() {
+    }
+
+    /**
+     * Returns the index of the first byte that is equal to one of the given delimiters, or that is a control
+     * character or a non ASCII byte. Control characters are always delimiters, so <code>0</code> can be passed to fill
+     * unused delimiter arguments.
+     *
+     * @param buffer The buffer to scan
+     * @param from   The index of the first byte to scan
+     * @param limit  The index after the last byte to scan
+     * @return The index of the first delimiter, or <code>-1</code> if there is none
+     */
+    static int scan(final ByteBuffer buffer, final int from, final int limit, final byte d1, final byte d2, final byte d3) {
+        final boolean swap = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        final long p1 = (d1 & 0xFF) * ONES;
+        final long p2 = (d2 & 0xFF) * ONES;
+        final long p3 = (d3 & 0xFF) * ONES;
+        int pos = from;
+        while (pos + 8 <= limit) {
+            long word = buffer.getLong(pos);
+            if (swap) {
+                word = Long.reverseBytes(word);
+            }
+            final long mask = controlOrHigh(word) | zeroBytes(word ^ p1) | zeroBytes(word ^ p2) | zeroBytes(word ^ p3);
+            if (mask != 0) {
+                return pos + (Long.numberOfLeadingZeros(mask) >>> 3);
+            }
+            pos += 8;
+        }
+        while (pos < limit) {
+            final byte b = buffer.get(pos);
+            if (b < ' ' || b == d1 || b == d2 || b == d3) {
+                return pos;
+            }
+            ++pos;
+        }
+        return -1;
+    }
+
+    /**
+     * @return <code>true</code> if there are two consecutive spaces between the given indexes
+     */
+    static boolean containsDoubleSpace(final ByteBuffer buffer, final int from, final int limit) {
+        final boolean swap = buffer.order() == ByteOrder.LITTLE_ENDIAN;
+        final long spaces = ' ' * ONES;
+        boolean lastSpace = false;
+        int pos = from;
+        while (pos + 8 <= limit) {
+            long word = buffer.getLong(pos);
+            if (swap) {
+                word = Long.reverseBytes(word);
+            }
+            final long mask = zeroBytes(word ^ spaces);
+            if ((mask & (mask << 8)) != 0 || (lastSpace && mask < 0)) {
+                return true;
+            }
+            lastSpace = (mask & 0x80) != 0;
+            pos += 8;
+        }
+        while (pos < limit) {
+            final boolean space = buffer.get(pos) == ' ';
+            if (space && lastSpace) {
+                return true;
+            }
+            lastSpace = space;
+            ++pos;
+        }
+        return false;
+    }
+
+    /**
+     * @return A word with the high bit set in every byte that was zero
+     */
+    private static long zeroBytes(final long word) {
+        return ~(((word & LOW_BITS) + LOW_BITS) | word | LOW_BITS);
+    }
+
+    /**
+     * @return A word with the high bit set in every byte that was lower than <code>0x20</code> or higher than <code>0x7F</code>
+     */
+    private static long controlOrHigh(final long word) {
+        return (~((word & LOW_BITS) + CONTROL_OFFSET) | word) & HIGH_BITS;
+    }
+}
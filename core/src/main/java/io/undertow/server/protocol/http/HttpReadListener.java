@@ -55,10 +55,17 @@ final class HttpReadListener implements ChannelListener<ConduitStreamSourceChann
 
     private HttpServerExchange httpServerExchange;
 
+    /**
+     * The last completed exchange, that can be reused for the next request if {@link UndertowOptions#REUSE_EXCHANGES}
+     * is enabled.
+     */
+    private HttpServerExchange completedExchange;
+
     private int read = 0;
     private final int maxRequestSize;
     private final long maxEntitySize;
     private final boolean recordRequestStartTime;
+    private final boolean reuseExchanges;
 
     //0 = new request ok, reads resumed
     //1 = request running, new request not ok
@@ -73,12 +80,25 @@ final class HttpReadListener implements ChannelListener<ConduitStreamSourceChann
         this.maxRequestSize = connection.getUndertowOptions().get(UndertowOptions.MAX_HEADER_SIZE, UndertowOptions.DEFAULT_MAX_HEADER_SIZE);
         this.maxEntitySize = connection.getUndertowOptions().get(UndertowOptions.MAX_ENTITY_SIZE, UndertowOptions.DEFAULT_MAX_ENTITY_SIZE);
         this.recordRequestStartTime = connection.getUndertowOptions().get(UndertowOptions.RECORD_REQUEST_START_TIME, false);
+        this.reuseExchanges = connection.getUndertowOptions().get(UndertowOptions.REUSE_EXCHANGES, false);
     }
 
     public void newRequest() {
         state.reset();
         read = 0;
-        httpServerExchange = new HttpServerExchange(connection, maxEntitySize);
+        //the exchange is created once data for the next request arrives, as the completed exchange may still be in use
+        httpServerExchange = null;
+    }
+
+    private HttpServerExchange createExchange() {
+        final HttpServerExchange completed = this.completedExchange;
+        if (completed != null) {
+            this.completedExchange = null;
+            if (Connectors.recycleExchange(completed, maxEntitySize)) {
+                return completed;
+            }
+        }
+        return new HttpServerExchange(connection, maxEntitySize);
     }
 
     public void handleEvent(final ConduitStreamSourceChannel channel) {
@@ -133,6 +153,9 @@ final class HttpReadListener implements ChannelListener<ConduitStreamSourceChann
                 } else {
                     buffer.flip();
                 }
+                if (httpServerExchange == null) {
+                    httpServerExchange = createExchange();
+                }
                 parser.handle(buffer, state, httpServerExchange);
                 if (buffer.hasRemaining()) {
                     free = false;
@@ -210,6 +233,9 @@ final class HttpReadListener implements ChannelListener<ConduitStreamSourceChann
         connection.clearChannel();
         final HttpServerConnection connection = this.connection;
         if (exchange.isPersistent() && !exchange.isUpgrade()) {
+            if (reuseExchanges) {
+                completedExchange = exchange;
+            }
             final StreamConnection channel = connection.getChannel();
             if (connection.getExtraBytes() == null) {
                 //if we are not pipelining we just register a listener
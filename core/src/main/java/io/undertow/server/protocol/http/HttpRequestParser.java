@@ -95,6 +95,10 @@ import static io.undertow.util.Protocols.HTTP_1_1_STRING;
  * The actual processor is a state machine, that means that for common header, method, protocol values
  * it will return an interned string, rather than creating a new string for each one.
  * <p/>
+ * Common requests that are contained in a single buffer do not go through the state machine byte by byte. The path
+ * and the headers are instead located with a {@link ByteScanner}, and known header names are looked up in
+ * {@link KnownHeaders}. Anything out of the ordinary is left to the state machine, so both give the same results.
+ * <p/>
  *
  * @author Stuart Douglas
  */
@@ -210,7 +214,9 @@ public abstract class HttpRequestParser {
             } else {
                 handleHttpVerb(buffer, currentState, builder);
             }
-            handlePath(buffer, currentState, builder);
+            if (currentState.state != ParseState.PATH || !handlePathFast(buffer, currentState, builder)) {
+                handlePath(buffer, currentState, builder);
+            }
             boolean failed = false;
             if (buffer.remaining() > HTTP_LENGTH + 3) {
                 int pos = buffer.position();
@@ -246,6 +252,8 @@ public abstract class HttpRequestParser {
             if (failed) {
                 handleHttpVersion(buffer, currentState, builder);
                 handleAfterVersion(buffer, currentState);
+            } else {
+                handleHeadersFast(buffer, currentState, builder);
             }
 
             while (currentState.state != ParseState.PARSE_COMPLETE && buffer.hasRemaining()) {
@@ -310,6 +318,155 @@ public abstract class HttpRequestParser {
     }
 
 
+    /**
+     * Parses a path that starts with a <code>/</code> and that is followed by either a space or a query string,
+     * without going through the per byte state machine. Anything else, such as an absolute URL, path parameters or a
+     * path that is not fully contained in the buffer, is left to {@link #handlePath}.
+     *
+     * @return <code>true</code> if the path was parsed, if this is <code>false</code> nothing has been consumed
+     */
+    private boolean handlePathFast(ByteBuffer buffer, ParseState state, HttpServerExchange exchange) {
+        final int start = buffer.position();
+        if (start == buffer.limit() || buffer.get(start) != '/') {
+            return false;
+        }
+        final int end = ByteScanner.scan(buffer, start, buffer.limit(), (byte) ' ', (byte) '?', (byte) ';');
+        if (end == -1) {
+            return false;
+        }
+        final byte delimiter = buffer.get(end);
+        if (delimiter != ' ' && delimiter != '?') {
+            return false;
+        }
+        final String path = asciiString(buffer, start, end, state);
+        final boolean urlDecodeRequired = decode && (path.indexOf('%') != -1 || path.indexOf('+') != -1);
+        final String decodedPath = decode(path, urlDecodeRequired, state, allowEncodedSlash);
+        exchange.setRequestPath(decodedPath);
+        exchange.setRelativePath(decodedPath);
+        buffer.position(end + 1);
+        if (delimiter == ' ') {
+            exchange.setRequestURI(path);
+            exchange.setQueryString("");
+            state.state = ParseState.VERSION;
+        } else {
+            exchange.setRequestURI(path, false);
+            state.state = ParseState.QUERY_PARAMETERS;
+            handleQueryParameters(buffer, state, exchange);
+        }
+        return true;
+    }
+
+    /**
+     * Parses headers without going through the per byte state machine, for as long as each header line, and the first
+     * byte of the line after it, is contained in the buffer. Known header names are interned using {@link KnownHeaders}.
+     * <p/>
+     * This stops at the first line that needs the full parser, which is a line that is not fully contained in the
+     * buffer, a continuation line, a line with a bare line feed, a tab, non ASCII bytes, or a value with consecutive
+     * spaces. The buffer is then positioned at the start of that line, so {@link #handleHeader} can carry on from there.
+     */
+    private void handleHeadersFast(ByteBuffer buffer, ParseState state, HttpServerExchange builder) {
+        final int limit = buffer.limit();
+        final HashMap<HttpString, String> headerValuesCache = state.headerValuesCache;
+        int pos = buffer.position();
+        while (true) {
+            if (pos + 1 < limit && buffer.get(pos) == '\r' && buffer.get(pos + 1) == '\n') {
+                buffer.position(pos + 2);
+                state.state = ParseState.PARSE_COMPLETE;
+                return;
+            }
+            final int colon = ByteScanner.scan(buffer, pos, limit, (byte) ':', (byte) ' ', (byte) 0);
+            if (colon <= pos || buffer.get(colon) != ':') {
+                return;
+            }
+            int valueStart = colon + 1;
+            while (valueStart < limit && (buffer.get(valueStart) == ' ' || buffer.get(valueStart) == '\t')) {
+                ++valueStart;
+            }
+            final int lineEnd = ByteScanner.scan(buffer, valueStart, limit, (byte) 0, (byte) 0, (byte) 0);
+            if (lineEnd == -1 || lineEnd + 2 >= limit || buffer.get(lineEnd) != '\r' || buffer.get(lineEnd + 1) != '\n') {
+                return;
+            }
+            final byte next = buffer.get(lineEnd + 2);
+            if (next == ' ' || next == '\t') {
+                //continuation
+                return;
+            }
+            if (next == '\r' && (lineEnd + 3 == limit || buffer.get(lineEnd + 3) != '\n')) {
+                //the end of the headers is consumed together with the last header, leave it to the full parser
+                return;
+            }
+            int valueEnd = lineEnd;
+            while (valueEnd > valueStart && buffer.get(valueEnd - 1) == ' ') {
+                --valueEnd;
+            }
+            if (ByteScanner.containsDoubleSpace(buffer, valueStart, valueEnd)) {
+                return;
+            }
+
+            HttpString headerName = KnownHeaders.lookup(buffer, pos, colon - pos);
+            if (headerName == null) {
+                headerName = httpString(buffer, pos, colon, state);
+            }
+            final String existing = headerValuesCache.get(headerName);
+            final String headerValue;
+            if (existing != null && matches(buffer, valueStart, valueEnd, existing)) {
+                headerValue = existing;
+            } else {
+                headerValue = asciiString(buffer, valueStart, valueEnd, state);
+                if (headerValuesCache.size() < maxHeaders) {
+                    headerValuesCache.put(headerName, headerValue);
+                }
+            }
+            if (state.mapCount++ > maxHeaders) {
+                throw UndertowMessages.MESSAGES.tooManyHeaders(maxHeaders);
+            }
+            builder.getRequestHeaders().add(headerName, headerValue);
+            pos = lineEnd + 2;
+            buffer.position(pos);
+        }
+    }
+
+    private static boolean matches(ByteBuffer buffer, int start, int end, String value) {
+        if (end - start != value.length()) {
+            return false;
+        }
+        for (int i = start; i < end; ++i) {
+            if (buffer.get(i) != value.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Creates a string from ASCII bytes, which must have been checked by the {@link ByteScanner}
+     */
+    @SuppressWarnings("deprecation")
+    private static String asciiString(ByteBuffer buffer, int start, int end, ParseState state) {
+        if (buffer.hasArray()) {
+            return new String(buffer.array(), 0, buffer.arrayOffset() + start, end - start);
+        }
+        return new String(copy(buffer, start, end, state), 0, 0, end - start);
+    }
+
+    private static HttpString httpString(ByteBuffer buffer, int start, int end, ParseState state) {
+        if (buffer.hasArray()) {
+            return new HttpString(buffer.array(), buffer.arrayOffset() + start, end - start);
+        }
+        return new HttpString(copy(buffer, start, end, state), 0, end - start);
+    }
+
+    private static byte[] copy(ByteBuffer buffer, int start, int end, ParseState state) {
+        byte[] bytes = state.bytes;
+        if (bytes == null || bytes.length < end - start) {
+            state.bytes = bytes = new byte[Math.max(end - start, 128)];
+        }
+        for (int i = start; i < end; ++i) {
+            bytes[i - start] = buffer.get(i);
+        }
+        return bytes;
+    }
+
     abstract void handleHttpVerb(ByteBuffer buffer, final ParseState currentState, final HttpServerExchange builder);
 
     abstract void handleHttpVersion(ByteBuffer buffer, final ParseState currentState, final HttpServerExchange builder);
@@ -26,9 +26,11 @@ import java.nio.channels.FileChannel;
 import io.undertow.server.Connectors;
 import io.undertow.server.HttpServerExchange;
 import io.undertow.server.TruncatedResponseException;
+import io.undertow.util.HeaderBlock;
 import io.undertow.util.HeaderMap;
 import io.undertow.util.HeaderValues;
 import io.undertow.util.HttpString;
+import io.undertow.util.Protocols;
 import io.undertow.util.StatusCodes;
 
 import org.xnio.Buffers;
@@ -50,6 +52,36 @@ import static org.xnio.Bits.allAreSet;
  */
 final class HttpResponseConduit extends AbstractStreamSinkConduit<StreamSinkConduit> {
 
+    /**
+     * Encodes header blocks as header lines, including the CRLF line endings
+     */
+    static final HeaderBlock.Encoder HEADER_BLOCK_ENCODER = new HeaderBlock.Encoder() {
+        @Override
+        public byte[] encode(final HeaderBlock block) {
+            int length = 0;
+            for (int i = 0; i < block.size(); ++i) {
+                length += block.getName(i).length() + block.getValue(i).length() + 4;
+            }
+            final ByteBuffer buffer = ByteBuffer.allocate(length);
+            for (int i = 0; i < block.size(); ++i) {
+                block.getName(i).appendTo(buffer);
+                buffer.put((byte) ':').put((byte) ' ');
+                writeString(buffer, block.getValue(i));
+                buffer.put((byte) '\r').put((byte) '\n');
+            }
+            return buffer.array();
+        }
+    };
+
+    private static final int MIN_CACHED_STATUS = 100;
+    private static final int MAX_CACHED_STATUS = 599;
+
+    /**
+     * Pre-rendered status lines, including the CRLF, indexed by status code
+     */
+    private static final byte[][] HTTP_1_1_STATUS_LINES = createStatusLines(Protocols.HTTP_1_1);
+    private static final byte[][] HTTP_1_0_STATUS_LINES = createStatusLines(Protocols.HTTP_1_0);
+
     private final Pool<ByteBuffer> pool;
 
     private int state = STATE_START;
@@ -61,6 +93,7 @@ final class HttpResponseConduit extends AbstractStreamSinkConduit<StreamSinkCond
     private int charIndex;
     private Pooled<ByteBuffer> pooledBuffer;
     private HttpServerExchange exchange;
+    private HeaderBlock headerBlock;
 
     private ByteBuffer[] writevBuffer;
     private boolean done = false;
@@ -99,6 +132,53 @@ final class HttpResponseConduit extends AbstractStreamSinkConduit<StreamSinkCond
         headerValues = null;
         valueIdx = 0;
         charIndex = 0;
+        headerBlock = null;
+    }
+
+    private static byte[][] createStatusLines(final HttpString protocol) {
+        final byte[][] lines = new byte[MAX_CACHED_STATUS - MIN_CACHED_STATUS + 1][];
+        for (int code = MIN_CACHED_STATUS; code <= MAX_CACHED_STATUS; ++code) {
+            final String reason = StatusCodes.getReason(code);
+            final ByteBuffer buffer = ByteBuffer.allocate(protocol.length() + reason.length() + 7);
+            protocol.appendTo(buffer);
+            buffer.put((byte) ' ');
+            buffer.put((byte) (code / 100 + '0'));
+            buffer.put((byte) (code / 10 % 10 + '0'));
+            buffer.put((byte) (code % 10 + '0'));
+            buffer.put((byte) ' ');
+            writeString(buffer, reason);
+            buffer.put((byte) '\r').put((byte) '\n');
+            lines[code - MIN_CACHED_STATUS] = buffer.array();
+        }
+        return lines;
+    }
+
+    /**
+     * @return The pre-rendered status line, or <code>null</code> if there is none for the protocol and status code
+     */
+    private static byte[] getStatusLine(final HttpString protocol, final int code) {
+        if (code < MIN_CACHED_STATUS || code > MAX_CACHED_STATUS) {
+            return null;
+        }
+        if (protocol.equals(Protocols.HTTP_1_1)) {
+            return HTTP_1_1_STATUS_LINES[code - MIN_CACHED_STATUS];
+        } else if (protocol.equals(Protocols.HTTP_1_0)) {
+            return HTTP_1_0_STATUS_LINES[code - MIN_CACHED_STATUS];
+        }
+        return null;
+    }
+
+    /**
+     * Skips the headers that have already been written as part of the header block
+     */
+    private long skipBlockHeaders(final HeaderMap headers, long fiCookie) {
+        final HeaderBlock headerBlock = this.headerBlock;
+        if (headerBlock != null) {
+            while (fiCookie != -1L && headerBlock.contains(headers.fiCurrent(fiCookie).getHeaderName())) {
+                fiCookie = headers.fiNextNonEmpty(fiCookie);
+            }
+        }
+        return fiCookie;
     }
 
     /**
@@ -163,23 +243,38 @@ final class HttpResponseConduit extends AbstractStreamSinkConduit<StreamSinkCond
 
 
         assert buffer.remaining() >= 0x100;
-        exchange.getProtocol().appendTo(buffer);
-        buffer.put((byte) ' ');
         int code = exchange.getResponseCode();
         assert 999 >= code && code >= 100;
-        buffer.put((byte) (code / 100 + '0'));
-        buffer.put((byte) (code / 10 % 10 + '0'));
-        buffer.put((byte) (code % 10 + '0'));
-        buffer.put((byte) ' ');
-        String string = StatusCodes.getReason(code);
-        writeString(buffer, string);
-        buffer.put((byte) '\r').put((byte) '\n');
+        String string = null;
+        final byte[] statusLine = getStatusLine(exchange.getProtocol(), code);
+        if (statusLine != null) {
+            buffer.put(statusLine);
+        } else {
+            exchange.getProtocol().appendTo(buffer);
+            buffer.put((byte) ' ');
+            buffer.put((byte) (code / 100 + '0'));
+            buffer.put((byte) (code / 10 % 10 + '0'));
+            buffer.put((byte) (code % 10 + '0'));
+            buffer.put((byte) ' ');
+            writeString(buffer, StatusCodes.getReason(code));
+            buffer.put((byte) '\r').put((byte) '\n');
+        }
 
         int remaining = buffer.remaining();
 
 
         HeaderMap headers = exchange.getResponseHeaders();
-        long fiCookie = headers.fastIterateNonEmpty();
+        final HeaderBlock headerBlock = headers.getHeaderBlock();
+        if (headerBlock != null) {
+            //the block is only used if all of its headers are unmodified, and it fits into the buffer
+            final byte[] encoded = headerBlock.getEncoded(HEADER_BLOCK_ENCODER);
+            if (encoded.length + 2 <= remaining && headerBlock.isIntact(headers)) {
+                buffer.put(encoded);
+                remaining -= encoded.length;
+                this.headerBlock = headerBlock;
+            }
+        }
+        long fiCookie = skipBlockHeaders(headers, headers.fastIterateNonEmpty());
         while (fiCookie != -1) {
             HeaderValues headerValues = headers.fiCurrent(fiCookie);
 
@@ -217,7 +312,7 @@ final class HttpResponseConduit extends AbstractStreamSinkConduit<StreamSinkCond
                 writeString(buffer, string);
                 buffer.put((byte) '\r').put((byte) '\n');
             }
-            fiCookie = headers.fiNextNonEmpty(fiCookie);
+            fiCookie = skipBlockHeaders(headers, headers.fiNextNonEmpty(fiCookie));
         }
         buffer.put((byte) '\r').put((byte) '\n');
         buffer.flip();
@@ -397,7 +492,7 @@ final class HttpResponseConduit extends AbstractStreamSinkConduit<StreamSinkCond
                                 return STATE_HDR_EOL_LF;
                         }
                         buffer.put((byte) 10); // LF
-                        if ((fiCookie = headers.fiNextNonEmpty(fiCookie)) != -1L) {
+                        if ((fiCookie = skipBlockHeaders(headers, headers.fiNextNonEmpty(fiCookie))) != -1L) {
                             headerValues = headers.fiCurrent(fiCookie);
                             valueIdx = 0;
                             state = STATE_HDR_NAME;
@@ -468,7 +563,7 @@ final class HttpResponseConduit extends AbstractStreamSinkConduit<StreamSinkCond
                     if (valueIdx < headerValues.size()) {
                         state = STATE_HDR_NAME;
                         break;
-                    } else if ((fiCookie = headers.fiNextNonEmpty(fiCookie)) != -1L) {
+                    } else if ((fiCookie = skipBlockHeaders(headers, headers.fiNextNonEmpty(fiCookie))) != -1L) {
                         headerValues = headers.fiCurrent(fiCookie);
                         valueIdx = 0;
                         state = STATE_HDR_NAME;
@@ -0,0 +1,150 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.protocol.http;
+
+import java.nio.ByteBuffer;
+
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+
+/**
+ * A perfect hash table of the header names that the request parser interns, so the parser's fast path can map a
+ * header name straight to the {@link Headers} constant.
+ * <p/>
+ * The hash is computed from the length and three bytes of the name, and the multiplier is chosen when the class is
+ * loaded so that no two names share a slot. Matching is case sensitive, to give the same results as the generated
+ * parser.
+ *
+ * @author agent
+ */
+final class KnownHeaders {
+
+    /**
+     * The headers that are interned by the generated parser, see the {@link HttpRequestParser} parser config.
+     */
+    private static final HttpString[] HEADERS = {
+            Headers.ACCEPT,
+            Headers.ACCEPT_CHARSET,
+            Headers.ACCEPT_ENCODING,
+            Headers.ACCEPT_LANGUAGE,
+            Headers.ACCEPT_RANGES,
+            Headers.AUTHORIZATION,
+            Headers.CACHE_CONTROL,
+            Headers.COOKIE,
+            Headers.CONNECTION,
+            Headers.CONTENT_LENGTH,
+            Headers.CONTENT_TYPE,
+            Headers.EXPECT,
+            Headers.FROM,
+            Headers.HOST,
+            Headers.IF_MATCH,
+            Headers.IF_MODIFIED_SINCE,
+            Headers.IF_NONE_MATCH,
+            Headers.IF_RANGE,
+            Headers.IF_UNMODIFIED_SINCE,
+            Headers.MAX_FORWARDS,
+            Headers.ORIGIN,
+            Headers.PRAGMA,
+            Headers.PROXY_AUTHORIZATION,
+            Headers.RANGE,
+            Headers.REFERER,
+            Headers.REFRESH,
+            Headers.SEC_WEB_SOCKET_KEY,
+            Headers.SEC_WEB_SOCKET_VERSION,
+            Headers.SERVER,
+            Headers.SSL_CLIENT_CERT,
+            Headers.SSL_CIPHER,
+            Headers.SSL_SESSION_ID,
+            Headers.SSL_CIPHER_USEKEYSIZE,
+            Headers.STRICT_TRANSPORT_SECURITY,
+            Headers.TRAILER,
+            Headers.TRANSFER_ENCODING,
+            Headers.UPGRADE,
+            Headers.USER_AGENT,
+            Headers.VIA,
+            Headers.WARNING
+    };
+
+    private static final int TABLE_BITS = 8;
+
+    private static final int MULTIPLIER;
+    private static final HttpString[] TABLE;
+    private static final byte[][] TABLE_BYTES;
+
+    static {
+        int multiplier = 1;
+        HttpString[] table;
+        while ((table = createTable(multiplier)) == null) {
+            multiplier += 2;
+        }
+        MULTIPLIER = multiplier;
+        TABLE = table;
+        TABLE_BYTES = new byte[table.length][];
+        for (int i = 0; i < table.length; ++i) {
+            if (table[i] != null) {
+                TABLE_BYTES[i] = table[i].toString().getBytes();
+            }
+        }
+    }
+
+    private KnownHeaders() {
+    }
+
+    /**
+     * @return A collision free table for the given multiplier, or <code>null</code> if two names share a slot
+     */
+    private static HttpString[] createTable(final int multiplier) {
+        final HttpString[] table = new HttpString[1 << TABLE_BITS];
+        for (HttpString header : HEADERS) {
+            final int length = header.length();
+            final int slot = slot(length, header.byteAt(0), header.byteAt(length / 2), header.byteAt(length - 1), multiplier);
+            if (table[slot] != null) {
+                return null;
+            }
+            table[slot] = header;
+        }
+        return table;
+    }
+
+    private static int slot(final int length, final byte first, final byte middle, final byte last, final int multiplier) {
+        final int hash = length * 0x9E3779B1 ^ (first & 0xFF) << 16 ^ (last & 0xFF) << 8 ^ (middle & 0xFF);
+        return (hash * multiplier) >>> (32 - TABLE_BITS);
+    }
+
+    /**
+     * Returns the interned header with the given name
+     *
+     * @param buffer The buffer that contains the name
+     * @param start  The index of the first byte of the name
+     * @param length The length of the name, which must be larger than zero
+     * @return The interned header, or <code>null</code> if the name is not a known header
+     */
+    static HttpString lookup(final ByteBuffer buffer, final int start, final int length) {
+        final int slot = slot(length, buffer.get(start), buffer.get(start + length / 2), buffer.get(start + length - 1), MULTIPLIER);
+        final byte[] bytes = TABLE_BYTES[slot];
+        if (bytes == null || bytes.length != length) {
+            return null;
+        }
+        for (int i = 0; i < length; ++i) {
+            if (bytes[i] != buffer.get(start + i)) {
+                return null;
+            }
+        }
+        return TABLE[slot];
+    }
+}
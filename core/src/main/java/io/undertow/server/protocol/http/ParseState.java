@@ -106,6 +106,11 @@ class ParseState {
 
     final StringBuilder decodeBuffer = new StringBuilder();
 
+    /**
+     * Scratch space used by the fast path of the parser to copy data out of direct buffers.
+     */
+    byte[] bytes;
+
     /**
      * In general browsers will often send the same header with every request. This cache allows us to re-use the resulting
      * strings.
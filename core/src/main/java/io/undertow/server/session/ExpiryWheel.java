@@ -0,0 +1,195 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.util.List;
+
+/**
+ * A hierarchical timing wheel used to track expiry times.
+ * <p/>
+ * The wheel has four levels of 64 slots each. Level 0 has a slot per tick, and every higher level has slots that
+ * cover a full rotation of the level below it, so with a one second tick the wheel covers a little over 190 days.
+ * When the lowest level completes a rotation the next slot of the level above is cascaded down. Scheduling and
+ * removing a node is constant time, and advancing the wheel costs one slot per tick plus the cascades.
+ * <p/>
+ * This class is not thread safe, callers must provide their own locking.
+ *
+ * @author agent
+ */
+final class ExpiryWheel<T> {
+
+    private static final int LEVELS = 4;
+    private static final int SLOT_BITS = 6;
+    private static final int SLOTS = 1 << SLOT_BITS;
+    private static final int SLOT_MASK = SLOTS - 1;
+
+    private final long tickDuration;
+    private final Node<T>[][] wheels;
+    private long currentTick;
+    private int size;
+
+    @SuppressWarnings("unchecked")
+    ExpiryWheel(final long tickDuration, final long now) {
+        this.tickDuration = tickDuration;
+        this.wheels = new Node[LEVELS][SLOTS];
+        this.currentTick = now / tickDuration;
+    }
+
+    /**
+     * Schedule a node to expire at the given time, moving it if it is already scheduled. The expiry is rounded up to
+     * the next tick.
+     *
+     * @param node       the node
+     * @param expireTime the expiry time in milliseconds
+     */
+    void schedule(final Node<T> node, final long expireTime) {
+        if (node.scheduled) {
+            remove(node);
+        }
+        long tick = (expireTime + tickDuration - 1) / tickDuration;
+        if (tick <= currentTick) {
+            tick = currentTick + 1;
+        }
+        node.tick = tick;
+        insert(node);
+        size++;
+    }
+
+    void remove(final Node<T> node) {
+        if (!node.scheduled) {
+            return;
+        }
+        unlink(node);
+        size--;
+    }
+
+    /**
+     * Advance the wheel to the given time, adding the values of all the nodes that are due to the given list. Due
+     * nodes are no longer scheduled.
+     *
+     * @param now the current time in milliseconds
+     * @param due the list to add the due values to
+     */
+    void advance(final long now, final List<T> due) {
+        final long target = now / tickDuration;
+        if (target - currentTick > SLOTS) {
+            // Rather than stepping through a long gap tick by tick just place every node again
+            currentTick = target;
+            for (int level = 0; level < LEVELS; ++level) {
+                for (int slot = 0; slot < SLOTS; ++slot) {
+                    reinsert(detach(level, slot), due);
+                }
+            }
+            return;
+        }
+        while (currentTick < target) {
+            currentTick++;
+            for (int level = 1; level < LEVELS; ++level) {
+                if ((currentTick & ((1L << (level * SLOT_BITS)) - 1)) != 0) {
+                    break;
+                }
+                reinsert(detach(level, (int) ((currentTick >>> (level * SLOT_BITS)) & SLOT_MASK)), due);
+            }
+            reinsert(detach(0, (int) (currentTick & SLOT_MASK)), due);
+        }
+    }
+
+    boolean isEmpty() {
+        return size == 0;
+    }
+
+    int size() {
+        return size;
+    }
+
+    private void reinsert(Node<T> node, final List<T> due) {
+        while (node != null) {
+            final Node<T> next = node.next;
+            node.next = null;
+            node.prev = null;
+            if (node.tick <= currentTick) {
+                node.scheduled = false;
+                size--;
+                due.add(node.value);
+            } else {
+                insert(node);
+            }
+            node = next;
+        }
+    }
+
+    private Node<T> detach(final int level, final int slot) {
+        final Node<T> head = wheels[level][slot];
+        wheels[level][slot] = null;
+        return head;
+    }
+
+    private void insert(final Node<T> node) {
+        final long delta = node.tick - currentTick;
+        int level = 0;
+        while (level < LEVELS - 1 && delta >= (1L << ((level + 1) * SLOT_BITS))) {
+            level++;
+        }
+        final int slot = (int) ((node.tick >>> (level * SLOT_BITS)) & SLOT_MASK);
+        final Node<T> head = wheels[level][slot];
+        node.next = head;
+        node.prev = null;
+        if (head != null) {
+            head.prev = node;
+        }
+        wheels[level][slot] = node;
+        node.level = level;
+        node.slot = slot;
+        node.scheduled = true;
+    }
+
+    private void unlink(final Node<T> node) {
+        if (node.prev == null) {
+            wheels[node.level][node.slot] = node.next;
+        } else {
+            node.prev.next = node.next;
+        }
+        if (node.next != null) {
+            node.next.prev = node.prev;
+        }
+        node.prev = null;
+        node.next = null;
+        node.scheduled = false;
+    }
+
+    static final class Node<T> {
+
+        private final T value;
+        private long tick;
+        private int level;
+        private int slot;
+        private volatile boolean scheduled;
+        private Node<T> prev;
+        private Node<T> next;
+
+        Node(final T value) {
+            this.value = value;
+        }
+
+        boolean isScheduled() {
+            return scheduled;
+        }
+    }
+
+}
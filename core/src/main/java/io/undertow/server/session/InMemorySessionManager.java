@@ -25,12 +25,16 @@ import io.undertow.util.ConcurrentDirectDeque;
 
 import java.security.AccessController;
 import java.security.PrivilegedAction;
+import java.util.ArrayList;
 import java.util.HashSet;
+import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ConcurrentMap;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 import java.util.concurrent.atomic.AtomicReferenceFieldUpdater;
 
 import org.xnio.XnioExecutor;
@@ -39,14 +43,46 @@ import org.xnio.XnioWorker;
 /**
  * The default in memory session manager. This basically just stores sessions in an in memory hash map.
  * <p/>
+ * Sessions are split into shards by session id. Each shard tracks the expiry of its sessions on an {@link ExpiryWheel},
+ * which is advanced by a single timer task per shard rather than a timer per session. Access times are only updated
+ * with a granularity of one second, so repeated access to a session within that period does not move it on the wheel
+ * or in the eviction queue. A session whose expiry time has moved on is rescheduled when its slot on the wheel is
+ * reached.
  *
  * @author Stuart Douglas
  */
 public class InMemorySessionManager implements SessionManager {
 
+    /**
+     * The granularity of the last accessed time and of the expiry wheel, in milliseconds.
+     */
+    private static final long ACCESS_GRANULARITY = 1000;
+
+    private static final int SHARDS;
+
+    static {
+        int shards = 1;
+        while (shards < Runtime.getRuntime().availableProcessors() * 4 && shards < 64) {
+            shards <<= 1;
+        }
+        SHARDS = shards;
+    }
+
+    private static final AtomicIntegerFieldUpdater<InMemorySessionManager> sessionCountUpdater = AtomicIntegerFieldUpdater.newUpdater(InMemorySessionManager.class, "sessionCount");
+    private static final AtomicIntegerFieldUpdater<InMemorySessionManager> maxActiveSessionsUpdater = AtomicIntegerFieldUpdater.newUpdater(InMemorySessionManager.class, "maxActiveSessions");
+    private static final AtomicLongFieldUpdater<InMemorySessionManager> createdSessionCountUpdater = AtomicLongFieldUpdater.newUpdater(InMemorySessionManager.class, "createdSessionCount");
+    private static final AtomicLongFieldUpdater<InMemorySessionManager> expiredSessionCountUpdater = AtomicLongFieldUpdater.newUpdater(InMemorySessionManager.class, "expiredSessionCount");
+    private static final AtomicLongFieldUpdater<InMemorySessionManager> evictedSessionCountUpdater = AtomicLongFieldUpdater.newUpdater(InMemorySessionManager.class, "evictedSessionCount");
+
     private volatile SessionIdGenerator sessionIdGenerator = new SecureRandomSessionIdGenerator();
 
-    private final ConcurrentMap<String, InMemorySession> sessions;
+    private final Shard[] shards;
+
+    private volatile int sessionCount;
+    private volatile int maxActiveSessions;
+    private volatile long createdSessionCount;
+    private volatile long expiredSessionCount;
+    private volatile long evictedSessionCount;
 
     private final SessionListeners sessionListeners = new SessionListeners();
 
@@ -63,7 +99,10 @@ public class InMemorySessionManager implements SessionManager {
 
     public InMemorySessionManager(String deploymentName, int maxSessions) {
         this.deploymentName = deploymentName;
-        this.sessions = new ConcurrentHashMap<>();
+        this.shards = new Shard[SHARDS];
+        for (int i = 0; i < SHARDS; ++i) {
+            shards[i] = new Shard();
+        }
         this.maxSize = maxSessions;
         ConcurrentDirectDeque<String> evictionQueue = null;
         if (maxSessions > 0) {
@@ -83,26 +122,33 @@ public class InMemorySessionManager implements SessionManager {
 
     @Override
     public void start() {
-
+        for (Shard shard : shards) {
+            shard.start();
+        }
     }
 
     @Override
     public void stop() {
-        for (Map.Entry<String, InMemorySession> session : sessions.entrySet()) {
-            session.getValue().session.destroy();
-            sessionListeners.sessionDestroyed(session.getValue().session, null, SessionListener.SessionDestroyedReason.UNDEPLOY);
+        for (Shard shard : shards) {
+            shard.stop();
+            for (Map.Entry<String, InMemorySession> session : shard.sessions.entrySet()) {
+                session.getValue().session.destroy();
+                sessionListeners.sessionDestroyed(session.getValue().session, null, SessionListener.SessionDestroyedReason.UNDEPLOY);
+            }
+            shard.sessions.clear();
         }
-        sessions.clear();
+        sessionCount = 0;
     }
 
     @Override
     public Session createSession(final HttpServerExchange serverExchange, final SessionConfig config) {
         if (evictionQueue != null) {
-            while (sessions.size() >= maxSize && !evictionQueue.isEmpty()) {
+            while (sessionCount >= maxSize && !evictionQueue.isEmpty()) {
                 String key = evictionQueue.poll();
                 UndertowLogger.REQUEST_LOGGER.debugf("Removing session %s as max size has been hit", key);
-                InMemorySession toRemove = sessions.get(key);
+                InMemorySession toRemove = findSession(key);
                 if (toRemove != null) {
+                    evictedSessionCountUpdater.incrementAndGet(this);
                     toRemove.session.invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT); //todo: better reason
                 }
             }
@@ -114,7 +160,7 @@ public class InMemorySessionManager implements SessionManager {
         int count = 0;
         while (sessionID == null) {
             sessionID = sessionIdGenerator.createSessionId();
-            if(sessions.containsKey(sessionID)) {
+            if(findSession(sessionID) != null) {
                 sessionID = null;
             }
             if(count++ == 100) {
@@ -131,9 +177,9 @@ public class InMemorySessionManager implements SessionManager {
         }
         final SessionImpl session = new SessionImpl(this, sessionID, config, serverExchange.getIoThread(), serverExchange.getConnection().getWorker(), evictionToken);
         InMemorySession im = new InMemorySession(session, defaultSessionTimeout);
-        sessions.put(sessionID, im);
+        addSession(sessionID, im);
+        createdSessionCountUpdater.incrementAndGet(this);
         config.setSessionId(serverExchange, session.getId());
-        im.lastAccessed = System.currentTimeMillis();
         session.bumpTimeout();
         sessionListeners.sessionCreated(session, serverExchange);
         return session;
@@ -150,7 +196,7 @@ public class InMemorySessionManager implements SessionManager {
         if (sessionId == null) {
             return null;
         }
-        final InMemorySession sess = sessions.get(sessionId);
+        final InMemorySession sess = findSession(sessionId);
         if (sess == null) {
             return null;
         } else {
@@ -158,6 +204,37 @@ public class InMemorySessionManager implements SessionManager {
         }
     }
 
+    private Shard shardFor(final String sessionId) {
+        int h = sessionId.hashCode();
+        h ^= (h >>> 16);
+        return shards[h & (SHARDS - 1)];
+    }
+
+    private InMemorySession findSession(final String sessionId) {
+        return shardFor(sessionId).sessions.get(sessionId);
+    }
+
+    private void addSession(final String sessionId, final InMemorySession session) {
+        if (shardFor(sessionId).sessions.put(sessionId, session) == null) {
+            final int count = sessionCountUpdater.incrementAndGet(this);
+            int max;
+            do {
+                max = maxActiveSessions;
+                if (count <= max) {
+                    break;
+                }
+            } while (!maxActiveSessionsUpdater.compareAndSet(this, max, count));
+        }
+    }
+
+    private InMemorySession removeSession(final String sessionId) {
+        final InMemorySession removed = shardFor(sessionId).sessions.remove(sessionId);
+        if (removed != null) {
+            sessionCountUpdater.decrementAndGet(this);
+        }
+        return removed;
+    }
+
 
     @Override
     public synchronized void registerSessionListener(final SessionListener listener) {
@@ -186,7 +263,46 @@ public class InMemorySessionManager implements SessionManager {
 
     @Override
     public Set<String> getAllSessions() {
-        return new HashSet<>(sessions.keySet());
+        final Set<String> ids = new HashSet<>();
+        for (Shard shard : shards) {
+            ids.addAll(shard.sessions.keySet());
+        }
+        return ids;
+    }
+
+    /**
+     * @return the number of currently active sessions
+     */
+    public int getActiveSessionCount() {
+        return sessionCount;
+    }
+
+    /**
+     * @return the highest number of sessions that have been active at the same time
+     */
+    public int getMaxActiveSessions() {
+        return maxActiveSessions;
+    }
+
+    /**
+     * @return the number of sessions that have been created
+     */
+    public long getCreatedSessionCount() {
+        return createdSessionCount;
+    }
+
+    /**
+     * @return the number of sessions that have been invalidated because they timed out
+     */
+    public long getExpiredSessionCount() {
+        return expiredSessionCount;
+    }
+
+    /**
+     * @return the number of sessions that have been invalidated because the maximum number of sessions was reached
+     */
+    public long getEvictedSessionCount() {
+        return evictedSessionCount;
     }
 
     @Override
@@ -235,29 +351,11 @@ public class InMemorySessionManager implements SessionManager {
         private volatile Object evictionToken;
         private final SessionConfig sessionCookieConfig;
         private volatile long expireTime = -1;
+        private long lastEvictionBump;
 
         final XnioExecutor executor;
         final XnioWorker worker;
 
-        XnioExecutor.Key timerCancelKey;
-
-        Runnable cancelTask = new Runnable() {
-            @Override
-            public void run() {
-                worker.execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        long currentTime = System.currentTimeMillis();
-                        if(currentTime >= expireTime) {
-                            invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
-                        } else {
-                            timerCancelKey = executor.executeAfter(cancelTask, expireTime - currentTime, TimeUnit.MILLISECONDS);
-                        }
-                    }
-                });
-            }
-        };
-
         private SessionImpl(InMemorySessionManager sessionManager, final String sessionId, final SessionConfig sessionCookieConfig, final XnioExecutor executor, final XnioWorker worker, final Object evictionToken) {
             this.sessionManager = sessionManager;
             this.sessionId = sessionId;
@@ -265,36 +363,61 @@ public class InMemorySessionManager implements SessionManager {
             this.executor = executor;
             this.worker = worker;
             this.evictionToken = evictionToken;
+            this.lastEvictionBump = System.currentTimeMillis();
         }
 
         synchronized void bumpTimeout() {
-            final int maxInactiveInterval = getMaxInactiveInterval();
+            final InMemorySession sess = sessionManager.findSession(sessionId);
+            if (sess == null) {
+                throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
+            }
+            final int maxInactiveInterval = sess.maxInactiveInterval;
+            final long currentTime = System.currentTimeMillis();
             if (maxInactiveInterval > 0) {
-                long newExpireTime = System.currentTimeMillis() + (maxInactiveInterval * 1000);
-                if(timerCancelKey != null && (newExpireTime < expireTime)) {
-                    // We have to re-schedule as the new maxInactiveInterval is lower than the old one
-                    if (!timerCancelKey.remove()) {
-                        return;
-                    }
-                    timerCancelKey = null;
-                }
-                expireTime = newExpireTime;
-                if(timerCancelKey == null) {
-                    //+1 second, to make sure that the time has actually expired
-                    //we don't re-schedule every time, as it is expensive
-                    //instead when it expires we check if the timeout has been bumped, and if so we re-schedule
-                    timerCancelKey = executor.executeAfter(cancelTask, maxInactiveInterval + 1, TimeUnit.SECONDS);
+                final long newExpireTime = currentTime + (maxInactiveInterval * 1000L);
+                if (!sess.expiryNode.isScheduled() || newExpireTime < expireTime) {
+                    // Not scheduled yet, or the new maxInactiveInterval is lower than the old one and we have to move it
+                    expireTime = newExpireTime;
+                    sessionManager.shardFor(sessionId).schedule(sess, newExpireTime, executor, worker);
+                } else if (newExpireTime - expireTime >= ACCESS_GRANULARITY) {
+                    // We don't re-schedule every time, as it is expensive. Instead when the slot on the wheel is
+                    // reached we check if the timeout has been bumped, and if so we re-schedule
+                    expireTime = newExpireTime;
                 }
+            } else if (expireTime != -1) {
+                expireTime = -1;
+                sessionManager.shardFor(sessionId).unschedule(sess);
             }
-            if (evictionToken != null) {
+            if (evictionToken != null && currentTime - lastEvictionBump >= ACCESS_GRANULARITY) {
                 Object token = evictionToken;
                 if (evictionTokenUpdater.compareAndSet(this, token, null)) {
+                    lastEvictionBump = currentTime;
                     sessionManager.evictionQueue.removeToken(token);
                     this.evictionToken = sessionManager.evictionQueue.offerLastAndReturnToken(sessionId);
                 }
             }
         }
 
+        /**
+         * Called when the slot of this session on the expiry wheel has been reached.
+         */
+        synchronized void expireIfTimedOut() {
+            final InMemorySession sess = sessionManager.findSession(sessionId);
+            if (sess == null) {
+                return;
+            }
+            final long expireTime = this.expireTime;
+            if (expireTime == -1) {
+                return;
+            }
+            if (System.currentTimeMillis() >= expireTime) {
+                InMemorySessionManager.expiredSessionCountUpdater.incrementAndGet(sessionManager);
+                invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
+            } else {
+                sessionManager.shardFor(sessionId).schedule(sess, expireTime, executor, worker);
+            }
+        }
+
 
         @Override
         public String getId() {
@@ -303,15 +426,19 @@ public class InMemorySessionManager implements SessionManager {
 
         @Override
         public void requestDone(final HttpServerExchange serverExchange) {
-            final InMemorySession sess = sessionManager.sessions.get(sessionId);
+            final InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess != null) {
-                sess.lastAccessed = System.currentTimeMillis();
+                final long currentTime = System.currentTimeMillis();
+                // The last accessed time is only updated with a coarse granularity
+                if (currentTime - sess.lastAccessed >= ACCESS_GRANULARITY) {
+                    sess.lastAccessed = currentTime;
+                }
             }
         }
 
         @Override
         public long getCreationTime() {
-            final InMemorySession sess = sessionManager.sessions.get(sessionId);
+            final InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess == null) {
                 throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
             }
@@ -320,7 +447,7 @@ public class InMemorySessionManager implements SessionManager {
 
         @Override
         public long getLastAccessedTime() {
-            final InMemorySession sess = sessionManager.sessions.get(sessionId);
+            final InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess == null) {
                 throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
             }
@@ -329,7 +456,7 @@ public class InMemorySessionManager implements SessionManager {
 
         @Override
         public void setMaxInactiveInterval(final int interval) {
-            final InMemorySession sess = sessionManager.sessions.get(sessionId);
+            final InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess == null) {
                 throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
             }
@@ -339,7 +466,7 @@ public class InMemorySessionManager implements SessionManager {
 
         @Override
         public int getMaxInactiveInterval() {
-            final InMemorySession sess = sessionManager.sessions.get(sessionId);
+            final InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess == null) {
                 throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
             }
@@ -348,7 +475,7 @@ public class InMemorySessionManager implements SessionManager {
 
         @Override
         public Object getAttribute(final String name) {
-            final InMemorySession sess = sessionManager.sessions.get(sessionId);
+            final InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess == null) {
                 throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
             }
@@ -358,7 +485,7 @@ public class InMemorySessionManager implements SessionManager {
 
         @Override
         public Set<String> getAttributeNames() {
-            final InMemorySession sess = sessionManager.sessions.get(sessionId);
+            final InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess == null) {
                 throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
             }
@@ -368,7 +495,7 @@ public class InMemorySessionManager implements SessionManager {
 
         @Override
         public Object setAttribute(final String name, final Object value) {
-            final InMemorySession sess = sessionManager.sessions.get(sessionId);
+            final InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess == null) {
                 throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
             }
@@ -384,7 +511,7 @@ public class InMemorySessionManager implements SessionManager {
 
         @Override
         public Object removeAttribute(final String name) {
-            final InMemorySession sess = sessionManager.sessions.get(sessionId);
+            final InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess == null) {
                 throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
             }
@@ -400,18 +527,16 @@ public class InMemorySessionManager implements SessionManager {
         }
 
         synchronized void invalidate(final HttpServerExchange exchange, SessionListener.SessionDestroyedReason reason) {
-            if (timerCancelKey != null) {
-                timerCancelKey.remove();
-            }
-            InMemorySession sess = sessionManager.sessions.get(sessionId);
+            InMemorySession sess = sessionManager.findSession(sessionId);
             if (sess == null) {
                 if (reason == SessionListener.SessionDestroyedReason.INVALIDATED) {
                     throw UndertowMessages.MESSAGES.sessionAlreadyInvalidated();
                 }
                 return;
             }
+            sessionManager.shardFor(sessionId).unschedule(sess);
             sessionManager.sessionListeners.sessionDestroyed(sess.session, exchange, reason);
-            sessionManager.sessions.remove(sessionId);
+            sessionManager.removeSession(sessionId);
             if (exchange != null) {
                 sessionCookieConfig.clearSession(exchange, this.getId());
             }
@@ -423,23 +548,25 @@ public class InMemorySessionManager implements SessionManager {
         }
 
         @Override
-        public String changeSessionId(final HttpServerExchange exchange, final SessionConfig config) {
+        public synchronized String changeSessionId(final HttpServerExchange exchange, final SessionConfig config) {
             final String oldId = sessionId;
-            final InMemorySession sess = sessionManager.sessions.get(oldId);
+            final InMemorySession sess = sessionManager.findSession(oldId);
             String newId = sessionManager.sessionIdGenerator.createSessionId();
+            // The new id may belong to a different shard, so the expiry moves with the session
+            sessionManager.shardFor(oldId).unschedule(sess);
             this.sessionId = newId;
-            sessionManager.sessions.put(newId, sess);
-            sessionManager.sessions.remove(oldId);
+            sessionManager.addSession(newId, sess);
+            sessionManager.removeSession(oldId);
+            if (expireTime != -1) {
+                sessionManager.shardFor(newId).schedule(sess, expireTime, executor, worker);
+            }
             config.setSessionId(exchange, this.getId());
             sessionManager.sessionListeners.sessionIdChanged(sess.session, oldId);
             return newId;
         }
 
         private synchronized void destroy() {
-            if (timerCancelKey != null) {
-                timerCancelKey.remove();
-            }
-            cancelTask = null;
+            expireTime = -1;
         }
 
     }
@@ -458,8 +585,80 @@ public class InMemorySessionManager implements SessionManager {
         }
 
         final ConcurrentMap<String, Object> attributes = new ConcurrentHashMap<>();
+        final ExpiryWheel.Node<InMemorySession> expiryNode = new ExpiryWheel.Node<>(this);
         volatile long lastAccessed;
         final long creationTime;
         volatile int maxInactiveInterval;
     }
+
+    /**
+     * A shard of the sessions, along with the expiry wheel for them. The wheel is advanced by a timer task that is only
+     * scheduled while the shard has sessions that can expire. The sweep never takes a session lock, the sessions that are
+     * due are checked on a worker thread.
+     */
+    private static final class Shard implements Runnable {
+
+        final ConcurrentMap<String, InMemorySession> sessions = new ConcurrentHashMap<>();
+
+        private final ExpiryWheel<InMemorySession> wheel = new ExpiryWheel<>(ACCESS_GRANULARITY, System.currentTimeMillis());
+        private XnioExecutor executor;
+        private XnioWorker worker;
+        private XnioExecutor.Key sweepKey;
+        private boolean stopped;
+
+        synchronized void schedule(final InMemorySession session, final long expireTime, final XnioExecutor executor, final XnioWorker worker) {
+            if (stopped) {
+                return;
+            }
+            wheel.schedule(session.expiryNode, expireTime);
+            if (sweepKey == null) {
+                this.executor = executor;
+                this.worker = worker;
+                sweepKey = executor.executeAfter(this, ACCESS_GRANULARITY, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void unschedule(final InMemorySession session) {
+            wheel.remove(session.expiryNode);
+        }
+
+        synchronized void start() {
+            stopped = false;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (sweepKey != null) {
+                sweepKey.remove();
+                sweepKey = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            final List<InMemorySession> due = new ArrayList<>();
+            final XnioWorker worker;
+            synchronized (this) {
+                sweepKey = null;
+                if (stopped) {
+                    return;
+                }
+                wheel.advance(System.currentTimeMillis(), due);
+                if (!wheel.isEmpty()) {
+                    sweepKey = executor.executeAfter(this, ACCESS_GRANULARITY, TimeUnit.MILLISECONDS);
+                }
+                worker = this.worker;
+            }
+            if (!due.isEmpty()) {
+                worker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (InMemorySession session : due) {
+                            session.session.expireIfTimedOut();
+                        }
+                    }
+                });
+            }
+        }
+    }
 }
@@ -0,0 +1,781 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import io.undertow.UndertowLogger;
+import io.undertow.UndertowMessages;
+import io.undertow.server.ExchangeCompletionListener;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.AttachmentKey;
+import org.xnio.XnioExecutor;
+import org.xnio.XnioWorker;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A session manager that keeps the attributes of most sessions outside of the java heap in serialized form.
+ * <p/>
+ * Only a limited number of recently used sessions are kept on the heap with their attributes deserialized. When this hot
+ * tier is full the least recently used session is serialized using the configured {@link SessionAttributeCodecs} and
+ * moved to direct memory, and once the direct memory limit has been reached to an optional memory mapped overflow file.
+ * The next access to a serialized session deserializes it again. The session metadata (id, timestamps and timeout) is
+ * always kept on the heap.
+ * <p/>
+ * Attribute values that are obtained from a session are only stored again when the session is serialized, so a session
+ * that was obtained through {@link #getSession(HttpServerExchange, SessionConfig)} or
+ * {@link #createSession(HttpServerExchange, SessionConfig)} is never serialized while that request is in progress. The hot
+ * tier can therefore grow beyond its limit while more sessions than that are in use, and shrinks again as the requests
+ * complete. A session with an attribute that cannot be encoded is kept on the heap until it is modified.
+ *
+ * @author agent
+ */
+public class OffHeapSessionManager implements SessionManager {
+
+    /**
+     * The granularity of the last accessed time and of the expiry wheel, in milliseconds.
+     */
+    private static final long ACCESS_GRANULARITY = 1000;
+
+    private static final int BLOCK_SIZE = 256;
+    private static final int REGION_SIZE = 1024 * 1024;
+
+    private final String deploymentName;
+    private final SessionAttributeCodecs codecs;
+    private final OffHeapSessionStore store;
+    private final int maxHotSessions;
+
+    private final ConcurrentMap<String, SessionImpl> sessions = new ConcurrentHashMap<>();
+
+    /**
+     * The sessions whose attributes are on the heap, in access order. Guarded by itself.
+     */
+    private final LinkedHashMap<SessionImpl, Boolean> hotSessions = new LinkedHashMap<>(16, 0.75f, true);
+
+    private final SessionListeners sessionListeners = new SessionListeners();
+
+    private final ExpiryTask expiryTask = new ExpiryTask();
+
+    /**
+     * The sessions of this manager that the exchange is using, and that cannot be serialized until it is done.
+     */
+    private final AttachmentKey<Set<SessionImpl>> requestSessions = AttachmentKey.create(Set.class);
+
+    private final ExchangeCompletionListener requestCompletionListener = new ExchangeCompletionListener() {
+        @Override
+        public void exchangeEvent(final HttpServerExchange exchange, final NextListener nextListener) {
+            try {
+                //requestDone() is normally called for every session the exchange used, this releases any that it was not
+                final Set<SessionImpl> used = exchange.getAttachment(requestSessions);
+                if (used != null) {
+                    for (SessionImpl session : new ArrayList<>(used)) {
+                        session.requestDone(exchange);
+                    }
+                }
+            } finally {
+                nextListener.proceed();
+            }
+        }
+    };
+
+    private volatile SessionIdGenerator sessionIdGenerator = new SecureRandomSessionIdGenerator();
+
+    private volatile ClassLoader classLoader;
+
+    /**
+     * 30 minute default
+     */
+    private volatile int defaultSessionTimeout = 30 * 60;
+
+    /**
+     * @param deploymentName  the deployment name
+     * @param maxHotSessions  the maximum number of sessions to keep deserialized on the heap
+     * @param maxDirectMemory the maximum amount of direct memory used for serialized sessions
+     */
+    public OffHeapSessionManager(final String deploymentName, final int maxHotSessions, final long maxDirectMemory) {
+        this(deploymentName, maxHotSessions, maxDirectMemory, null, 0, SessionAttributeCodecs.defaultCodecs());
+    }
+
+    /**
+     * @param deploymentName  the deployment name
+     * @param maxHotSessions  the maximum number of sessions to keep deserialized on the heap
+     * @param maxDirectMemory the maximum amount of direct memory used for serialized sessions
+     * @param overflowFile    the file that serialized sessions are written to once the direct memory is exhausted, may be
+     *                        <code>null</code>. The file is deleted when the session manager is stopped
+     * @param maxOverflowSize the maximum size of the overflow file
+     * @param codecs          the codecs used to serialize the session attributes
+     */
+    public OffHeapSessionManager(final String deploymentName, final int maxHotSessions, final long maxDirectMemory, final File overflowFile, final long maxOverflowSize, final SessionAttributeCodecs codecs) {
+        if (codecs == null) {
+            throw UndertowMessages.MESSAGES.argumentCannotBeNull("codecs");
+        }
+        this.deploymentName = deploymentName;
+        this.maxHotSessions = maxHotSessions;
+        this.codecs = codecs;
+        this.store = new OffHeapSessionStore(BLOCK_SIZE, REGION_SIZE, maxDirectMemory, overflowFile, maxOverflowSize);
+    }
+
+    @Override
+    public String getDeploymentName() {
+        return deploymentName;
+    }
+
+    @Override
+    public void start() {
+        expiryTask.start();
+    }
+
+    @Override
+    public void stop() {
+        expiryTask.stop();
+        for (SessionImpl session : sessions.values()) {
+            sessionListeners.sessionDestroyed(session, null, SessionListener.SessionDestroyedReason.UNDEPLOY);
+            session.destroy();
+        }
+        sessions.clear();
+        synchronized (hotSessions) {
+            hotSessions.clear();
+        }
+        try {
+            store.close();
+        } catch (IOException e) {
+            UndertowLogger.REQUEST_LOGGER.ioException(e);
+        }
+    }
+
+    @Override
+    public Session createSession(final HttpServerExchange serverExchange, final SessionConfig config) {
+        if (config == null) {
+            throw UndertowMessages.MESSAGES.couldNotFindSessionCookieConfig();
+        }
+        String sessionID = config.findSessionId(serverExchange);
+        int count = 0;
+        while (sessionID == null) {
+            sessionID = sessionIdGenerator.createSessionId();
+            if (sessions.containsKey(sessionID)) {
+                sessionID = null;
+            }
+            if (count++ == 100) {
+                //this should never happen
+                //but we guard against pathalogical session id generators to prevent an infinite loop
+                throw UndertowMessages.MESSAGES.couldNotGenerateUniqueSessionId();
+            }
+        }
+        final SessionImpl session = new SessionImpl(sessionID, config, serverExchange.getIoThread(), serverExchange.getConnection().getWorker(), defaultSessionTimeout);
+        if (sessions.putIfAbsent(sessionID, session) != null) {
+            throw UndertowMessages.MESSAGES.sessionAlreadyExists(sessionID);
+        }
+        config.setSessionId(serverExchange, session.getId());
+        synchronized (session) {
+            session.bumpTimeout();
+        }
+        session.requestStarted(serverExchange);
+        session.accessed(true);
+        sessionListeners.sessionCreated(session, serverExchange);
+        return session;
+    }
+
+    @Override
+    public Session getSession(final HttpServerExchange serverExchange, final SessionConfig config) {
+        final String sessionId = config.findSessionId(serverExchange);
+        if (sessionId == null) {
+            return null;
+        }
+        final SessionImpl session = sessions.get(sessionId);
+        if (session != null) {
+            session.requestStarted(serverExchange);
+        }
+        return session;
+    }
+
+    @Override
+    public Session getSession(final String sessionId) {
+        if (sessionId == null) {
+            return null;
+        }
+        return sessions.get(sessionId);
+    }
+
+    @Override
+    public synchronized void registerSessionListener(final SessionListener listener) {
+        sessionListeners.addSessionListener(listener);
+    }
+
+    @Override
+    public synchronized void removeSessionListener(final SessionListener listener) {
+        sessionListeners.removeSessionListener(listener);
+    }
+
+    @Override
+    public void setDefaultSessionTimeout(final int timeout) {
+        defaultSessionTimeout = timeout;
+    }
+
+    @Override
+    public Set<String> getTransientSessions() {
+        return getAllSessions();
+    }
+
+    @Override
+    public Set<String> getActiveSessions() {
+        return getAllSessions();
+    }
+
+    @Override
+    public Set<String> getAllSessions() {
+        return new HashSet<>(sessions.keySet());
+    }
+
+    /**
+     * Sets the class loader used to deserialize session attributes. If this is not set the thread context class loader
+     * is used.
+     *
+     * @param classLoader the class loader
+     */
+    public void setClassLoader(final ClassLoader classLoader) {
+        this.classLoader = classLoader;
+    }
+
+    public SessionAttributeCodecs getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * @return the number of sessions
+     */
+    public int getSessionCount() {
+        return sessions.size();
+    }
+
+    /**
+     * @return the number of sessions that have their attributes deserialized on the heap
+     */
+    public int getHotSessionCount() {
+        synchronized (hotSessions) {
+            return hotSessions.size();
+        }
+    }
+
+    /**
+     * @return the number of sessions that are stored in serialized form
+     */
+    public int getStoredSessionCount() {
+        return store.getEntryCount();
+    }
+
+    /**
+     * @return the size of the serialized session data in bytes
+     */
+    public long getStoredBytes() {
+        return store.getStoredBytes();
+    }
+
+    /**
+     * @return the amount of direct memory that is allocated for serialized sessions
+     */
+    public long getDirectMemoryUsed() {
+        return store.getDirectMemoryUsed();
+    }
+
+    /**
+     * @return the size of the overflow file
+     */
+    public long getOverflowFileSize() {
+        return store.getOverflowFileSize();
+    }
+
+    @Override
+    public boolean equals(Object object) {
+        if (!(object instanceof SessionManager)) return false;
+        SessionManager manager = (SessionManager) object;
+        return this.deploymentName.equals(manager.getDeploymentName());
+    }
+
+    @Override
+    public int hashCode() {
+        return this.deploymentName.hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return this.deploymentName;
+    }
+
+    /**
+     * Serializes the least recently used sessions that are not in use by a request until the hot tier is within its
+     * limit.
+     */
+    private void passivateSessions() {
+        for (;;) {
+            SessionImpl victim = null;
+            synchronized (hotSessions) {
+                if (hotSessions.size() <= maxHotSessions) {
+                    return;
+                }
+                final Iterator<SessionImpl> it = hotSessions.keySet().iterator();
+                while (it.hasNext()) {
+                    final SessionImpl session = it.next();
+                    if (session.requests == 0) {
+                        victim = session;
+                        it.remove();
+                        break;
+                    }
+                }
+            }
+            if (victim == null) {
+                //every hot session is in use, they are serialized once their requests are done
+                return;
+            }
+            victim.passivate();
+        }
+    }
+
+    private ClassLoader getClassLoader() {
+        final ClassLoader classLoader = this.classLoader;
+        if (classLoader != null) {
+            return classLoader;
+        }
+        return Thread.currentThread().getContextClassLoader();
+    }
+
+    /**
+     * Advances the expiry wheel. The task is only scheduled while there are sessions that can expire.
+     */
+    private final class ExpiryTask implements Runnable {
+
+        private final ExpiryWheel<SessionImpl> wheel = new ExpiryWheel<>(ACCESS_GRANULARITY, System.currentTimeMillis());
+        private XnioExecutor executor;
+        private XnioWorker worker;
+        private XnioExecutor.Key sweepKey;
+        private boolean stopped;
+
+        synchronized void schedule(final SessionImpl session, final long expireTime) {
+            if (stopped) {
+                return;
+            }
+            wheel.schedule(session.expiryNode, expireTime);
+            if (sweepKey == null) {
+                this.executor = session.executor;
+                this.worker = session.worker;
+                sweepKey = executor.executeAfter(this, ACCESS_GRANULARITY, TimeUnit.MILLISECONDS);
+            }
+        }
+
+        synchronized void unschedule(final SessionImpl session) {
+            wheel.remove(session.expiryNode);
+        }
+
+        synchronized void start() {
+            stopped = false;
+        }
+
+        synchronized void stop() {
+            stopped = true;
+            if (sweepKey != null) {
+                sweepKey.remove();
+                sweepKey = null;
+            }
+        }
+
+        @Override
+        public void run() {
+            final List<SessionImpl> due = new ArrayList<>();
+            final XnioWorker worker;
+            synchronized (this) {
+                sweepKey = null;
+                if (stopped) {
+                    return;
+                }
+                wheel.advance(System.currentTimeMillis(), due);
+                if (!wheel.isEmpty()) {
+                    sweepKey = executor.executeAfter(this, ACCESS_GRANULARITY, TimeUnit.MILLISECONDS);
+                }
+                worker = this.worker;
+            }
+            if (!due.isEmpty()) {
+                worker.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        for (SessionImpl session : due) {
+                            session.expireIfTimedOut();
+                        }
+                    }
+                });
+            }
+        }
+    }
+
+    /**
+     * session implementation for the off heap session manager
+     */
+    private final class SessionImpl implements Session {
+
+        private final SessionConfig sessionCookieConfig;
+        private final long creationTime;
+        final XnioExecutor executor;
+        final XnioWorker worker;
+        final ExpiryWheel.Node<SessionImpl> expiryNode = new ExpiryWheel.Node<>(this);
+
+        private volatile String sessionId;
+        private volatile long lastAccessed;
+        private volatile int maxInactiveInterval;
+        private volatile long expireTime = -1;
+        private volatile boolean invalid;
+        private volatile long lastTouched;
+
+        /**
+         * The number of requests that are using the session, which is not serialized while this is not zero. Only
+         * modified with the lock held.
+         */
+        private volatile int requests;
+
+        /**
+         * The attributes if the session is hot, otherwise <code>null</code>. Guarded by this.
+         */
+        private Map<String, Object> attributes = new ConcurrentHashMap<>();
+
+        /**
+         * The serialized attributes if the session is not hot. Guarded by this.
+         */
+        private OffHeapSessionStore.Entry stored;
+
+        /**
+         * Set if the attributes could not be serialized, guarded by this.
+         */
+        private boolean pinned;
+
+        private SessionImpl(final String sessionId, final SessionConfig sessionCookieConfig, final XnioExecutor executor, final XnioWorker worker, final int maxInactiveInterval) {
+            this.sessionId = sessionId;
+            this.sessionCookieConfig = sessionCookieConfig;
+            this.executor = executor;
+            this.worker = worker;
+            this.maxInactiveInterval = maxInactiveInterval;
+            this.creationTime = this.lastAccessed = System.currentTimeMillis();
+        }
+
+        @Override
+        public String getId() {
+            return sessionId;
+        }
+
+        /**
+         * Records that the exchange is using this session. Each exchange is only counted once, and not at all once it is
+         * complete.
+         */
+        void requestStarted(final HttpServerExchange exchange) {
+            if (exchange.isComplete()) {
+                return;
+            }
+            Set<SessionImpl> used = exchange.getAttachment(requestSessions);
+            if (used == null) {
+                used = new HashSet<>(2);
+                exchange.putAttachment(requestSessions, used);
+                exchange.addExchangeCompleteListener(requestCompletionListener);
+            }
+            if (used.add(this)) {
+                synchronized (this) {
+                    ++requests;
+                }
+            }
+        }
+
+        @Override
+        public void requestDone(final HttpServerExchange serverExchange) {
+            final Set<SessionImpl> used = serverExchange == null ? null : serverExchange.getAttachment(requestSessions);
+            if (used != null && used.remove(this)) {
+                final int remaining;
+                synchronized (this) {
+                    remaining = --requests;
+                }
+                if (remaining == 0) {
+                    //the session may have been kept on the heap while it was in use
+                    passivateSessions();
+                }
+            }
+            if (invalid) {
+                return;
+            }
+            final long currentTime = System.currentTimeMillis();
+            // The last accessed time is only updated with a coarse granularity
+            if (currentTime - lastAccessed >= ACCESS_GRANULARITY) {
+                lastAccessed = currentTime;
+            }
+        }
+
+        @Override
+        public long getCreationTime() {
+            checkValid();
+            return creationTime;
+        }
+
+        @Override
+        public long getLastAccessedTime() {
+            checkValid();
+            return lastAccessed;
+        }
+
+        @Override
+        public void setMaxInactiveInterval(final int interval) {
+            synchronized (this) {
+                checkValid();
+                maxInactiveInterval = interval;
+                bumpTimeout();
+            }
+        }
+
+        @Override
+        public int getMaxInactiveInterval() {
+            checkValid();
+            return maxInactiveInterval;
+        }
+
+        @Override
+        public Object getAttribute(final String name) {
+            final boolean activated;
+            final Object value;
+            synchronized (this) {
+                activated = activate();
+                value = attributes.get(name);
+                bumpTimeout();
+            }
+            accessed(activated);
+            return value;
+        }
+
+        @Override
+        public Set<String> getAttributeNames() {
+            final boolean activated;
+            final Set<String> names;
+            synchronized (this) {
+                activated = activate();
+                names = new HashSet<>(attributes.keySet());
+                bumpTimeout();
+            }
+            accessed(activated);
+            return names;
+        }
+
+        @Override
+        public Object setAttribute(final String name, final Object value) {
+            final boolean activated;
+            final Object existing;
+            synchronized (this) {
+                activated = activate();
+                existing = attributes.put(name, value);
+                pinned = false;
+                if (existing == null) {
+                    sessionListeners.attributeAdded(this, name, value);
+                } else {
+                    sessionListeners.attributeUpdated(this, name, value, existing);
+                }
+                bumpTimeout();
+            }
+            accessed(activated);
+            return existing;
+        }
+
+        @Override
+        public Object removeAttribute(final String name) {
+            final boolean activated;
+            final Object existing;
+            synchronized (this) {
+                activated = activate();
+                existing = attributes.remove(name);
+                pinned = false;
+                sessionListeners.attributeRemoved(this, name, existing);
+                bumpTimeout();
+            }
+            accessed(activated);
+            return existing;
+        }
+
+        @Override
+        public void invalidate(final HttpServerExchange exchange) {
+            invalidate(exchange, SessionListener.SessionDestroyedReason.INVALIDATED);
+        }
+
+        void invalidate(final HttpServerExchange exchange, final SessionListener.SessionDestroyedReason reason) {
+            synchronized (this) {
+                if (invalid) {
+                    if (reason == SessionListener.SessionDestroyedReason.INVALIDATED) {
+                        throw UndertowMessages.MESSAGES.sessionAlreadyInvalidated();
+                    }
+                    return;
+                }
+                expiryTask.unschedule(this);
+                sessionListeners.sessionDestroyed(this, exchange, reason);
+                sessions.remove(sessionId, this);
+                destroy();
+            }
+            synchronized (hotSessions) {
+                hotSessions.remove(this);
+            }
+            if (exchange != null) {
+                sessionCookieConfig.clearSession(exchange, this.getId());
+            }
+        }
+
+        @Override
+        public SessionManager getSessionManager() {
+            return OffHeapSessionManager.this;
+        }
+
+        @Override
+        public synchronized String changeSessionId(final HttpServerExchange exchange, final SessionConfig config) {
+            checkValid();
+            final String oldId = sessionId;
+            final String newId = sessionIdGenerator.createSessionId();
+            this.sessionId = newId;
+            sessions.put(newId, this);
+            sessions.remove(oldId, this);
+            config.setSessionId(exchange, this.getId());
+            sessionListeners.sessionIdChanged(this, oldId);
+            return newId;
+        }
+
+        /**
+         * Must be called with the lock held.
+         */
+        void bumpTimeout() {
+            final int maxInactiveInterval = this.maxInactiveInterval;
+            if (maxInactiveInterval > 0) {
+                final long newExpireTime = System.currentTimeMillis() + (maxInactiveInterval * 1000L);
+                if (!expiryNode.isScheduled() || newExpireTime < expireTime) {
+                    expireTime = newExpireTime;
+                    expiryTask.schedule(this, newExpireTime);
+                } else if (newExpireTime - expireTime >= ACCESS_GRANULARITY) {
+                    // the session is re-scheduled when its slot on the wheel is reached
+                    expireTime = newExpireTime;
+                }
+            } else if (expireTime != -1) {
+                expireTime = -1;
+                expiryTask.unschedule(this);
+            }
+        }
+
+        synchronized void expireIfTimedOut() {
+            if (invalid || expireTime == -1) {
+                return;
+            }
+            if (System.currentTimeMillis() >= expireTime) {
+                invalidate(null, SessionListener.SessionDestroyedReason.TIMEOUT);
+            } else {
+                expiryTask.schedule(this, expireTime);
+            }
+        }
+
+        /**
+         * Deserializes the attributes if the session is not hot. Must be called with the lock held.
+         *
+         * @return <code>true</code> if the session was activated
+         */
+        private boolean activate() {
+            checkValid();
+            if (attributes != null) {
+                return false;
+            }
+            final byte[] data = store.load(stored);
+            try {
+                attributes = new ConcurrentHashMap<>(codecs.read(new DataInputStream(new ByteArrayInputStream(data)), getClassLoader()));
+            } catch (IOException e) {
+                throw new IllegalStateException(e);
+            }
+            store.free(stored);
+            stored = null;
+            return true;
+        }
+
+        /**
+         * Records the access in the hot tier, and serializes other sessions if the hot tier is full.
+         */
+        void accessed(final boolean activated) {
+            final long currentTime = System.currentTimeMillis();
+            // The access order is only updated with a coarse granularity
+            if (!activated && currentTime - lastTouched < ACCESS_GRANULARITY) {
+                return;
+            }
+            lastTouched = currentTime;
+            synchronized (hotSessions) {
+                if (invalid) {
+                    return;
+                }
+                hotSessions.put(this, Boolean.TRUE);
+            }
+            // a listener may access other sessions while we hold the lock of this one, in which case serializing
+            // other sessions could deadlock, so it is left for the next access
+            if (!Thread.holdsLock(this)) {
+                passivateSessions();
+            }
+        }
+
+        synchronized void passivate() {
+            if (invalid || attributes == null || pinned) {
+                return;
+            }
+            if (requests != 0) {
+                //a request started using the session after it was chosen, so it stays on the heap
+                synchronized (hotSessions) {
+                    hotSessions.put(this, Boolean.TRUE);
+                }
+                return;
+            }
+            try {
+                final ByteArrayOutputStream out = new ByteArrayOutputStream();
+                final DataOutputStream dataOut = new DataOutputStream(out);
+                codecs.write(attributes, dataOut);
+                dataOut.flush();
+                stored = store.store(out.toByteArray(), out.size());
+                attributes = null;
+            } catch (IOException | IllegalStateException e) {
+                pinned = true;
+                UndertowLogger.REQUEST_LOGGER.failedToStoreSerializedSession(sessionId, e);
+            }
+        }
+
+        synchronized void destroy() {
+            invalid = true;
+            expireTime = -1;
+            attributes = null;
+            if (stored != null) {
+                store.free(stored);
+                stored = null;
+            }
+        }
+
+        private void checkValid() {
+            if (invalid) {
+                throw UndertowMessages.MESSAGES.sessionNotFound(sessionId);
+            }
+        }
+    }
+}
@@ -0,0 +1,275 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import io.undertow.UndertowMessages;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Stores serialized session data outside of the java heap.
+ * <p/>
+ * Memory is allocated in regions of fixed size blocks, and the data of an entry is spread over as many blocks as it
+ * needs. Regions are allocated from direct memory up to the configured limit, after which regions are mapped from the
+ * overflow file if there is one. Free blocks in direct memory are always used before free blocks in the overflow file.
+ *
+ * @author agent
+ */
+final class OffHeapSessionStore implements Closeable {
+
+    private final int blockSize;
+    private final int blocksPerRegion;
+    private final int maxDirectRegions;
+    private final int maxOverflowRegions;
+    private final File overflowFile;
+
+    private final List<ByteBuffer> regions = new ArrayList<>();
+    private final BlockList freeDirectBlocks = new BlockList();
+    private final BlockList freeOverflowBlocks = new BlockList();
+    private final boolean[] overflowRegion;
+    private int directRegions;
+    private int overflowRegions;
+    private RandomAccessFile overflow;
+    private long storedBytes;
+    private int entries;
+
+    /**
+     * @param blockSize         the size of a block in bytes
+     * @param regionSize        the size of a region in bytes, which is rounded down to a multiple of the block size
+     * @param maxDirectMemory   the maximum amount of direct memory to use
+     * @param overflowFile      the file used once the direct memory is exhausted, may be <code>null</code>
+     * @param maxOverflowSize   the maximum size of the overflow file
+     */
+    OffHeapSessionStore(final int blockSize, final int regionSize, final long maxDirectMemory, final File overflowFile, final long maxOverflowSize) {
+        this.blockSize = blockSize;
+        this.blocksPerRegion = Math.max(1, regionSize / blockSize);
+        final long realRegionSize = (long) blocksPerRegion * blockSize;
+        this.maxDirectRegions = (int) Math.min(Integer.MAX_VALUE, maxDirectMemory / realRegionSize);
+        this.overflowFile = overflowFile;
+        this.maxOverflowRegions = overflowFile == null ? 0 : (int) Math.min(Integer.MAX_VALUE, maxOverflowSize / realRegionSize);
+        this.overflowRegion = new boolean[(int) Math.min(Integer.MAX_VALUE - 8, (long) maxDirectRegions + maxOverflowRegions)];
+    }
+
+    /**
+     * Stores the given data.
+     *
+     * @param data   the data
+     * @param length the length of the data
+     * @return the entry for the data
+     * @throws IllegalStateException if there is no space left in the store
+     */
+    synchronized Entry store(final byte[] data, final int length) throws IOException {
+        final int required = Math.max(1, (length + blockSize - 1) / blockSize);
+        final int[] blocks = new int[required];
+        int allocated = 0;
+        try {
+            for (; allocated < required; ++allocated) {
+                blocks[allocated] = allocateBlock();
+            }
+        } catch (RuntimeException | IOException e) {
+            for (int i = 0; i < allocated; ++i) {
+                freeBlock(blocks[i]);
+            }
+            throw e;
+        }
+        int offset = 0;
+        for (int block : blocks) {
+            final int count = Math.min(blockSize, length - offset);
+            if (count <= 0) {
+                break;
+            }
+            final ByteBuffer region = regions.get(block / blocksPerRegion);
+            region.position((block % blocksPerRegion) * blockSize);
+            region.put(data, offset, count);
+            offset += count;
+        }
+        storedBytes += length;
+        entries++;
+        return new Entry(blocks, length);
+    }
+
+    /**
+     * @param entry the entry
+     * @return the data of the entry
+     */
+    synchronized byte[] load(final Entry entry) {
+        final byte[] data = new byte[entry.length];
+        int offset = 0;
+        for (int block : entry.blocks) {
+            final int count = Math.min(blockSize, entry.length - offset);
+            if (count <= 0) {
+                break;
+            }
+            final ByteBuffer region = regions.get(block / blocksPerRegion);
+            region.position((block % blocksPerRegion) * blockSize);
+            region.get(data, offset, count);
+            offset += count;
+        }
+        return data;
+    }
+
+    /**
+     * Frees the blocks of the entry. The entry must not be used after this.
+     *
+     * @param entry the entry
+     */
+    synchronized void free(final Entry entry) {
+        for (int block : entry.blocks) {
+            freeBlock(block);
+        }
+        storedBytes -= entry.length;
+        entries--;
+    }
+
+    synchronized int getEntryCount() {
+        return entries;
+    }
+
+    /**
+     * @return the number of bytes of data in the store
+     */
+    synchronized long getStoredBytes() {
+        return storedBytes;
+    }
+
+    /**
+     * @return the amount of direct memory allocated by the store
+     */
+    synchronized long getDirectMemoryUsed() {
+        return (long) directRegions * blocksPerRegion * blockSize;
+    }
+
+    /**
+     * @return the size of the overflow file
+     */
+    synchronized long getOverflowFileSize() {
+        return (long) overflowRegions * blocksPerRegion * blockSize;
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        regions.clear();
+        freeDirectBlocks.clear();
+        freeOverflowBlocks.clear();
+        Arrays.fill(overflowRegion, false);
+        directRegions = 0;
+        overflowRegions = 0;
+        storedBytes = 0;
+        entries = 0;
+        if (overflow != null) {
+            try {
+                overflow.close();
+            } finally {
+                overflow = null;
+                overflowFile.delete();
+            }
+        }
+    }
+
+    private int allocateBlock() throws IOException {
+        if (freeDirectBlocks.isEmpty() && directRegions < maxDirectRegions) {
+            addRegion(ByteBuffer.allocateDirect(blocksPerRegion * blockSize), freeDirectBlocks, false);
+            directRegions++;
+        }
+        if (!freeDirectBlocks.isEmpty()) {
+            return freeDirectBlocks.pop();
+        }
+        if (freeOverflowBlocks.isEmpty() && overflowRegions < maxOverflowRegions) {
+            if (overflow == null) {
+                overflow = new RandomAccessFile(overflowFile, "rw");
+                overflowFile.deleteOnExit();
+            }
+            final long size = (long) blocksPerRegion * blockSize;
+            addRegion(overflow.getChannel().map(FileChannel.MapMode.READ_WRITE, overflowRegions * size, size), freeOverflowBlocks, true);
+            overflowRegions++;
+        }
+        if (!freeOverflowBlocks.isEmpty()) {
+            return freeOverflowBlocks.pop();
+        }
+        throw UndertowMessages.MESSAGES.sessionStoreFull();
+    }
+
+    private void addRegion(final ByteBuffer buffer, final BlockList freeList, final boolean overflow) {
+        final int region = regions.size();
+        regions.add(buffer);
+        overflowRegion[region] = overflow;
+        //push in reverse so the blocks are handed out in order
+        for (int i = blocksPerRegion - 1; i >= 0; --i) {
+            freeList.push(region * blocksPerRegion + i);
+        }
+    }
+
+    private void freeBlock(final int block) {
+        if (overflowRegion[block / blocksPerRegion]) {
+            freeOverflowBlocks.push(block);
+        } else {
+            freeDirectBlocks.push(block);
+        }
+    }
+
+    /**
+     * The location of stored data.
+     */
+    static final class Entry {
+        private final int[] blocks;
+        private final int length;
+
+        private Entry(final int[] blocks, final int length) {
+            this.blocks = blocks;
+            this.length = length;
+        }
+
+        int getLength() {
+            return length;
+        }
+    }
+
+    private static final class BlockList {
+        private int[] blocks = new int[16];
+        private int size;
+
+        void push(final int block) {
+            if (size == blocks.length) {
+                blocks = Arrays.copyOf(blocks, size * 2);
+            }
+            blocks[size++] = block;
+        }
+
+        int pop() {
+            return blocks[--size];
+        }
+
+        boolean isEmpty() {
+            return size == 0;
+        }
+
+        void clear() {
+            blocks = new int[16];
+            size = 0;
+        }
+    }
+}
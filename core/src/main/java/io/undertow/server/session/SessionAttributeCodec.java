@@ -0,0 +1,58 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+
+/**
+ * A codec that converts session attribute values to and from their serialized form.
+ * <p/>
+ * Codecs are identified by their position in a {@link SessionAttributeCodecs} instance, so data written with one set of
+ * codecs can only be read back by a set of codecs in the same order.
+ *
+ * @author agent
+ */
+public interface SessionAttributeCodec {
+
+    /**
+     * @param value the attribute value
+     * @return <code>true</code> if this codec can encode the value
+     */
+    boolean canEncode(Object value);
+
+    /**
+     * Writes the value to the output.
+     *
+     * @param value the attribute value
+     * @param out   the output
+     */
+    void encode(Object value, DataOutput out) throws IOException;
+
+    /**
+     * Reads a value that was written by {@link #encode(Object, DataOutput)}.
+     *
+     * @param in          the input
+     * @param classLoader the class loader to use to resolve classes
+     * @return the attribute value
+     */
+    Object decode(DataInput in, ClassLoader classLoader) throws IOException;
+
+}
@@ -0,0 +1,291 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.session;
+
+import io.undertow.UndertowMessages;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamClass;
+import java.io.Serializable;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An ordered set of {@link SessionAttributeCodec}s, used to read and write maps of session attributes.
+ * <p/>
+ * For every attribute the first codec that can encode the value is used, so more specific codecs should come before more
+ * general ones. The default codecs handle strings, the primitive wrappers and byte arrays directly, and fall back to
+ * Java serialization for all other {@link Serializable} values.
+ *
+ * @author agent
+ */
+public class SessionAttributeCodecs {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    public static final SessionAttributeCodec STRING = new SessionAttributeCodec() {
+        @Override
+        public boolean canEncode(final Object value) {
+            return value instanceof String;
+        }
+
+        @Override
+        public void encode(final Object value, final DataOutput out) throws IOException {
+            writeBytes(((String) value).getBytes(UTF_8), out);
+        }
+
+        @Override
+        public Object decode(final DataInput in, final ClassLoader classLoader) throws IOException {
+            return new String(readBytes(in), UTF_8);
+        }
+    };
+
+    public static final SessionAttributeCodec INTEGER = new SessionAttributeCodec() {
+        @Override
+        public boolean canEncode(final Object value) {
+            return value instanceof Integer;
+        }
+
+        @Override
+        public void encode(final Object value, final DataOutput out) throws IOException {
+            out.writeInt((Integer) value);
+        }
+
+        @Override
+        public Object decode(final DataInput in, final ClassLoader classLoader) throws IOException {
+            return in.readInt();
+        }
+    };
+
+    public static final SessionAttributeCodec LONG = new SessionAttributeCodec() {
+        @Override
+        public boolean canEncode(final Object value) {
+            return value instanceof Long;
+        }
+
+        @Override
+        public void encode(final Object value, final DataOutput out) throws IOException {
+            out.writeLong((Long) value);
+        }
+
+        @Override
+        public Object decode(final DataInput in, final ClassLoader classLoader) throws IOException {
+            return in.readLong();
+        }
+    };
+
+    public static final SessionAttributeCodec BOOLEAN = new SessionAttributeCodec() {
+        @Override
+        public boolean canEncode(final Object value) {
+            return value instanceof Boolean;
+        }
+
+        @Override
+        public void encode(final Object value, final DataOutput out) throws IOException {
+            out.writeBoolean((Boolean) value);
+        }
+
+        @Override
+        public Object decode(final DataInput in, final ClassLoader classLoader) throws IOException {
+            return in.readBoolean();
+        }
+    };
+
+    public static final SessionAttributeCodec BYTE_ARRAY = new SessionAttributeCodec() {
+        @Override
+        public boolean canEncode(final Object value) {
+            return value instanceof byte[];
+        }
+
+        @Override
+        public void encode(final Object value, final DataOutput out) throws IOException {
+            writeBytes((byte[]) value, out);
+        }
+
+        @Override
+        public Object decode(final DataInput in, final ClassLoader classLoader) throws IOException {
+            return readBytes(in);
+        }
+    };
+
+    /**
+     * Falls back to Java serialization, resolving classes against the given class loader.
+     */
+    public static final SessionAttributeCodec SERIALIZABLE = new SessionAttributeCodec() {
+        @Override
+        public boolean canEncode(final Object value) {
+            return value instanceof Serializable;
+        }
+
+        @Override
+        public void encode(final Object value, final DataOutput out) throws IOException {
+            final ByteArrayOutputStream data = new ByteArrayOutputStream();
+            final ObjectOutputStream objectOutputStream = new ObjectOutputStream(data);
+            objectOutputStream.writeObject(value);
+            objectOutputStream.close();
+            writeBytes(data.toByteArray(), out);
+        }
+
+        @Override
+        public Object decode(final DataInput in, final ClassLoader classLoader) throws IOException {
+            final ObjectInputStream objectInputStream = new ClassLoaderObjectInputStream(new ByteArrayInputStream(readBytes(in)), classLoader);
+            try {
+                return objectInputStream.readObject();
+            } catch (ClassNotFoundException e) {
+                throw new IOException(e);
+            } finally {
+                objectInputStream.close();
+            }
+        }
+    };
+
+    private static final SessionAttributeCodecs DEFAULT = new SessionAttributeCodecs(Arrays.asList(STRING, INTEGER, LONG, BOOLEAN, BYTE_ARRAY, SERIALIZABLE));
+
+    private final List<SessionAttributeCodec> codecs;
+
+    public SessionAttributeCodecs(final List<SessionAttributeCodec> codecs) {
+        if (codecs.size() > 127) {
+            throw new IllegalArgumentException();
+        }
+        this.codecs = Collections.unmodifiableList(new ArrayList<>(codecs));
+    }
+
+    /**
+     * @return the default codecs
+     */
+    public static SessionAttributeCodecs defaultCodecs() {
+        return DEFAULT;
+    }
+
+    public List<SessionAttributeCodec> getCodecs() {
+        return codecs;
+    }
+
+    /**
+     * Writes the attributes to the output. Every value is written with its length, so it can be skipped without
+     * decoding it.
+     *
+     * @param attributes the attributes
+     * @param out        the output
+     * @throws IOException if a value cannot be encoded by any of the codecs
+     */
+    public void write(final Map<String, Object> attributes, final DataOutput out) throws IOException {
+        out.writeInt(attributes.size());
+        for (Map.Entry<String, Object> entry : attributes.entrySet()) {
+            writeAttribute(entry.getKey(), entry.getValue(), out);
+        }
+    }
+
+    /**
+     * Writes a single attribute in the format used by {@link #write(java.util.Map, java.io.DataOutput)}. Nothing is
+     * written if the value cannot be encoded, which allows callers to skip attributes that fail.
+     *
+     * @param name  the attribute name
+     * @param value the attribute value
+     * @param out   the output
+     * @throws IOException if the value cannot be encoded by any of the codecs
+     */
+    public void writeAttribute(final String name, final Object value, final DataOutput out) throws IOException {
+        final int codec = findCodec(name, value);
+        final ByteArrayOutputStream data = new ByteArrayOutputStream();
+        final DataOutputStream dataOut = new DataOutputStream(data);
+        codecs.get(codec).encode(value, dataOut);
+        dataOut.flush();
+        writeBytes(name.getBytes(UTF_8), out);
+        out.writeByte(codec);
+        writeBytes(data.toByteArray(), out);
+    }
+
+    /**
+     * Reads attributes written by {@link #write(java.util.Map, java.io.DataOutput)}.
+     *
+     * @param in          the input
+     * @param classLoader the class loader to use to resolve classes
+     * @return the attributes
+     */
+    public Map<String, Object> read(final DataInput in, final ClassLoader classLoader) throws IOException {
+        final int size = in.readInt();
+        final Map<String, Object> attributes = new HashMap<>();
+        for (int i = 0; i < size; ++i) {
+            final String name = new String(readBytes(in), UTF_8);
+            final int codec = in.readByte();
+            if (codec < 0 || codec >= codecs.size()) {
+                throw UndertowMessages.MESSAGES.unknownSessionAttributeCodec(codec);
+            }
+            final byte[] value = readBytes(in);
+            attributes.put(name, codecs.get(codec).decode(new DataInputStream(new ByteArrayInputStream(value)), classLoader));
+        }
+        return attributes;
+    }
+
+    private int findCodec(final String name, final Object value) throws IOException {
+        for (int i = 0; i < codecs.size(); ++i) {
+            if (codecs.get(i).canEncode(value)) {
+                return i;
+            }
+        }
+        throw UndertowMessages.MESSAGES.noCodecForSessionAttribute(name, value == null ? null : value.getClass().getName());
+    }
+
+    static void writeBytes(final byte[] data, final DataOutput out) throws IOException {
+        out.writeInt(data.length);
+        out.write(data);
+    }
+
+    static byte[] readBytes(final DataInput in) throws IOException {
+        final byte[] data = new byte[in.readInt()];
+        in.readFully(data);
+        return data;
+    }
+
+    private static final class ClassLoaderObjectInputStream extends ObjectInputStream {
+
+        private final ClassLoader classLoader;
+
+        private ClassLoaderObjectInputStream(final InputStream in, final ClassLoader classLoader) throws IOException {
+            super(in);
+            this.classLoader = classLoader;
+        }
+
+        @Override
+        protected Class<?> resolveClass(final ObjectStreamClass desc) throws IOException, ClassNotFoundException {
+            if (classLoader != null) {
+                try {
+                    return Class.forName(desc.getName(), false, classLoader);
+                } catch (ClassNotFoundException ignore) {
+                }
+            }
+            return super.resolveClass(desc);
+        }
+    }
+}
@@ -74,6 +74,15 @@ public abstract class AbstractAttachable implements Attachable {
         return key.cast(attachments.put(key, key.cast(value)));
     }
 
+    /**
+     * Removes all attachments.
+     */
+    protected void clearAttachments() {
+        if (attachments != null) {
+            attachments.clear();
+        }
+    }
+
     protected Map<AttachmentKey<?>, Object> createAttachmentMap() {
         return new IdentityHashMap<>(5);
     }
@@ -0,0 +1,190 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.util;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import io.undertow.UndertowMessages;
+
+/**
+ * An immutable block of response headers, that is encoded once and then copied into the output of every response
+ * that uses it.
+ * <p/>
+ * A block is added to a response using {@link HeaderMap#putAll(HeaderBlock)}. The headers are added to the map as
+ * normal headers, so they are visible to handlers and can be modified. The map remembers the block, and when the
+ * response headers are written the pre-encoded block is used for as long as all of its headers still have exactly
+ * the values that were added by the block. If any of them has been modified the headers are written one by one.
+ * <p/>
+ * The encoded form of a block depends on the protocol, so the encodings are created on demand by an {@link Encoder}
+ * and cached in the block.
+ *
+ * @author agent
+ */
+public final class HeaderBlock {
+
+    private final HttpString[] names;
+    private final String[] values;
+
+    private volatile Encoding[] encodings = new Encoding[0];
+
+    private HeaderBlock(final HttpString[] names, final String[] values) {
+        this.names = names;
+        this.values = values;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    public int size() {
+        return names.length;
+    }
+
+    public HttpString getName(final int index) {
+        return names[index];
+    }
+
+    public String getValue(final int index) {
+        return values[index];
+    }
+
+    /**
+     * @param name The header name
+     * @return <code>true</code> if this block contains the given header
+     */
+    public boolean contains(final HttpString name) {
+        for (HttpString n : names) {
+            if (n == name || n.equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns true if all headers of this block are present in the given map with exactly one value, and the value
+     * is the same instance that was added by this block.
+     *
+     * @param headers The header map
+     * @return <code>true</code> if the encoded block can be written in place of the block's headers
+     */
+    public boolean isIntact(final HeaderMap headers) {
+        for (int i = 0; i < names.length; ++i) {
+            final HeaderValues headerValues = headers.get(names[i]);
+            if (headerValues == null || headerValues.size() != 1 || headerValues.getFirst() != values[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the encoding of this block that is created by the given encoder, creating it if this is the first
+     * time the encoder is used for this block.
+     *
+     * @param encoder The encoder
+     * @return The encoded headers
+     */
+    public byte[] getEncoded(final Encoder encoder) {
+        Encoding[] encodings = this.encodings;
+        for (Encoding encoding : encodings) {
+            if (encoding.encoder == encoder) {
+                return encoding.data;
+            }
+        }
+        final byte[] data = encoder.encode(this);
+        //racing threads may both encode the block, which is harmless
+        final Encoding[] newEncodings = new Encoding[encodings.length + 1];
+        System.arraycopy(encodings, 0, newEncodings, 0, encodings.length);
+        newEncodings[encodings.length] = new Encoding(encoder, data);
+        this.encodings = newEncodings;
+        return data;
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder sb = new StringBuilder("HeaderBlock{");
+        for (int i = 0; i < names.length; ++i) {
+            if (i > 0) {
+                sb.append(", ");
+            }
+            sb.append(names[i]).append('=').append(values[i]);
+        }
+        return sb.append('}').toString();
+    }
+
+    /**
+     * Creates the protocol specific encoding of a header block. Encoders are compared by identity, so there should
+     * be a single instance per protocol.
+     */
+    public interface Encoder {
+
+        byte[] encode(HeaderBlock block);
+
+    }
+
+    private static final class Encoding {
+        final Encoder encoder;
+        final byte[] data;
+
+        private Encoding(final Encoder encoder, final byte[] data) {
+            this.encoder = encoder;
+            this.data = data;
+        }
+    }
+
+    public static final class Builder {
+
+        private final List<HttpString> names = new ArrayList<>();
+        private final List<String> values = new ArrayList<>();
+
+        Builder() {
+        }
+
+        public Builder add(final String name, final String value) {
+            return add(new HttpString(name), value);
+        }
+
+        /**
+         * Adds a header to the block. Each header can only be added once.
+         *
+         * @param name  The header name
+         * @param value The header value
+         * @return this builder
+         */
+        public Builder add(final HttpString name, final String value) {
+            if (name == null) {
+                throw UndertowMessages.MESSAGES.argumentCannotBeNull("name");
+            }
+            if (value == null) {
+                throw UndertowMessages.MESSAGES.argumentCannotBeNull("value");
+            }
+            if (names.contains(name)) {
+                throw UndertowMessages.MESSAGES.duplicateHeaderInBlock(name);
+            }
+            names.add(name);
+            values.add(value);
+            return this;
+        }
+
+        public HeaderBlock build() {
+            return new HeaderBlock(names.toArray(new HttpString[names.size()]), values.toArray(new String[values.size()]));
+        }
+    }
+}
@@ -35,6 +35,7 @@ public final class HeaderMap implements Iterable<HeaderValues> {
     private Object[] table;
     private int size;
     private Collection<HttpString> headerNames;
+    private HeaderBlock headerBlock;
 
     public HeaderMap() {
         table = new Object[16];
@@ -747,6 +748,33 @@ public final class HeaderMap implements Iterable<HeaderValues> {
         return this;
     }
 
+    /**
+     * Adds all headers of a pre-encoded header block, replacing any existing values of these headers.
+     * <p/>
+     * The map remembers the most recently added block, so the pre-encoded form of the block can be used when the
+     * headers are written out.
+     *
+     * @param block The header block
+     * @return this map
+     */
+    public HeaderMap putAll(HeaderBlock block) {
+        for (int i = 0; i < block.size(); ++i) {
+            final HeaderValues entry = getOrCreateEntry(block.getName(i));
+            entry.clear();
+            entry.add(block.getValue(i));
+        }
+        headerBlock = block;
+        return this;
+    }
+
+    /**
+     * @return The header block that was most recently added to this map, or <code>null</code> if no block has been added
+     * @see HeaderBlock#isIntact(HeaderMap)
+     */
+    public HeaderBlock getHeaderBlock() {
+        return headerBlock;
+    }
+
     public HeaderMap putAll(HttpString headerName, Collection<String> headerValues) {
         if (headerName == null) {
             throw new IllegalArgumentException("headerName is null");
@@ -765,6 +793,7 @@ public final class HeaderMap implements Iterable<HeaderValues> {
     public HeaderMap clear() {
         Arrays.fill(table, null);
         size = 0;
+        headerBlock = null;
         return this;
     }
 
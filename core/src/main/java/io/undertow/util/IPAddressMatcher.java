@@ -0,0 +1,477 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.util;
+
+import io.undertow.UndertowMessages;
+import org.xnio.Bits;
+
+import java.net.InetAddress;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * An immutable list of IP address rules, that finds the first rule that matches an address without checking every
+ * rule.
+ * <p/>
+ * A rule can take several forms:
+ * <p/>
+ * a.b.c.d = Literal IPv4 Address
+ * a:b:c:d:e:f:g:h = Literal IPv6 Address
+ * a.b.* = Wildcard IPv4 Address
+ * a:b:* = Wildcard IPv6 Address
+ * a.b.c.0/24 = Classless wildcard IPv4 address
+ * a:b:c:d:e:f:g:0/120 = Classless wildcard IPv6 address
+ * <p/>
+ * Rules that match a contiguous block of addresses, which are all of the above apart from wildcards that are
+ * followed by literal parts, are stored in a binary tree with one level per address bit. Every node of the tree
+ * holds the position of the first rule for its block, so the first matching rule is the lowest position found on
+ * the path of the address through the tree. The remaining rules are checked one by one, but only while they come
+ * before the best match found in the tree.
+ * <p/>
+ * The matcher is immutable, so a whole rule set can be replaced at runtime by building a new matcher and
+ * publishing it through a volatile field.
+ *
+ * @author agent
+ */
+public final class IPAddressMatcher {
+
+    /**
+     * Standard IP address
+     */
+    private static final Pattern IP4_EXACT = Pattern.compile("(?:\\d{1,3}\\.){3}\\d{1,3}");
+
+    /**
+     * Standard IP address, with some octets replaced by a '*'
+     */
+    private static final Pattern IP4_WILDCARD = Pattern.compile("(?:(?:\\d{1,3}|\\*)\\.){3}(?:\\d{1,3}|\\*)");
+
+    /**
+     * IPv4 address with subnet specified via slash notation
+     */
+    private static final Pattern IP4_SLASH = Pattern.compile("(?:\\d{1,3}\\.){3}\\d{1,3}\\/\\d\\d?");
+
+    /**
+     * Standard full IPv6 address
+     */
+    private static final Pattern IP6_EXACT = Pattern.compile("(?:[a-zA-Z0-9]{1,4}:){7}[a-zA-Z0-9]{1,4}");
+
+    /**
+     * Standard full IPv6 address, with some parts replaced by a '*'
+     */
+    private static final Pattern IP6_WILDCARD = Pattern.compile("(?:(?:[a-zA-Z0-9]{1,4}|\\*):){7}(?:[a-zA-Z0-9]{1,4}|\\*)");
+
+    /**
+     * Standard full IPv6 address with subnet specified via slash notation
+     */
+    private static final Pattern IP6_SLASH = Pattern.compile("(?:[a-zA-Z0-9]{1,4}:){7}[a-zA-Z0-9]{1,4}\\/\\d{1,3}");
+
+    private static final int NO_MATCH = Integer.MAX_VALUE;
+
+    private static final IPAddressMatcher EMPTY = new IPAddressMatcher(new Rule[0]);
+
+    private final Rule[] rules;
+    private final Tree ipv4;
+    private final Tree ipv6;
+
+    private IPAddressMatcher(final Rule[] rules) {
+        this.rules = rules;
+        this.ipv4 = new Tree(rules, 4);
+        this.ipv6 = new Tree(rules, 16);
+    }
+
+    public static IPAddressMatcher empty() {
+        return EMPTY;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Finds the first rule that matches an address
+     *
+     * @param address The address
+     * @return The position of the first matching rule, or -1 if no rule matches
+     */
+    public int match(final InetAddress address) {
+        final byte[] bytes = address.getAddress();
+        final int res;
+        if (bytes.length == 4) {
+            res = ipv4.match(bytes);
+        } else if (bytes.length == 16) {
+            res = ipv6.match(bytes);
+        } else {
+            return -1;
+        }
+        return res == NO_MATCH ? -1 : res;
+    }
+
+    /**
+     * @param address      The address
+     * @param defaultAllow The result if no rule matches the address
+     * @return <code>true</code> if the first rule that matches the address is an allow rule
+     */
+    public boolean isAllowed(final InetAddress address, final boolean defaultAllow) {
+        final int rule = match(address);
+        if (rule == -1) {
+            return defaultAllow;
+        }
+        return !rules[rule].deny;
+    }
+
+    public int getRuleCount() {
+        return rules.length;
+    }
+
+    public String getRule(final int index) {
+        return rules[index].peer;
+    }
+
+    public boolean isDenyRule(final int index) {
+        return rules[index].deny;
+    }
+
+    public static final class Builder {
+
+        private final List<Rule> rules = new ArrayList<>();
+
+        Builder() {
+        }
+
+        /**
+         * Adds an allowed peer to the end of the rules
+         *
+         * @param peer The peer
+         */
+        public Builder addAllow(final String peer) {
+            return addRule(peer, false);
+        }
+
+        /**
+         * Adds a denied peer to the end of the rules
+         *
+         * @param peer The peer
+         */
+        public Builder addDeny(final String peer) {
+            return addRule(peer, true);
+        }
+
+        /**
+         * Adds all rules of a matcher to the end of the rules
+         *
+         * @param matcher The matcher
+         */
+        public Builder addAll(final IPAddressMatcher matcher) {
+            rules.addAll(Arrays.asList(matcher.rules));
+            return this;
+        }
+
+        public Builder clear() {
+            rules.clear();
+            return this;
+        }
+
+        public IPAddressMatcher build() {
+            if (rules.isEmpty()) {
+                return EMPTY;
+            }
+            return new IPAddressMatcher(rules.toArray(new Rule[rules.size()]));
+        }
+
+        private Builder addRule(final String peer, final boolean deny) {
+            if (IP4_EXACT.matcher(peer).matches()) {
+                addIpV4ExactMatch(peer, deny);
+            } else if (IP4_WILDCARD.matcher(peer).matches()) {
+                addIpV4WildcardMatch(peer, deny);
+            } else if (IP4_SLASH.matcher(peer).matches()) {
+                addIpV4SlashPrefix(peer, deny);
+            } else if (IP6_EXACT.matcher(peer).matches()) {
+                addIpV6ExactMatch(peer, deny);
+            } else if (IP6_WILDCARD.matcher(peer).matches()) {
+                addIpV6WildcardMatch(peer, deny);
+            } else if (IP6_SLASH.matcher(peer).matches()) {
+                addIpV6SlashPrefix(peer, deny);
+            } else {
+                throw UndertowMessages.MESSAGES.notAValidIpPattern(peer);
+            }
+            return this;
+        }
+
+        private void addIpV6SlashPrefix(final String peer, final boolean deny) {
+            String[] components = peer.split("\\/");
+            String[] parts = components[0].split("\\:");
+            int maskLen = Integer.parseInt(components[1]);
+            assert parts.length == 8;
+
+
+            byte[] pattern = new byte[16];
+            byte[] mask = new byte[16];
+
+            for (int i = 0; i < 8; ++i) {
+                int val = Integer.parseInt(parts[i], 16);
+                pattern[i * 2] = (byte) (val >> 8);
+                pattern[i * 2 + 1] = (byte) (val & 0xFF);
+            }
+            for (int i = 0; i < 16; ++i) {
+                if (maskLen > 8) {
+                    mask[i] = (byte) (0xFF);
+                    maskLen -= 8;
+                } else if (maskLen != 0) {
+                    mask[i] = (byte) (Bits.intBitMask(8 - maskLen, 7) & 0xFF);
+                    maskLen = 0;
+                } else {
+                    break;
+                }
+            }
+            rules.add(new Rule(deny, peer, mask, pattern));
+        }
+
+        private void addIpV4SlashPrefix(final String peer, final boolean deny) {
+            String[] components = peer.split("\\/");
+            String[] parts = components[0].split("\\.");
+            int maskLen = Integer.parseInt(components[1]);
+            final int mask = Bits.intBitMask(32 - maskLen, 31);
+            int prefix = 0;
+            for (int i = 0; i < 4; ++i) {
+                prefix <<= 8;
+                String part = parts[i];
+                int no = Integer.parseInt(part);
+                prefix |= no;
+            }
+            rules.add(new Rule(deny, peer, toBytes(mask), toBytes(prefix)));
+        }
+
+        private void addIpV6WildcardMatch(final String peer, final boolean deny) {
+            byte[] pattern = new byte[16];
+            byte[] mask = new byte[16];
+            String[] parts = peer.split("\\:");
+            assert parts.length == 8;
+            for (int i = 0; i < 8; ++i) {
+                if (!parts[i].equals("*")) {
+                    int val = Integer.parseInt(parts[i], 16);
+                    pattern[i * 2] = (byte) (val >> 8);
+                    pattern[i * 2 + 1] = (byte) (val & 0xFF);
+                    mask[i * 2] = (byte) (0xFF);
+                    mask[i * 2 + 1] = (byte) (0xFF);
+                }
+            }
+            rules.add(new Rule(deny, peer, mask, pattern));
+        }
+
+        private void addIpV4WildcardMatch(final String peer, final boolean deny) {
+            String[] parts = peer.split("\\.");
+            int mask = 0;
+            int prefix = 0;
+            for (int i = 0; i < 4; ++i) {
+                mask <<= 8;
+                prefix <<= 8;
+                String part = parts[i];
+                if (!part.equals("*")) {
+                    int no = Integer.parseInt(part);
+                    mask |= 0xFF;
+                    prefix |= no;
+                }
+            }
+            rules.add(new Rule(deny, peer, toBytes(mask), toBytes(prefix)));
+        }
+
+        private void addIpV6ExactMatch(final String peer, final boolean deny) {
+            byte[] bytes = new byte[16];
+            byte[] mask = new byte[16];
+            String[] parts = peer.split("\\:");
+            assert parts.length == 8;
+            for (int i = 0; i < 8; ++i) {
+                int val = Integer.parseInt(parts[i], 16);
+                bytes[i * 2] = (byte) (val >> 8);
+                bytes[i * 2 + 1] = (byte) (val & 0xFF);
+            }
+            Arrays.fill(mask, (byte) 0xFF);
+            rules.add(new Rule(deny, peer, mask, bytes));
+        }
+
+        private void addIpV4ExactMatch(final String peer, final boolean deny) {
+            String[] parts = peer.split("\\.");
+            byte[] bytes = {(byte) Integer.parseInt(parts[0]), (byte) Integer.parseInt(parts[1]), (byte) Integer.parseInt(parts[2]), (byte) Integer.parseInt(parts[3])};
+            rules.add(new Rule(deny, peer, toBytes(-1), bytes));
+        }
+
+        private static byte[] toBytes(final int value) {
+            return new byte[]{(byte) (value >>> 24), (byte) (value >>> 16), (byte) (value >>> 8), (byte) value};
+        }
+    }
+
+    private static final class Rule {
+
+        private final boolean deny;
+        private final String peer;
+        private final byte[] mask;
+        private final byte[] pattern;
+
+        private Rule(final boolean deny, final String peer, final byte[] mask, final byte[] pattern) {
+            this.deny = deny;
+            this.peer = peer;
+            this.mask = mask;
+            this.pattern = pattern;
+        }
+
+        boolean matches(final byte[] address) {
+            for (int i = 0; i < mask.length; ++i) {
+                if (((address[i] ^ pattern[i]) & mask[i]) != 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        /**
+         * @return The number of leading address bits that the rule matches on, or -1 if the mask is not contiguous
+         */
+        int prefixLength() {
+            int length = 0;
+            int i = 0;
+            while (i < mask.length && mask[i] == (byte) 0xFF) {
+                length += 8;
+                ++i;
+            }
+            if (i < mask.length) {
+                final int last = mask[i] & 0xFF;
+                final int bits = Integer.numberOfLeadingZeros(~last << 24);
+                if (((last << bits) & 0xFF) != 0) {
+                    return -1;
+                }
+                length += bits;
+                ++i;
+            }
+            for (; i < mask.length; ++i) {
+                if (mask[i] != 0) {
+                    return -1;
+                }
+            }
+            return length;
+        }
+
+        /**
+         * @return <code>true</code> if the pattern has bits set outside of the mask, in which case no address can match
+         */
+        boolean isUnmatchable() {
+            for (int i = 0; i < mask.length; ++i) {
+                if ((pattern[i] & ~mask[i] & 0xFF) != 0) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public String toString() {
+            return "Rule{" +
+                    "deny=" + deny +
+                    ", pattern='" + peer + '\'' +
+                    '}';
+        }
+    }
+
+    /**
+     * The rules for addresses of one length. Node n of the tree has its children at positions 2n and 2n + 1 of the
+     * children array, and a child of 0 means there is no child, as the root can never be a child.
+     */
+    private static final class Tree {
+
+        private final int[] children;
+        private final int[] first;
+        /**
+         * The rules that do not match a contiguous block of addresses, and the positions of these rules
+         */
+        private final Rule[] others;
+        private final int[] otherPositions;
+
+        Tree(final Rule[] all, final int addressLength) {
+            int[] children = new int[64];
+            int[] first = new int[32];
+            first[0] = NO_MATCH;
+            int nodes = 1;
+            final List<Integer> others = new ArrayList<>();
+            for (int r = 0; r < all.length; ++r) {
+                final Rule rule = all[r];
+                if (rule.mask.length != addressLength || rule.isUnmatchable()) {
+                    continue;
+                }
+                final int length = rule.prefixLength();
+                if (length == -1) {
+                    others.add(r);
+                    continue;
+                }
+                int node = 0;
+                for (int i = 0; i < length; ++i) {
+                    final int pos = node * 2 + bit(rule.pattern, i);
+                    if (children[pos] == 0) {
+                        if (nodes == first.length) {
+                            first = Arrays.copyOf(first, nodes * 2);
+                            children = Arrays.copyOf(children, nodes * 4);
+                        }
+                        first[nodes] = NO_MATCH;
+                        children[pos] = nodes++;
+                    }
+                    node = children[pos];
+                }
+                if (first[node] == NO_MATCH) {
+                    first[node] = r;
+                }
+            }
+            this.children = Arrays.copyOf(children, nodes * 2);
+            this.first = Arrays.copyOf(first, nodes);
+            this.others = new Rule[others.size()];
+            this.otherPositions = new int[others.size()];
+            for (int i = 0; i < this.others.length; ++i) {
+                otherPositions[i] = others.get(i);
+                this.others[i] = all[otherPositions[i]];
+            }
+        }
+
+        /**
+         * @return The position of the first matching rule, or {@link #NO_MATCH}
+         */
+        int match(final byte[] address) {
+            int best = first[0];
+            int node = 0;
+            final int bits = address.length * 8;
+            for (int i = 0; i < bits; ++i) {
+                node = children[node * 2 + bit(address, i)];
+                if (node == 0) {
+                    break;
+                }
+                final int rule = first[node];
+                if (rule < best) {
+                    best = rule;
+                }
+            }
+            for (int i = 0; i < others.length && otherPositions[i] < best; ++i) {
+                if (others[i].matches(address)) {
+                    return otherPositions[i];
+                }
+            }
+            return best;
+        }
+
+        private static int bit(final byte[] bytes, final int bit) {
+            return (bytes[bit >>> 3] >>> (7 - (bit & 7))) & 1;
+        }
+    }
+}
@@ -18,6 +18,10 @@
 
 package io.undertow.util;
 
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
 /**
  *
  * NOTE: If you add a new method here you must also add it to {@link io.undertow.server.protocol.http.HttpRequestParser}
@@ -88,5 +92,58 @@ public final class Methods {
     public static final HttpString BASELINE_CONTROL =new HttpString(BASELINE_CONTROL_STRING);
     public static final HttpString MKACTIVITY =new HttpString(MKACTIVITY_STRING);
 
+    private static final Map<String, HttpString> METHODS;
+
+    static {
+        Map<String, HttpString> methods = new HashMap<>();
+        putString(methods, OPTIONS);
+        putString(methods, GET);
+        putString(methods, HEAD);
+        putString(methods, POST);
+        putString(methods, PUT);
+        putString(methods, DELETE);
+        putString(methods, TRACE);
+        putString(methods, CONNECT);
+        putString(methods, PROPFIND);
+        putString(methods, PROPPATCH);
+        putString(methods, MKCOL);
+        putString(methods, COPY);
+        putString(methods, MOVE);
+        putString(methods, LOCK);
+        putString(methods, UNLOCK);
+        putString(methods, ACL);
+        putString(methods, REPORT);
+        putString(methods, VERSION_CONTROL);
+        putString(methods, CHECKIN);
+        putString(methods, CHECKOUT);
+        putString(methods, UNCHECKOUT);
+        putString(methods, SEARCH);
+        putString(methods, MKWORKSPACE);
+        putString(methods, UPDATE);
+        putString(methods, LABEL);
+        putString(methods, MERGE);
+        putString(methods, BASELINE_CONTROL);
+        putString(methods, MKACTIVITY);
+        METHODS = Collections.unmodifiableMap(methods);
+    }
+
+    private static void putString(Map<String, HttpString> methods, HttpString method) {
+        methods.put(method.toString(), method);
+    }
+
+    /**
+     * Returns the constant for a method name, so that the same instance that the request parser uses for the
+     * standard methods is used. Other method names are converted to a new {@link HttpString}.
+     *
+     * @param method The method name
+     * @return The method
+     */
+    public static HttpString fromString(String method) {
+        HttpString res = METHODS.get(method);
+        if(res == null) {
+            return new HttpString(method);
+        }
+        return res;
+    }
 
 }
@@ -21,10 +21,8 @@ package io.undertow.util;
 import io.undertow.UndertowMessages;
 
 import java.util.Collections;
-import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Map;
-import java.util.Set;
-import java.util.TreeSet;
 import java.util.concurrent.ConcurrentMap;
 
 /**
@@ -47,9 +45,10 @@ public class PathMatcher<T> {
     private final ConcurrentMap<String, T> exactPathMatches = new CopyOnWriteMap<>();
 
     /**
-     * lengths of all registered paths
+     * The registered paths, with the match for a request path that equals the registered path. This is built on
+     * demand, and discarded when the paths change.
      */
-    private volatile int[] lengths = {};
+    private volatile PathTrie<PathMatch<T>> trie = PathTrie.empty();
 
     public PathMatcher(final T defaultHandler) {
         this.defaultHandler = defaultHandler;
@@ -64,34 +63,44 @@ public class PathMatcher<T> {
      * @return The match match. This will never be null, however if none matched its value field will be
      */
     public PathMatch<T> match(String path){
-        if (!exactPathMatches.isEmpty()) {
+        if (!exactPathMatches.isEmpty() && (path.isEmpty() || path.charAt(0) != PATH_SEPARATOR)) {
+            //the trie only contains normalized paths
             T match = getExactPath(path);
             if (match != null) {
                 return new PathMatch<>("", match);
             }
         }
 
-        int length = path.length();
-        final int[] lengths = this.lengths;
-        for (int i = 0; i < lengths.length; ++i) {
-            int pathLength = lengths[i];
-            if (pathLength == length) {
-                T next = paths.get(path);
-                if (next != null) {
-                    return new PathMatch<>(path.substring(pathLength), next);
-                }
-            } else if (pathLength < length) {
-                char c = path.charAt(pathLength);
-                if (c == '/') {
-                    String part = path.substring(0, pathLength);
-                    T next = paths.get(part);
-                    if (next != null) {
-                        return new PathMatch<>(path.substring(pathLength), next);
-                    }
+        final PathTrie.Entry<PathMatch<T>> entry = trie().match(path);
+        if (entry == null) {
+            return new PathMatch<>(path, defaultHandler);
+        }
+        final PathMatch<T> match = entry.getValue();
+        if (entry.isExact() || entry.getPath().length() == path.length()) {
+            return match;
+        }
+        return new PathMatch<>(path.substring(entry.getPath().length()), match.getValue());
+    }
+
+    private PathTrie<PathMatch<T>> trie() {
+        PathTrie<PathMatch<T>> trie = this.trie;
+        if (trie == null) {
+            synchronized (this) {
+                trie = this.trie;
+                if (trie == null) {
+                    this.trie = trie = PathTrie.create(fullMatches(paths), fullMatches(exactPathMatches));
                 }
             }
         }
-        return new PathMatch<>(path, defaultHandler);
+        return trie;
+    }
+
+    private Map<String, PathMatch<T>> fullMatches(final Map<String, T> paths) {
+        final Map<String, PathMatch<T>> ret = new HashMap<>();
+        for (Map.Entry<String, T> entry : paths.entrySet()) {
+            ret.put(entry.getKey(), new PathMatch<>("", entry.getValue()));
+        }
+        return ret;
     }
 
     /**
@@ -120,7 +129,7 @@ public class PathMatcher<T> {
 
         paths.put(normalizedPath, handler);
 
-        buildLengths();
+        trie = null;
         return this;
     }
 
@@ -130,6 +139,7 @@ public class PathMatcher<T> {
             throw UndertowMessages.MESSAGES.pathMustBeSpecified();
         }
         exactPathMatches.put(this.normalizeSlashes(path), handler);
+        trie = null;
         return this;
     }
 
@@ -150,25 +160,6 @@ public class PathMatcher<T> {
         return paths.get(normalizedPath);
     }
 
-    private void buildLengths() {
-        final Set<Integer> lengths = new TreeSet<>(new Comparator<Integer>() {
-            @Override
-            public int compare(Integer o1, Integer o2) {
-                return -o1.compareTo(o2);
-            }
-        });
-        for (String p : paths.keySet()) {
-            lengths.add(p.length());
-        }
-
-        int[] lengthArray = new int[lengths.size()];
-        int pos = 0;
-        for (int i : lengths) {
-            lengthArray[pos++] = i;
-        }
-        this.lengths = lengthArray;
-    }
-
     @Deprecated
     public synchronized PathMatcher removePath(final String path) {
         return removePrefixPath(path);
@@ -188,7 +179,7 @@ public class PathMatcher<T> {
 
         paths.remove(normalizedPath);
 
-        buildLengths();
+        trie = null;
         return this;
     }
 
@@ -199,13 +190,14 @@ public class PathMatcher<T> {
 
         exactPathMatches.remove(this.normalizeSlashes(path));
 
+        trie = null;
         return this;
     }
 
     public synchronized PathMatcher clearPaths() {
         paths.clear();
         exactPathMatches.clear();
-        this.lengths = new int[0];
+        this.trie = PathTrie.empty();
         defaultHandler = null;
         return this;
     }
@@ -47,13 +47,18 @@ public class PathTemplate implements Comparable<PathTemplate> {
     private final String base;
     private final List<Part> parts;
     private final Set<String> parameterNames;
+    /**
+     * The names of the template parts, in the order they appear in the template
+     */
+    private final String[] templateParts;
 
-    private PathTemplate(String templateString, final boolean template, final String base, final List<Part> parts, Set<String> parameterNames) {
+    private PathTemplate(String templateString, final boolean template, final String base, final List<Part> parts, Set<String> parameterNames, final String[] templateParts) {
         this.templateString = templateString;
         this.template = template;
         this.base = base;
         this.parts = parts;
         this.parameterNames = Collections.unmodifiableSet(parameterNames);
+        this.templateParts = templateParts;
     }
 
     public static PathTemplate create(final String inputPath) {
@@ -163,12 +168,14 @@ public class PathTemplate implements Comparable<PathTemplate> {
             }
         }
         final Set<String> templates = new HashSet<>();
+        final List<String> templateParts = new ArrayList<>();
         for(Part part : parts) {
             if(part.template) {
                 templates.add(part.part);
+                templateParts.add(part.part);
             }
         }
-        return new PathTemplate(path, state > 1, base, parts, templates);
+        return new PathTemplate(path, state > 1, base, parts, templates, templateParts.toArray(new String[templateParts.size()]));
     }
 
     /**
@@ -183,6 +190,29 @@ public class PathTemplate implements Comparable<PathTemplate> {
      * @return true if the URI is a match
      */
     public boolean matches(final String path, final Map<String, String> pathParameters) {
+        final int[] offsets = new int[templateParts.length * 2];
+        if (!matches(path, offsets)) {
+            pathParameters.clear();
+            return false;
+        }
+        for (int i = 0; i < templateParts.length; ++i) {
+            pathParameters.put(templateParts[i], path.substring(offsets[i * 2], offsets[i * 2 + 1]));
+        }
+        return true;
+    }
+
+    /**
+     * Check if the given uri matches the template, without creating the values of the path parameters.
+     * <p/>
+     * If the uri matches then the start and end offsets of the value of the n-th template part are placed
+     * into the array at positions 2n and 2n + 1. The array must have room for two offsets per template part,
+     * and may be modified even if the match is unsuccessful.
+     *
+     * @param path    The request path, relative to the context root
+     * @param offsets The array to place the offsets of the path parameters in
+     * @return true if the URI is a match
+     */
+    boolean matches(final String path, final int[] offsets) {
         if (!path.startsWith(base)) {
             return false;
         }
@@ -193,6 +223,7 @@ public class PathTemplate implements Comparable<PathTemplate> {
 
 
         int cp = 0;
+        int param = 0;
         Part current = parts.get(cp);
         int stringStart = baseLength;
         int i;
@@ -201,11 +232,10 @@ public class PathTemplate implements Comparable<PathTemplate> {
             if (c == '?') {
                 break;
             } else if (c == '/') {
-                String result = path.substring(stringStart, i);
                 if (current.template) {
-                    pathParameters.put(current.part, result);
-                } else if (!result.equals(current.part)) {
-                    pathParameters.clear();
+                    offsets[param++] = stringStart;
+                    offsets[param++] = i;
+                } else if (!current.matches(path, stringStart, i)) {
                     return false;
                 }
                 ++cp;
@@ -218,19 +248,24 @@ public class PathTemplate implements Comparable<PathTemplate> {
             }
         }
         if (cp + 1 != parts.size()) {
-            pathParameters.clear();
             return false;
         }
-        String result = path.substring(stringStart, i);
         if (current.template) {
-            pathParameters.put(current.part, result);
-        } else if (!result.equals(current.part)) {
-            pathParameters.clear();
+            offsets[param++] = stringStart;
+            offsets[param] = i;
+        } else if (!current.matches(path, stringStart, i)) {
             return false;
         }
         return true;
     }
 
+    /**
+     * @return The names of the template parts, in the order they appear in the template. Callers must not modify the array.
+     */
+    String[] getTemplateParts() {
+        return templateParts;
+    }
+
     @Override
     public int compareTo(final PathTemplate o) {
         //we want templates with the highest priority to sort first
@@ -304,6 +339,13 @@ public class PathTemplate implements Comparable<PathTemplate> {
             this.part = part;
         }
 
+        /**
+         * @return <code>true</code> if the given region of the path equals this part
+         */
+        boolean matches(final String path, final int start, final int end) {
+            return end - start == part.length() && path.regionMatches(start, part, 0, part.length());
+        }
+
         @Override
         public String toString() {
             return "Part{" +
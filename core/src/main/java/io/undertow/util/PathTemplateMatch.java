@@ -18,10 +18,15 @@
 
 package io.undertow.util;
 
+import java.util.HashMap;
 import java.util.Map;
 
 /**
  * The result of a path template match.
+ * <p/>
+ * Matches that are created by a {@link PathTemplateMatcher} only record where the path parameters are in the matched
+ * path. The values are created when they are read, and the parameter map is only created if {@link #getParameters()}
+ * is called.
  *
  * @author Stuart Douglas
  */
@@ -29,12 +34,43 @@ public class PathTemplateMatch {
 
     public static final AttachmentKey<PathTemplateMatch> ATTACHMENT_KEY = AttachmentKey.create(PathTemplateMatch.class);
 
+    private static final String[] NO_NAMES = new String[0];
+
     private final String matchedTemplate;
-    private final Map<String, String> parameters;
+    private final String path;
+    private final String[] names;
+    private final int[] offsets;
+    private String[] values;
+    private Map<String, String> parameters;
 
     public PathTemplateMatch(String matchedTemplate, Map<String, String> parameters) {
         this.matchedTemplate = matchedTemplate;
         this.parameters = parameters;
+        this.path = null;
+        this.offsets = null;
+        if (parameters == null) {
+            this.names = NO_NAMES;
+        } else {
+            this.names = parameters.keySet().toArray(new String[parameters.size()]);
+            final String[] values = new String[names.length];
+            for (int i = 0; i < names.length; ++i) {
+                values[i] = parameters.get(names[i]);
+            }
+            this.values = values;
+        }
+    }
+
+    /**
+     * @param matchedTemplate The template that was matched
+     * @param path            The path that was matched
+     * @param names           The names of the path parameters
+     * @param offsets         The start and end offsets of the value of the n-th path parameter in the path, at positions 2n and 2n + 1
+     */
+    public PathTemplateMatch(String matchedTemplate, String path, String[] names, int[] offsets) {
+        this.matchedTemplate = matchedTemplate;
+        this.path = path;
+        this.names = names == null ? NO_NAMES : names;
+        this.offsets = offsets;
     }
 
     public String getMatchedTemplate() {
@@ -42,7 +78,56 @@ public class PathTemplateMatch {
     }
 
     public Map<String, String> getParameters() {
+        if (parameters == null) {
+            final Map<String, String> parameters = new HashMap<>();
+            for (int i = 0; i < names.length; ++i) {
+                parameters.put(names[i], getParameterValue(i));
+            }
+            this.parameters = parameters;
+        }
         return parameters;
     }
 
+    /**
+     * Returns the value of a path parameter, without creating the parameter map.
+     *
+     * @param name The parameter name
+     * @return The value, or <code>null</code> if the template has no parameter with the given name
+     */
+    public String getParameter(final String name) {
+        if (parameters != null) {
+            return parameters.get(name);
+        }
+        //if a name is used more than once the last value wins, the same as in the parameter map
+        for (int i = names.length - 1; i >= 0; --i) {
+            if (names[i].equals(name)) {
+                return getParameterValue(i);
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return The number of path parameters of the matched template
+     */
+    public int getParameterCount() {
+        return names.length;
+    }
+
+    public String getParameterName(final int index) {
+        return names[index];
+    }
+
+    public String getParameterValue(final int index) {
+        String[] values = this.values;
+        if (values == null) {
+            this.values = values = new String[names.length];
+        }
+        String value = values[index];
+        if (value == null) {
+            value = values[index] = path.substring(offsets[index * 2], offsets[index * 2 + 1]);
+        }
+        return value;
+    }
+
 }
@@ -20,7 +20,6 @@ package io.undertow.util;
 
 import io.undertow.UndertowMessages;
 
-import java.util.Comparator;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
@@ -33,65 +32,66 @@ import java.util.TreeSet;
  * Utility class that provides fast path matching of path templates. Templates are stored in a map based on the stem of the template,
  * and matches longest stem first.
  * <p/>
- * TODO: we can probably do this faster using a trie type structure, but I think the current impl should perform ok most of the time
+ * The stems are looked up in a {@link PathTrie}, so all stems that are a prefix of a path are found in a single pass
+ * over the path.
  *
  * @author Stuart Douglas
  */
 public class PathTemplateMatcher<T> {
 
+    private static final int[] NO_OFFSETS = new int[0];
+
     /**
      * Map of path template stem to the path templates that share the same base.
      */
     private Map<String, Set<PathTemplateHolder>> pathTemplateMap = new CopyOnWriteMap<>();
 
     /**
-     * lengths of all registered paths
+     * The stems, with their templates in the order they are checked. This is built on demand, and discarded when the
+     * templates change.
      */
-    private volatile int[] lengths = {};
+    private volatile PathTrie<PathTemplateHolder[]> trie = PathTrie.empty();
 
     public PathMatchResult<T> match(final String path) {
-        final Map<String, String> params = new HashMap<>();
-        int length = path.length();
-        final int[] lengths = this.lengths;
-        for (int i = 0; i < lengths.length; ++i) {
-            int pathLength = lengths[i];
-            if (pathLength == length) {
-                Set<PathTemplateHolder> entry = pathTemplateMap.get(path);
-                if (entry != null) {
-                    PathMatchResult<T> res = handleStemMatch(entry, path, params);
-                    if (res != null) {
-                        return res;
-                    }
+        PathTrie.Entry<PathTemplateHolder[]> entry = trie().match(path);
+        if (entry == null) {
+            return null;
+        }
+        int[] offsets = NO_OFFSETS;
+        do {
+            for (PathTemplateHolder val : entry.getValue()) {
+                final String[] names = val.template.getTemplateParts();
+                if (offsets.length < names.length * 2) {
+                    offsets = new int[names.length * 2];
                 }
-            } else if (pathLength < length) {
-                char c = path.charAt(pathLength);
-                if (c == '/') {
-                    String part = path.substring(0, pathLength);
-                    Set<PathTemplateHolder> entry = pathTemplateMap.get(part);
-                    if (entry != null) {
-                        PathMatchResult<T> res = handleStemMatch(entry, path, params);
-                        if (res != null) {
-                            return res;
-                        }
-                    }
+                if (val.template.matches(path, offsets)) {
+                    return new PathMatchResult<>(val.template.getTemplateString(), path, names, offsets, val.value);
                 }
             }
-        }
+            entry = entry.getShorter();
+        } while (entry != null);
         return null;
     }
 
-    private PathMatchResult<T> handleStemMatch(Set<PathTemplateHolder> entry, final String path, final Map<String, String> params) {
-        for (PathTemplateHolder val : entry) {
-            if (val.template.matches(path, params)) {
-                return new PathMatchResult<>(params, val.template.getTemplateString(), val.value);
-            } else {
-                params.clear();
+    private PathTrie<PathTemplateHolder[]> trie() {
+        PathTrie<PathTemplateHolder[]> trie = this.trie;
+        if (trie == null) {
+            synchronized (this) {
+                trie = this.trie;
+                if (trie == null) {
+                    final Map<String, PathTemplateHolder[]> stems = new HashMap<>();
+                    for (Entry<String, Set<PathTemplateHolder>> entry : pathTemplateMap.entrySet()) {
+                        @SuppressWarnings("unchecked")
+                        final PathTemplateHolder[] holders = entry.getValue().toArray(new PathTemplateMatcher.PathTemplateHolder[entry.getValue().size()]);
+                        stems.put(entry.getKey(), holders);
+                    }
+                    this.trie = trie = PathTrie.create(stems);
+                }
             }
         }
-        return null;
+        return trie;
     }
 
-
     public synchronized PathTemplateMatcher<T> add(final PathTemplate template, final T value) {
         Set<PathTemplateHolder> values = pathTemplateMap.get(trimBase(template));
         Set<PathTemplateHolder> newValues;
@@ -113,7 +113,7 @@ public class PathTemplateMatcher<T> {
         }
         newValues.add(holder);
         pathTemplateMap.put(trimBase(template), newValues);
-        buildLengths();
+        trie = null;
         return this;
     }
 
@@ -124,25 +124,6 @@ public class PathTemplateMatcher<T> {
         return template.getBase();
     }
 
-    private void buildLengths() {
-        final Set<Integer> lengths = new TreeSet<>(new Comparator<Integer>() {
-            @Override
-            public int compare(Integer o1, Integer o2) {
-                return -o1.compareTo(o2);
-            }
-        });
-        for (String p : pathTemplateMap.keySet()) {
-            lengths.add(p.length());
-        }
-
-        int[] lengthArray = new int[lengths.size()];
-        int pos = 0;
-        for (int i : lengths) {
-            lengthArray[pos++] = i; //-1 because the base paths end with a /
-        }
-        this.lengths = lengthArray;
-    }
-
     public synchronized PathTemplateMatcher<T> add(final String pathTemplate, final T value) {
         final PathTemplate template = PathTemplate.create(pathTemplate);
         return add(template, value);
@@ -197,7 +178,7 @@ public class PathTemplateMatcher<T> {
         } else {
             pathTemplateMap.put(trimBase(template), newValues);
         }
-        buildLengths();
+        trie = null;
         return this;
     }
 
@@ -224,6 +205,11 @@ public class PathTemplateMatcher<T> {
             this.value = value;
         }
 
+        public PathMatchResult(String matchedTemplate, String path, String[] names, int[] offsets, T value) {
+            super(matchedTemplate, path, names, offsets);
+            this.value = value;
+        }
+
         public T getValue() {
             return value;
         }
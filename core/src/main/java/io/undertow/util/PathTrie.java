@@ -0,0 +1,340 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.util;
+
+import io.undertow.UndertowMessages;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * An immutable tree of paths, that finds the longest registered path that is a prefix of a request path in a single
+ * descent over the segments of the request path, without creating substrings of the request path.
+ * <p/>
+ * A registered path is a prefix of a request path if it is equal to it, or if the character that follows it in the
+ * request path is a '/'. Registered paths must either be empty or start with a '/', and the empty path is a prefix of
+ * every path that starts with a '/'. A registered path can also be marked as exact, in which case it only matches a
+ * request path that equals it, ignoring any trailing '/' characters. Exact paths take precedence over prefix paths.
+ * <p/>
+ * Every node of the tree is a path segment. The children of a node are found by the hash code of the segment, which
+ * is computed while scanning the request path, so every character of the request path is only looked at once or
+ * twice. Every entry links to the next shorter entry that is a prefix of its path, so all prefixes of a request path
+ * can be visited from longest to shortest after a single lookup using {@link Entry#getShorter()}.
+ * <p/>
+ * The tree is immutable, so it can be shared by any number of threads. Users that allow paths to be added at runtime
+ * build a new tree when the paths have changed, in the same way as they would copy a {@link CopyOnWriteMap}.
+ *
+ * @author agent
+ */
+public final class PathTrie<T> {
+
+    private static final PathTrie<?> EMPTY = new PathTrie<>(new Node<>());
+
+    /**
+     * Nodes with up to this many children are searched linearly, larger nodes use an open addressing hash table
+     */
+    private static final int LINEAR_SEARCH_LIMIT = 8;
+
+    private final Node<T> root;
+
+    private PathTrie(final Node<T> root) {
+        this.root = root;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <T> PathTrie<T> empty() {
+        return (PathTrie<T>) EMPTY;
+    }
+
+    /**
+     * Creates a tree that only contains prefix paths
+     *
+     * @param prefixes The paths and their values
+     * @return The tree
+     */
+    public static <T> PathTrie<T> create(final Map<String, T> prefixes) {
+        return create(prefixes, null);
+    }
+
+    /**
+     * Creates a tree
+     *
+     * @param prefixes The prefix paths and their values
+     * @param exact    The exact paths and their values, may be null
+     * @return The tree
+     */
+    public static <T> PathTrie<T> create(final Map<String, T> prefixes, final Map<String, T> exact) {
+        if (prefixes.isEmpty() && (exact == null || exact.isEmpty())) {
+            return empty();
+        }
+        final Node<T> root = new Node<>();
+        final List<Entry<T>> entries = new ArrayList<>(prefixes.size());
+        for (Map.Entry<String, T> prefix : prefixes.entrySet()) {
+            final Entry<T> entry = new Entry<>(prefix.getKey(), prefix.getValue(), false);
+            insert(root, prefix.getKey()).prefix = entry;
+            entries.add(entry);
+        }
+        if (exact != null) {
+            for (Map.Entry<String, T> path : exact.entrySet()) {
+                insert(root, path.getKey()).exact = new Entry<>(path.getKey(), path.getValue(), true);
+            }
+        }
+        root.freeze();
+        final PathTrie<T> trie = new PathTrie<>(root);
+        for (Entry<T> entry : entries) {
+            entry.shorter = trie.match(entry.path, entry.path.length() - 1, false);
+        }
+        return trie;
+    }
+
+    private static <T> Node<T> insert(final Node<T> root, final String path) {
+        if (!path.isEmpty() && path.charAt(0) != '/') {
+            throw UndertowMessages.MESSAGES.pathMustStartWithSlash(path);
+        }
+        Node<T> node = root;
+        int start = 1;
+        while (start <= path.length()) {
+            int end = path.indexOf('/', start);
+            if (end == -1) {
+                end = path.length();
+            }
+            final String segment = path.substring(start, end);
+            if (node.building == null) {
+                node.building = new LinkedHashMap<>();
+            }
+            Node<T> child = node.building.get(segment);
+            if (child == null) {
+                node.building.put(segment, child = new Node<>(segment.toCharArray(), segment.hashCode()));
+            }
+            node = child;
+            start = end + 1;
+        }
+        return node;
+    }
+
+    /**
+     * Finds the entry for a request path. If an exact path equals the request path it is returned, otherwise the
+     * longest prefix path of the request path is returned.
+     *
+     * @param path The request path
+     * @return The entry, or <code>null</code> if no registered path matches
+     */
+    public Entry<T> match(final String path) {
+        return match(path, path.length(), true);
+    }
+
+    /**
+     * Finds the longest prefix entry for a request path that is not longer than the given length. Exact entries are
+     * ignored.
+     *
+     * @param path      The request path
+     * @param maxLength The maximum length of the registered path
+     * @return The entry, or <code>null</code> if no registered path matches
+     */
+    public Entry<T> matchPrefix(final String path, final int maxLength) {
+        return match(path, maxLength, false);
+    }
+
+    private Entry<T> match(final String path, final int maxLength, final boolean matchExact) {
+        final int length = path.length();
+        if (length != 0 && path.charAt(0) != '/') {
+            return null;
+        }
+        Node<T> node = root;
+        Entry<T> best = null;
+        //the end of the path of the current node, which is always followed by a '/' or the end of the path
+        int pos = 0;
+        while (pos <= maxLength) {
+            if (matchExact && node.exact != null && isTrailingSlashes(path, pos)) {
+                return node.exact;
+            }
+            if (node.prefix != null) {
+                best = node.prefix;
+            }
+            if (pos == length || node.children == null) {
+                break;
+            }
+            final int start = pos + 1;
+            int end = start;
+            int hash = 0;
+            char c;
+            while (end < length && (c = path.charAt(end)) != '/') {
+                hash = 31 * hash + c;
+                ++end;
+            }
+            node = node.child(path, start, end, hash);
+            if (node == null) {
+                break;
+            }
+            pos = end;
+        }
+        return best;
+    }
+
+    private static boolean isTrailingSlashes(final String path, final int pos) {
+        for (int i = pos; i < path.length(); ++i) {
+            if (path.charAt(i) != '/') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * A registered path and its value
+     */
+    public static final class Entry<T> {
+
+        private final String path;
+        private final T value;
+        private final boolean exact;
+        private Entry<T> shorter;
+
+        Entry(final String path, final T value, final boolean exact) {
+            this.path = path;
+            this.value = value;
+            this.exact = exact;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public T getValue() {
+            return value;
+        }
+
+        /**
+         * @return <code>true</code> if this is an exact entry, otherwise it is a prefix entry
+         */
+        public boolean isExact() {
+            return exact;
+        }
+
+        /**
+         * @return The longest prefix entry whose path is a prefix of this entry's path, or <code>null</code> if there is
+         *         none. This is always <code>null</code> for exact entries.
+         */
+        public Entry<T> getShorter() {
+            return shorter;
+        }
+    }
+
+    private static final class Node<T> {
+
+        private static final char[] ROOT = {};
+
+        /**
+         * The segment of this node and its hash code, which is the same as the hash code of the segment string
+         */
+        private final char[] segment;
+        private final int hash;
+
+        private Entry<T> prefix;
+        private Entry<T> exact;
+
+        /**
+         * The children while the tree is being built
+         */
+        private Map<String, Node<T>> building;
+
+        /**
+         * The children. If there are more than {@link #LINEAR_SEARCH_LIMIT} children this is an open addressing hash
+         * table, otherwise it is searched linearly using the hash codes of the children.
+         */
+        private Node<T>[] children;
+        private int[] hashes;
+        private int mask = -1;
+
+        Node() {
+            this(ROOT, 0);
+        }
+
+        Node(final char[] segment, final int hash) {
+            this.segment = segment;
+            this.hash = hash;
+        }
+
+        @SuppressWarnings("unchecked")
+        void freeze() {
+            if (building == null) {
+                return;
+            }
+            final int size = building.size();
+            if (size <= LINEAR_SEARCH_LIMIT) {
+                children = new Node[size];
+                hashes = new int[size];
+                int i = 0;
+                for (Node<T> child : building.values()) {
+                    hashes[i] = child.hash;
+                    children[i++] = child;
+                }
+            } else {
+                final int capacity = Integer.highestOneBit(size - 1) << 2;
+                mask = capacity - 1;
+                children = new Node[capacity];
+                for (Node<T> child : building.values()) {
+                    int index = child.hash & mask;
+                    while (children[index] != null) {
+                        index = (index + 1) & mask;
+                    }
+                    children[index] = child;
+                }
+            }
+            for (Node<T> child : building.values()) {
+                child.freeze();
+            }
+            building = null;
+        }
+
+        Node<T> child(final String path, final int start, final int end, final int hash) {
+            final Node<T>[] children = this.children;
+            if (mask == -1) {
+                final int[] hashes = this.hashes;
+                for (int i = 0; i < hashes.length; ++i) {
+                    if (hashes[i] == hash && children[i].matches(path, start, end)) {
+                        return children[i];
+                    }
+                }
+                return null;
+            }
+            Node<T> child;
+            for (int index = hash & mask; (child = children[index]) != null; index = (index + 1) & mask) {
+                if (child.hash == hash && child.matches(path, start, end)) {
+                    return child;
+                }
+            }
+            return null;
+        }
+
+        private boolean matches(final String path, final int start, final int end) {
+            final char[] segment = this.segment;
+            if (segment.length != end - start) {
+                return false;
+            }
+            for (int i = 0; i < segment.length; ++i) {
+                if (segment[i] != path.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -20,6 +20,7 @@ package io.undertow.websockets;
 
 import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Iterator;
 import java.util.List;
 
 /**
@@ -84,11 +85,24 @@ public class WebSocketExtension {
             String[] items = part.split(";");
             if (items.length > 0) {
                 final List<Parameter> params = new ArrayList<>(items.length - 1);
-                String name = items[0];
+                String name = items[0].trim();
+                if (name.isEmpty()) {
+                    continue;
+                }
                 for (int i = 1; i < items.length; ++i) {
-                    String[] param = items[i].split("=");
-                    if (param.length == 2) {
-                        params.add(new Parameter(param[0], param[1]));
+                    String item = items[i].trim();
+                    int index = item.indexOf('=');
+                    if (index == -1) {
+                        //parameters such as server_no_context_takeover have no value
+                        if (!item.isEmpty()) {
+                            params.add(new Parameter(item, null));
+                        }
+                    } else {
+                        String value = item.substring(index + 1).trim();
+                        if (value.length() > 1 && value.charAt(0) == '"' && value.charAt(value.length() - 1) == '"') {
+                            value = value.substring(1, value.length() - 1);
+                        }
+                        params.add(new Parameter(item.substring(0, index).trim(), value));
                     }
                 }
                 extensions.add(new WebSocketExtension(name, params));
@@ -96,4 +110,31 @@ public class WebSocketExtension {
         }
         return extensions;
     }
+
+    /**
+     * Creates the value of a <code>Sec-WebSocket-Extensions</code> header from the given extensions.
+     *
+     * @param extensions The extensions
+     * @return The header value
+     */
+    public static String toExtensionHeader(final List<WebSocketExtension> extensions) {
+        StringBuilder sb = new StringBuilder();
+        Iterator<WebSocketExtension> it = extensions.iterator();
+        while (it.hasNext()) {
+            WebSocketExtension next = it.next();
+            sb.append(next.getName());
+            for (Parameter param : next.getParameters()) {
+                sb.append("; ");
+                sb.append(param.getName());
+                if (param.getValue() != null) {
+                    sb.append("=");
+                    sb.append(param.getValue());
+                }
+            }
+            if (it.hasNext()) {
+                sb.append(", ");
+            }
+        }
+        return sb.toString();
+    }
 }
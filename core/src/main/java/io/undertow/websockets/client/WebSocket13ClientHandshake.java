@@ -26,6 +26,8 @@ import io.undertow.websockets.core.WebSocketMessages;
 import io.undertow.websockets.core.WebSocketUtils;
 import io.undertow.websockets.core.WebSocketVersion;
 import io.undertow.websockets.core.protocol.version13.WebSocket13Channel;
+import io.undertow.websockets.extensions.PerMessageDeflate;
+import io.undertow.websockets.extensions.PerMessageDeflateHandshake;
 import org.xnio.Pool;
 import org.xnio.StreamConnection;
 import org.xnio.http.HandshakeChecker;
@@ -36,6 +38,7 @@ import java.nio.ByteBuffer;
 import java.security.MessageDigest;
 import java.security.NoSuchAlgorithmException;
 import java.security.SecureRandom;
+import java.util.ArrayList;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.HashSet;
@@ -52,10 +55,21 @@ public class WebSocket13ClientHandshake extends WebSocketClientHandshake {
     public static final String MAGIC_NUMBER = "258EAFA5-E914-47DA-95CA-C5AB0DC85B11";
 
     private final WebSocketClientNegotiation negotiation;
+    private final PerMessageDeflateHandshake perMessageDeflate;
+    private volatile PerMessageDeflate selectedDeflate;
 
     public WebSocket13ClientHandshake(final URI url, WebSocketClientNegotiation negotiation) {
+        this(url, negotiation, null);
+    }
+
+    /**
+     * @param perMessageDeflate The permessage-deflate negotiation, or <code>null</code> if messages are never compressed.
+     *                          If this is present compression is offered to the server.
+     */
+    public WebSocket13ClientHandshake(final URI url, WebSocketClientNegotiation negotiation, PerMessageDeflateHandshake perMessageDeflate) {
         super(url);
         this.negotiation = negotiation;
+        this.perMessageDeflate = perMessageDeflate;
     }
 
     public WebSocket13ClientHandshake(final URI url) {
@@ -64,7 +78,7 @@ public class WebSocket13ClientHandshake extends WebSocketClientHandshake {
 
     @Override
     public WebSocketChannel createChannel(final StreamConnection channel, final String wsUri, final Pool<ByteBuffer> bufferPool) {
-        return new WebSocket13Channel(channel, bufferPool, wsUri, negotiation != null ? negotiation.getSelectedSubProtocol() : "", true, false, new HashSet<WebSocketChannel>());
+        return new WebSocket13Channel(channel, bufferPool, wsUri, negotiation != null ? negotiation.getSelectedSubProtocol() : "", true, false, new HashSet<WebSocketChannel>(), selectedDeflate);
     }
 
 
@@ -88,30 +102,26 @@ public class WebSocket13ClientHandshake extends WebSocketClientHandshake {
                 }
                 headers.put(Headers.SEC_WEB_SOCKET_PROTOCOL_STRING, sb.toString());
             }
-            List<WebSocketExtension> extensions = negotiation.getSupportedExtensions();
-            if (extensions != null && !extensions.isEmpty()) {
-                StringBuilder sb = new StringBuilder();
-                Iterator<WebSocketExtension> it = extensions.iterator();
-                while (it.hasNext()) {
-                    WebSocketExtension next = it.next();
-                    sb.append(next);
-                    for (WebSocketExtension.Parameter param : next.getParameters()) {
-                        sb.append("; ");
-                        sb.append(param.getName());
-                        sb.append("=");
-                        sb.append(param.getValue());
-                    }
-                    if (it.hasNext()) {
-                        sb.append(", ");
-                    }
-                }
-                headers.put(Headers.SEC_WEB_SOCKET_EXTENSIONS_STRING, sb.toString());
-            }
+        }
+        List<WebSocketExtension> extensions = offeredExtensions();
+        if (!extensions.isEmpty()) {
+            headers.put(Headers.SEC_WEB_SOCKET_EXTENSIONS_STRING, WebSocketExtension.toExtensionHeader(extensions));
         }
         return headers;
 
     }
 
+    private List<WebSocketExtension> offeredExtensions() {
+        List<WebSocketExtension> extensions = new ArrayList<>();
+        if (negotiation != null && negotiation.getSupportedExtensions() != null) {
+            extensions.addAll(negotiation.getSupportedExtensions());
+        }
+        if (perMessageDeflate != null) {
+            extensions.add(perMessageDeflate.offer());
+        }
+        return extensions;
+    }
+
     protected String createSecKey() {
         SecureRandom random = new SecureRandom();
         byte[] data = new byte[16];
@@ -147,18 +157,21 @@ public class WebSocket13ClientHandshake extends WebSocketClientHandshake {
                 if (!dKey.equals(acceptKey)) {
                     throw WebSocketMessages.MESSAGES.webSocketAcceptKeyMismatch(dKey, acceptKey);
                 }
+                List<WebSocketExtension> extensions = Collections.emptyList();
+                String extHeader = headers.get(Headers.SEC_WEB_SOCKET_EXTENSIONS_STRING.toLowerCase(Locale.ENGLISH));
+                if (extHeader != null) {
+                    extensions = WebSocketExtension.parse(extHeader);
+                }
                 if (negotiation != null) {
                     String subProto = headers.get(Headers.SEC_WEB_SOCKET_PROTOCOL_STRING.toLowerCase(Locale.ENGLISH));
                     if (subProto != null && !subProto.isEmpty() && !negotiation.getSupportedSubProtocols().contains(subProto)) {
                         throw WebSocketMessages.MESSAGES.unsupportedProtocol(subProto, negotiation.getSupportedSubProtocols());
                     }
-                    List<WebSocketExtension> extensions = Collections.emptyList();
-                    String extHeader = headers.get(Headers.SEC_WEB_SOCKET_EXTENSIONS_STRING.toLowerCase(Locale.ENGLISH));
-                    if (extHeader != null) {
-                        extensions = WebSocketExtension.parse(extHeader);
-                    }
                     negotiation.handshakeComplete(subProto, extensions);
                 }
+                if (perMessageDeflate != null) {
+                    selectedDeflate = perMessageDeflate.createClientContext(extensions);
+                }
             }
         };
     }
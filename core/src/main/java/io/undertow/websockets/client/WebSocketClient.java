@@ -20,6 +20,7 @@ package io.undertow.websockets.client;
 
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSocketVersion;
+import io.undertow.websockets.extensions.PerMessageDeflateHandshake;
 
 import org.xnio.Cancellable;
 import org.xnio.ChannelListener;
@@ -58,6 +59,13 @@ public class WebSocketClient {
     }
 
     public static IoFuture<WebSocketChannel> connect(XnioWorker worker, XnioSsl ssl, final Pool<ByteBuffer> bufferPool, final OptionMap optionMap, final URI uri, WebSocketVersion version, WebSocketClientNegotiation clientNegotiation) {
+        return connect(worker, ssl, bufferPool, optionMap, uri, version, clientNegotiation, null);
+    }
+
+    /**
+     * Connects to a web socket server, offering permessage-deflate compression if the handshake is not null.
+     */
+    public static IoFuture<WebSocketChannel> connect(XnioWorker worker, XnioSsl ssl, final Pool<ByteBuffer> bufferPool, final OptionMap optionMap, final URI uri, WebSocketVersion version, WebSocketClientNegotiation clientNegotiation, PerMessageDeflateHandshake perMessageDeflate) {
 
         final FutureResult<WebSocketChannel> ioFuture = new FutureResult<>();
         final URI newUri;
@@ -66,7 +74,7 @@ public class WebSocketClient {
         } catch (URISyntaxException e) {
             throw new RuntimeException(e);
         }
-        final WebSocketClientHandshake handshake = WebSocketClientHandshake.create(version, newUri, clientNegotiation);
+        final WebSocketClientHandshake handshake = WebSocketClientHandshake.create(version, newUri, clientNegotiation, perMessageDeflate);
         final Map<String, String> headers = handshake.createHeaders();
         if (clientNegotiation != null) {
             clientNegotiation.beforeRequest(headers);
@@ -20,6 +20,7 @@ package io.undertow.websockets.client;
 
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSocketVersion;
+import io.undertow.websockets.extensions.PerMessageDeflateHandshake;
 import org.xnio.Pool;
 import org.xnio.StreamConnection;
 import org.xnio.http.HandshakeChecker;
@@ -40,9 +41,13 @@ public abstract class WebSocketClientHandshake {
     }
 
     public static WebSocketClientHandshake create(final WebSocketVersion version, final URI uri, WebSocketClientNegotiation clientNegotiation) {
+        return create(version, uri, clientNegotiation, null);
+    }
+
+    public static WebSocketClientHandshake create(final WebSocketVersion version, final URI uri, WebSocketClientNegotiation clientNegotiation, PerMessageDeflateHandshake perMessageDeflate) {
         switch (version) {
             case V13:
-                return new WebSocket13ClientHandshake(uri, clientNegotiation);
+                return new WebSocket13ClientHandshake(uri, clientNegotiation, perMessageDeflate);
         }
         throw new IllegalArgumentException();
     }
@@ -22,10 +22,15 @@ import org.xnio.ChannelListener;
 import org.xnio.Pooled;
 
 import java.io.IOException;
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 
 /**
  * A buffered text message.
+ * <p/>
+ * If the channel allows it the message is validated while it is decoded, instead of being validated by the channel
+ * and decoded afterwards, so each byte of the message is only processed once. The only byte buffer that is used is a
+ * pooled read buffer, the text is reassembled by the decoder.
  *
  * @author Stuart Douglas
  */
@@ -37,6 +42,8 @@ public class BufferedTextMessage {
     private final long maxMessageSize;
     private boolean complete;
     long currentSize;
+    private boolean validationChecked;
+    private boolean validate;
 
     /**
      * @param maxMessageSize    The maximum message size
@@ -61,7 +68,34 @@ public class BufferedTextMessage {
         }
     }
 
+    /**
+     * Takes over the UTF-8 validation of the message from the channel, if this is the first read of the message.
+     */
+    private void checkValidation(StreamSourceFrameChannel channel) {
+        if (!validationChecked) {
+            validationChecked = true;
+            validate = channel.disableUTF8Validation();
+        }
+    }
+
+    private void decode(StreamSourceFrameChannel channel, ByteBuffer buffer, boolean last) throws IOException {
+        if (!validate) {
+            data.write(buffer);
+            return;
+        }
+        try {
+            data.writeValidated(buffer);
+            if (last) {
+                data.validateComplete();
+            }
+        } catch (UnsupportedEncodingException e) {
+            channel.getWebSocketChannel().markReadsBroken(e);
+            throw e;
+        }
+    }
+
     public void readBlocking(StreamSourceFrameChannel channel) throws IOException {
+        checkValidation(channel);
         Pooled<ByteBuffer> pooled = channel.getWebSocketChannel().getBufferPool().allocate();
         final ByteBuffer buffer = pooled.getResource();
         try {
@@ -69,7 +103,7 @@ public class BufferedTextMessage {
                 int res = channel.read(buffer);
                 if (res == -1) {
                     buffer.flip();
-                    data.write(buffer);
+                    decode(channel, buffer, true);
                     this.complete = true;
                     return;
                 } else if (res == 0) {
@@ -78,7 +112,7 @@ public class BufferedTextMessage {
                 checkMaxSize(channel, res);
                 if (!buffer.hasRemaining()) {
                     buffer.flip();
-                    data.write(buffer);
+                    decode(channel, buffer, false);
                     buffer.compact();
                     if (!bufferFullMessage) {
                         //if we are not reading the full message we return
@@ -92,6 +126,7 @@ public class BufferedTextMessage {
     }
 
     public void read(final StreamSourceFrameChannel channel, final WebSocketCallback<BufferedTextMessage> callback) {
+        checkValidation(channel);
         Pooled<ByteBuffer> pooled = channel.getWebSocketChannel().getBufferPool().allocate();
         final ByteBuffer buffer = pooled.getResource();
         try {
@@ -99,15 +134,15 @@ public class BufferedTextMessage {
                 for (; ; ) {
                     int res = channel.read(buffer);
                     if (res == -1) {
-                        this.complete = true;
                         buffer.flip();
-                        data.write(buffer);
+                        decode(channel, buffer, true);
+                        this.complete = true;
                         callback.complete(channel.getWebSocketChannel(), this);
                         return;
                     } else if (res == 0) {
                         buffer.flip();
                         if (buffer.hasRemaining()) {
-                            data.write(buffer);
+                            decode(channel, buffer, false);
                             if (!bufferFullMessage) {
                                 callback.complete(channel.getWebSocketChannel(), this);
                             }
@@ -127,14 +162,14 @@ public class BufferedTextMessage {
                                             if (res == -1) {
                                                 checkMaxSize(channel, res);
                                                 buffer.flip();
-                                                data.write(buffer);
+                                                decode(channel, buffer, true);
                                                 complete = true;
                                                 callback.complete(channel.getWebSocketChannel(), BufferedTextMessage.this);
                                                 return;
                                             } else if (res == 0) {
                                                 buffer.flip();
                                                 if (buffer.hasRemaining()) {
-                                                    data.write(buffer);
+                                                    decode(channel, buffer, false);
                                                     if (!bufferFullMessage) {
                                                         callback.complete(channel.getWebSocketChannel(), BufferedTextMessage.this);
                                                     }
@@ -143,7 +178,7 @@ public class BufferedTextMessage {
                                             }
                                             if (!buffer.hasRemaining()) {
                                                 buffer.flip();
-                                                data.write(buffer);
+                                                decode(channel, buffer, false);
                                                 buffer.clear();
                                                 if (!bufferFullMessage) {
                                                     callback.complete(channel.getWebSocketChannel(), BufferedTextMessage.this);
@@ -164,7 +199,7 @@ public class BufferedTextMessage {
                     checkMaxSize(channel, res);
                     if (!buffer.hasRemaining()) {
                         buffer.flip();
-                        data.write(buffer);
+                        decode(channel, buffer, false);
                         buffer.clear();
                         if (!bufferFullMessage) {
                             callback.complete(channel.getWebSocketChannel(), this);
@@ -189,6 +224,16 @@ public class BufferedTextMessage {
         return data.extract();
     }
 
+    /**
+     * Gets the buffered data without copying it into a String, and clears the buffered text message. If this is not
+     * called on a UTF8 character boundary there may be partial code point data that is still buffered.
+     *
+     * @return The data
+     */
+    public CharSequence getDataAsCharSequence() {
+        return data.extractCharSequence();
+    }
+
     public boolean isComplete() {
         return complete;
     }
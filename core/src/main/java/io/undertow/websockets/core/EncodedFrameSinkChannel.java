@@ -0,0 +1,35 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.core;
+
+import org.xnio.Pooled;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A {@link StreamSinkFrameChannel} that sends a frame that has already been encoded, including its header. This
+ * allows the same frame to be sent to many channels without encoding it for each of them.
+ *
+ * @author agent
+ */
+final class EncodedFrameSinkChannel extends StreamSinkFrameChannel {
+
+    EncodedFrameSinkChannel(final WebSocketChannel channel, final WebSocketFrameType type, final Pooled<ByteBuffer> frame) {
+        super(channel, type, frame);
+    }
+}
@@ -20,6 +20,7 @@ package io.undertow.websockets.core;
 import io.undertow.server.protocol.framed.FrameHeaderData;
 import io.undertow.websockets.core.function.ChannelFunction;
 import io.undertow.websockets.core.function.ChannelFunctionFileChannel;
+import io.undertow.websockets.extensions.PerMessageDeflate;
 import org.xnio.Pooled;
 import org.xnio.channels.StreamSinkChannel;
 
@@ -37,14 +38,33 @@ public abstract class FixedPayloadFrameSourceChannel extends StreamSourceFrameCh
 
     private final ChannelFunction[] functions;
 
+    /**
+     * The decompressor of a compressed message, the raw function is applied to the data before it is decompressed
+     */
+    private final PerMessageDeflate.Decompressor decompressor;
+    private final ChannelFunction rawFunction;
+    private boolean decompressionComplete;
+
     protected FixedPayloadFrameSourceChannel(WebSocketChannel wsChannel, WebSocketFrameType type, long payloadSize, int rsv, boolean finalFragment, Pooled<ByteBuffer> pooled, long frameLength, ChannelFunction... functions) {
         super(wsChannel, type, payloadSize, rsv, finalFragment, pooled, frameLength);
         this.functions = functions;
+        this.decompressor = null;
+        this.rawFunction = null;
+    }
+
+    protected FixedPayloadFrameSourceChannel(WebSocketChannel wsChannel, WebSocketFrameType type, long payloadSize, int rsv, boolean finalFragment, Pooled<ByteBuffer> pooled, long frameLength, PerMessageDeflate.Decompressor decompressor, ChannelFunction rawFunction, ChannelFunction... functions) {
+        super(wsChannel, type, payloadSize, rsv, finalFragment, pooled, frameLength);
+        this.functions = functions;
+        this.decompressor = decompressor;
+        this.rawFunction = rawFunction;
     }
 
     @Override
     protected void handleHeaderData(FrameHeaderData headerData) {
         super.handleHeaderData(headerData);
+        if(rawFunction != null) {
+            rawFunction.newFrame(headerData);
+        }
         if(functions != null) {
             for(ChannelFunction func : functions) {
                 func.newFrame(headerData);
@@ -55,7 +75,16 @@ public abstract class FixedPayloadFrameSourceChannel extends StreamSourceFrameCh
     @Override
     public final long transferTo(long position, long count, FileChannel target) throws IOException {
         long r;
-        if (functions != null && functions.length > 0) {
+        if (decompressor != null) {
+            final ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(count, 8192));
+            r = read(buffer);
+            if (r > 0) {
+                buffer.flip();
+                while (buffer.hasRemaining()) {
+                    position += target.write(buffer, position);
+                }
+            }
+        } else if (functions != null && functions.length > 0) {
             r = super.transferTo(position, count, new ChannelFunctionFileChannel(target, functions));
         } else {
             r = super.transferTo(position, count, target);
@@ -72,6 +101,9 @@ public abstract class FixedPayloadFrameSourceChannel extends StreamSourceFrameCh
 
     @Override
     public int read(ByteBuffer dst) throws IOException {
+        if (decompressor != null) {
+            return readCompressed(dst);
+        }
         int position = dst.position();
         int r = super.read(dst);
         if (r > 0) {
@@ -87,6 +119,23 @@ public abstract class FixedPayloadFrameSourceChannel extends StreamSourceFrameCh
 
     @Override
     public long read(ByteBuffer[] dsts, int offset, int length) throws IOException {
+        if (decompressor != null) {
+            long read = 0;
+            for (int i = offset; i < offset + length; ++i) {
+                if (!dsts[i].hasRemaining()) {
+                    continue;
+                }
+                int r = readCompressed(dsts[i]);
+                if (r == -1) {
+                    return read == 0 ? -1 : read;
+                }
+                read += r;
+                if (dsts[i].hasRemaining()) {
+                    break;
+                }
+            }
+            return read;
+        }
         Bounds[] old = new Bounds[length];
         for (int i = offset; i < length; i++) {
             ByteBuffer dst = dsts[i];
@@ -133,6 +182,82 @@ public abstract class FixedPayloadFrameSourceChannel extends StreamSourceFrameCh
 
     }
 
+    /**
+     * Reads the raw data of the message and decompresses it into the buffer. The functions are applied to the
+     * decompressed data.
+     * <p/>
+     * All frames of a message are part of the same deflate stream, so the decompressor is only finished and released
+     * once the final frame has been read.
+     */
+    private int readCompressed(ByteBuffer dst) throws IOException {
+        if (decompressionComplete) {
+            return -1;
+        }
+        if (!dst.hasRemaining()) {
+            return 0;
+        }
+        if (decompressor.isReleased()) {
+            //an earlier frame of the message was not fully read
+            throw WebSocketMessages.MESSAGES.channelClosed();
+        }
+        final int position = dst.position();
+        try {
+            for (; ; ) {
+                int count = decompressor.inflate(dst);
+                if (count > 0) {
+                    for (ChannelFunction func : functions) {
+                        func.afterRead(dst, position, count);
+                    }
+                    return count;
+                }
+                if (!decompressor.needsInput()) {
+                    //the input was consumed without producing any output yet
+                    continue;
+                }
+                if (decompressor.isFinished()) {
+                    decompressionComplete = true;
+                    decompressor.release();
+                    for (ChannelFunction func : functions) {
+                        func.complete();
+                    }
+                    return -1;
+                }
+                ByteBuffer raw = decompressor.getInputBuffer();
+                int r = super.read(raw);
+                if (r == -1) {
+                    if (!isFinalFragment()) {
+                        //the rest of the message is read by the channel of the following frame
+                        decompressionComplete = true;
+                        return -1;
+                    }
+                    decompressor.finish();
+                } else if (r == 0) {
+                    return 0;
+                } else {
+                    if (rawFunction != null) {
+                        rawFunction.afterRead(raw, 0, r);
+                    }
+                    decompressor.setInput();
+                }
+            }
+        } catch (UnsupportedEncodingException | WebSocketFrameCorruptedException e) {
+            getFramedChannel().markReadsBroken(e);
+            throw e;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            super.close();
+        } finally {
+            if (decompressor != null && !decompressionComplete) {
+                decompressionComplete = true;
+                decompressor.release();
+            }
+        }
+    }
+
     private static class Bounds {
         final int position;
         final int limit;
@@ -0,0 +1,295 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.core;
+
+import org.xnio.Buffers;
+import org.xnio.IoUtils;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.List;
+
+/**
+ * The send queue of a channel, that enforces the {@link SendQueueLimits} of the channel.
+ * <p/>
+ * A message is in flight once its frame has been queued on the channel, and is queued until it has been written out.
+ * Messages that are held back by the {@link SendQueueLimits.OverflowPolicy#DROP_OLDEST} policy also count as queued.
+ * <p/>
+ * The frames of held back messages are queued on the channel while the lock is held, so messages are always written
+ * in the order they were sent. Data is written and callbacks are invoked without holding the lock.
+ *
+ * @author agent
+ */
+final class SendQueue {
+
+    private final WebSocketChannel channel;
+    private final SendQueueLimits limits;
+    private final Deque<Message> held = new ArrayDeque<>();
+
+    private long queuedBytes;
+    private int queuedFrames;
+    private long inFlightBytes;
+    private int inFlightFrames;
+    private boolean overWaterMark;
+    private boolean closed;
+    private boolean retired;
+
+    SendQueue(final WebSocketChannel channel, final SendQueueLimits limits) {
+        this.channel = channel;
+        this.limits = limits;
+    }
+
+    SendQueueLimits getLimits() {
+        return limits;
+    }
+
+    void send(final ByteBuffer[] data, final WebSocketFrameType type, final WebSocketCallback<Void> callback) {
+        final Message message = new Message(data, type, callback);
+        List<Message> dropped = Collections.emptyList();
+        boolean highWaterMark = false;
+        IOException failure = null;
+        boolean start = false;
+        synchronized (this) {
+            if (closed) {
+                failure = WebSocketMessages.MESSAGES.channelClosed();
+            } else if (retired) {
+                //the limits have been replaced, a sender that still raced with the swap is not limited any more
+                queuedBytes += message.size;
+                ++queuedFrames;
+                limits.addQueuedBytes(message.size);
+                start(message);
+                start = true;
+            } else {
+                queuedBytes += message.size;
+                ++queuedFrames;
+                limits.addQueuedBytes(message.size);
+                if (!overWaterMark && limits.isAboveHighWaterMark(queuedBytes, queuedFrames)) {
+                    overWaterMark = true;
+                    limits.channelOverWaterMark(true);
+                    highWaterMark = true;
+                }
+                if (overWaterMark && limits.getOverflowPolicy() == SendQueueLimits.OverflowPolicy.CLOSE) {
+                    closed = true;
+                    failure = WebSocketMessages.MESSAGES.channelClosedSendQueueFull();
+                    dequeue(message.size);
+                    limits.channelClosed();
+                } else if (limits.getOverflowPolicy() == SendQueueLimits.OverflowPolicy.DROP_OLDEST && (!held.isEmpty() || !hasRoom(message.size))) {
+                    held.add(message);
+                    if (held.size() > 1 && limits.isAboveHighWaterMark(queuedBytes, queuedFrames)) {
+                        dropped = new ArrayList<>();
+                        while (held.size() > 1 && limits.isAboveHighWaterMark(queuedBytes, queuedFrames)) {
+                            final Message oldest = held.poll();
+                            dequeue(oldest.size);
+                            limits.messageDropped();
+                            dropped.add(oldest);
+                        }
+                    }
+                } else {
+                    start(message);
+                    start = true;
+                }
+            }
+        }
+        if (highWaterMark) {
+            final SendQueueListener listener = channel.getSendQueueListener();
+            if (listener != null) {
+                listener.highWaterMark(channel);
+            }
+        }
+        for (Message oldest : dropped) {
+            if (oldest.callback != null) {
+                oldest.callback.onError(channel, null, WebSocketMessages.MESSAGES.messageDroppedSendQueueFull());
+            }
+        }
+        if (failure != null) {
+            if (callback != null) {
+                callback.onError(channel, null, failure);
+            }
+            IoUtils.safeClose(channel);
+        } else if (start) {
+            message.write();
+        }
+    }
+
+    /**
+     * @return <code>true</code> if a message of the given size can be queued on the channel straight away
+     */
+    private boolean hasRoom(final long size) {
+        return inFlightFrames == 0 || !limits.isAboveHighWaterMark(inFlightBytes + size, inFlightFrames + 1);
+    }
+
+    /**
+     * Queues the frame of the message on the channel. Must be called while holding the lock.
+     */
+    private void start(final Message message) {
+        inFlightBytes += message.size;
+        ++inFlightFrames;
+        try {
+            message.sink = channel.send(message.type, message.size);
+        } catch (IOException e) {
+            message.failure = e;
+        }
+    }
+
+    /**
+     * Removes a message from the queued data. Must be called while holding the lock.
+     *
+     * @return <code>true</code> if the channel dropped back to the low water mark
+     */
+    private boolean dequeue(final long size) {
+        queuedBytes -= size;
+        --queuedFrames;
+        limits.addQueuedBytes(-size);
+        if (overWaterMark && limits.isAtLowWaterMark(queuedBytes, queuedFrames)) {
+            overWaterMark = false;
+            limits.channelOverWaterMark(false);
+            return true;
+        }
+        return false;
+    }
+
+    private void messageComplete(final Message message, final boolean written) {
+        List<Message> released = Collections.emptyList();
+        final boolean lowWaterMark;
+        synchronized (this) {
+            inFlightBytes -= message.size;
+            --inFlightFrames;
+            lowWaterMark = dequeue(message.size);
+            while (!closed && !held.isEmpty() && hasRoom(held.peek().size)) {
+                final Message next = held.poll();
+                start(next);
+                if (released.isEmpty()) {
+                    released = new ArrayList<>();
+                }
+                released.add(next);
+            }
+        }
+        if (written) {
+            limits.messageSent(System.nanoTime() - message.sendTime);
+        }
+        if (lowWaterMark) {
+            final SendQueueListener listener = channel.getSendQueueListener();
+            if (listener != null) {
+                listener.lowWaterMark(channel);
+            }
+        }
+        for (Message next : released) {
+            next.write();
+        }
+    }
+
+    /**
+     * Retires the queue once the limits of the channel have been replaced. All held back messages are queued on the
+     * channel straight away, so they are still written in order and complete through their callbacks. Messages that
+     * are already in flight are counted against these limits until they have been written out.
+     */
+    void retire() {
+        final List<Message> released;
+        synchronized (this) {
+            retired = true;
+            released = new ArrayList<>(held);
+            held.clear();
+            for (Message message : released) {
+                start(message);
+            }
+        }
+        for (Message message : released) {
+            message.write();
+        }
+    }
+
+    /**
+     * Fails all held back messages, called once the channel has been closed.
+     */
+    void close() {
+        final List<Message> failed;
+        synchronized (this) {
+            closed = true;
+            failed = new ArrayList<>(held);
+            held.clear();
+            for (Message message : failed) {
+                dequeue(message.size);
+            }
+        }
+        for (Message message : failed) {
+            if (message.callback != null) {
+                message.callback.onError(channel, null, WebSocketMessages.MESSAGES.channelClosed());
+            }
+        }
+    }
+
+    synchronized long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    synchronized int getQueuedFrames() {
+        return queuedFrames;
+    }
+
+    synchronized boolean isOverWaterMark() {
+        return overWaterMark;
+    }
+
+    private final class Message implements WebSocketCallback<Void> {
+
+        private final ByteBuffer[] data;
+        private final WebSocketFrameType type;
+        private final WebSocketCallback<Void> callback;
+        private final long size;
+        private final long sendTime = System.nanoTime();
+        private StreamSinkFrameChannel sink;
+        private IOException failure;
+
+        private Message(final ByteBuffer[] data, final WebSocketFrameType type, final WebSocketCallback<Void> callback) {
+            this.data = data;
+            this.type = type;
+            this.callback = callback;
+            this.size = Buffers.remaining(data);
+        }
+
+        void write() {
+            if (failure != null) {
+                onError(channel, null, failure);
+                return;
+            }
+            WebSockets.sendData(data, sink, channel, this);
+        }
+
+        @Override
+        public void complete(final WebSocketChannel channel, final Void context) {
+            messageComplete(this, true);
+            if (callback != null) {
+                callback.complete(channel, context);
+            }
+        }
+
+        @Override
+        public void onError(final WebSocketChannel channel, final Void context, final Throwable throwable) {
+            messageComplete(this, false);
+            if (callback != null) {
+                callback.onError(channel, context, throwable);
+            } else {
+                IoUtils.safeClose(channel);
+            }
+        }
+    }
+}
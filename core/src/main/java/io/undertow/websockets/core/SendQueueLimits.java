@@ -0,0 +1,223 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.core;
+
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * The limits of the send queues of {@link WebSocketChannel}s, in bytes and in frames.
+ * <p/>
+ * Messages that are sent asynchronously using {@link WebSockets} are queued on the channel until they have been
+ * written out. Once the queued data of a channel goes over the high water mark in either bytes or frames the channel
+ * is over the water mark, and its {@link SendQueueListener} is notified. Once the queued data is back at or below the
+ * low water mark for both bytes and frames the listener is notified again. The {@link OverflowPolicy} decides what
+ * else happens to a channel that is over the water mark.
+ * <p/>
+ * A limit that is not larger than 0 is not enforced. Only text and binary messages are counted, control frames are
+ * always sent straight away.
+ * <p/>
+ * The limits are normally shared by all channels of an endpoint, and collect metrics for all of them.
+ *
+ * @author agent
+ */
+public final class SendQueueLimits {
+
+    private static final AtomicLongFieldUpdater<SendQueueLimits> queuedBytesUpdater = AtomicLongFieldUpdater.newUpdater(SendQueueLimits.class, "queuedBytes");
+    private static final AtomicIntegerFieldUpdater<SendQueueLimits> channelsOverWaterMarkUpdater = AtomicIntegerFieldUpdater.newUpdater(SendQueueLimits.class, "channelsOverWaterMark");
+    private static final AtomicLongFieldUpdater<SendQueueLimits> messagesSentUpdater = AtomicLongFieldUpdater.newUpdater(SendQueueLimits.class, "messagesSent");
+    private static final AtomicLongFieldUpdater<SendQueueLimits> messagesDroppedUpdater = AtomicLongFieldUpdater.newUpdater(SendQueueLimits.class, "messagesDropped");
+    private static final AtomicLongFieldUpdater<SendQueueLimits> channelsClosedUpdater = AtomicLongFieldUpdater.newUpdater(SendQueueLimits.class, "channelsClosed");
+    private static final AtomicLongFieldUpdater<SendQueueLimits> totalSendLatencyUpdater = AtomicLongFieldUpdater.newUpdater(SendQueueLimits.class, "totalSendLatency");
+    private static final AtomicLongFieldUpdater<SendQueueLimits> maxSendLatencyUpdater = AtomicLongFieldUpdater.newUpdater(SendQueueLimits.class, "maxSendLatency");
+
+    /**
+     * What happens to the messages of a channel that is over the high water mark.
+     */
+    public enum OverflowPolicy {
+        /**
+         * Messages are still queued, only the {@link SendQueueListener} of the channel is notified
+         */
+        NOTIFY,
+        /**
+         * Messages are held back instead of being queued on the channel while the channel is over the water mark, and
+         * the oldest held back messages are dropped to keep the queued data at the high water mark. Messages that have
+         * already been queued on the channel are never dropped, as they may have been partly written out.
+         */
+        DROP_OLDEST,
+        /**
+         * The channel is closed
+         */
+        CLOSE
+    }
+
+    private final long highWaterMarkBytes;
+    private final long lowWaterMarkBytes;
+    private final int highWaterMarkFrames;
+    private final int lowWaterMarkFrames;
+    private final OverflowPolicy overflowPolicy;
+
+    @SuppressWarnings("unused")
+    private volatile long queuedBytes;
+    @SuppressWarnings("unused")
+    private volatile int channelsOverWaterMark;
+    @SuppressWarnings("unused")
+    private volatile long messagesSent;
+    @SuppressWarnings("unused")
+    private volatile long messagesDropped;
+    @SuppressWarnings("unused")
+    private volatile long channelsClosed;
+    @SuppressWarnings("unused")
+    private volatile long totalSendLatency;
+    @SuppressWarnings("unused")
+    private volatile long maxSendLatency;
+
+    /**
+     * @param highWaterMarkBytes  The number of queued bytes above which a channel is over the water mark
+     * @param lowWaterMarkBytes   The number of queued bytes at or below which a channel is no longer over the water mark
+     * @param highWaterMarkFrames The number of queued frames above which a channel is over the water mark
+     * @param lowWaterMarkFrames  The number of queued frames at or below which a channel is no longer over the water mark
+     * @param overflowPolicy      The policy for channels that are over the water mark
+     */
+    public SendQueueLimits(final long highWaterMarkBytes, final long lowWaterMarkBytes, final int highWaterMarkFrames, final int lowWaterMarkFrames, final OverflowPolicy overflowPolicy) {
+        if (highWaterMarkBytes > 0 && lowWaterMarkBytes > highWaterMarkBytes) {
+            throw WebSocketMessages.MESSAGES.lowWaterMarkLargerThanHighWaterMark(lowWaterMarkBytes, highWaterMarkBytes);
+        }
+        if (highWaterMarkFrames > 0 && lowWaterMarkFrames > highWaterMarkFrames) {
+            throw WebSocketMessages.MESSAGES.lowWaterMarkLargerThanHighWaterMark(lowWaterMarkFrames, highWaterMarkFrames);
+        }
+        this.highWaterMarkBytes = highWaterMarkBytes;
+        this.lowWaterMarkBytes = lowWaterMarkBytes;
+        this.highWaterMarkFrames = highWaterMarkFrames;
+        this.lowWaterMarkFrames = lowWaterMarkFrames;
+        this.overflowPolicy = overflowPolicy;
+    }
+
+    public long getHighWaterMarkBytes() {
+        return highWaterMarkBytes;
+    }
+
+    public long getLowWaterMarkBytes() {
+        return lowWaterMarkBytes;
+    }
+
+    public int getHighWaterMarkFrames() {
+        return highWaterMarkFrames;
+    }
+
+    public int getLowWaterMarkFrames() {
+        return lowWaterMarkFrames;
+    }
+
+    public OverflowPolicy getOverflowPolicy() {
+        return overflowPolicy;
+    }
+
+    boolean isAboveHighWaterMark(final long bytes, final int frames) {
+        return (highWaterMarkBytes > 0 && bytes > highWaterMarkBytes) || (highWaterMarkFrames > 0 && frames > highWaterMarkFrames);
+    }
+
+    boolean isAtLowWaterMark(final long bytes, final int frames) {
+        return (highWaterMarkBytes <= 0 || bytes <= lowWaterMarkBytes) && (highWaterMarkFrames <= 0 || frames <= lowWaterMarkFrames);
+    }
+
+    void addQueuedBytes(final long bytes) {
+        queuedBytesUpdater.addAndGet(this, bytes);
+    }
+
+    void channelOverWaterMark(final boolean over) {
+        channelsOverWaterMarkUpdater.addAndGet(this, over ? 1 : -1);
+    }
+
+    void messageSent(final long latency) {
+        messagesSentUpdater.incrementAndGet(this);
+        totalSendLatencyUpdater.addAndGet(this, latency);
+        long max;
+        do {
+            max = maxSendLatency;
+            if (latency <= max) {
+                return;
+            }
+        } while (!maxSendLatencyUpdater.compareAndSet(this, max, latency));
+    }
+
+    void messageDropped() {
+        messagesDroppedUpdater.incrementAndGet(this);
+    }
+
+    void channelClosed() {
+        channelsClosedUpdater.incrementAndGet(this);
+    }
+
+    /**
+     * @return The number of bytes that are queued on all channels that use these limits
+     */
+    public long getQueuedBytes() {
+        return queuedBytes;
+    }
+
+    /**
+     * @return The number of channels that are currently over the water mark
+     */
+    public int getChannelsOverWaterMark() {
+        return channelsOverWaterMark;
+    }
+
+    /**
+     * @return The number of messages that have been written out
+     */
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * @return The number of messages that were dropped by the {@link OverflowPolicy#DROP_OLDEST} policy
+     */
+    public long getMessagesDropped() {
+        return messagesDropped;
+    }
+
+    /**
+     * @return The number of channels that were closed by the {@link OverflowPolicy#CLOSE} policy
+     */
+    public long getChannelsClosed() {
+        return channelsClosed;
+    }
+
+    /**
+     * @return The total time in nanoseconds between messages being sent and being written out
+     */
+    public long getTotalSendLatency() {
+        return totalSendLatency;
+    }
+
+    /**
+     * @return The longest time in nanoseconds between a message being sent and being written out
+     */
+    public long getMaxSendLatency() {
+        return maxSendLatency;
+    }
+
+    /**
+     * @return The average time in nanoseconds between messages being sent and being written out
+     */
+    public long getAverageSendLatency() {
+        final long sent = messagesSent;
+        return sent == 0 ? 0 : totalSendLatency / sent;
+    }
+}
@@ -0,0 +1,44 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.core;
+
+/**
+ * Listener that is notified when the send queue of a channel goes over the water mark, and when it drops back to the
+ * low water mark. Applications can use this to stop producing messages for a slow consumer.
+ * <p/>
+ * The listener may be invoked by any thread that sends a message or completes a write.
+ *
+ * @author agent
+ * @see SendQueueLimits
+ */
+public interface SendQueueListener {
+
+    /**
+     * Called when the queued data of the channel goes over the high water mark
+     *
+     * @param channel The channel
+     */
+    void highWaterMark(WebSocketChannel channel);
+
+    /**
+     * Called when the queued data of a channel that was over the water mark drops back to the low water mark
+     *
+     * @param channel The channel
+     */
+    void lowWaterMark(WebSocketChannel channel);
+}
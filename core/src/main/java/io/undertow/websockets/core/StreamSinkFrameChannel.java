@@ -18,6 +18,9 @@
 package io.undertow.websockets.core;
 
 import io.undertow.server.protocol.framed.AbstractFramedStreamSinkChannel;
+import org.xnio.Pooled;
+
+import java.nio.ByteBuffer;
 
 /**
  * @author <a href="mailto:nmaurer@redhat.com">Norman Maurer</a>
@@ -33,6 +36,11 @@ public abstract class StreamSinkFrameChannel extends AbstractFramedStreamSinkCha
         this.type = type;
     }
 
+    protected StreamSinkFrameChannel(WebSocketChannel channel, WebSocketFrameType type, Pooled<ByteBuffer> buffer) {
+        super(channel, buffer);
+        this.type = type;
+    }
+
     /**
      * Return the RSV for the extension. Default is 0.
      */
@@ -77,6 +77,16 @@ public abstract class StreamSourceFrameChannel extends AbstractFramedStreamSourc
         return rsv;
     }
 
+    /**
+     * Stops this channel from validating that the data of a text message is UTF-8, so that the reader can validate it
+     * while decoding it. This must be called before any data has been read.
+     *
+     * @return <code>true</code> if the reader is now responsible for validating the data
+     */
+    protected boolean disableUTF8Validation() {
+        return false;
+    }
+
     int getWebSocketFrameCount() {
         return getReadFrameCount();
     }
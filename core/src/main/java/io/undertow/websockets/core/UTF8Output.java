@@ -18,15 +18,29 @@
 
 package io.undertow.websockets.core;
 
+import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
-
-import org.xnio.Buffers;
+import java.nio.ByteOrder;
+import java.nio.CharBuffer;
+import java.util.Arrays;
 
 /**
- * Utility class which allows to extract a UTF8 String from bytes respecting valid code-points
+ * Utility class which allows to extract a UTF8 String from bytes respecting valid code-points.
+ * <p/>
+ * The decoding state is kept between writes, so a code point may be split over several buffers or frames. Runs of
+ * ASCII characters are decoded eight bytes at a time. Data that is written using {@link #writeValidated(ByteBuffer)}
+ * is validated while it is decoded, so a text message only needs a single pass over its bytes.
  */
 public final class UTF8Output {
     private static final int UTF8_ACCEPT = 0;
+    private static final int UTF8_REJECT = 12;
+
+    /**
+     * The high bit of every byte of a long, if none of them are set the eight bytes are all ASCII
+     */
+    private static final long ASCII_MASK = 0x8080808080808080L;
+
+    private static final char[] EMPTY = new char[0];
 
     private static final byte[] TYPES = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
             0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
@@ -50,36 +64,155 @@ public final class UTF8Output {
     private byte state = UTF8_ACCEPT;
     private int codep;
 
-    private final StringBuilder stringBuilder;
+    private char[] chars;
+    private int length;
 
     public UTF8Output(ByteBuffer... payload) {
-        stringBuilder = new StringBuilder((int) Buffers.remaining(payload));
+        int size = 0;
+        for (ByteBuffer buf : payload) {
+            size += buf.remaining();
+        }
+        chars = new char[size];
         write(payload);
     }
 
     public UTF8Output() {
-        stringBuilder = new StringBuilder();
+        chars = new char[16];
     }
 
     public void write(ByteBuffer... bytes) {
         for (ByteBuffer buf : bytes) {
-            while (buf.hasRemaining()) {
-                write(buf.get());
-            }
+            decode(buf);
+        }
+    }
+
+    /**
+     * Decodes the data in the buffer, and fails if it is not valid UTF-8. A code point that is not complete at the end
+     * of the buffer is completed by the next write.
+     *
+     * @param buf The data
+     * @throws UnsupportedEncodingException If the data is not valid UTF-8
+     */
+    public void writeValidated(ByteBuffer buf) throws UnsupportedEncodingException {
+        if (!decode(buf)) {
+            throw WebSocketMessages.MESSAGES.invalidTextFrameEncoding();
         }
     }
 
-    private void write(byte b) {
-        byte type = TYPES[b & 0xFF];
+    /**
+     * Checks that the data written so far does not end in the middle of a code point. This must be called once the
+     * last data of a message has been written.
+     *
+     * @throws UnsupportedEncodingException If the data does not end on a code point boundary, or is not valid UTF-8
+     */
+    public void validateComplete() throws UnsupportedEncodingException {
+        if (state != UTF8_ACCEPT) {
+            throw WebSocketMessages.MESSAGES.invalidTextFrameEncoding();
+        }
+    }
 
-        codep = state != UTF8_ACCEPT ? b & 0x3f | codep << 6 : 0xff >> type & b;
+    /**
+     * Decodes all remaining data in the buffer.
+     *
+     * @return <code>false</code> if invalid data was found, in which case the rest of the data is discarded
+     */
+    private boolean decode(ByteBuffer buf) {
+        final int limit = buf.limit();
+        int pos = buf.position();
+        //a code point started by a previous write may produce one more char than there are bytes left
+        ensureCapacity(limit - pos + 1);
+        try {
+            while (pos < limit) {
+                if (state == UTF8_ACCEPT) {
+                    if (buf.hasArray()) {
+                        pos = decodeAscii(buf.array(), buf.arrayOffset(), pos, limit);
+                    } else {
+                        pos = decodeAscii(buf, pos, limit);
+                    }
+                    if (pos == limit) {
+                        return true;
+                    }
+                }
+                byte b = buf.get(pos++);
+                byte type = TYPES[b & 0xFF];
+
+                codep = state != UTF8_ACCEPT ? b & 0x3f | codep << 6 : 0xff >> type & b;
+
+                state = STATES[state + type];
+
+                if (state == UTF8_ACCEPT) {
+                    append(codep);
+                } else if (state == UTF8_REJECT) {
+                    return false;
+                }
+            }
+            return state != UTF8_REJECT;
+        } finally {
+            buf.position(limit);
+        }
+    }
 
-        state = STATES[state + type];
+    private int decodeAscii(byte[] array, int offset, int pos, int limit) {
+        final char[] chars = this.chars;
+        int length = this.length;
+        int i = offset + pos;
+        final int end = offset + limit;
+        while (i + 8 <= end && (array[i] | array[i + 1] | array[i + 2] | array[i + 3]
+                | array[i + 4] | array[i + 5] | array[i + 6] | array[i + 7]) >= 0) {
+            for (int j = 0; j < 8; ++j) {
+                chars[length + j] = (char) array[i + j];
+            }
+            i += 8;
+            length += 8;
+        }
+        while (i < end && array[i] >= 0) {
+            chars[length++] = (char) array[i++];
+        }
+        this.length = length;
+        return i - offset;
+    }
 
-        if (state == UTF8_ACCEPT) {
-            for (char c : Character.toChars(codep)) {
-                stringBuilder.append(c);
+    private int decodeAscii(ByteBuffer buf, int pos, int limit) {
+        final char[] chars = this.chars;
+        int length = this.length;
+        final boolean bigEndian = buf.order() == ByteOrder.BIG_ENDIAN;
+        while (pos + 8 <= limit) {
+            long word = buf.getLong(pos);
+            if ((word & ASCII_MASK) != 0) {
+                break;
             }
+            if (!bigEndian) {
+                word = Long.reverseBytes(word);
+            }
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                chars[length++] = (char) (word >>> shift & 0x7F);
+            }
+            pos += 8;
+        }
+        while (pos < limit) {
+            byte b = buf.get(pos);
+            if (b < 0) {
+                break;
+            }
+            chars[length++] = (char) b;
+            ++pos;
+        }
+        this.length = length;
+        return pos;
+    }
+
+    private void append(int codePoint) {
+        if (codePoint < Character.MIN_SUPPLEMENTARY_CODE_POINT) {
+            chars[length++] = (char) codePoint;
+        } else {
+            chars[length++] = Character.highSurrogate(codePoint);
+            chars[length++] = Character.lowSurrogate(codePoint);
+        }
+    }
+
+    private void ensureCapacity(int count) {
+        if (length + count > chars.length) {
+            chars = Arrays.copyOf(chars, Math.max(chars.length * 2, length + count));
         }
     }
 
@@ -87,12 +220,22 @@ public final class UTF8Output {
      * Extract a String holding the utf8 text
      */
     public String extract() {
-        String text = stringBuilder.toString();
-        stringBuilder.setLength(0);
+        String text = new String(chars, 0, length);
+        length = 0;
+        return text;
+    }
+
+    /**
+     * Extract the utf8 text without copying it. The returned view is not modified by later writes.
+     */
+    public CharSequence extractCharSequence() {
+        CharSequence text = CharBuffer.wrap(chars, 0, length);
+        chars = EMPTY;
+        length = 0;
         return text;
     }
 
     public boolean hasData() {
-        return stringBuilder.length() != 0;
+        return length != 0;
     }
 }
@@ -0,0 +1,294 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.core;
+
+import io.undertow.util.ImmediatePooled;
+import io.undertow.util.ReferenceCountedPooled;
+import org.xnio.IoUtils;
+import org.xnio.Pool;
+import org.xnio.Pooled;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collection;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+
+/**
+ * Sends the same message to many channels.
+ * <p/>
+ * The message is encoded once, into a single read only buffer that holds the complete unmasked frame including its
+ * header. Every server channel writes a view of this buffer, and the buffer is freed once the last channel has written
+ * it out. Client channels must mask every frame they send, so the message is encoded separately for each of them.
+ * <p/>
+ * Broadcast messages that have been queued on a channel but not written out yet are tracked per channel, and the
+ * {@link SlowConsumerPolicy} decides what happens to a message if a channel has fallen behind.
+ *
+ * @author agent
+ */
+public class WebSocketBroadcaster {
+
+    public static final long DEFAULT_MAX_QUEUED_BYTES = 1024 * 1024;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final AtomicLongFieldUpdater<WebSocketBroadcaster> messagesSentUpdater = AtomicLongFieldUpdater.newUpdater(WebSocketBroadcaster.class, "messagesSent");
+    private static final AtomicLongFieldUpdater<WebSocketBroadcaster> messagesDroppedUpdater = AtomicLongFieldUpdater.newUpdater(WebSocketBroadcaster.class, "messagesDropped");
+    private static final AtomicLongFieldUpdater<WebSocketBroadcaster> channelsClosedUpdater = AtomicLongFieldUpdater.newUpdater(WebSocketBroadcaster.class, "channelsClosed");
+
+    /**
+     * What happens to a message that is broadcast to a channel that has not written out earlier broadcast messages yet.
+     */
+    public enum SlowConsumerPolicy {
+        /**
+         * The message is not sent to a channel that has not written out all earlier broadcast messages
+         */
+        DROP,
+        /**
+         * The message is queued, unless this would take the queued data of the channel over the limit, in which case
+         * it is dropped
+         */
+        BUFFER,
+        /**
+         * The message is queued, unless this would take the queued data of the channel over the limit, in which case
+         * the channel is closed
+         */
+        CLOSE
+    }
+
+    private final SlowConsumerPolicy slowConsumerPolicy;
+    private final long maxQueuedBytes;
+
+    @SuppressWarnings("unused")
+    private volatile long messagesSent;
+    @SuppressWarnings("unused")
+    private volatile long messagesDropped;
+    @SuppressWarnings("unused")
+    private volatile long channelsClosed;
+
+    public WebSocketBroadcaster() {
+        this(SlowConsumerPolicy.BUFFER, DEFAULT_MAX_QUEUED_BYTES);
+    }
+
+    /**
+     * @param slowConsumerPolicy The policy for channels that have fallen behind
+     * @param maxQueuedBytes     The maximum number of bytes of broadcast messages that can be queued on a channel, only
+     *                           used by the {@link SlowConsumerPolicy#BUFFER} and {@link SlowConsumerPolicy#CLOSE}
+     *                           policies
+     */
+    public WebSocketBroadcaster(final SlowConsumerPolicy slowConsumerPolicy, final long maxQueuedBytes) {
+        this.slowConsumerPolicy = slowConsumerPolicy;
+        this.maxQueuedBytes = maxQueuedBytes;
+    }
+
+    /**
+     * Sends a text message to all the given channels.
+     *
+     * @param message  The message
+     * @param channels The channels
+     * @param callback The callback that is notified for every channel the message is written to, may be <code>null</code>
+     */
+    public void sendText(final String message, final Collection<? extends WebSocketChannel> channels, final WebSocketCallback<Void> callback) {
+        send(WebSocketFrameType.TEXT, ByteBuffer.wrap(message.getBytes(UTF_8)), channels, callback);
+    }
+
+    /**
+     * Sends a text message that has already been encoded as UTF-8 to all the given channels.
+     *
+     * @param message  The message
+     * @param channels The channels
+     * @param callback The callback that is notified for every channel the message is written to, may be <code>null</code>
+     */
+    public void sendText(final ByteBuffer message, final Collection<? extends WebSocketChannel> channels, final WebSocketCallback<Void> callback) {
+        send(WebSocketFrameType.TEXT, message, channels, callback);
+    }
+
+    /**
+     * Sends a binary message to all the given channels.
+     *
+     * @param data     The message
+     * @param channels The channels
+     * @param callback The callback that is notified for every channel the message is written to, may be <code>null</code>
+     */
+    public void sendBinary(final ByteBuffer data, final Collection<? extends WebSocketChannel> channels, final WebSocketCallback<Void> callback) {
+        send(WebSocketFrameType.BINARY, data, channels, callback);
+    }
+
+    private void send(final WebSocketFrameType type, final ByteBuffer payload, final Collection<? extends WebSocketChannel> channels, final WebSocketCallback<Void> callback) {
+        ReferenceCountedPooled<ByteBuffer> frame = null;
+        try {
+            for (WebSocketChannel channel : channels) {
+                if (channel.isClient()) {
+                    sendMasked(type, payload, channel, callback);
+                    continue;
+                }
+                if (frame == null) {
+                    frame = encodeFrame(type, payload, channel.getBufferPool());
+                }
+                final long frameSize = frame.getResource().remaining();
+                if (!admit(channel, frameSize)) {
+                    continue;
+                }
+                final ByteBuffer view = frame.getResource().asReadOnlyBuffer();
+                view.position(view.limit());
+                final Pooled<ByteBuffer> pooledView = frame.createView(view);
+                final QueuedBytesCallback queuedCallback = new QueuedBytesCallback(frameSize, callback);
+                channel.addQueuedBroadcastBytes(frameSize);
+                try {
+                    final StreamSinkFrameChannel sink = channel.sendEncodedFrame(type, pooledView);
+                    WebSockets.flushChannelAsync(channel, queuedCallback, sink, null);
+                    messagesSentUpdater.incrementAndGet(this);
+                } catch (IOException e) {
+                    pooledView.free();
+                    queuedCallback.onError(channel, null, e);
+                }
+            }
+        } finally {
+            if (frame != null) {
+                frame.free();
+            }
+        }
+    }
+
+    private void sendMasked(final WebSocketFrameType type, final ByteBuffer payload, final WebSocketChannel channel, final WebSocketCallback<Void> callback) {
+        final long size = payload.remaining();
+        if (!admit(channel, size)) {
+            return;
+        }
+        channel.addQueuedBroadcastBytes(size);
+        final QueuedBytesCallback queuedCallback = new QueuedBytesCallback(size, callback);
+        if (type == WebSocketFrameType.TEXT) {
+            WebSockets.sendText(payload.duplicate(), channel, queuedCallback);
+        } else {
+            WebSockets.sendBinary(payload.duplicate(), channel, queuedCallback);
+        }
+        messagesSentUpdater.incrementAndGet(this);
+    }
+
+    /**
+     * Applies the slow consumer policy.
+     *
+     * @return <code>true</code> if the message should be sent to the channel
+     */
+    private boolean admit(final WebSocketChannel channel, final long size) {
+        final long queued = channel.getQueuedBroadcastBytes();
+        if (queued == 0) {
+            return true;
+        }
+        switch (slowConsumerPolicy) {
+            case DROP:
+                messagesDroppedUpdater.incrementAndGet(this);
+                return false;
+            case BUFFER:
+                if (queued + size <= maxQueuedBytes) {
+                    return true;
+                }
+                messagesDroppedUpdater.incrementAndGet(this);
+                return false;
+            default:
+                if (queued + size <= maxQueuedBytes) {
+                    return true;
+                }
+                channelsClosedUpdater.incrementAndGet(this);
+                IoUtils.safeClose(channel);
+                return false;
+        }
+    }
+
+    /**
+     * Encodes a complete unmasked frame. The frame is placed in a buffer from the pool if it fits, otherwise in a
+     * direct buffer of its own, as the frame will be written many times.
+     */
+    static ReferenceCountedPooled<ByteBuffer> encodeFrame(final WebSocketFrameType type, final ByteBuffer payload, final Pool<ByteBuffer> pool) {
+        final int payloadSize = payload.remaining();
+        final int headerSize = payloadSize <= 125 ? 2 : payloadSize <= 0xFFFF ? 4 : 10;
+        Pooled<ByteBuffer> pooled = pool.allocate();
+        if (pooled.getResource().capacity() < headerSize + payloadSize) {
+            pooled.free();
+            pooled = new ImmediatePooled<>(ByteBuffer.allocateDirect(headerSize + payloadSize));
+        }
+        final ByteBuffer frame = pooled.getResource();
+        frame.clear();
+        frame.put((byte) (0x80 | (type == WebSocketFrameType.TEXT ? 0x1 : 0x2)));
+        if (payloadSize <= 125) {
+            frame.put((byte) payloadSize);
+        } else if (payloadSize <= 0xFFFF) {
+            frame.put((byte) 126);
+            frame.putShort((short) payloadSize);
+        } else {
+            frame.put((byte) 127);
+            frame.putLong(payloadSize);
+        }
+        frame.put(payload.duplicate());
+        frame.flip();
+        return new ReferenceCountedPooled<>(pooled, 1);
+    }
+
+    /**
+     * @return The number of times a message was queued on a channel
+     */
+    public long getMessagesSent() {
+        return messagesSent;
+    }
+
+    /**
+     * @return The number of times a message was not sent to a channel that had fallen behind
+     */
+    public long getMessagesDropped() {
+        return messagesDropped;
+    }
+
+    /**
+     * @return The number of channels that were closed because they had fallen behind
+     */
+    public long getChannelsClosed() {
+        return channelsClosed;
+    }
+
+    /**
+     * Removes the message from the queued data of the channel once it has been written out.
+     */
+    private static final class QueuedBytesCallback implements WebSocketCallback<Void> {
+
+        private final long size;
+        private final WebSocketCallback<Void> callback;
+
+        private QueuedBytesCallback(final long size, final WebSocketCallback<Void> callback) {
+            this.size = size;
+            this.callback = callback;
+        }
+
+        @Override
+        public void complete(final WebSocketChannel channel, final Void context) {
+            channel.addQueuedBroadcastBytes(-size);
+            if (callback != null) {
+                callback.complete(channel, context);
+            }
+        }
+
+        @Override
+        public void onError(final WebSocketChannel channel, final Void context, final Throwable throwable) {
+            channel.addQueuedBroadcastBytes(-size);
+            if (callback != null) {
+                callback.onError(channel, context, throwable);
+            } else {
+                IoUtils.safeClose(channel);
+            }
+        }
+    }
+}
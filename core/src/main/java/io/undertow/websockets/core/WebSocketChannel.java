@@ -37,6 +37,7 @@ import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 /**
  * A {@link org.xnio.channels.ConnectedChannel} which can be used to send and receive WebSocket Frames.
@@ -69,6 +70,20 @@ public abstract class WebSocketChannel extends AbstractFramedChannel<WebSocketCh
      */
     private final Set<WebSocketChannel> peerConnections;
 
+    /**
+     * The number of bytes of broadcast messages that have been queued on this channel but not written out yet.
+     */
+    @SuppressWarnings("unused")
+    private volatile long queuedBroadcastBytes;
+
+    private static final AtomicLongFieldUpdater<WebSocketChannel> queuedBroadcastBytesUpdater = AtomicLongFieldUpdater.newUpdater(WebSocketChannel.class, "queuedBroadcastBytes");
+
+    /**
+     * The send queue that enforces the send queue limits, or <code>null</code> if the send queue is not limited
+     */
+    private volatile SendQueue sendQueue;
+    private volatile SendQueueListener sendQueueListener;
+
     /**
      * Create a new {@link WebSocketChannel}
      * 8
@@ -93,6 +108,10 @@ public abstract class WebSocketChannel extends AbstractFramedChannel<WebSocketCh
             @Override
             public void handleEvent(WebSocketChannel channel) {
                 WebSocketChannel.this.peerConnections.remove(WebSocketChannel.this);
+                SendQueue sendQueue = WebSocketChannel.this.sendQueue;
+                if (sendQueue != null) {
+                    sendQueue.close();
+                }
             }
         });
     }
@@ -352,6 +371,95 @@ public abstract class WebSocketChannel extends AbstractFramedChannel<WebSocketCh
         return ch;
     }
 
+    /**
+     * Returns a {@link StreamSinkFrameChannel} that sends a complete frame that has already been encoded, including
+     * the frame header. The frame is queued straight away.
+     *
+     * @param type  The type of the frame
+     * @param frame The encoded frame, which ends at the buffer's position
+     */
+    StreamSinkFrameChannel sendEncodedFrame(WebSocketFrameType type, Pooled<ByteBuffer> frame) throws IOException {
+        if (closeFrameSent || closeFrameReceived) {
+            throw WebSocketMessages.MESSAGES.channelClosed();
+        }
+        if (isWritesBroken()) {
+            throw WebSocketMessages.MESSAGES.streamIsBroken();
+        }
+        StreamSinkFrameChannel ch = new EncodedFrameSinkChannel(this, type, frame);
+        getFramePriority().addToOrderQueue(ch);
+        ch.shutdownWrites();
+        return ch;
+    }
+
+    long getQueuedBroadcastBytes() {
+        return queuedBroadcastBytes;
+    }
+
+    long addQueuedBroadcastBytes(long bytes) {
+        return queuedBroadcastBytesUpdater.addAndGet(this, bytes);
+    }
+
+    SendQueue getSendQueue() {
+        return sendQueue;
+    }
+
+    /**
+     * Sets the limits of the queue of messages that are sent asynchronously using {@link WebSockets}. Messages that
+     * were sent before the limits were changed are still counted against the old limits. Messages that the old limits
+     * held back are released to the channel, rather than being left behind in the old queue.
+     *
+     * @param limits The limits, or <code>null</code> to not limit the send queue
+     */
+    public void setSendQueueLimits(SendQueueLimits limits) {
+        final SendQueue old = this.sendQueue;
+        this.sendQueue = limits == null ? null : new SendQueue(this, limits);
+        if (old != null) {
+            old.retire();
+        }
+    }
+
+    public SendQueueLimits getSendQueueLimits() {
+        SendQueue sendQueue = this.sendQueue;
+        return sendQueue == null ? null : sendQueue.getLimits();
+    }
+
+    public SendQueueListener getSendQueueListener() {
+        return sendQueueListener;
+    }
+
+    /**
+     * Sets the listener that is notified when the send queue goes over the water mark, and when it drops back to the
+     * low water mark. This only has an effect if the send queue limits are set.
+     */
+    public void setSendQueueListener(SendQueueListener sendQueueListener) {
+        this.sendQueueListener = sendQueueListener;
+    }
+
+    /**
+     * @return The number of bytes of messages that have been sent but not written out yet, if the send queue is limited
+     */
+    public long getQueuedBytes() {
+        SendQueue sendQueue = this.sendQueue;
+        return sendQueue == null ? 0 : sendQueue.getQueuedBytes();
+    }
+
+    /**
+     * @return The number of messages that have been sent but not written out yet, if the send queue is limited
+     */
+    public int getQueuedFrames() {
+        SendQueue sendQueue = this.sendQueue;
+        return sendQueue == null ? 0 : sendQueue.getQueuedFrames();
+    }
+
+    /**
+     * @return <code>true</code> if the send queue is over the high water mark, and has not dropped back to the low
+     *         water mark yet
+     */
+    public boolean isSendQueueOverWaterMark() {
+        SendQueue sendQueue = this.sendQueue;
+        return sendQueue != null && sendQueue.isOverWaterMark();
+    }
+
     /**
      * Send a Close frame without a payload
      */
@@ -20,6 +20,7 @@ package io.undertow.websockets.core;
 
 import io.undertow.websockets.WebSocketExtension;
 import org.jboss.logging.Messages;
+import org.jboss.logging.annotations.Cause;
 import org.jboss.logging.annotations.Message;
 import org.jboss.logging.annotations.MessageBundle;
 
@@ -162,4 +163,19 @@ public interface WebSocketMessages {
 
     @Message(id = 2042, value = "Server responded with unsupported extension %s. Supported extensions: %s")
     IOException unsupportedExtension(String part, List<WebSocketExtension> supportedExtensions);
+
+    @Message(id = 2043, value = "Server responded with invalid parameter %s for extension %s")
+    IOException invalidExtensionParameter(String parameter, String extension);
+
+    @Message(id = 2044, value = "Could not decompress the payload of a compressed message")
+    WebSocketFrameCorruptedException badCompressedPayload(@Cause Throwable cause);
+
+    @Message(id = 2045, value = "Message was dropped as the send queue of the channel is full")
+    IOException messageDroppedSendQueueFull();
+
+    @Message(id = 2046, value = "Channel was closed as its send queue is full")
+    IOException channelClosedSendQueueFull();
+
+    @Message(id = 2047, value = "The low water mark %s must not be larger than the high water mark %s")
+    IllegalArgumentException lowWaterMarkLargerThanHighWaterMark(long lowWaterMark, long highWaterMark);
 }
@@ -60,6 +60,17 @@ public class WebSockets {
         sendInternal(new ByteBuffer[]{message}, WebSocketFrameType.TEXT, wsChannel, callback);
     }
 
+    /**
+     * Sends a complete text message, invoking the callback when complete
+     *
+     * @param message
+     * @param wsChannel
+     * @param callback
+     */
+    public static void sendText(final ByteBuffer[] message, final WebSocketChannel wsChannel, final WebSocketCallback<Void> callback) {
+        sendInternal(message, WebSocketFrameType.TEXT, wsChannel, callback);
+    }
+
     /**
      * Sends a complete text message, invoking the callback when complete
      *
@@ -272,6 +283,11 @@ public class WebSockets {
     }
 
     private static void sendInternal(final ByteBuffer[] data, WebSocketFrameType type, final WebSocketChannel wsChannel, final WebSocketCallback<Void> callback) {
+        final SendQueue sendQueue = wsChannel.getSendQueue();
+        if (sendQueue != null && (type == WebSocketFrameType.TEXT || type == WebSocketFrameType.BINARY)) {
+            sendQueue.send(data, type, callback);
+            return;
+        }
         try {
             long totalData = Buffers.remaining(data);
             StreamSinkFrameChannel channel = wsChannel.send(type, totalData);
@@ -285,6 +301,21 @@ public class WebSockets {
         }
     }
 
+    /**
+     * Writes a message to a frame that has already been queued on the channel.
+     */
+    static void sendData(final ByteBuffer[] data, final StreamSinkFrameChannel channel, final WebSocketChannel wsChannel, final WebSocketCallback<Void> callback) {
+        try {
+            sendData(data, wsChannel, callback, channel, null);
+        } catch (IOException e) {
+            if (callback != null) {
+                callback.onError(wsChannel, null, e);
+            } else {
+                IoUtils.safeClose(wsChannel);
+            }
+        }
+    }
+
     private static <T> void sendData(final ByteBuffer[] data, final WebSocketChannel wsChannel, final WebSocketCallback<T> callback, StreamSinkFrameChannel channel, final T context) throws IOException {
         boolean hasRemaining = true;
         while (hasRemaining) {
@@ -328,7 +359,7 @@ public class WebSockets {
         channel.suspendWrites();
     }
 
-    private static <T> void flushChannelAsync(final WebSocketChannel wsChannel, final WebSocketCallback<T> callback, StreamSinkFrameChannel channel, final T context) throws IOException {
+    static <T> void flushChannelAsync(final WebSocketChannel wsChannel, final WebSocketCallback<T> callback, StreamSinkFrameChannel channel, final T context) throws IOException {
         final WebSocketFrameType type = channel.getType();
         channel.shutdownWrites();
         if (!channel.flush()) {
@@ -27,7 +27,7 @@ import java.nio.ByteBuffer;
 /**
  * An utility class which can be used to check if a sequence of bytes or ByteBuffers contain non UTF-8 data.
  * <p/>
- * Please use a new instance per stream.
+ * Please use a new instance per stream. Runs of ASCII characters are checked eight bytes at a time.
  *
  * @author <a href="mailto:nmaurer@redhat.com">Norman Maurer</a>
  */
@@ -37,6 +37,11 @@ final class UTF8Checker implements ChannelFunction {
     private static final int UTF8_ACCEPT = 0;
     private static final int UTF8_REJECT = 12;
 
+    /**
+     * The high bit of every byte of a long, if none of them are set the eight bytes are all ASCII
+     */
+    private static final long ASCII_MASK = 0x8080808080808080L;
+
     private static final byte[] TYPES = {0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
             0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
             0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
@@ -56,6 +61,8 @@ final class UTF8Checker implements ChannelFunction {
             12, 12, 12, 12, 12, 12};
 
     private int state = UTF8_ACCEPT;
+    private boolean used;
+    private boolean disabled;
 
     private void checkUTF8(int b) throws UnsupportedEncodingException {
         byte type = TYPES[b & 0xFF];
@@ -76,10 +83,37 @@ final class UTF8Checker implements ChannelFunction {
      * @throws UnsupportedEncodingException     is thrown if non UTF-8 data is found
      */
     private void checkUTF8(ByteBuffer buf, int position, int length) throws UnsupportedEncodingException {
+        if (disabled) {
+            return;
+        }
+        used = true;
         int limit = position + length;
-        for (int i = position; i < limit; i++) {
-            checkUTF8(buf.get(i));
+        int i = position;
+        while (i < limit) {
+            if (state == UTF8_ACCEPT) {
+                while (i + 8 <= limit && (buf.getLong(i) & ASCII_MASK) == 0) {
+                    i += 8;
+                }
+                if (i == limit) {
+                    return;
+                }
+            }
+            checkUTF8(buf.get(i++));
+        }
+    }
+
+    /**
+     * Stops checking the data, so the reader of the message can validate it while it is decoded. This is only possible
+     * before any data has been checked.
+     *
+     * @return <code>true</code> if the checker has been disabled
+     */
+    boolean disable() {
+        if (used) {
+            return false;
         }
+        disabled = true;
+        return true;
     }
 
     @Override
@@ -98,7 +132,7 @@ final class UTF8Checker implements ChannelFunction {
 
     @Override
     public void complete() throws UnsupportedEncodingException {
-        if (state != UTF8_ACCEPT) {
+        if (!disabled && state != UTF8_ACCEPT) {
             throw WebSocketMessages.MESSAGES.invalidTextFrameEncoding();
         }
     }
@@ -20,6 +20,7 @@ package io.undertow.websockets.core.protocol.version07;
 import io.undertow.websockets.core.FixedPayloadFrameSourceChannel;
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSocketFrameType;
+import io.undertow.websockets.extensions.PerMessageDeflate;
 import org.xnio.Pooled;
 
 import java.nio.ByteBuffer;
@@ -36,4 +37,8 @@ class WebSocket07BinaryFrameSourceChannel extends FixedPayloadFrameSourceChannel
     WebSocket07BinaryFrameSourceChannel(WebSocketChannel wsChannel, long payloadSize, int rsv, boolean finalFragment, Pooled<ByteBuffer> pooled, long frameLength) {
         super(wsChannel, WebSocketFrameType.BINARY, payloadSize, rsv, finalFragment, pooled, frameLength);
     }
+
+    WebSocket07BinaryFrameSourceChannel(WebSocketChannel wsChannel, long payloadSize, int rsv, boolean finalFragment, Masker masker, PerMessageDeflate.Decompressor decompressor, Pooled<ByteBuffer> pooled, long frameLength) {
+        super(wsChannel, WebSocketFrameType.BINARY, payloadSize, rsv, finalFragment, pooled, frameLength, decompressor, masker);
+    }
 }
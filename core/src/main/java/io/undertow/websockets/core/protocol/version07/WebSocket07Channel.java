@@ -29,6 +29,7 @@ import io.undertow.websockets.core.WebSocketLogger;
 import io.undertow.websockets.core.WebSocketMessages;
 import io.undertow.websockets.core.WebSocketVersion;
 import io.undertow.websockets.core.function.ChannelFunction;
+import io.undertow.websockets.extensions.PerMessageDeflate;
 
 import org.xnio.IoUtils;
 import org.xnio.Pool;
@@ -69,6 +70,16 @@ public class WebSocket07Channel extends WebSocketChannel {
 
     private UTF8Checker checker;
 
+    /**
+     * The permessage-deflate state, or null if the extension was not negotiated
+     */
+    private final PerMessageDeflate perMessageDeflate;
+
+    /**
+     * The decompressor of a fragmented compressed message, it is used for all frames of the message
+     */
+    private PerMessageDeflate.Decompressor decompressor;
+
     protected static final byte OPCODE_CONT = 0x0;
     protected static final byte OPCODE_TEXT = 0x1;
     protected static final byte OPCODE_BINARY = 0x2;
@@ -88,7 +99,29 @@ public class WebSocket07Channel extends WebSocketChannel {
      */
     public WebSocket07Channel(StreamConnection channel, Pool<ByteBuffer> bufferPool,
                               String wsUrl, String subProtocol, final boolean client, boolean allowExtensions, Set<WebSocketChannel> openConnections) {
-        super(channel, bufferPool, WebSocketVersion.V08, wsUrl, subProtocol, client, allowExtensions, openConnections);
+        this(channel, bufferPool, wsUrl, subProtocol, client, allowExtensions, openConnections, null);
+    }
+
+    /**
+     * Create a new {@link WebSocket07Channel}
+     *
+     * @param channel           The {@link StreamConnection} over which the WebSocket Frames should get send and received.
+     *                          Be aware that it already must be "upgraded".
+     * @param bufferPool        The {@link Pool} which will be used to acquire {@link ByteBuffer}'s from.
+     * @param wsUrl             The url for which the {@link WebSocket07Channel} was created.
+     * @param perMessageDeflate The permessage-deflate state, or <code>null</code> if messages are not compressed
+     */
+    public WebSocket07Channel(StreamConnection channel, Pool<ByteBuffer> bufferPool,
+                              String wsUrl, String subProtocol, final boolean client, boolean allowExtensions, Set<WebSocketChannel> openConnections, PerMessageDeflate perMessageDeflate) {
+        super(channel, bufferPool, WebSocketVersion.V08, wsUrl, subProtocol, client, allowExtensions || perMessageDeflate != null, openConnections);
+        this.perMessageDeflate = perMessageDeflate;
+    }
+
+    /**
+     * @return The permessage-deflate state, or <code>null</code> if messages are not compressed
+     */
+    public PerMessageDeflate getPerMessageDeflate() {
+        return perMessageDeflate;
     }
 
     @Override
@@ -104,6 +137,13 @@ public class WebSocket07Channel extends WebSocketChannel {
     @Override
     protected void closeSubChannels() {
         IoUtils.safeClose(fragmentedChannel);
+        if (decompressor != null) {
+            decompressor.release();
+            decompressor = null;
+        }
+        if (perMessageDeflate != null) {
+            perMessageDeflate.close();
+        }
     }
 
     @Override
@@ -174,6 +214,22 @@ public class WebSocket07Channel extends WebSocketChannel {
                 }
             }
 
+            if ((frameRsv & 4) != 0 && perMessageDeflate != null && (frameOpcode == OPCODE_TEXT || frameOpcode == OPCODE_BINARY)) {
+                // RSV1 marks a compressed message, the masking is applied before decompressing
+                PerMessageDeflate.Decompressor decompressor = perMessageDeflate.createDecompressor();
+                Masker masker = frameMasked ? new Masker(maskingKey) : null;
+                UTF8Checker checker = frameOpcode == OPCODE_TEXT ? new UTF8Checker() : null;
+                if (!frameFinalFlag) {
+                    // later fragments are part of the same deflate stream, so they share the decompressor and checker
+                    WebSocket07Channel.this.decompressor = decompressor;
+                    WebSocket07Channel.this.checker = checker;
+                }
+                if (frameOpcode == OPCODE_TEXT) {
+                    return new WebSocket07TextFrameSourceChannel(WebSocket07Channel.this, framePayloadLength, frameRsv, frameFinalFlag, masker, checker, decompressor, pooled, framePayloadLength);
+                } else {
+                    return new WebSocket07BinaryFrameSourceChannel(WebSocket07Channel.this, framePayloadLength, frameRsv, frameFinalFlag, masker, decompressor, pooled, framePayloadLength);
+                }
+            }
             if (frameOpcode == OPCODE_TEXT) {
                 // try to grab the checker which was used before
                 UTF8Checker checker = WebSocket07Channel.this.checker;
@@ -201,6 +257,15 @@ public class WebSocket07Channel extends WebSocketChannel {
                     return new WebSocket07BinaryFrameSourceChannel(WebSocket07Channel.this, framePayloadLength, frameRsv, frameFinalFlag, pooled, framePayloadLength);
                 }
             } else if (frameOpcode == OPCODE_CONT) {
+                PerMessageDeflate.Decompressor decompressor = WebSocket07Channel.this.decompressor;
+                if (decompressor != null) {
+                    if (frameFinalFlag) {
+                        WebSocket07Channel.this.decompressor = null;
+                    }
+                    Masker masker = frameMasked ? new Masker(maskingKey) : null;
+                    ChannelFunction[] functions = checker == null ? EMPTY_FUNCTIONS : new ChannelFunction[]{checker};
+                    return new WebSocket07ContinuationFrameSourceChannel(WebSocket07Channel.this, framePayloadLength, frameRsv, frameFinalFlag, masker, decompressor, pooled, framePayloadLength, functions);
+                }
                 final ChannelFunction[] functions;
                 if (frameMasked && checker != null) {
                     functions = new ChannelFunction[2];
@@ -259,6 +324,10 @@ public class WebSocket07Channel extends WebSocketChannel {
                         if (frameRsv != 0 && !areExtensionsSupported()) {
                             throw WebSocketMessages.MESSAGES.extensionsNotAllowed(frameRsv);
                         }
+                        if ((frameRsv & 4) != 0 && perMessageDeflate != null && (frameOpcode == OPCODE_CONT || frameOpcode > 7)) {
+                            // only the first frame of a data message can be marked as compressed
+                            throw WebSocketMessages.MESSAGES.extensionsNotAllowed(frameRsv);
+                        }
 
                         if (frameOpcode > 7) { // control frame (have MSB in opcode set)
                             validateControlFrame();
@@ -467,6 +536,8 @@ public class WebSocket07Channel extends WebSocketChannel {
                 StreamSourceFrameChannel ret = fragmentedChannel;
                 if(frameFinalFlag) {
                     fragmentedChannel = null;
+                    // the channel releases the decompressor once it has read the final frame
+                    decompressor = null;
                 }
                 return ret;
             }
@@ -20,6 +20,7 @@ package io.undertow.websockets.core.protocol.version07;
 import io.undertow.websockets.core.FixedPayloadFrameSourceChannel;
 import io.undertow.websockets.core.WebSocketFrameType;
 import io.undertow.websockets.core.function.ChannelFunction;
+import io.undertow.websockets.extensions.PerMessageDeflate;
 import org.xnio.Pooled;
 
 import java.nio.ByteBuffer;
@@ -31,4 +32,8 @@ class WebSocket07ContinuationFrameSourceChannel extends FixedPayloadFrameSourceC
     WebSocket07ContinuationFrameSourceChannel(WebSocket07Channel wsChannel, long payloadSize, int rsv, boolean finalFragment, Pooled<ByteBuffer> pooled, long frameLength, final ChannelFunction... function) {
         super(wsChannel, WebSocketFrameType.CONTINUATION, payloadSize, rsv, finalFragment, pooled, frameLength, function);
     }
+
+    WebSocket07ContinuationFrameSourceChannel(WebSocket07Channel wsChannel, long payloadSize, int rsv, boolean finalFragment, Masker masker, PerMessageDeflate.Decompressor decompressor, Pooled<ByteBuffer> pooled, long frameLength, final ChannelFunction... function) {
+        super(wsChannel, WebSocketFrameType.CONTINUATION, payloadSize, rsv, finalFragment, pooled, frameLength, decompressor, masker, function);
+    }
 }
@@ -21,6 +21,7 @@ import io.undertow.server.protocol.framed.SendFrameHeader;
 import io.undertow.websockets.core.StreamSinkFrameChannel;
 import io.undertow.websockets.core.WebSocketFrameType;
 import io.undertow.websockets.core.WebSocketMessages;
+import io.undertow.websockets.extensions.PerMessageDeflate;
 import org.xnio.Buffers;
 import org.xnio.Pooled;
 
@@ -41,6 +42,14 @@ public abstract class WebSocket07FrameSinkChannel extends StreamSinkFrameChannel
     private boolean dataWritten = false;
     long toWrite;
 
+    /**
+     * The compressor of the message, if it is compressed with permessage-deflate. A compressed message is sent with
+     * a frame per flush, as the size of the compressed data is not known in advance.
+     */
+    private PerMessageDeflate.Compressor compressor;
+    private boolean compressionSelected;
+    private boolean shutdownPending;
+
     protected WebSocket07FrameSinkChannel(WebSocket07Channel wsChannel, WebSocketFrameType type,
                                        long payloadSize) {
         super(wsChannel, type);
@@ -58,6 +67,13 @@ public abstract class WebSocket07FrameSinkChannel extends StreamSinkFrameChannel
     @Override
     protected void handleFlushComplete(boolean finalFrame) {
         dataWritten = true;
+        if (masker != null) {
+            //every frame is masked from the start of the key
+            masker.setMaskingKey(maskingKey);
+        }
+        if (finalFrame && compressor != null) {
+            compressor.release();
+        }
     }
 
 
@@ -66,9 +82,23 @@ public abstract class WebSocket07FrameSinkChannel extends StreamSinkFrameChannel
      * @throws IOException
      */
     protected void channelForciblyClosed() throws IOException {
+        if (compressor != null) {
+            compressor.release();
+        }
         getChannel().sendClose();
     }
 
+    private PerMessageDeflate.Compressor compressor() {
+        if (!compressionSelected) {
+            compressionSelected = true;
+            final PerMessageDeflate perMessageDeflate = ((WebSocket07Channel) getChannel()).getPerMessageDeflate();
+            if (perMessageDeflate != null && (getType() == WebSocketFrameType.TEXT || getType() == WebSocketFrameType.BINARY)) {
+                compressor = perMessageDeflate.createCompressor();
+            }
+        }
+        return compressor;
+    }
+
     private byte opCode() {
         if(dataWritten) {
             return WebSocket07Channel.OPCODE_CONT;
@@ -93,17 +123,23 @@ public abstract class WebSocket07FrameSinkChannel extends StreamSinkFrameChannel
 
     @Override
     protected SendFrameHeader createFrameHeader() {
-        if(payloadSize >= 0 && dataWritten) {
+        final boolean fixedLength = payloadSize >= 0 && compressor == null;
+        if(fixedLength && dataWritten) {
             //for fixed length we don't need more than one header
             return null;
         }
         Pooled<ByteBuffer> start = getChannel().getBufferPool().allocate();
         byte b0 = 0;
         //if writes are shutdown this is the final fragment
-        if (isFinalFrameQueued() || payloadSize >= 0) {
+        if (isFinalFrameQueued() || fixedLength) {
             b0 |= 1 << 7;
         }
-        b0 |= (getRsv() & 7) << 4;
+        int rsv = getRsv();
+        if (compressor != null && !dataWritten) {
+            //RSV1 marks the first frame of a compressed message
+            rsv |= 4;
+        }
+        b0 |= (rsv & 7) << 4;
         b0 |= opCode() & 0xf;
 
         final ByteBuffer header = start.getResource();
@@ -114,7 +150,7 @@ public abstract class WebSocket07FrameSinkChannel extends StreamSinkFrameChannel
             maskKey |= 1 << 7;
         }
         long payloadSize;
-        if(this.payloadSize >= 0) {
+        if(fixedLength) {
             payloadSize = this.payloadSize;
         } else {
             payloadSize = getBuffer().remaining();
@@ -152,7 +188,17 @@ public abstract class WebSocket07FrameSinkChannel extends StreamSinkFrameChannel
         if(toWrite >= 0 && Buffers.remaining(srcs) > toWrite) {
             throw WebSocketMessages.MESSAGES.messageOverflow();
         }
-        if(masker == null) {
+        if(compressor() != null) {
+            long written = 0;
+            for(int i = offset; i < offset + length; ++i) {
+                written += writeCompressed(srcs[i]);
+                if(srcs[i].hasRemaining()) {
+                    break;
+                }
+            }
+            toWrite -= written;
+            return written;
+        } else if(masker == null) {
             return super.write(srcs, offset, length);
         } else {
             final Pooled<ByteBuffer> buffer = getChannel().getBufferPool().allocate();
@@ -189,6 +235,22 @@ public abstract class WebSocket07FrameSinkChannel extends StreamSinkFrameChannel
         if(toWrite >= 0 && src.remaining() > toWrite) {
             throw WebSocketMessages.MESSAGES.messageOverflow();
         }
+        if(compressor() != null) {
+            int written = writeCompressed(src);
+            toWrite -= written;
+            return written;
+        }
+        int written = writeFramed(src);
+        if(masker != null) {
+            toWrite -= written;
+        }
+        return written;
+    }
+
+    /**
+     * Writes data to the frame buffer, masking it if required.
+     */
+    private int writeFramed(final ByteBuffer src) throws IOException {
         if(masker == null) {
             return super.write(src);
         } else {
@@ -200,11 +262,69 @@ public abstract class WebSocket07FrameSinkChannel extends StreamSinkFrameChannel
                 masker.beforeWrite(buffer.getResource(), 0, buffer.getResource().remaining());
                 int written = super.write(buffer.getResource());
                 src.position(src.position() + written);
-                toWrite -= written;
                 return written;
             } finally {
                 buffer.free();
             }
         }
     }
+
+    /**
+     * Compresses the data and writes the compressed data to the frame buffer. Data is only consumed once all
+     * previously compressed data has been written.
+     *
+     * @return The number of uncompressed bytes that were consumed
+     */
+    private int writeCompressed(final ByteBuffer src) throws IOException {
+        if(shutdownPending) {
+            throw WebSocketMessages.MESSAGES.channelClosed();
+        }
+        int consumed = 0;
+        for(;;) {
+            if(!writeCompressedOutput()) {
+                return consumed;
+            }
+            if(!src.hasRemaining()) {
+                return consumed;
+            }
+            consumed += compressor.compress(src);
+        }
+    }
+
+    /**
+     * @return <code>true</code> if all compressed data has been written to the frame buffer
+     */
+    private boolean writeCompressedOutput() throws IOException {
+        final ByteBuffer output = compressor.getOutput();
+        while (output.hasRemaining()) {
+            if(writeFramed(output) == 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public void shutdownWrites() throws IOException {
+        if(compressor() != null && !shutdownPending) {
+            shutdownPending = true;
+            compressor.finish();
+            if(!writeCompressedOutput()) {
+                //the rest of the compressed data is written by flush
+                return;
+            }
+        }
+        super.shutdownWrites();
+    }
+
+    @Override
+    public boolean flush() throws IOException {
+        if(shutdownPending && compressor.hasOutput()) {
+            if(!writeCompressedOutput()) {
+                return false;
+            }
+            super.shutdownWrites();
+        }
+        return super.flush();
+    }
 }
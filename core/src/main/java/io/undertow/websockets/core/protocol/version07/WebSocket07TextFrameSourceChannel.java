@@ -19,6 +19,7 @@ package io.undertow.websockets.core.protocol.version07;
 
 import io.undertow.websockets.core.FixedPayloadFrameSourceChannel;
 import io.undertow.websockets.core.WebSocketFrameType;
+import io.undertow.websockets.extensions.PerMessageDeflate;
 import org.xnio.Pooled;
 
 import java.nio.ByteBuffer;
@@ -28,11 +29,25 @@ import java.nio.ByteBuffer;
  */
 class WebSocket07TextFrameSourceChannel extends FixedPayloadFrameSourceChannel {
 
+    private final UTF8Checker checker;
+
     WebSocket07TextFrameSourceChannel(WebSocket07Channel wsChannel, long payloadSize, int rsv, boolean finalFragment, Masker masker, UTF8Checker checker, Pooled<ByteBuffer> pooled, long frameLength) {
         super(wsChannel, WebSocketFrameType.TEXT, payloadSize, rsv, finalFragment, pooled, frameLength, masker, checker);
+        this.checker = checker;
     }
 
     WebSocket07TextFrameSourceChannel(WebSocket07Channel wsChannel, long payloadSize, int rsv, boolean finalFragment, UTF8Checker checker, Pooled<ByteBuffer> pooled, long frameLength) {
         super(wsChannel, WebSocketFrameType.TEXT, payloadSize, rsv, finalFragment, pooled, frameLength, checker);
+        this.checker = checker;
+    }
+
+    WebSocket07TextFrameSourceChannel(WebSocket07Channel wsChannel, long payloadSize, int rsv, boolean finalFragment, Masker masker, UTF8Checker checker, PerMessageDeflate.Decompressor decompressor, Pooled<ByteBuffer> pooled, long frameLength) {
+        super(wsChannel, WebSocketFrameType.TEXT, payloadSize, rsv, finalFragment, pooled, frameLength, decompressor, masker, checker);
+        this.checker = checker;
+    }
+
+    @Override
+    protected boolean disableUTF8Validation() {
+        return checker.disable();
     }
 }
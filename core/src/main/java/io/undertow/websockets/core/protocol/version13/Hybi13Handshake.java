@@ -19,9 +19,12 @@
 package io.undertow.websockets.core.protocol.version13;
 
 import io.undertow.util.Headers;
+import io.undertow.websockets.WebSocketExtension;
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSocketVersion;
 import io.undertow.websockets.core.protocol.version07.Hybi07Handshake;
+import io.undertow.websockets.extensions.PerMessageDeflate;
+import io.undertow.websockets.extensions.PerMessageDeflateHandshake;
 import io.undertow.websockets.spi.WebSocketHttpExchange;
 import org.xnio.IoUtils;
 import org.xnio.Pool;
@@ -30,6 +33,7 @@ import org.xnio.StreamConnection;
 import java.nio.ByteBuffer;
 import java.security.NoSuchAlgorithmException;
 import java.util.Collections;
+import java.util.List;
 import java.util.Set;
 
 /**
@@ -39,12 +43,23 @@ import java.util.Set;
  * @author Stuart Douglas
  */
 public class Hybi13Handshake extends Hybi07Handshake {
+
+    private final PerMessageDeflateHandshake perMessageDeflate;
+
     public Hybi13Handshake() {
-        super(WebSocketVersion.V13, Collections.<String>emptySet(), false);
+        this(Collections.<String>emptySet(), false);
     }
 
     public Hybi13Handshake(Set<String> subprotocols, boolean allowExtensions) {
+        this(subprotocols, allowExtensions, null);
+    }
+
+    /**
+     * @param perMessageDeflate The permessage-deflate negotiation, or <code>null</code> if messages are never compressed
+     */
+    public Hybi13Handshake(Set<String> subprotocols, boolean allowExtensions, PerMessageDeflateHandshake perMessageDeflate) {
         super(WebSocketVersion.V13, subprotocols, allowExtensions);
+        this.perMessageDeflate = perMessageDeflate;
     }
 
     @Override
@@ -54,6 +69,7 @@ public class Hybi13Handshake extends Hybi07Handshake {
             exchange.setResponseHeader(Headers.ORIGIN_STRING, origin);
         }
         selectSubprotocol(exchange);
+        selectExtensions(exchange);
         exchange.setResponseHeader(Headers.SEC_WEB_SOCKET_LOCATION_STRING, getWebSocketLocation(exchange));
 
         final String key = exchange.getRequestHeader(Headers.SEC_WEB_SOCKET_KEY_STRING);
@@ -68,8 +84,30 @@ public class Hybi13Handshake extends Hybi07Handshake {
         }
     }
 
+    private void selectExtensions(final WebSocketHttpExchange exchange) {
+        if (perMessageDeflate == null) {
+            return;
+        }
+        final String requested = exchange.getRequestHeader(Headers.SEC_WEB_SOCKET_EXTENSIONS_STRING);
+        if (requested == null) {
+            return;
+        }
+        final WebSocketExtension accepted = perMessageDeflate.accept(WebSocketExtension.parse(requested));
+        if (accepted != null) {
+            exchange.setResponseHeader(Headers.SEC_WEB_SOCKET_EXTENSIONS_STRING, WebSocketExtension.toExtensionHeader(Collections.singletonList(accepted)));
+        }
+    }
+
     @Override
     public WebSocketChannel createChannel(WebSocketHttpExchange exchange, final StreamConnection channel, final Pool<ByteBuffer> pool) {
-        return new WebSocket13Channel(channel, pool, getWebSocketLocation(exchange), exchange.getResponseHeader(Headers.SEC_WEB_SOCKET_PROTOCOL_STRING), false, allowExtensions, exchange.getPeerConnections());
+        PerMessageDeflate deflate = null;
+        if (perMessageDeflate != null) {
+            final String selected = exchange.getResponseHeader(Headers.SEC_WEB_SOCKET_EXTENSIONS_STRING);
+            if (selected != null) {
+                final List<WebSocketExtension> extensions = WebSocketExtension.parse(selected);
+                deflate = perMessageDeflate.createServerContext(extensions);
+            }
+        }
+        return new WebSocket13Channel(channel, pool, getWebSocketLocation(exchange), exchange.getResponseHeader(Headers.SEC_WEB_SOCKET_PROTOCOL_STRING), false, allowExtensions, exchange.getPeerConnections(), deflate);
     }
 }
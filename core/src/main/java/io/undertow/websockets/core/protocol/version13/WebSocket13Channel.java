@@ -20,6 +20,7 @@ package io.undertow.websockets.core.protocol.version13;
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSocketVersion;
 import io.undertow.websockets.core.protocol.version07.WebSocket07Channel;
+import io.undertow.websockets.extensions.PerMessageDeflate;
 import org.xnio.Pool;
 import org.xnio.StreamConnection;
 
@@ -37,6 +38,10 @@ public class WebSocket13Channel extends WebSocket07Channel {
         super(channel, bufferPool, wsUrl, subProtocols, client, allowExtensions, openConnections);
     }
 
+    public WebSocket13Channel(StreamConnection channel, Pool<ByteBuffer> bufferPool, String wsUrl, String subProtocols, final boolean client, boolean allowExtensions, Set<WebSocketChannel> openConnections, PerMessageDeflate perMessageDeflate) {
+        super(channel, bufferPool, wsUrl, subProtocols, client, allowExtensions, openConnections, perMessageDeflate);
+    }
+
     @Override
     public WebSocketVersion getVersion() {
         return WebSocketVersion.V13;
@@ -0,0 +1,155 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.extensions;
+
+import java.util.ArrayDeque;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Pool of the native compression state that is shared by all connections that negotiated per message compression.
+ * <p/>
+ * The number of deflaters that exist at any one time (in use or idle) is limited, as every deflater holds a fair
+ * amount of native memory. If no deflater is available messages are sent uncompressed. Inflaters cannot be limited
+ * in the same way, as compressed messages from the peer must always be decompressed, however idle inflaters are
+ * only kept up to the same limit.
+ *
+ * @author agent
+ */
+final class DeflaterPool {
+
+    /**
+     * The approximate amount of native memory used by a deflater with the default window size and memory level
+     */
+    static final int DEFLATER_MEMORY = 256 * 1024;
+
+    /**
+     * The approximate amount of native memory used by an inflater with the default window size
+     */
+    static final int INFLATER_MEMORY = 44 * 1024;
+
+    private static final AtomicLongFieldUpdater<DeflaterPool> uncompressedBytesUpdater = AtomicLongFieldUpdater.newUpdater(DeflaterPool.class, "uncompressedBytes");
+    private static final AtomicLongFieldUpdater<DeflaterPool> compressedBytesUpdater = AtomicLongFieldUpdater.newUpdater(DeflaterPool.class, "compressedBytes");
+    private static final AtomicLongFieldUpdater<DeflaterPool> compressedMessagesUpdater = AtomicLongFieldUpdater.newUpdater(DeflaterPool.class, "compressedMessages");
+    private static final AtomicLongFieldUpdater<DeflaterPool> uncompressedMessagesUpdater = AtomicLongFieldUpdater.newUpdater(DeflaterPool.class, "uncompressedMessages");
+
+    private final int compressionLevel;
+    private final int maxDeflaters;
+    private final ArrayDeque<Deflater> deflaters = new ArrayDeque<>();
+    private final ArrayDeque<Inflater> inflaters = new ArrayDeque<>();
+    private int deflatersInUse;
+    private int inflatersInUse;
+
+    private volatile long uncompressedBytes;
+    private volatile long compressedBytes;
+    private volatile long compressedMessages;
+    private volatile long uncompressedMessages;
+
+    DeflaterPool(final int compressionLevel, final long maxMemory) {
+        this.compressionLevel = compressionLevel;
+        this.maxDeflaters = (int) Math.min(Integer.MAX_VALUE, maxMemory / DEFLATER_MEMORY);
+    }
+
+    /**
+     * @return A deflater, or <code>null</code> if the memory limit has been reached
+     */
+    synchronized Deflater allocateDeflater() {
+        if (deflatersInUse >= maxDeflaters) {
+            return null;
+        }
+        deflatersInUse++;
+        Deflater deflater = deflaters.poll();
+        if (deflater == null) {
+            deflater = new Deflater(compressionLevel, true);
+        }
+        return deflater;
+    }
+
+    synchronized void freeDeflater(final Deflater deflater) {
+        deflatersInUse--;
+        if (deflatersInUse + deflaters.size() < maxDeflaters) {
+            deflater.reset();
+            deflaters.push(deflater);
+        } else {
+            deflater.end();
+        }
+    }
+
+    synchronized Inflater allocateInflater() {
+        inflatersInUse++;
+        Inflater inflater = inflaters.poll();
+        if (inflater == null) {
+            inflater = new Inflater(true);
+        }
+        return inflater;
+    }
+
+    synchronized void freeInflater(final Inflater inflater) {
+        inflatersInUse--;
+        if (inflaters.size() < maxDeflaters) {
+            inflater.reset();
+            inflaters.push(inflater);
+        } else {
+            inflater.end();
+        }
+    }
+
+    void messageCompressed(final long uncompressed, final long compressed) {
+        compressedMessagesUpdater.incrementAndGet(this);
+        uncompressedBytesUpdater.addAndGet(this, uncompressed);
+        compressedBytesUpdater.addAndGet(this, compressed);
+    }
+
+    void messageNotCompressed() {
+        uncompressedMessagesUpdater.incrementAndGet(this);
+    }
+
+    int getMaxDeflaters() {
+        return maxDeflaters;
+    }
+
+    synchronized int getDeflatersInUse() {
+        return deflatersInUse;
+    }
+
+    synchronized int getInflatersInUse() {
+        return inflatersInUse;
+    }
+
+    synchronized long getNativeMemoryUsed() {
+        return (long) (deflatersInUse + deflaters.size()) * DEFLATER_MEMORY + (long) (inflatersInUse + inflaters.size()) * INFLATER_MEMORY;
+    }
+
+    long getUncompressedBytes() {
+        return uncompressedBytes;
+    }
+
+    long getCompressedBytes() {
+        return compressedBytes;
+    }
+
+    long getCompressedMessages() {
+        return compressedMessages;
+    }
+
+    long getUncompressedMessages() {
+        return uncompressedMessages;
+    }
+}
@@ -0,0 +1,391 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.extensions;
+
+import io.undertow.websockets.core.WebSocketFrameCorruptedException;
+import io.undertow.websockets.core.WebSocketMessages;
+
+import java.io.Closeable;
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * The per connection state of the <code>permessage-deflate</code> extension (RFC 7692).
+ * <p/>
+ * If context takeover is in use for a direction the connection holds on to its deflater or inflater between messages,
+ * otherwise it is returned to the shared {@link DeflaterPool} as soon as the message is complete.
+ * <p/>
+ * Only a single message can be compressed at a time, as the messages must be compressed in the order they are sent.
+ * If a message is sent while another message is being compressed it is sent uncompressed.
+ *
+ * @author agent
+ */
+public final class PerMessageDeflate implements Closeable {
+
+    /**
+     * The empty stored block that ends the data of every message, it is removed by the sender and added back by
+     * the receiver.
+     */
+    private static final byte[] TAIL = {0, 0, (byte) 0xFF, (byte) 0xFF};
+
+    private static final int CHUNK_SIZE = 8192;
+
+    private final DeflaterPool pool;
+    private final boolean sendContextTakeover;
+    private final boolean receiveContextTakeover;
+
+    private Deflater deflater;
+    private Inflater inflater;
+    private boolean deflaterInUse;
+    private boolean inflaterInUse;
+    private boolean closed;
+
+    PerMessageDeflate(final DeflaterPool pool, final boolean sendContextTakeover, final boolean receiveContextTakeover) {
+        this.pool = pool;
+        this.sendContextTakeover = sendContextTakeover;
+        this.receiveContextTakeover = receiveContextTakeover;
+    }
+
+    /**
+     * Starts compressing a message.
+     *
+     * @return The compressor for the message, or <code>null</code> if the message must be sent uncompressed
+     */
+    public synchronized Compressor createCompressor() {
+        if (closed || deflaterInUse) {
+            pool.messageNotCompressed();
+            return null;
+        }
+        Deflater deflater = this.deflater;
+        if (deflater == null) {
+            deflater = pool.allocateDeflater();
+            if (deflater == null) {
+                pool.messageNotCompressed();
+                return null;
+            }
+            if (sendContextTakeover) {
+                this.deflater = deflater;
+            }
+        }
+        deflaterInUse = true;
+        return new Compressor(deflater);
+    }
+
+    /**
+     * Starts decompressing a message.
+     *
+     * @return The decompressor for the message
+     */
+    public synchronized Decompressor createDecompressor() {
+        Inflater inflater = this.inflater;
+        if (inflater == null || inflaterInUse) {
+            inflater = pool.allocateInflater();
+            if (receiveContextTakeover && this.inflater == null) {
+                this.inflater = inflater;
+            }
+        }
+        if (inflater == this.inflater) {
+            inflaterInUse = true;
+        }
+        return new Decompressor(inflater);
+    }
+
+    private synchronized void freeDeflater(final Deflater deflater, final boolean reusable) {
+        deflaterInUse = false;
+        if (deflater != this.deflater) {
+            pool.freeDeflater(deflater);
+            return;
+        }
+        if (!reusable || closed) {
+            this.deflater = null;
+            pool.freeDeflater(deflater);
+        }
+    }
+
+    private synchronized void freeInflater(final Inflater inflater, final boolean reusable) {
+        if (inflater != this.inflater) {
+            pool.freeInflater(inflater);
+            return;
+        }
+        inflaterInUse = false;
+        if (!reusable || closed) {
+            this.inflater = null;
+            pool.freeInflater(inflater);
+        }
+    }
+
+    /**
+     * Returns the compression state of the connection to the pool. Compressors and decompressors that are still in
+     * use are returned when they are released.
+     */
+    @Override
+    public synchronized void close() {
+        closed = true;
+        if (deflater != null && !deflaterInUse) {
+            pool.freeDeflater(deflater);
+            deflater = null;
+        }
+        if (inflater != null && !inflaterInUse) {
+            pool.freeInflater(inflater);
+            inflater = null;
+        }
+    }
+
+    /**
+     * Compresses a single message. The compressed data is buffered in the compressor, and must be fully written out
+     * before more data can be compressed.
+     */
+    public final class Compressor {
+
+        private final Deflater deflater;
+        private final byte[] input = new byte[CHUNK_SIZE];
+        private ByteBuffer output = ByteBuffer.allocate(CHUNK_SIZE);
+        private long uncompressedBytes;
+        private long compressedBytes;
+        private boolean finished;
+        private boolean released;
+
+        private Compressor(final Deflater deflater) {
+            this.deflater = deflater;
+            output.flip();
+        }
+
+        /**
+         * Compresses data from the given buffer. No data is consumed while there is compressed output that has not been
+         * written out.
+         *
+         * @param src The data to compress
+         * @return The number of bytes that were consumed
+         */
+        public int compress(final ByteBuffer src) {
+            if (output.hasRemaining() || finished) {
+                return 0;
+            }
+            final int count = Math.min(src.remaining(), input.length);
+            src.get(input, 0, count);
+            deflater.setInput(input, 0, count);
+            output.clear();
+            deflate(Deflater.NO_FLUSH);
+            output.flip();
+            uncompressedBytes += count;
+            return count;
+        }
+
+        /**
+         * Flushes all remaining data of the message into the output buffer.
+         */
+        public void finish() {
+            if (finished) {
+                return;
+            }
+            finished = true;
+            output.compact();
+            final int start = output.position();
+            deflate(Deflater.SYNC_FLUSH);
+            final int end = output.position();
+            if (end - start >= TAIL.length && output.get(end - 4) == TAIL[0] && output.get(end - 3) == TAIL[1]
+                    && output.get(end - 2) == TAIL[2] && output.get(end - 1) == TAIL[3]) {
+                //the sync flush ends with the empty stored block, which is not sent
+                output.position(end - TAIL.length);
+                compressedBytes -= TAIL.length;
+            } else if (end == start) {
+                //nothing was flushed, an empty message is sent as a single empty block
+                output.put((byte) 0);
+                compressedBytes++;
+            }
+            output.flip();
+        }
+
+        private void deflate(final int flush) {
+            for (; ; ) {
+                if (!output.hasRemaining()) {
+                    final ByteBuffer bigger = ByteBuffer.allocate(output.capacity() * 2);
+                    output.flip();
+                    bigger.put(output);
+                    output = bigger;
+                }
+                final int space = output.remaining();
+                final int count = deflater.deflate(output.array(), output.arrayOffset() + output.position(), space, flush);
+                output.position(output.position() + count);
+                compressedBytes += count;
+                if (count < space && (flush != Deflater.NO_FLUSH || deflater.needsInput())) {
+                    return;
+                }
+            }
+        }
+
+        /**
+         * @return The compressed data that has not been written out yet
+         */
+        public ByteBuffer getOutput() {
+            return output;
+        }
+
+        public boolean hasOutput() {
+            return output.hasRemaining();
+        }
+
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * Releases the deflater. If the message was not completely written the compression context can no longer be
+         * used, and is discarded.
+         */
+        public void release() {
+            if (released) {
+                return;
+            }
+            released = true;
+            final boolean complete = finished && !output.hasRemaining();
+            if (complete) {
+                pool.messageCompressed(uncompressedBytes, compressedBytes);
+            }
+            freeDeflater(deflater, complete && sendContextTakeover);
+        }
+    }
+
+    /**
+     * Decompresses a single message. The raw data of the message is read into {@link #getInputBuffer()}, and must be
+     * fully consumed before more raw data is added.
+     */
+    public final class Decompressor {
+
+        private final Inflater inflater;
+        private final byte[] input = new byte[CHUNK_SIZE];
+        private final ByteBuffer inputBuffer = ByteBuffer.wrap(input);
+        private byte[] output;
+        private byte[] currentInput;
+        private int currentInputEnd;
+        private boolean finished;
+        private boolean released;
+
+        private Decompressor(final Inflater inflater) {
+            this.inflater = inflater;
+        }
+
+        /**
+         * @return An empty buffer to read raw data into
+         */
+        public ByteBuffer getInputBuffer() {
+            inputBuffer.clear();
+            return inputBuffer;
+        }
+
+        /**
+         * Sets the data that was read into the input buffer as the input of the decompressor.
+         */
+        public void setInput() {
+            inputBuffer.flip();
+            setInput(input, inputBuffer.remaining());
+        }
+
+        /**
+         * Adds the data that was removed by the sender at the end of the message.
+         */
+        public void finish() {
+            finished = true;
+            setInput(TAIL, TAIL.length);
+        }
+
+        private void setInput(final byte[] data, final int length) {
+            currentInput = data;
+            currentInputEnd = length;
+            inflater.setInput(data, 0, length);
+        }
+
+        public boolean needsInput() {
+            return inflater.needsInput();
+        }
+
+        /**
+         * @return <code>true</code> if all raw data of the message has been added
+         */
+        public boolean isFinished() {
+            return finished;
+        }
+
+        /**
+         * Decompresses data into the given buffer.
+         *
+         * @param dst The buffer
+         * @return The number of bytes that were decompressed
+         * @throws WebSocketFrameCorruptedException If the data is not valid
+         */
+        public int inflate(final ByteBuffer dst) throws WebSocketFrameCorruptedException {
+            try {
+                for (; ; ) {
+                    final int count;
+                    if (dst.hasArray()) {
+                        count = inflater.inflate(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+                        dst.position(dst.position() + count);
+                    } else {
+                        if (output == null) {
+                            output = new byte[CHUNK_SIZE];
+                        }
+                        count = inflater.inflate(output, 0, Math.min(output.length, dst.remaining()));
+                        dst.put(output, 0, count);
+                    }
+                    if (count == 0 && inflater.finished()) {
+                        //the sender ended the deflate stream, any remaining data starts a new one
+                        final int remaining = inflater.getRemaining();
+                        inflater.reset();
+                        if (remaining == 0) {
+                            return 0;
+                        }
+                        inflater.setInput(currentInput, currentInputEnd - remaining, remaining);
+                        continue;
+                    }
+                    if (count == 0 && inflater.needsDictionary()) {
+                        throw WebSocketMessages.MESSAGES.badCompressedPayload(null);
+                    }
+                    return count;
+                }
+            } catch (DataFormatException e) {
+                throw WebSocketMessages.MESSAGES.badCompressedPayload(e);
+            }
+        }
+
+        /**
+         * Releases the inflater. If the message was not completely read the decompression context can no longer be
+         * used, and is discarded.
+         */
+        public void release() {
+            synchronized (PerMessageDeflate.this) {
+                if (released) {
+                    return;
+                }
+                released = true;
+            }
+            freeInflater(inflater, finished && inflater.needsInput() && receiveContextTakeover);
+        }
+
+        /**
+         * @return <code>true</code> if the inflater has been released, and can no longer be used
+         */
+        public boolean isReleased() {
+            synchronized (PerMessageDeflate.this) {
+                return released;
+            }
+        }
+    }
+}
@@ -0,0 +1,282 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.extensions;
+
+import io.undertow.websockets.WebSocketExtension;
+import io.undertow.websockets.core.WebSocketMessages;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.zip.Deflater;
+
+/**
+ * Negotiation of the <code>permessage-deflate</code> extension (RFC 7692).
+ * <p/>
+ * The JDK deflater always uses a 15 bit window, so offers that require a smaller window for the data sent by this
+ * side (<code>server_max_window_bits</code> on the server, <code>client_max_window_bits</code> with a value on the
+ * client) are declined. The window size of the peer can be limited with <code>client_max_window_bits</code>, which
+ * lowers the memory used by the peer.
+ * <p/>
+ * A single instance holds the pool of compression state for all connections that it negotiated, so the memory limit
+ * applies to all of them.
+ * <p/>
+ * The extension is not negotiated by default. A server enables it by passing a
+ * {@link io.undertow.websockets.core.protocol.version13.Hybi13Handshake} that was created with an instance of this class
+ * to {@link io.undertow.websockets.WebSocketProtocolHandshakeHandler}, or by overriding the handshakes of a
+ * WebSocket servlet. The JSR-356 implementation does not negotiate it.
+ *
+ * @author agent
+ */
+public class PerMessageDeflateHandshake {
+
+    public static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+    public static final String SERVER_NO_CONTEXT_TAKEOVER = "server_no_context_takeover";
+    public static final String CLIENT_NO_CONTEXT_TAKEOVER = "client_no_context_takeover";
+    public static final String SERVER_MAX_WINDOW_BITS = "server_max_window_bits";
+    public static final String CLIENT_MAX_WINDOW_BITS = "client_max_window_bits";
+
+    public static final long DEFAULT_MAX_COMPRESSION_MEMORY = 32 * 1024 * 1024;
+
+    private static final int MIN_WINDOW_BITS = 8;
+    private static final int MAX_WINDOW_BITS = 15;
+
+    private final boolean serverNoContextTakeover;
+    private final boolean clientNoContextTakeover;
+    private final int clientMaxWindowBits;
+    private final DeflaterPool pool;
+
+    public PerMessageDeflateHandshake() {
+        this(Deflater.DEFAULT_COMPRESSION, false, false, 0, DEFAULT_MAX_COMPRESSION_MEMORY);
+    }
+
+    /**
+     * @param compressionLevel        The deflate compression level
+     * @param serverNoContextTakeover If the server should not keep the compression context between messages
+     * @param clientNoContextTakeover If the client should not keep the compression context between messages
+     * @param clientMaxWindowBits     The window size that a server requests from clients, or 0 to not limit it
+     * @param maxCompressionMemory    The maximum amount of native memory used by deflaters
+     */
+    public PerMessageDeflateHandshake(final int compressionLevel, final boolean serverNoContextTakeover, final boolean clientNoContextTakeover, final int clientMaxWindowBits, final long maxCompressionMemory) {
+        if (clientMaxWindowBits != 0 && (clientMaxWindowBits < MIN_WINDOW_BITS || clientMaxWindowBits > MAX_WINDOW_BITS)) {
+            throw new IllegalArgumentException(CLIENT_MAX_WINDOW_BITS);
+        }
+        this.serverNoContextTakeover = serverNoContextTakeover;
+        this.clientNoContextTakeover = clientNoContextTakeover;
+        this.clientMaxWindowBits = clientMaxWindowBits;
+        this.pool = new DeflaterPool(compressionLevel, maxCompressionMemory);
+    }
+
+    /**
+     * Selects the first acceptable offer made by a client.
+     *
+     * @param offers The extensions offered by the client
+     * @return The extension to send in the response, or <code>null</code> if none of the offers was acceptable
+     */
+    public WebSocketExtension accept(final List<WebSocketExtension> offers) {
+        for (WebSocketExtension offer : offers) {
+            if (!offer.getName().equalsIgnoreCase(PERMESSAGE_DEFLATE)) {
+                continue;
+            }
+            final List<WebSocketExtension.Parameter> response = new ArrayList<>();
+            final Set<String> seen = new HashSet<>();
+            boolean serverNoContextTakeover = this.serverNoContextTakeover;
+            boolean clientNoContextTakeover = this.clientNoContextTakeover;
+            int clientMaxWindowBits = -1;
+            boolean accepted = true;
+            for (WebSocketExtension.Parameter param : offer.getParameters()) {
+                final String name = param.getName();
+                if (!seen.add(name)) {
+                    accepted = false;
+                    break;
+                }
+                if (name.equals(SERVER_NO_CONTEXT_TAKEOVER) && param.getValue() == null) {
+                    serverNoContextTakeover = true;
+                } else if (name.equals(CLIENT_NO_CONTEXT_TAKEOVER) && param.getValue() == null) {
+                    clientNoContextTakeover = true;
+                } else if (name.equals(SERVER_MAX_WINDOW_BITS)) {
+                    //we cannot limit the window of the JDK deflater
+                    if (parseWindowBits(param.getValue()) != MAX_WINDOW_BITS) {
+                        accepted = false;
+                        break;
+                    }
+                    response.add(new WebSocketExtension.Parameter(SERVER_MAX_WINDOW_BITS, Integer.toString(MAX_WINDOW_BITS)));
+                } else if (name.equals(CLIENT_MAX_WINDOW_BITS)) {
+                    clientMaxWindowBits = param.getValue() == null ? MAX_WINDOW_BITS : parseWindowBits(param.getValue());
+                    if (clientMaxWindowBits == -1) {
+                        accepted = false;
+                        break;
+                    }
+                } else {
+                    accepted = false;
+                    break;
+                }
+            }
+            if (!accepted) {
+                continue;
+            }
+            if (serverNoContextTakeover) {
+                response.add(new WebSocketExtension.Parameter(SERVER_NO_CONTEXT_TAKEOVER, null));
+            }
+            if (clientNoContextTakeover) {
+                response.add(new WebSocketExtension.Parameter(CLIENT_NO_CONTEXT_TAKEOVER, null));
+            }
+            if (clientMaxWindowBits != -1 && this.clientMaxWindowBits != 0) {
+                response.add(new WebSocketExtension.Parameter(CLIENT_MAX_WINDOW_BITS, Integer.toString(Math.min(clientMaxWindowBits, this.clientMaxWindowBits))));
+            }
+            return new WebSocketExtension(PERMESSAGE_DEFLATE, response);
+        }
+        return null;
+    }
+
+    /**
+     * @return The offer a client sends to the server, the context takeover parameters are the ones this side was
+     * created with
+     */
+    public WebSocketExtension offer() {
+        final List<WebSocketExtension.Parameter> params = new ArrayList<>();
+        if (clientNoContextTakeover) {
+            params.add(new WebSocketExtension.Parameter(CLIENT_NO_CONTEXT_TAKEOVER, null));
+        }
+        if (serverNoContextTakeover) {
+            params.add(new WebSocketExtension.Parameter(SERVER_NO_CONTEXT_TAKEOVER, null));
+        }
+        //client_max_window_bits is not offered, as the window of the JDK deflater cannot be limited
+        return new WebSocketExtension(PERMESSAGE_DEFLATE, params);
+    }
+
+    /**
+     * Creates the compression state of a server connection.
+     *
+     * @param extensions The extensions that were sent in the response
+     * @return The compression state, or <code>null</code> if <code>permessage-deflate</code> was not accepted
+     */
+    public PerMessageDeflate createServerContext(final List<WebSocketExtension> extensions) {
+        for (WebSocketExtension extension : extensions) {
+            if (extension.getName().equalsIgnoreCase(PERMESSAGE_DEFLATE)) {
+                return new PerMessageDeflate(pool, !hasParameter(extension, SERVER_NO_CONTEXT_TAKEOVER), !hasParameter(extension, CLIENT_NO_CONTEXT_TAKEOVER));
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates the compression state of a client connection.
+     *
+     * @param extensions The extensions that were selected by the server
+     * @return The compression state, or <code>null</code> if <code>permessage-deflate</code> was not selected
+     * @throws IOException If the server selected parameters that the client cannot accept
+     */
+    public PerMessageDeflate createClientContext(final List<WebSocketExtension> extensions) throws IOException {
+        for (WebSocketExtension extension : extensions) {
+            if (!extension.getName().equalsIgnoreCase(PERMESSAGE_DEFLATE)) {
+                continue;
+            }
+            for (WebSocketExtension.Parameter param : extension.getParameters()) {
+                final String name = param.getName();
+                if (name.equals(CLIENT_MAX_WINDOW_BITS)) {
+                    if (parseWindowBits(param.getValue()) != MAX_WINDOW_BITS) {
+                        throw WebSocketMessages.MESSAGES.invalidExtensionParameter(name, PERMESSAGE_DEFLATE);
+                    }
+                } else if (name.equals(SERVER_MAX_WINDOW_BITS)) {
+                    if (parseWindowBits(param.getValue()) == -1) {
+                        throw WebSocketMessages.MESSAGES.invalidExtensionParameter(name, PERMESSAGE_DEFLATE);
+                    }
+                } else if (!name.equals(SERVER_NO_CONTEXT_TAKEOVER) && !name.equals(CLIENT_NO_CONTEXT_TAKEOVER)) {
+                    throw WebSocketMessages.MESSAGES.invalidExtensionParameter(name, PERMESSAGE_DEFLATE);
+                }
+            }
+            return new PerMessageDeflate(pool, !hasParameter(extension, CLIENT_NO_CONTEXT_TAKEOVER), !hasParameter(extension, SERVER_NO_CONTEXT_TAKEOVER));
+        }
+        return null;
+    }
+
+    private static boolean hasParameter(final WebSocketExtension extension, final String name) {
+        for (WebSocketExtension.Parameter param : extension.getParameters()) {
+            if (param.getName().equals(name)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static int parseWindowBits(final String value) {
+        if (value == null) {
+            return -1;
+        }
+        try {
+            final int bits = Integer.parseInt(value);
+            if (bits < MIN_WINDOW_BITS || bits > MAX_WINDOW_BITS) {
+                return -1;
+            }
+            return bits;
+        } catch (NumberFormatException e) {
+            return -1;
+        }
+    }
+
+    /**
+     * @return The maximum number of deflaters that can exist at the same time
+     */
+    public int getMaxDeflaters() {
+        return pool.getMaxDeflaters();
+    }
+
+    public int getDeflatersInUse() {
+        return pool.getDeflatersInUse();
+    }
+
+    public int getInflatersInUse() {
+        return pool.getInflatersInUse();
+    }
+
+    /**
+     * @return The approximate amount of native memory used by the compression state
+     */
+    public long getNativeMemoryUsed() {
+        return pool.getNativeMemoryUsed();
+    }
+
+    /**
+     * @return The number of bytes of messages that were sent compressed, before compression
+     */
+    public long getUncompressedBytes() {
+        return pool.getUncompressedBytes();
+    }
+
+    /**
+     * @return The number of bytes of messages that were sent compressed, after compression
+     */
+    public long getCompressedBytes() {
+        return pool.getCompressedBytes();
+    }
+
+    public long getCompressedMessages() {
+        return pool.getCompressedMessages();
+    }
+
+    /**
+     * @return The number of messages that were sent uncompressed because no deflater was available
+     */
+    public long getUncompressedMessages() {
+        return pool.getUncompressedMessages();
+    }
+}
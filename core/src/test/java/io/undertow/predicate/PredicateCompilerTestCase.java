@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.predicate;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.TreeMap;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class PredicateCompilerTestCase {
+
+    private static final String[] PREDICATES = {
+            "path[/foo]",
+            "method[GET]",
+            "method[{GET, POST}] and path-suffix[.html]",
+            "not method[GET] or exists[%{i,Content-Type}]",
+            "(path[/foo] or path[/bar]) and not (method[POST] and exists[%{i,Content-Type}])",
+            "equals[%{i,Content-Type}, 'text/plain'] or equals[{'a', 'a'}]",
+            "equals[{'a', 'b'}] or method[PUT]",
+            "true and false or not false and method[HEAD]",
+            "regex[pattern='/(f)o*', value=%{RELATIVE_PATH}, full-match=true] and equals[$1, f]",
+            "path-prefix[/foo] and equals[%{i,Content-Type}, 'text/plain'] and method[GET] and equals[${remaining}, '/bar']",
+            "contains[value=%{i,Content-Type}, search={text, json}] or regex[pattern=txt] and method[GET]",
+            "regex[pattern='/(f)o*', value=%{RELATIVE_PATH}, full-match=true] or true",
+            "method[GET] or regex[pattern='/(b)ar', value=%{RELATIVE_PATH}] or path[/foo] or true or method[POST]",
+            "regex[pattern='/(f)o*', value=%{RELATIVE_PATH}] and false",
+            "not (regex[pattern='/(f)o*', value=%{RELATIVE_PATH}] and false) and method[GET]",
+    };
+
+    @Test
+    public void testCompiledPredicatesMatchInterpreted() {
+        final PredicateCompiler compiler = new PredicateCompiler();
+        for (String string : PREDICATES) {
+            final Predicate interpreted = PredicateParser.parse(string, PredicateCompilerTestCase.class.getClassLoader());
+            final Predicate compiled = compiler.compile(interpreted);
+            for (HttpString method : new HttpString[]{Methods.GET, Methods.POST, Methods.PUT, Methods.HEAD}) {
+                for (String path : new String[]{"/foo", "/bar", "/foo/bar", "/index.html", "/a.txt", "/fooo"}) {
+                    for (String contentType : new String[]{null, "text/plain", "application/json"}) {
+                        final HttpServerExchange e1 = exchange(method, path, contentType);
+                        final HttpServerExchange e2 = exchange(method, path, contentType);
+                        final String message = string + " " + method + " " + path + " " + contentType;
+                        Assert.assertEquals(message, interpreted.resolve(e1), compiled.resolve(e2));
+                        Assert.assertEquals(message, e1.getAttachment(Predicate.PREDICATE_CONTEXT), e2.getAttachment(Predicate.PREDICATE_CONTEXT));
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testConstantsAreFolded() {
+        final PredicateCompiler compiler = new PredicateCompiler();
+        Assert.assertSame(TruePredicate.instance(), compiler.compile(PredicateParser.parse("true or method[GET]", PredicateCompilerTestCase.class.getClassLoader())));
+        Assert.assertSame(FalsePredicate.instance(), compiler.compile(PredicateParser.parse("equals[{'a', 'b'}] and method[GET]", PredicateCompilerTestCase.class.getClassLoader())));
+        final Predicate single = PredicateParser.parse("path[/foo]", PredicateCompilerTestCase.class.getClassLoader());
+        Assert.assertSame(single, compiler.compile(single));
+    }
+
+    @Test
+    public void testConstantsAfterSideEffectsAreKept() {
+        final PredicateCompiler compiler = new PredicateCompiler();
+        final Predicate predicate = compiler.compile(PredicateParser.parse(
+                "regex[pattern='/(f)o*', value=%{RELATIVE_PATH}, full-match=true] or path[/bar] or true",
+                PredicateCompilerTestCase.class.getClassLoader()));
+        Assert.assertNotSame(TruePredicate.instance(), predicate);
+        for (String path : new String[]{"/foo", "/bar"}) {
+            final HttpServerExchange exchange = exchange(Methods.GET, path, null);
+            Assert.assertTrue(predicate.resolve(exchange));
+            //the regex still writes its captures before the constant decides the result
+            Assert.assertEquals(path.equals("/foo") ? "f" : null, exchange.getAttachment(Predicate.PREDICATE_CONTEXT).get("1"));
+        }
+        //the pure node before the constant cannot change anything, so it is dropped
+        final PredicateCompiler.Node node = PredicateCompiler.normalize(PredicateParser.parse(
+                "regex[pattern='/(f)o*', value=%{RELATIVE_PATH}, full-match=true] or path[/bar] or true",
+                PredicateCompilerTestCase.class.getClassLoader()));
+        final PredicateCompiler.Node[] children = ((PredicateCompiler.Junction) node).children;
+        Assert.assertEquals(2, children.length);
+        Assert.assertTrue(((PredicateCompiler.Invoke) children[0]).predicate instanceof RegularExpressionPredicate);
+        Assert.assertSame(PredicateCompiler.Constant.TRUE, children[1]);
+    }
+
+    @Test
+    public void testChecksAreOrderedByCost() {
+        final PredicateCompiler.Node node = PredicateCompiler.normalize(PredicateParser.parse(
+                "path[/foo] and method[GET] and regex[/f.*] and exists[%{i,Content-Type}] and path-suffix[.html] and method[POST]",
+                PredicateCompilerTestCase.class.getClassLoader()));
+        final PredicateCompiler.Node[] children = ((PredicateCompiler.Junction) node).children;
+        Assert.assertEquals(6, children.length);
+        //the regex writes to the predicate context, so nothing is moved across it
+        Assert.assertTrue(children[0] instanceof PredicateCompiler.MethodEquals);
+        Assert.assertTrue(((PredicateCompiler.Invoke) children[1]).predicate instanceof PathMatchPredicate);
+        Assert.assertTrue(((PredicateCompiler.Invoke) children[2]).predicate instanceof RegularExpressionPredicate);
+        Assert.assertTrue(children[3] instanceof PredicateCompiler.MethodEquals);
+        Assert.assertTrue(((PredicateCompiler.Invoke) children[4]).predicate instanceof ExistsPredicate);
+        Assert.assertTrue(((PredicateCompiler.Invoke) children[5]).predicate instanceof PathSuffixPredicate);
+    }
+
+    @Test
+    @Ignore("benchmark")
+    public void testCompiledPerformance() {
+        final List<Predicate> interpreted = new ArrayList<>();
+        for (int i = 0; i < 200; ++i) {
+            interpreted.add(PredicateParser.parse("(path[/path" + i + "] or path-suffix[.ext" + i + "]) and method[{GET, POST}] and not equals[%{i,Content-Type}, 'type" + i + "']",
+                    PredicateCompilerTestCase.class.getClassLoader()));
+        }
+        final PredicateCompiler compiler = new PredicateCompiler();
+        final List<Predicate> compiled = new ArrayList<>();
+        for (Predicate predicate : interpreted) {
+            compiled.add(compiler.compile(predicate));
+        }
+        final HttpServerExchange exchange = exchange(Methods.GET, "/path199", "text/plain");
+        for (int run = 0; run < 5; ++run) {
+            System.out.println("interpreted " + time(interpreted, exchange) + "ms compiled " + time(compiled, exchange) + "ms");
+        }
+    }
+
+    private static long time(final List<Predicate> predicates, final HttpServerExchange exchange) {
+        final long start = System.nanoTime();
+        int matches = 0;
+        for (int i = 0; i < 20000; ++i) {
+            for (Predicate predicate : predicates) {
+                if (predicate.resolve(exchange)) {
+                    ++matches;
+                }
+            }
+        }
+        Assert.assertEquals(20000, matches);
+        return (System.nanoTime() - start) / 1000000;
+    }
+
+    private static HttpServerExchange exchange(final HttpString method, final String path, final String contentType) {
+        final HttpServerExchange exchange = new HttpServerExchange(null);
+        exchange.setRequestMethod(method);
+        exchange.setRelativePath(path);
+        if (contentType != null) {
+            exchange.getRequestHeaders().put(Headers.CONTENT_TYPE, contentType);
+        }
+        exchange.putAttachment(Predicate.PREDICATE_CONTEXT, new TreeMap<String, Object>());
+        return exchange;
+    }
+}
@@ -59,6 +59,12 @@ public class PredicateParsingTestCase {
         }
     }
 
+    @Test
+    public void testIpMatchPredicate() {
+        Predicate predicate = PredicateParser.parse("ip-match[{'10.0.0.0/8', '127.0.0.1'}]", PredicateParsingTestCase.class.getClassLoader());
+        Assert.assertTrue(predicate instanceof IPAddressPredicate);
+    }
+
     @Test
     public void testRegularExpressionsWithPredicateContext() {
         Predicate predicate = PredicateParser.parse("regex[pattern=a* , value=%{RELATIVE_PATH}] and equals[{$0, aaa}]", PredicateParsingTestCase.class.getClassLoader());
@@ -0,0 +1,125 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.security.idm;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class CachingIdentityManagerTestCase {
+
+    @Test
+    public void testSuccessfulVerificationIsCached() {
+        final CountingIdentityManager delegate = new CountingIdentityManager();
+        final CachingIdentityManager idm = new CachingIdentityManager(delegate, 100, 60000, 60000);
+
+        final Account account = idm.verify("user", new PasswordCredential("password".toCharArray()));
+        Assert.assertNotNull(account);
+        Assert.assertSame(account, idm.verify("user", new PasswordCredential("password".toCharArray())));
+        Assert.assertEquals(1, delegate.count);
+        Assert.assertEquals(1, idm.getHits());
+        Assert.assertEquals(1, idm.getMisses());
+
+        // A different password must not hit the cached entry
+        Assert.assertNull(idm.verify("user", new PasswordCredential("wrong".toCharArray())));
+        Assert.assertEquals(2, delegate.count);
+    }
+
+    @Test
+    public void testFailedVerificationIsCached() {
+        final CountingIdentityManager delegate = new CountingIdentityManager();
+        final CachingIdentityManager idm = new CachingIdentityManager(delegate, 100, 60000, 60000);
+
+        Assert.assertNull(idm.verify("user", new PasswordCredential("wrong".toCharArray())));
+        Assert.assertNull(idm.verify("user", new PasswordCredential("wrong".toCharArray())));
+        Assert.assertEquals(1, delegate.count);
+
+        final CachingIdentityManager noNegative = new CachingIdentityManager(delegate, 100, 60000, 0);
+        Assert.assertNull(noNegative.verify("user", new PasswordCredential("wrong".toCharArray())));
+        Assert.assertNull(noNegative.verify("user", new PasswordCredential("wrong".toCharArray())));
+        Assert.assertEquals(3, delegate.count);
+    }
+
+    @Test
+    public void testInvalidation() {
+        final CountingIdentityManager delegate = new CountingIdentityManager();
+        final CachingIdentityManager idm = new CachingIdentityManager(delegate, 100, 60000, 60000);
+
+        Assert.assertNotNull(idm.verify("user", new PasswordCredential("password".toCharArray())));
+        Assert.assertNotNull(idm.verify("other", new PasswordCredential("password".toCharArray())));
+        Assert.assertEquals(2, delegate.count);
+
+        idm.invalidate("user");
+        Assert.assertNotNull(idm.verify("user", new PasswordCredential("password".toCharArray())));
+        Assert.assertNotNull(idm.verify("other", new PasswordCredential("password".toCharArray())));
+        Assert.assertEquals(3, delegate.count);
+        Assert.assertNotNull(idm.verify("user", new PasswordCredential("password".toCharArray())));
+        Assert.assertEquals(3, delegate.count);
+
+        idm.invalidateAll();
+        Assert.assertNotNull(idm.verify("user", new PasswordCredential("password".toCharArray())));
+        Assert.assertNotNull(idm.verify("other", new PasswordCredential("password".toCharArray())));
+        Assert.assertEquals(5, delegate.count);
+    }
+
+    private static final class CountingIdentityManager implements IdentityManager {
+
+        private int count;
+
+        @Override
+        public Account verify(Account account) {
+            return account;
+        }
+
+        @Override
+        public Account verify(final String id, Credential credential) {
+            count++;
+            if (!new String(((PasswordCredential) credential).getPassword()).equals("password")) {
+                return null;
+            }
+            return new Account() {
+                @Override
+                public Principal getPrincipal() {
+                    return new Principal() {
+                        @Override
+                        public String getName() {
+                            return id;
+                        }
+                    };
+                }
+
+                @Override
+                public Set<String> getRoles() {
+                    return Collections.emptySet();
+                }
+            };
+        }
+
+        @Override
+        public Account verify(Credential credential) {
+            return null;
+        }
+    }
+
+}
@@ -0,0 +1,75 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.security.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class NonceStoreTestCase {
+
+    @Test
+    public void testPutGetRemove() {
+        final long now = System.currentTimeMillis();
+        final NonceStore<String> store = new NonceStore<>(4, 100);
+        Assert.assertNull(store.putIfAbsent("a", "1", now + 1000, now));
+        Assert.assertEquals("1", store.putIfAbsent("a", "2", now + 1000, now));
+        Assert.assertEquals("1", store.get("a", now));
+        Assert.assertEquals("1", store.put("a", "3", now + 1000, now));
+        Assert.assertEquals("3", store.get("a", now));
+        Assert.assertEquals(1, store.size());
+        Assert.assertEquals("3", store.remove("a", now));
+        Assert.assertNull(store.get("a", now));
+        Assert.assertEquals(0, store.size());
+    }
+
+    @Test
+    public void testExpiry() {
+        final long now = System.currentTimeMillis();
+        final NonceStore<String> store = new NonceStore<>(4, 100);
+        store.put("short", "1", now + 150, now);
+        store.put("long", "2", now + 1000, now);
+        // Entries more than one rotation of the wheel away must survive passing their slot
+        store.put("later", "3", now + 100 * 1500, now);
+        Assert.assertEquals(3, store.size());
+
+        // Expired entries are never returned, even before they are swept
+        Assert.assertNull(store.get("short", now + 150));
+        Assert.assertEquals("2", store.get("long", now + 500));
+
+        store.get("short", now + 1200);
+        store.get("long", now + 1200);
+        store.get("later", now + 1200);
+        Assert.assertNull(store.get("long", now + 1200));
+        Assert.assertEquals("3", store.get("later", now + 100 * 1100));
+        Assert.assertEquals(1, store.size());
+        Assert.assertNull(store.get("later", now + 100 * 1600));
+    }
+
+    @Test
+    public void testExpiredValueIsNotAdded() {
+        final long now = System.currentTimeMillis();
+        final NonceStore<String> store = new NonceStore<>(4, 100);
+        Assert.assertNull(store.putIfAbsent("a", "1", now, now));
+        Assert.assertNull(store.get("a", now));
+        Assert.assertEquals(0, store.size());
+    }
+
+}
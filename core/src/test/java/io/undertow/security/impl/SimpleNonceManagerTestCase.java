@@ -0,0 +1,113 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.security.impl;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class SimpleNonceManagerTestCase {
+
+    @Test
+    public void testOutOfOrderCountsAcceptedOnce() throws InterruptedException {
+        final SimpleNonceManager manager = new SimpleNonceManager();
+        final String nonce = newNonce(manager);
+        Assert.assertTrue(manager.validateNonce(nonce, 1, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 5, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 3, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 2, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 4, null));
+        for (int i = 1; i <= 5; ++i) {
+            Assert.assertFalse(manager.validateNonce(nonce, i, null));
+        }
+        Assert.assertTrue(manager.validateNonce(nonce, 6, null));
+    }
+
+    @Test
+    public void testCountBelowWindowRejected() throws InterruptedException {
+        final SimpleNonceManager manager = new SimpleNonceManager();
+        final String nonce = newNonce(manager);
+        Assert.assertTrue(manager.validateNonce(nonce, 1, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 100, null));
+        //the window holds the 64 counts up to and including the maximum
+        Assert.assertFalse(manager.validateNonce(nonce, 36, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 37, null));
+        Assert.assertFalse(manager.validateNonce(nonce, 37, null));
+    }
+
+    @Test
+    public void testLargeJumpResetsWindow() throws InterruptedException {
+        final SimpleNonceManager manager = new SimpleNonceManager();
+        final String nonce = newNonce(manager);
+        Assert.assertTrue(manager.validateNonce(nonce, 1, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 2, null));
+        //a shift of exactly 64 must clear the window, not leave the old bits where they were
+        Assert.assertTrue(manager.validateNonce(nonce, 66, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 65, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 64, null));
+        Assert.assertFalse(manager.validateNonce(nonce, 2, null));
+        Assert.assertFalse(manager.validateNonce(nonce, 66, null));
+
+        Assert.assertTrue(manager.validateNonce(nonce, 1000, null));
+        Assert.assertTrue(manager.validateNonce(nonce, 999, null));
+        Assert.assertFalse(manager.validateNonce(nonce, 936, null));
+    }
+
+    @Test
+    public void testNonceWithoutCountIsSingleUse() throws InterruptedException {
+        final SimpleNonceManager manager = new SimpleNonceManager();
+        final String nonce = newNonce(manager);
+        Assert.assertTrue(manager.validateNonce(nonce, -1, null));
+        Assert.assertFalse(manager.validateNonce(nonce, -1, null));
+    }
+
+    @Test
+    public void testMetrics() throws InterruptedException {
+        final SimpleNonceManager manager = new SimpleNonceManager();
+        final String first = newNonce(manager);
+        final String second = newNonce(manager);
+        Assert.assertTrue(manager.validateNonce(first, 1, null));
+        Assert.assertFalse(manager.validateNonce(first, 1, null));
+        Assert.assertTrue(manager.validateNonce(second, -1, null));
+        Assert.assertFalse(manager.validateNonce(second, -1, null));
+        Assert.assertEquals(4, manager.getValidations());
+        Assert.assertEquals(2, manager.getRejectedValidations());
+        Assert.assertEquals(2, manager.getStoredNonceCount());
+        Assert.assertTrue(manager.getEstimatedStoreMemory() > 0);
+        Assert.assertTrue(manager.getValidationsPerSecond() >= 0);
+
+        final long started = manager.getMetricsStartDate().getTime();
+        Thread.sleep(5);
+        manager.resetMetrics();
+        Assert.assertEquals(0, manager.getValidations());
+        Assert.assertEquals(0, manager.getRejectedValidations());
+        Assert.assertEquals(0, manager.getValidationsPerSecond(), 0);
+        Assert.assertTrue(manager.getMetricsStartDate().getTime() > started);
+        //the stored nonces are not metrics, and are kept
+        Assert.assertEquals(2, manager.getStoredNonceCount());
+    }
+
+    private static String newNonce(final SimpleNonceManager manager) throws InterruptedException {
+        final String nonce = manager.nextNonce(null, null);
+        //a nonce is only registered once its time stamp is in the past
+        Thread.sleep(5);
+        return nonce;
+    }
+}
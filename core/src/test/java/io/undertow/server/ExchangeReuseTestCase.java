@@ -0,0 +1,232 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server;
+
+import io.undertow.UndertowOptions;
+import io.undertow.server.handlers.Cookie;
+import io.undertow.server.handlers.CookieImpl;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.HttpOneOnly;
+import io.undertow.testutils.ProxyIgnore;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.AttachmentKey;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import io.undertow.util.Protocols;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.OptionMap;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.net.InetSocketAddress;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Tests that exchanges are reset correctly when they are reused for the next request on a connection.
+ *
+ * @author agent
+ */
+@RunWith(DefaultServer.class)
+public class ExchangeReuseTestCase {
+
+    private static final AttachmentKey<String> KEY = AttachmentKey.create(String.class);
+    private static final HttpString ORIGINAL = new HttpString("original");
+    private static final HttpString SET = new HttpString("set");
+
+    @Test
+    public void testResetClearsState() {
+        final HttpServerExchange exchange = new HttpServerExchange(null, 10);
+        populate(exchange);
+        exchange.addExchangeCompleteListener(new ExchangeCompletionListener() {
+            @Override
+            public void exchangeEvent(HttpServerExchange exchange, NextListener nextListener) {
+                nextListener.proceed();
+            }
+        });
+        exchange.setResponseCookie(new CookieImpl("cookie", "value"));
+        exchange.putAttachment(KEY, "value");
+        exchange.setSourceAddress(new InetSocketAddress(1234));
+        exchange.setResponseCode(404);
+        exchange.setPersistent(true);
+
+        exchange.reset(20);
+
+        Assert.assertEquals(0, exchange.getRequestHeaders().size());
+        Assert.assertEquals(0, exchange.getResponseHeaders().size());
+        Assert.assertTrue(exchange.getQueryParameters().isEmpty());
+        Assert.assertTrue(exchange.getPathParameters().isEmpty());
+        Assert.assertTrue(exchange.getResponseCookies().isEmpty());
+        Assert.assertNull(exchange.getAttachment(KEY));
+        Assert.assertNull(exchange.getProtocol());
+        Assert.assertNull(exchange.getRequestMethod());
+        Assert.assertNull(exchange.getRequestURI());
+        Assert.assertNull(exchange.getRequestPath());
+        Assert.assertNull(exchange.getRelativePath());
+        Assert.assertEquals("", exchange.getResolvedPath());
+        Assert.assertEquals("", exchange.getQueryString());
+        Assert.assertEquals(200, exchange.getResponseCode());
+        Assert.assertEquals(20, exchange.getMaxEntitySize());
+        Assert.assertEquals(-1, exchange.getRequestStartTime());
+        Assert.assertFalse(exchange.isPersistent());
+        Assert.assertFalse(exchange.isHostIncludedInRequestURI());
+        Assert.assertFalse(exchange.isResponseStarted());
+        Assert.assertFalse(exchange.isComplete());
+        Assert.assertTrue(exchange.isResponseChannelAvailable());
+        Assert.assertTrue(exchange.isRequestChannelAvailable());
+
+        //the exchange must behave like a new exchange
+        populate(exchange);
+        Assert.assertEquals("/path", exchange.getRequestPath());
+        Assert.assertEquals("b", exchange.getQueryParameters().get("a").getFirst());
+        Assert.assertEquals(1, exchange.getRequestHeaders().getHeaderNames().size());
+    }
+
+    @Test
+    public void testUseAfterRecycleFails() {
+        boolean assertionsEnabled = false;
+        assert assertionsEnabled = true;
+        if (!assertionsEnabled) {
+            return;
+        }
+        final HttpServerExchange exchange = new HttpServerExchange(null);
+        exchange.markRecycled();
+        try {
+            exchange.getResponseHeaders();
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+        try {
+            exchange.setResponseCode(500);
+            Assert.fail();
+        } catch (IllegalStateException expected) {
+        }
+    }
+
+    @Test
+    @HttpOneOnly
+    @ProxyIgnore
+    public void testRequestStateDoesNotLeak() throws IOException {
+        final OptionMap existing = DefaultServer.getUndertowOptions();
+        //only the identity of the exchanges is used, to check that the same exchange handled every request
+        final List<HttpServerExchange> exchanges = Collections.synchronizedList(new ArrayList<HttpServerExchange>());
+        DefaultServer.setRootHandler(new HttpHandler() {
+            @Override
+            public void handleRequest(HttpServerExchange exchange) throws Exception {
+                exchanges.add(exchange);
+                if (exchange.getQueryParameters().containsKey("set")) {
+                    exchange.getResponseHeaders().put(SET, "true");
+                    exchange.setResponseCookie(new CookieImpl("leak", "true"));
+                    exchange.putAttachment(KEY, "leak");
+                }
+                final Cookie cookie = exchange.getRequestCookies().get("request");
+                exchange.getResponseSender().send(exchange.getQueryString()
+                        + ":" + exchange.getRequestHeaders().getFirst(ORIGINAL)
+                        + ":" + (cookie == null ? null : cookie.getValue())
+                        + ":" + exchange.getAttachment(KEY));
+            }
+        });
+        final TestHttpClient client = new TestHttpClient();
+        try {
+            //the tests run with assertions enabled, which would otherwise stop exchanges from being reused
+            Connectors.recycleWithAssertions = true;
+            DefaultServer.setUndertowOptions(OptionMap.create(UndertowOptions.REUSE_EXCHANGES, true));
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path?set");
+            get.addHeader(ORIGINAL.toString(), "first");
+            get.addHeader(Headers.COOKIE_STRING, "request=first");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("set:first:first:leak", HttpClientUtils.readResponse(result));
+            Assert.assertEquals("true", result.getFirstHeader(SET.toString()).getValue());
+
+            for (int i = 0; i < 5; ++i) {
+                get = new HttpGet(DefaultServer.getDefaultServerURL() + "/path?a=" + i);
+                result = client.execute(get);
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                Assert.assertEquals("a=" + i + ":null:null:null", HttpClientUtils.readResponse(result));
+                Assert.assertNull(result.getFirstHeader(SET.toString()));
+                Assert.assertNull(result.getFirstHeader(Headers.SET_COOKIE_STRING));
+            }
+            Assert.assertEquals(6, exchanges.size());
+            for (HttpServerExchange exchange : exchanges) {
+                Assert.assertSame(exchanges.get(0), exchange);
+            }
+        } finally {
+            Connectors.recycleWithAssertions = false;
+            DefaultServer.setUndertowOptions(existing);
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    /**
+     * Compares the memory that is allocated by creating a new exchange for every request with the memory that
+     * is allocated by resetting the same exchange.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkMillionRequests() {
+        final int requests = 1000000;
+        for (int warmup = 0; warmup < 2; ++warmup) {
+            long bytes = allocatedBytes();
+            long time = System.nanoTime();
+            for (int i = 0; i < requests; ++i) {
+                populate(new HttpServerExchange(null, 0));
+            }
+            System.out.println("New exchanges: " + (System.nanoTime() - time) / 1000000 + "ms, " + (allocatedBytes() - bytes) / requests + " bytes per request");
+
+            final HttpServerExchange exchange = new HttpServerExchange(null, 0);
+            bytes = allocatedBytes();
+            time = System.nanoTime();
+            for (int i = 0; i < requests; ++i) {
+                populate(exchange);
+                exchange.reset(0);
+            }
+            System.out.println("Reused exchange: " + (System.nanoTime() - time) / 1000000 + "ms, " + (allocatedBytes() - bytes) / requests + " bytes per request");
+        }
+    }
+
+    private static void populate(final HttpServerExchange exchange) {
+        exchange.setProtocol(Protocols.HTTP_1_1);
+        exchange.setRequestMethod(Methods.GET);
+        exchange.setRequestURI("/path", false);
+        exchange.setRequestPath("/path");
+        exchange.setRelativePath("/path");
+        exchange.setQueryString("a=b");
+        exchange.addQueryParam("a", "b");
+        exchange.addPathParam("p", "q");
+        exchange.getRequestHeaders().put(Headers.HOST, "localhost");
+        exchange.getResponseHeaders().put(Headers.CONTENT_LENGTH, "0");
+    }
+
+    private static long allocatedBytes() {
+        final ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        if (bean instanceof com.sun.management.ThreadMXBean) {
+            return ((com.sun.management.ThreadMXBean) bean).getThreadAllocatedBytes(Thread.currentThread().getId());
+        }
+        return 0;
+    }
+}
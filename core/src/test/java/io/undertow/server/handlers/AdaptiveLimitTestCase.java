@@ -0,0 +1,88 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class AdaptiveLimitTestCase {
+
+    private static final long WINDOW = TimeUnit.MILLISECONDS.toNanos(100);
+    private static final long LATENCY = TimeUnit.MILLISECONDS.toNanos(10);
+
+    private long now = System.nanoTime();
+
+    @Test
+    public void testLimitGrowsWhileLatencyIsStable() {
+        AdaptiveLimit adaptiveLimit = new AdaptiveLimit(10, 1, 100);
+        int limit = 10;
+        for (int i = 0; i < 50; ++i) {
+            limit = window(adaptiveLimit, LATENCY, limit, limit);
+        }
+        Assert.assertEquals(100, limit);
+        Assert.assertEquals(LATENCY, adaptiveLimit.getMinLatency());
+    }
+
+    @Test
+    public void testLimitShrinksWhenLatencyRises() {
+        AdaptiveLimit adaptiveLimit = new AdaptiveLimit(50, 5, 100);
+        int limit = window(adaptiveLimit, LATENCY, 50, 50);
+        Assert.assertTrue(limit > 50);
+        final int grown = limit;
+        for (int i = 0; i < 20; ++i) {
+            limit = window(adaptiveLimit, LATENCY * 2, limit, limit);
+        }
+        Assert.assertTrue(limit < grown);
+        //with twice the minimum latency half of the limit is queued, so it shrinks until that is a small queue
+        for (int i = 0; i < 200; ++i) {
+            limit = window(adaptiveLimit, LATENCY * 2, limit, limit);
+        }
+        Assert.assertTrue(limit <= 12);
+        Assert.assertEquals(limit, window(adaptiveLimit, LATENCY * 2, limit, limit));
+    }
+
+    @Test
+    public void testLimitIsNotRaisedWhenUnderused() {
+        AdaptiveLimit adaptiveLimit = new AdaptiveLimit(50, 1, 100);
+        Assert.assertEquals(50, window(adaptiveLimit, LATENCY, 10, 50));
+    }
+
+    @Test
+    public void testDropLowersLimit() {
+        AdaptiveLimit adaptiveLimit = new AdaptiveLimit(50, 1, 100);
+        adaptiveLimit.drop();
+        Assert.assertEquals(45, window(adaptiveLimit, LATENCY, 50, 50));
+    }
+
+    /**
+     * Records samples for one window, and returns the limit after the window has been closed
+     */
+    private int window(final AdaptiveLimit adaptiveLimit, final long latency, final int inFlight, final int limit) {
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertEquals(-1, adaptiveLimit.addSample(now, latency, inFlight, limit));
+        }
+        now += WINDOW;
+        final int res = adaptiveLimit.addSample(now, latency, inFlight, limit);
+        return res == -1 ? limit : res;
+    }
+}
@@ -91,4 +91,48 @@ public class PredicatedHandlersTestCase {
         }
     }
 
+    @Test
+    public void testRateLimit() throws IOException {
+        DefaultServer.setRootHandler(
+                Handlers.predicates(
+                        PredicatedHandlersParser.parse(
+                                "path-prefix['/limited'] -> rate-limit[requests=2, period=60000, key='%{i,X-Client}']", getClass().getClassLoader()), new HttpHandler() {
+                    @Override
+                    public void handleRequest(HttpServerExchange exchange) throws Exception {
+                        exchange.getResponseSender().send(exchange.getRelativePath());
+                    }
+                }));
+
+        TestHttpClient client = new TestHttpClient();
+        try {
+            for (int i = 0; i < 2; ++i) {
+                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/limited");
+                get.addHeader("X-Client", "one");
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                HttpClientUtils.readResponse(result);
+            }
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/limited");
+            get.addHeader("X-Client", "one");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(429, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("30", result.getHeaders("Retry-After")[0].getValue());
+            HttpClientUtils.readResponse(result);
+
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/limited");
+            get.addHeader("X-Client", "two");
+            result = client.execute(get);
+            Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/unlimited");
+            get.addHeader("X-Client", "one");
+            result = client.execute(get);
+            Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
 }
@@ -0,0 +1,106 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers;
+
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class RateLimitTestCase {
+
+    private static final long SECOND = TimeUnit.SECONDS.toNanos(1);
+
+    @Test
+    public void testTokenBucket() {
+        RateLimit limit = new RateLimit(RateLimit.Algorithm.TOKEN_BUCKET, 10, 5, 1, TimeUnit.SECONDS, 100);
+        long now = System.nanoTime();
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertTrue(limit.tryAcquire("a", now));
+        }
+        Assert.assertFalse(limit.tryAcquire("a", now));
+        //other keys have their own bucket
+        Assert.assertTrue(limit.tryAcquire("b", now));
+
+        //one token is added every 100ms
+        now += SECOND / 10;
+        Assert.assertTrue(limit.tryAcquire("a", now));
+        Assert.assertFalse(limit.tryAcquire("a", now));
+
+        //the bucket never holds more than the burst size
+        now += SECOND * 10;
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertTrue(limit.tryAcquire("a", now));
+        }
+        Assert.assertFalse(limit.tryAcquire("a", now));
+        Assert.assertEquals(12, limit.getAllowedRequests());
+        Assert.assertEquals(3, limit.getRejectedRequests());
+    }
+
+    @Test
+    public void testSlidingWindow() {
+        RateLimit limit = new RateLimit(RateLimit.Algorithm.SLIDING_WINDOW, 10, 10, 1, TimeUnit.SECONDS, 100);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertTrue(limit.tryAcquire("a", now));
+        }
+        Assert.assertFalse(limit.tryAcquire("a", now));
+
+        //half way through the next window half of the previous window still counts
+        now += SECOND + SECOND / 2;
+        for (int i = 0; i < 5; ++i) {
+            Assert.assertTrue(limit.tryAcquire("a", now));
+        }
+        Assert.assertFalse(limit.tryAcquire("a", now));
+
+        //after two idle windows nothing counts any more
+        now += SECOND * 2;
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertTrue(limit.tryAcquire("a", now));
+        }
+        Assert.assertFalse(limit.tryAcquire("a", now));
+    }
+
+    @Test
+    public void testKeysAreBounded() {
+        RateLimit limit = new RateLimit(1, 1, TimeUnit.SECONDS, 64);
+        long now = System.nanoTime();
+        for (int i = 0; i < 10000; ++i) {
+            Assert.assertTrue(limit.tryAcquire("key" + i, now));
+        }
+        Assert.assertTrue(limit.getKeyCount() <= 64);
+    }
+
+    @Test
+    public void testIdleKeysAreEvicted() {
+        RateLimit limit = new RateLimit(1, 1, TimeUnit.SECONDS, 100000);
+        long now = System.nanoTime();
+        Assert.assertTrue(limit.tryAcquire("a", now));
+        Assert.assertFalse(limit.tryAcquire("a", now));
+        Assert.assertEquals(1, limit.getKeyCount());
+        //once the bucket would be full again the key is evicted when a key is added to its shard
+        now += SECOND * 2;
+        for (int i = 0; i < 1000; ++i) {
+            Assert.assertTrue(limit.tryAcquire("key" + i, now));
+        }
+        Assert.assertEquals(1000, limit.getKeyCount());
+    }
+}
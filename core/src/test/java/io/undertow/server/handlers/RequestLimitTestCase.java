@@ -0,0 +1,230 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.ProxyIgnore;
+import io.undertow.testutils.TestHttpClient;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * @author agent
+ */
+@ProxyIgnore //the proxy connection pool would hold back the requests that are meant to be queued here
+@RunWith(DefaultServer.class)
+public class RequestLimitTestCase {
+
+    private final List<String> handled = Collections.synchronizedList(new ArrayList<String>());
+    private final CountDownLatch release = new CountDownLatch(1);
+    private ExecutorService executor;
+
+    /**
+     * Records the requests it handles, and holds requests for /block until {@link #release} is counted down
+     */
+    private final HttpHandler handler = new HttpHandler() {
+        @Override
+        public void handleRequest(final HttpServerExchange exchange) throws Exception {
+            if (exchange.isInIoThread()) {
+                exchange.dispatch(this);
+                return;
+            }
+            handled.add(exchange.getRelativePath());
+            if (exchange.getRelativePath().equals("/block")) {
+                release.await(10, TimeUnit.SECONDS);
+            }
+        }
+    };
+
+    @Before
+    public void setup() {
+        executor = Executors.newCachedThreadPool();
+    }
+
+    @After
+    public void tearDown() {
+        release.countDown();
+        executor.shutdownNow();
+    }
+
+    @Test(timeout = 10000)
+    public void testSetMaximumConcurrentRequests() {
+        RequestLimit limit = new RequestLimit(2);
+        //this used to clear the maximum, and never returned when the queue was empty
+        Assert.assertEquals(2, limit.setMaximumConcurrentRequests(5));
+        Assert.assertEquals(5, limit.getMaximumConcurrentRequests());
+        Assert.assertEquals(5, limit.setMaximumConcurrentRequests(1));
+        Assert.assertEquals(1, limit.getMaximumConcurrentRequests());
+        Assert.assertEquals(0, limit.getActiveRequests());
+    }
+
+    @Test
+    public void testRaisingMaximumResumesQueuedRequests() throws Exception {
+        RequestLimit limit = new RequestLimit(1);
+        DefaultServer.setRootHandler(new RequestLimitingHandler(limit, handler));
+        Future<Integer> blocked = get("/block");
+        waitFor(limit, 1, 0);
+        Future<Integer> queued = get("/queued");
+        waitFor(limit, 1, 1);
+        limit.setMaximumConcurrentRequests(2);
+        Assert.assertEquals(200, (int) queued.get(10, TimeUnit.SECONDS));
+        release.countDown();
+        Assert.assertEquals(200, (int) blocked.get(10, TimeUnit.SECONDS));
+        waitFor(limit, 0, 0);
+    }
+
+    @Test
+    public void testRejectedRequestsDoNotReleasePermits() throws Exception {
+        RequestLimit limit = new RequestLimit(1, 1);
+        DefaultServer.setRootHandler(new RequestLimitingHandler(limit, handler));
+        Future<Integer> blocked = get("/block");
+        waitFor(limit, 1, 0);
+        Future<Integer> queued = get("/queued");
+        waitFor(limit, 1, 1);
+        Assert.assertEquals(513, (int) get("/rejected").get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, limit.getRejectedRequests());
+        //the rejected request never held a permit, so the running request still holds the only one
+        Assert.assertEquals(1, limit.getActiveRequests());
+        Assert.assertEquals(1, limit.getQueuedRequests());
+        release.countDown();
+        Assert.assertEquals(200, (int) blocked.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(200, (int) queued.get(10, TimeUnit.SECONDS));
+        waitFor(limit, 0, 0);
+        Assert.assertEquals("/block", handled.get(0));
+        Assert.assertFalse(handled.contains("/rejected"));
+    }
+
+    @Test
+    public void testQueueTimeout() throws Exception {
+        RequestLimit limit = new RequestLimit(1).setQueueTimeout(100);
+        DefaultServer.setRootHandler(new RequestLimitingHandler(limit, handler));
+        Future<Integer> blocked = get("/block");
+        waitFor(limit, 1, 0);
+        Assert.assertEquals(513, (int) get("/timeout").get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, limit.getTimedOutRequests());
+        Assert.assertEquals(0, limit.getRejectedRequests());
+        Assert.assertEquals(0, limit.getQueuedRequests());
+        release.countDown();
+        Assert.assertEquals(200, (int) blocked.get(10, TimeUnit.SECONDS));
+        waitFor(limit, 0, 0);
+        Assert.assertFalse(handled.contains("/timeout"));
+    }
+
+    @Test
+    public void testLifoResumption() throws Exception {
+        RequestLimit limit = new RequestLimit(1).setLifoThreshold(0);
+        DefaultServer.setRootHandler(new RequestLimitingHandler(limit, handler));
+        Future<Integer> blocked = get("/block");
+        waitFor(limit, 1, 0);
+        Future<Integer> first = get("/first");
+        waitFor(limit, 1, 1);
+        Future<Integer> second = get("/second");
+        waitFor(limit, 1, 2);
+        release.countDown();
+        Assert.assertEquals(200, (int) blocked.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(200, (int) first.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(200, (int) second.get(10, TimeUnit.SECONDS));
+        Assert.assertEquals(3, handled.size());
+        Assert.assertEquals("/block", handled.get(0));
+        Assert.assertEquals("/second", handled.get(1));
+        Assert.assertEquals("/first", handled.get(2));
+    }
+
+    /**
+     * Requests that are queued just as the last running request completes must still be resumed
+     */
+    @Test
+    public void testNoQueuedRequestIsLost() throws Exception {
+        final RequestLimit limit = new RequestLimit(1);
+        DefaultServer.setRootHandler(new RequestLimitingHandler(limit, handler));
+        final List<Future<?>> futures = new ArrayList<>();
+        for (int i = 0; i < 10; ++i) {
+            futures.add(executor.submit(new Runnable() {
+                @Override
+                public void run() {
+                    TestHttpClient client = new TestHttpClient();
+                    try {
+                        for (int i = 0; i < 50; ++i) {
+                            HttpResponse result = client.execute(new HttpGet(DefaultServer.getDefaultServerURL() + "/path"));
+                            Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                            HttpClientUtils.readResponse(result);
+                        }
+                    } catch (IOException e) {
+                        throw new RuntimeException(e);
+                    } finally {
+                        client.getConnectionManager().shutdown();
+                    }
+                }
+            }));
+        }
+        for (Future<?> future : futures) {
+            future.get(30, TimeUnit.SECONDS);
+        }
+        waitFor(limit, 0, 0);
+        Assert.assertEquals(500, handled.size());
+    }
+
+    private Future<Integer> get(final String path) {
+        return executor.submit(new Callable<Integer>() {
+            @Override
+            public Integer call() throws Exception {
+                TestHttpClient client = new TestHttpClient();
+                try {
+                    HttpResponse result = client.execute(new HttpGet(DefaultServer.getDefaultServerURL() + path));
+                    HttpClientUtils.readResponse(result);
+                    return result.getStatusLine().getStatusCode();
+                } finally {
+                    client.getConnectionManager().shutdown();
+                }
+            }
+        });
+    }
+
+    /**
+     * Waits until the limit has the given number of running and queued requests
+     */
+    private static void waitFor(final RequestLimit limit, final int active, final int queued) throws InterruptedException {
+        long end = System.currentTimeMillis() + 10000;
+        while (limit.getActiveRequests() != active || limit.getQueuedRequests() != queued) {
+            if (System.currentTimeMillis() > end) {
+                Assert.fail("Expected " + active + " running and " + queued + " queued requests but there were "
+                        + limit.getActiveRequests() + " running and " + limit.getQueuedRequests() + " queued");
+            }
+            Thread.sleep(10);
+        }
+    }
+}
@@ -113,6 +113,12 @@ public class RoutingHandlerTestCase {
                         exchange.getResponseSender().send("foo-path" + exchange.getQueryParameters().get("bar"));
                     }
                 })
+                .add("GET", "/foo/{bar}/{baz}", new HttpHandler() {
+                    @Override
+                    public void handleRequest(HttpServerExchange exchange) throws Exception {
+                        exchange.getResponseSender().send("foo-path-" + exchange.getPathTemplateParameter("bar") + "-" + exchange.getPathTemplateParameter("baz"));
+                    }
+                })
                 .addAll(commonHandler)
                 .addAll(convienceHandler));
     }
@@ -154,6 +160,16 @@ public class RoutingHandlerTestCase {
             Assert.assertEquals(200, result.getStatusLine().getStatusCode());
             Assert.assertEquals("foo-path[a]", HttpClientUtils.readResponse(result));
 
+            get = new HttpGet(DefaultServer.getDefaultServerURL() + "/foo/a/b");
+            result = client.execute(get);
+            Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("foo-path-a-b", HttpClientUtils.readResponse(result));
+
+            delete = new HttpDelete(DefaultServer.getDefaultServerURL() + "/foo/a/b");
+            result = client.execute(delete);
+            Assert.assertEquals(405, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+
             get = new HttpGet(DefaultServer.getDefaultServerURL() + "/baz");
             result = client.execute(get);
             Assert.assertEquals(200, result.getStatusLine().getStatusCode());
@@ -0,0 +1,122 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers;
+
+import java.io.IOException;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.HeaderBlock;
+import io.undertow.util.Headers;
+import io.undertow.util.StatusCodes;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests that pre-encoded header blocks are written correctly, including when some of their headers are modified.
+ *
+ * @author agent
+ */
+@RunWith(DefaultServer.class)
+public class SetHeaderBlockTestCase {
+
+    private static final HeaderBlock BLOCK = HeaderBlock.builder()
+            .add(Headers.CONTENT_TYPE, "text/plain")
+            .add("X-Frame-Options", "DENY")
+            .add("X-Block", "block value")
+            .build();
+
+    @BeforeClass
+    public static void setup() {
+        DefaultServer.setRootHandler(new SetHeaderHandler(new HttpHandler() {
+            @Override
+            public void handleRequest(HttpServerExchange exchange) throws Exception {
+                if (exchange.getQueryParameters().containsKey("override")) {
+                    exchange.getResponseHeaders().put(Headers.CONTENT_TYPE, "text/html");
+                }
+                if (exchange.getQueryParameters().containsKey("notfound")) {
+                    exchange.setResponseCode(404);
+                }
+                exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-cache");
+                exchange.getResponseSender().send("hello");
+            }
+        }, BLOCK));
+    }
+
+    @Test
+    public void testHeaderBlock() throws IOException {
+        final TestHttpClient client = new TestHttpClient();
+        try {
+            //the second request checks the block on a persistent connection, once it has been encoded
+            for (int i = 0; i < 2; ++i) {
+                HttpResponse result = client.execute(new HttpGet(DefaultServer.getDefaultServerURL() + "/path"));
+                Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+                Assert.assertEquals("hello", HttpClientUtils.readResponse(result));
+                assertSingleHeader(result, Headers.CONTENT_TYPE_STRING, "text/plain");
+                assertSingleHeader(result, "X-Frame-Options", "DENY");
+                assertSingleHeader(result, "X-Block", "block value");
+                assertSingleHeader(result, Headers.CACHE_CONTROL_STRING, "no-cache");
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testModifiedHeaderBlock() throws IOException {
+        final TestHttpClient client = new TestHttpClient();
+        try {
+            HttpResponse result = client.execute(new HttpGet(DefaultServer.getDefaultServerURL() + "/path?override"));
+            Assert.assertEquals(StatusCodes.OK, result.getStatusLine().getStatusCode());
+            Assert.assertEquals("hello", HttpClientUtils.readResponse(result));
+            assertSingleHeader(result, Headers.CONTENT_TYPE_STRING, "text/html");
+            assertSingleHeader(result, "X-Frame-Options", "DENY");
+            assertSingleHeader(result, "X-Block", "block value");
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testStatusLine() throws IOException {
+        final TestHttpClient client = new TestHttpClient();
+        try {
+            HttpResponse result = client.execute(new HttpGet(DefaultServer.getDefaultServerURL() + "/path?notfound"));
+            Assert.assertEquals(StatusCodes.NOT_FOUND, result.getStatusLine().getStatusCode());
+            Assert.assertEquals(StatusCodes.NOT_FOUND_STRING, result.getStatusLine().getReasonPhrase());
+            Assert.assertEquals("hello", HttpClientUtils.readResponse(result));
+            assertSingleHeader(result, "X-Block", "block value");
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    private static void assertSingleHeader(final HttpResponse result, final String name, final String value) {
+        final Header[] headers = result.getHeaders(name);
+        Assert.assertEquals(name, 1, headers.length);
+        Assert.assertEquals(value, headers[0].getValue());
+    }
+}
@@ -0,0 +1,68 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers.caching;
+
+import java.util.Arrays;
+
+import io.undertow.server.handlers.cache.CacheControl;
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class CacheControlTestCase {
+
+    @Test
+    public void testParseDirectives() {
+        CacheControl cc = CacheControl.parse("public, max-age=60, s-maxage=\"120\", stale-while-revalidate=30");
+        Assert.assertTrue(cc.isPublic());
+        Assert.assertFalse(cc.isPrivate());
+        Assert.assertEquals(60, cc.getMaxAge());
+        Assert.assertEquals(120, cc.getSharedMaxAge());
+        Assert.assertEquals(30, cc.getStaleWhileRevalidate());
+        Assert.assertEquals(120, cc.getSharedFreshnessLifetime());
+        Assert.assertTrue(cc.isSharedCacheable());
+
+        cc = CacheControl.parse("MAX-AGE=10");
+        Assert.assertEquals(10, cc.getSharedFreshnessLifetime());
+        Assert.assertEquals(-1, cc.getSharedMaxAge());
+        Assert.assertEquals(-1, cc.getStaleWhileRevalidate());
+        Assert.assertTrue(cc.isSharedCacheable());
+    }
+
+    @Test
+    public void testNotCacheable() {
+        Assert.assertFalse(CacheControl.parse((String) null).isSharedCacheable());
+        Assert.assertFalse(CacheControl.parse("public").isSharedCacheable());
+        Assert.assertFalse(CacheControl.parse("max-age=60, no-store").isSharedCacheable());
+        Assert.assertFalse(CacheControl.parse("max-age=60, no-cache=\"Set-Cookie, Foo\"").isSharedCacheable());
+        Assert.assertFalse(CacheControl.parse("private, max-age=60").isSharedCacheable());
+    }
+
+    @Test
+    public void testInvalidAndDuplicateValues() {
+        CacheControl cc = CacheControl.parse("max-age=abc, stale-while-revalidate=x");
+        Assert.assertEquals(0, cc.getMaxAge());
+        Assert.assertEquals(-1, cc.getStaleWhileRevalidate());
+
+        cc = CacheControl.parse(Arrays.asList("max-age=60", "max-age=10, s-maxage=99999999999999"));
+        Assert.assertEquals(10, cc.getMaxAge());
+        Assert.assertEquals(Integer.MAX_VALUE, cc.getSharedMaxAge());
+    }
+}
@@ -0,0 +1,244 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.handlers.caching;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.handlers.cache.HttpCache;
+import io.undertow.server.handlers.cache.HttpCacheHandler;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import io.undertow.util.Methods;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.client.methods.HttpPost;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests out the shared HTTP cache handler
+ *
+ * @author agent
+ */
+@RunWith(DefaultServer.class)
+public class HttpCacheHandlerTestCase {
+
+    private static final AtomicInteger responseCount = new AtomicInteger();
+    private static volatile CountDownLatch slowStarted;
+    private static volatile CountDownLatch slowRelease;
+
+    private static HttpCache cache;
+
+    @BeforeClass
+    public static void setup() {
+        slowStarted = new CountDownLatch(1);
+        slowRelease = new CountDownLatch(1);
+        final HttpHandler messageHandler = new HttpHandler() {
+            @Override
+            public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                final String path = exchange.getRelativePath();
+                if (path.equals("/slow")) {
+                    if (exchange.isInIoThread()) {
+                        exchange.dispatch(this);
+                        return;
+                    }
+                    slowStarted.countDown();
+                    slowRelease.await(10, TimeUnit.SECONDS);
+                }
+                String data = "Response " + responseCount.incrementAndGet();
+                if (path.equals("/nostore")) {
+                    exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "no-store, max-age=60");
+                } else if (path.startsWith("/vary")) {
+                    exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "max-age=60");
+                    exchange.getResponseHeaders().put(Headers.VARY, "Accept-Language");
+                    data += " " + exchange.getRequestHeaders().getFirst(Headers.ACCEPT_LANGUAGE);
+                } else {
+                    exchange.getResponseHeaders().put(Headers.CACHE_CONTROL, "s-maxage=60");
+                }
+                exchange.getResponseHeaders().put(new HttpString("X-Origin"), "true");
+                exchange.getResponseSender().send(data);
+            }
+        };
+        cache = new HttpCache(100, 1000);
+        final HttpHandler cacheHandler = new HttpCacheHandler(cache, messageHandler);
+        DefaultServer.setRootHandler(new HttpHandler() {
+            @Override
+            public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                //a POST invalidates the cached responses for its URI
+                if (exchange.getRequestMethod().equals(Methods.POST)) {
+                    cache.invalidate(exchange);
+                    exchange.getResponseSender().send("invalidated");
+                } else {
+                    cacheHandler.handleRequest(exchange);
+                }
+            }
+        });
+    }
+
+    @Test
+    public void testResponseAndHeadersAreCached() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/cached");
+            HttpResponse result = client.execute(get);
+            Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+            final String first = HttpClientUtils.readResponse(result);
+
+            for (int i = 0; i < 3; ++i) {
+                result = client.execute(get);
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                Assert.assertEquals(first, HttpClientUtils.readResponse(result));
+                Assert.assertEquals("true", result.getFirstHeader("X-Origin").getValue());
+                Assert.assertEquals("s-maxage=60", result.getFirstHeader(Headers.CACHE_CONTROL_STRING).getValue());
+                Assert.assertNotNull(result.getFirstHeader(Headers.AGE_STRING));
+            }
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testNoStore() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/nostore");
+            HttpResponse result = client.execute(get);
+            final String first = HttpClientUtils.readResponse(result);
+            result = client.execute(get);
+            Assert.assertNotEquals(first, HttpClientUtils.readResponse(result));
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testVariantsAreCachedSeparately() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            HttpGet en = new HttpGet(DefaultServer.getDefaultServerURL() + "/vary");
+            en.addHeader(Headers.ACCEPT_LANGUAGE_STRING, "en");
+            HttpGet fr = new HttpGet(DefaultServer.getDefaultServerURL() + "/vary");
+            fr.addHeader(Headers.ACCEPT_LANGUAGE_STRING, "fr");
+
+            final String english = HttpClientUtils.readResponse(client.execute(en));
+            Assert.assertTrue(english.endsWith(" en"));
+            final String french = HttpClientUtils.readResponse(client.execute(fr));
+            Assert.assertTrue(french.endsWith(" fr"));
+
+            Assert.assertEquals(english, HttpClientUtils.readResponse(client.execute(en)));
+            Assert.assertEquals(french, HttpClientUtils.readResponse(client.execute(fr)));
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testInvalidateRemovesAllVariants() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            final String uri = DefaultServer.getDefaultServerURL() + "/vary-invalidated";
+            HttpGet en = new HttpGet(uri);
+            en.addHeader(Headers.ACCEPT_LANGUAGE_STRING, "en");
+            HttpGet fr = new HttpGet(uri);
+            fr.addHeader(Headers.ACCEPT_LANGUAGE_STRING, "fr");
+            HttpPost invalidate = new HttpPost(uri);
+            invalidate.addHeader(Headers.ACCEPT_LANGUAGE_STRING, "en");
+
+            final String english = HttpClientUtils.readResponse(client.execute(en));
+            final String french = HttpClientUtils.readResponse(client.execute(fr));
+            Assert.assertEquals(french, HttpClientUtils.readResponse(client.execute(fr)));
+
+            //invalidate through the english variant, and store it again, which stores the same vary header names
+            Assert.assertEquals("invalidated", HttpClientUtils.readResponse(client.execute(invalidate)));
+            final String newEnglish = HttpClientUtils.readResponse(client.execute(en));
+            Assert.assertNotEquals(english, newEnglish);
+            Assert.assertEquals(newEnglish, HttpClientUtils.readResponse(client.execute(en)));
+
+            //the french variant was invalidated as well
+            final long misses = cache.getMisses();
+            final String newFrench = HttpClientUtils.readResponse(client.execute(fr));
+            Assert.assertNotEquals(french, newFrench);
+            Assert.assertTrue(newFrench.endsWith(" fr"));
+            Assert.assertEquals(misses + 1, cache.getMisses());
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
+    @Test
+    public void testConcurrentMissesAreCoalesced() throws Exception {
+        final long coalesced = cache.getCoalescedRequests();
+        final List<RequestTask> tasks = new ArrayList<>();
+        final List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < 5; ++i) {
+            final RequestTask task = new RequestTask();
+            final Thread thread = new Thread(task);
+            tasks.add(task);
+            threads.add(thread);
+            thread.start();
+            if (i == 0) {
+                Assert.assertTrue(slowStarted.await(10, TimeUnit.SECONDS));
+            }
+        }
+        long end = System.currentTimeMillis() + 10000;
+        while (cache.getCoalescedRequests() < coalesced + 4 && System.currentTimeMillis() < end) {
+            Thread.sleep(10);
+        }
+        Assert.assertEquals(coalesced + 4, cache.getCoalescedRequests());
+        slowRelease.countDown();
+        for (Thread thread : threads) {
+            thread.join(10000);
+        }
+        final String expected = tasks.get(0).response;
+        Assert.assertNotNull(expected);
+        for (RequestTask task : tasks) {
+            Assert.assertEquals(expected, task.response);
+        }
+    }
+
+    private static final class RequestTask implements Runnable {
+
+        private volatile String response;
+
+        @Override
+        public void run() {
+            TestHttpClient client = new TestHttpClient();
+            try {
+                HttpResponse result = client.execute(new HttpGet(DefaultServer.getDefaultServerURL() + "/slow"));
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                response = HttpClientUtils.readResponse(result);
+            } catch (IOException e) {
+                throw new RuntimeException(e);
+            } finally {
+                client.getConnectionManager().shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,126 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.proxy.mod_cluster;
+
+import static io.undertow.Handlers.path;
+import static io.undertow.testutils.DefaultServer.getHostAddress;
+import static io.undertow.testutils.DefaultServer.getHostPort;
+
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import io.undertow.Undertow;
+import io.undertow.client.UndertowClient;
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.ServerConnection;
+import io.undertow.server.handlers.ResponseCodeHandler;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.util.Methods;
+import org.apache.http.impl.client.DefaultHttpClient;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.Options;
+
+/**
+ * Tests that the health checks of a node reuse their connection, instead of opening a new one for every ping.
+ *
+ * @author agent
+ */
+@RunWith(DefaultServer.class)
+public class NodeHealthCheckTestCase {
+
+    private static final int PINGS = 5;
+
+    private static final AtomicInteger pings = new AtomicInteger();
+    private static final Set<ServerConnection> connections = Collections.synchronizedSet(Collections.newSetFromMap(new IdentityHashMap<ServerConnection, Boolean>()));
+
+    private static ModCluster modCluster;
+    private static Undertow backend;
+    private static DefaultHttpClient httpClient;
+    private static MCMPTestClient modClusterClient;
+
+    @BeforeClass
+    public static void setup() {
+        final int port = getHostPort("default");
+        backend = Undertow.builder()
+                .addHttpListener(port + 1, "localhost")
+                .setSocketOption(Options.REUSE_ADDRESSES, true)
+                .setHandler(new HttpHandler() {
+                    @Override
+                    public void handleRequest(HttpServerExchange exchange) throws Exception {
+                        if (exchange.getRequestMethod().equals(Methods.OPTIONS)) {
+                            connections.add(exchange.getConnection());
+                            pings.incrementAndGet();
+                        }
+                        ResponseCodeHandler.HANDLE_200.handleRequest(exchange);
+                    }
+                })
+                .build();
+        backend.start();
+
+        modCluster = ModCluster.builder(DefaultServer.getWorker(), UndertowClient.getInstance())
+                .setHealthCheckInterval(100)
+                .build();
+        final HttpHandler mcmp = MCMPConfig.webBuilder()
+                .setManagementHost(getHostAddress("default"))
+                .setManagementPort(port)
+                .create(modCluster, ResponseCodeHandler.HANDLE_404);
+        DefaultServer.setRootHandler(path(modCluster.getProxyHandler()).addPrefixPath("manager", mcmp));
+        modCluster.start();
+
+        httpClient = new DefaultHttpClient();
+        modClusterClient = new MCMPTestClient(httpClient, DefaultServer.getDefaultServerURL() + "/manager");
+    }
+
+    @AfterClass
+    public static void tearDown() {
+        modCluster.stop();
+        backend.stop();
+        httpClient.getConnectionManager().shutdown();
+    }
+
+    @Test
+    public void testPingsReuseConnection() throws Exception {
+        final NodeTestConfig config = NodeTestConfig.builder()
+                .setJvmRoute("s1")
+                .setType("http")
+                .setHostname("localhost")
+                .setPort(getHostPort("default") + 1);
+        modClusterClient.info();
+        modClusterClient.registerNode(config);
+        try {
+            modClusterClient.updateLoad("s1", 100);
+            final long end = System.currentTimeMillis() + 10000;
+            while (pings.get() < PINGS && System.currentTimeMillis() < end) {
+                Thread.sleep(50);
+            }
+            Assert.assertTrue("Only " + pings.get() + " pings received", pings.get() >= PINGS);
+            // The pings use either the keep-alive ping connection, or an idle connection from the pool
+            Assert.assertTrue(connections.size() + " connections used for " + pings.get() + " pings", connections.size() <= 2);
+        } finally {
+            modClusterClient.removeNode("s1");
+        }
+    }
+}
@@ -19,6 +19,9 @@
 package io.undertow.server.handlers.session;
 
 import java.io.IOException;
+import java.util.Collections;
+import java.util.ArrayList;
+import java.util.List;
 
 import io.undertow.server.HttpHandler;
 import io.undertow.server.HttpServerExchange;
@@ -26,6 +29,7 @@ import io.undertow.server.session.InMemorySessionManager;
 import io.undertow.server.session.Session;
 import io.undertow.server.session.SessionAttachmentHandler;
 import io.undertow.server.session.SessionCookieConfig;
+import io.undertow.server.session.SessionListener;
 import io.undertow.server.session.SessionManager;
 import io.undertow.testutils.DefaultServer;
 import io.undertow.testutils.HttpClientUtils;
@@ -165,4 +169,111 @@ public class InMemorySessionTestCase {
         }
     }
 
+    /**
+     * Tests that sessions are expired through the expiry wheel, and that a session that keeps being used is rescheduled
+     * when its slot on the wheel is reached instead of being expired.
+     */
+    @Test
+    public void inMemorySessionExpiryTest() throws Exception {
+        TestHttpClient expiring = new TestHttpClient();
+        expiring.setCookieStore(new BasicCookieStore());
+        TestHttpClient active = new TestHttpClient();
+        active.setCookieStore(new BasicCookieStore());
+        try {
+            final List<String> expired = Collections.synchronizedList(new ArrayList<String>());
+            final InMemorySessionManager sessionManager = new InMemorySessionManager("");
+            sessionManager.registerSessionListener(new ExpiryListener(expired));
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            final SessionAttachmentHandler handler = new SessionAttachmentHandler(sessionManager, sessionConfig);
+            handler.setNext(new HttpHandler() {
+                @Override
+                public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                    final SessionManager manager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+                    Session session = manager.getSession(exchange, sessionConfig);
+                    if (session == null) {
+                        session = manager.createSession(exchange, sessionConfig);
+                        session.setMaxInactiveInterval(Integer.parseInt(exchange.getQueryParameters().get("timeout").getFirst()));
+                        session.setAttribute(COUNT, 0);
+                    }
+                    Integer count = (Integer) session.getAttribute(COUNT);
+                    exchange.getResponseHeaders().add(new HttpString(COUNT), count.toString());
+                    session.setAttribute(COUNT, ++count);
+                }
+            });
+            DefaultServer.setRootHandler(handler);
+
+            Assert.assertEquals("0", request(expiring, 1));
+            Assert.assertEquals("0", request(active, 2));
+            Assert.assertEquals(2, sessionManager.getActiveSessionCount());
+
+            //the active session is used for longer than its timeout, which moves its expiry on
+            for (int i = 1; i <= 8; ++i) {
+                Thread.sleep(500);
+                Assert.assertEquals(Integer.toString(i), request(active, 2));
+            }
+            Assert.assertEquals(1, expired.size());
+            Assert.assertEquals(1, sessionManager.getExpiredSessionCount());
+            Assert.assertEquals(1, sessionManager.getActiveSessionCount());
+            //the expired session is gone, so a new one is created
+            Assert.assertEquals("0", request(expiring, 1));
+
+            //once it is no longer used the active session expires as well
+            long end = System.currentTimeMillis() + 10000;
+            while (sessionManager.getExpiredSessionCount() < 3 && System.currentTimeMillis() < end) {
+                Thread.sleep(100);
+            }
+            Assert.assertEquals(3, expired.size());
+            Assert.assertEquals(3, sessionManager.getExpiredSessionCount());
+            Assert.assertEquals(0, sessionManager.getActiveSessionCount());
+            Assert.assertEquals(3, sessionManager.getCreatedSessionCount());
+            Assert.assertEquals(2, sessionManager.getMaxActiveSessions());
+        } finally {
+            expiring.getConnectionManager().shutdown();
+            active.getConnectionManager().shutdown();
+        }
+    }
+
+    private static String request(final TestHttpClient client, final int timeout) throws IOException {
+        HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/notamatchingpath?timeout=" + timeout);
+        HttpResponse result = client.execute(get);
+        Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+        HttpClientUtils.readResponse(result);
+        return result.getHeaders(COUNT)[0].getValue();
+    }
+
+    private static final class ExpiryListener implements SessionListener {
+
+        private final List<String> expired;
+
+        private ExpiryListener(final List<String> expired) {
+            this.expired = expired;
+        }
+
+        @Override
+        public void sessionCreated(final Session session, final HttpServerExchange exchange) {
+        }
+
+        @Override
+        public void sessionDestroyed(final Session session, final HttpServerExchange exchange, final SessionDestroyedReason reason) {
+            if (reason == SessionDestroyedReason.TIMEOUT) {
+                expired.add(session.getId());
+            }
+        }
+
+        @Override
+        public void attributeAdded(final Session session, final String name, final Object value) {
+        }
+
+        @Override
+        public void attributeUpdated(final Session session, final String name, final Object newValue, final Object oldValue) {
+        }
+
+        @Override
+        public void attributeRemoved(final Session session, final String name, final Object oldValue) {
+        }
+
+        @Override
+        public void sessionIdChanged(final Session session, final String oldSessionId) {
+        }
+    }
 }
@@ -0,0 +1,166 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.handlers.session;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.undertow.server.HttpHandler;
+import io.undertow.server.HttpServerExchange;
+import io.undertow.server.session.OffHeapSessionManager;
+import io.undertow.server.session.Session;
+import io.undertow.server.session.SessionAttachmentHandler;
+import io.undertow.server.session.SessionCookieConfig;
+import io.undertow.server.session.SessionManager;
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
+import io.undertow.testutils.TestHttpClient;
+import io.undertow.util.HttpString;
+import org.apache.http.Header;
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.client.BasicCookieStore;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Tests that sessions survive being moved out of the heap by the off heap session manager
+ *
+ * @author agent
+ */
+@RunWith(DefaultServer.class)
+public class OffHeapSessionTestCase {
+
+    public static final String COUNT = "count";
+    public static final String DATA = "data";
+
+    @Test
+    public void testSessionsArePassivatedAndRestored() throws IOException {
+        TestHttpClient client1 = new TestHttpClient();
+        client1.setCookieStore(new BasicCookieStore());
+        TestHttpClient client2 = new TestHttpClient();
+        client2.setCookieStore(new BasicCookieStore());
+        //only a single session can be on the heap, so every other request has to restore its session
+        final OffHeapSessionManager sessionManager = new OffHeapSessionManager("", 1, 1024 * 1024);
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            final SessionAttachmentHandler handler = new SessionAttachmentHandler(sessionManager, sessionConfig);
+            handler.setNext(new HttpHandler() {
+                @Override
+                public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                    final SessionManager manager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+                    Session session = manager.getSession(exchange, sessionConfig);
+                    if (session == null) {
+                        session = manager.createSession(exchange, sessionConfig);
+                        session.setAttribute(COUNT, 0);
+                        session.setAttribute(DATA, new StringBuilder("data"));
+                    }
+                    Integer count = (Integer) session.getAttribute(COUNT);
+                    exchange.getResponseHeaders().add(new HttpString(COUNT), count.toString());
+                    exchange.getResponseHeaders().add(new HttpString(DATA), session.getAttribute(DATA).toString());
+                    session.setAttribute(COUNT, ++count);
+                }
+            });
+            DefaultServer.setRootHandler(handler);
+
+            for (int i = 0; i < 3; ++i) {
+                for (TestHttpClient client : new TestHttpClient[]{client1, client2}) {
+                    HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/notamatchingpath");
+                    HttpResponse result = client.execute(get);
+                    Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                    HttpClientUtils.readResponse(result);
+                    Header[] header = result.getHeaders(COUNT);
+                    Assert.assertEquals(Integer.toString(i), header[0].getValue());
+                    Assert.assertEquals("data", result.getHeaders(DATA)[0].getValue());
+                }
+            }
+            Assert.assertEquals(2, sessionManager.getSessionCount());
+            Assert.assertEquals(1, sessionManager.getHotSessionCount());
+            Assert.assertEquals(1, sessionManager.getStoredSessionCount());
+            Assert.assertTrue(sessionManager.getDirectMemoryUsed() > 0);
+        } finally {
+            client1.getConnectionManager().shutdown();
+            client2.getConnectionManager().shutdown();
+        }
+    }
+
+    /**
+     * A session that a request is using must not be serialized when another session is used, otherwise changes to the
+     * attribute values the request obtained would be lost.
+     */
+    @Test
+    public void testSessionInUseIsNotPassivated() throws IOException {
+        TestHttpClient client1 = new TestHttpClient();
+        client1.setCookieStore(new BasicCookieStore());
+        TestHttpClient client2 = new TestHttpClient();
+        client2.setCookieStore(new BasicCookieStore());
+        final OffHeapSessionManager sessionManager = new OffHeapSessionManager("", 1, 1024 * 1024);
+        final AtomicReference<String> otherSession = new AtomicReference<>();
+        try {
+            final SessionCookieConfig sessionConfig = new SessionCookieConfig();
+            final SessionAttachmentHandler handler = new SessionAttachmentHandler(sessionManager, sessionConfig);
+            handler.setNext(new HttpHandler() {
+                @Override
+                public void handleRequest(final HttpServerExchange exchange) throws Exception {
+                    final SessionManager manager = exchange.getAttachment(SessionManager.ATTACHMENT_KEY);
+                    Session session = manager.getSession(exchange, sessionConfig);
+                    if (exchange.getRelativePath().equals("/other")) {
+                        session = manager.createSession(exchange, sessionConfig);
+                        session.setAttribute(COUNT, 0);
+                        otherSession.set(session.getId());
+                        return;
+                    }
+                    if (session == null) {
+                        session = manager.createSession(exchange, sessionConfig);
+                        session.setAttribute(DATA, new ArrayList<String>());
+                    }
+                    @SuppressWarnings("unchecked")
+                    final List<String> cart = (List<String>) session.getAttribute(DATA);
+                    //using another session moves a session out of the hot tier, which must not be this one
+                    manager.getSession(otherSession.get()).getAttribute(COUNT);
+                    cart.add("item");
+                    exchange.getResponseHeaders().add(new HttpString(COUNT), Integer.toString(cart.size()));
+                }
+            });
+            DefaultServer.setRootHandler(handler);
+
+            HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/other");
+            HttpResponse result = client2.execute(get);
+            Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+            HttpClientUtils.readResponse(result);
+
+            for (int i = 1; i <= 3; ++i) {
+                get = new HttpGet(DefaultServer.getDefaultServerURL() + "/cart");
+                result = client1.execute(get);
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                HttpClientUtils.readResponse(result);
+                Assert.assertEquals(Integer.toString(i), result.getHeaders(COUNT)[0].getValue());
+            }
+            Assert.assertEquals(2, sessionManager.getSessionCount());
+            Assert.assertEquals(1, sessionManager.getHotSessionCount());
+            Assert.assertEquals(1, sessionManager.getStoredSessionCount());
+        } finally {
+            client1.getConnectionManager().shutdown();
+            client2.getConnectionManager().shutdown();
+        }
+    }
+}
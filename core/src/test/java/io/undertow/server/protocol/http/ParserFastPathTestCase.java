@@ -0,0 +1,222 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.server.protocol.http;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Map;
+
+import io.undertow.server.HttpServerExchange;
+import io.undertow.util.Headers;
+import io.undertow.util.HttpString;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+import org.xnio.OptionMap;
+
+/**
+ * Tests that the fast path of the request parser gives the same results as the state machine, which is forced by
+ * feeding the parser a byte at a time.
+ *
+ * @author agent
+ */
+public class ParserFastPathTestCase {
+
+    private static final String[] REQUESTS = {
+            "GET / HTTP/1.1\r\n\r\n",
+            "GET /somepath HTTP/1.1\r\nHost: www.somehost.net\r\nOtherHeader: some\r\n    value\r\n\r\n",
+            "GET /some%20path?a=b&c=d%20e+f HTTP/1.1\r\nHost: localhost\r\nUser-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:40.0) Gecko/20100101 Firefox/40.0\r\nAccept: text/html,application/xhtml+xml\r\nCookie: a=b; c=d\r\nConnection: keep-alive\r\n\r\n",
+            "POST /a+b?x HTTP/1.0\r\nContent-Length: 10\r\nContent-Type:text/plain\r\n\r\n0123456789",
+            "GET /a;jsessionid=1?x=y HTTP/1.1\r\nHost: localhost\r\n\r\n",
+            "GET http://www.somehost.net/path?x=1 HTTP/1.1\r\nHost: localhost\r\n\r\n",
+            "GET /path HTTP/1.1\r\nX-Tab:\tvalue\twith tab\r\nX-Spaces:   a  b   c   \r\nX-Empty:\r\nX-Blank:   \r\n\r\n",
+            "GET /path HTTP/1.1\r\nHost : spaced\r\nX: 1\r\n\r\n",
+            "GET /path HTTP/1.1\nHost: localhost\n\n",
+            "GET /path HTTP/1.1\r\nHost: localhost\nAccept: */*\r\n\r\n",
+            "GET /path HTTP/1.1\r\nhost: lower\r\nHOST: upper\r\nHostx: longer\r\nHos: shorter\r\nSSL_CIPHER: c\r\nStrict-Transport-Security: max-age=1\r\n\r\n",
+            "GET /path HTTP/1.1\r\nX-Colon: a:b:c\r\nX-Dup: 1\r\nX-Dup: 2\r\nHost: localhost\r\nHost: localhost\r\n\r\n",
+            "GET /caf\u00e9 HTTP/1.1\r\nX: caf\u00e9\r\n\r\n",
+            "GET /path HTTP/1.1\r\nX: v\u007f\r\n:novalue\r\n\r\n",
+            "PUT   /path   HTTP/1.1\r\n\r\n",
+            "GET /path HTTP/1.1\r\nA: b\r\n\rX",
+            "GET /path HTTP/1.1\r\nA: b\r\n",
+            "GET /path HTTP/1.1\r\nA: b\r\n\r",
+            "GET /path HTTP/1.1\r\nA: b\r",
+            "GET /path?a=1&a=2&b HTTP/1.1\r\nAccept-Encoding: gzip, deflate\r\n\r\n",
+            "OPTIONS * HTTP/1.1\r\n\r\n",
+            "GET /path HTTP/1.2\r\nA: b\r\n\r\n",
+            "GET /path\tHTTP/1.1\r\nA: b\r\n\r\n",
+            "GET /path HTTP/1.1\r\nA: b\r\nB: c\r\n\r\nGET /next HTTP/1.1\r\n\r\n",
+            tooManyHeaders()
+    };
+
+    private static final String BENCHMARK_REQUEST = "GET /plaintext HTTP/1.1\r\n" +
+            "Host: localhost:8080\r\n" +
+            "User-Agent: Mozilla/5.0 (X11; Linux x86_64; rv:40.0) Gecko/20100101 Firefox/40.0\r\n" +
+            "Accept: text/html,application/xhtml+xml,application/xml;q=0.9,*/*;q=0.8\r\n" +
+            "Accept-Language: en-US,en;q=0.5\r\n" +
+            "Accept-Encoding: gzip, deflate\r\n" +
+            "Cookie: JSESSIONID=2Q4xTCUOH3XL0ROvQYbFnJ6_GFRbNAiEbWnmbBJb\r\n" +
+            "Connection: keep-alive\r\n\r\n";
+
+    private final HttpRequestParser parser = HttpRequestParser.instance(OptionMap.EMPTY);
+
+    @Test
+    public void testFastPathMatchesStateMachine() throws Exception {
+        for (String request : REQUESTS) {
+            final byte[] in = request.getBytes("ISO-8859-1");
+            final String expected = parseOneByteAtATime(in);
+            Assert.assertEquals(request, expected, parse(ByteBuffer.wrap(in)));
+            Assert.assertEquals(request, expected, parse(directBuffer(in, ByteOrder.BIG_ENDIAN)));
+            Assert.assertEquals(request, expected, parse(directBuffer(in, ByteOrder.LITTLE_ENDIAN)));
+
+            final byte[] offset = new byte[in.length + 3];
+            System.arraycopy(in, 0, offset, 3, in.length);
+            final ByteBuffer slice = ByteBuffer.wrap(offset);
+            slice.position(3);
+            Assert.assertEquals(request, expected, parse(slice.slice()));
+        }
+    }
+
+    @Test
+    public void testKnownHeadersAreInterned() {
+        final HttpServerExchange exchange = new HttpServerExchange(null);
+        parser.handle(ByteBuffer.wrap(BENCHMARK_REQUEST.getBytes()), new ParseState(), exchange);
+        for (HttpString header : exchange.getRequestHeaders().getHeaderNames()) {
+            Assert.assertSame(HttpRequestParser.httpStrings().get(header.toString()), header);
+        }
+        Assert.assertEquals("localhost:8080", exchange.getRequestHeaders().getFirst(Headers.HOST));
+    }
+
+    @Test
+    public void testByteScanner() {
+        final byte[] data = "0123456789abcdef:ghij klmn\r\n".getBytes();
+        for (ByteBuffer buffer : new ByteBuffer[]{ByteBuffer.wrap(data), directBuffer(data, ByteOrder.BIG_ENDIAN), directBuffer(data, ByteOrder.LITTLE_ENDIAN)}) {
+            Assert.assertEquals(16, ByteScanner.scan(buffer, 0, data.length, (byte) ':', (byte) 0, (byte) 0));
+            Assert.assertEquals(21, ByteScanner.scan(buffer, 17, data.length, (byte) ' ', (byte) 0, (byte) 0));
+            Assert.assertEquals(26, ByteScanner.scan(buffer, 22, data.length, (byte) 0, (byte) 0, (byte) 0));
+            Assert.assertEquals(10, ByteScanner.scan(buffer, 0, data.length, (byte) 'f', (byte) 'a', (byte) ':'));
+            Assert.assertEquals(-1, ByteScanner.scan(buffer, 0, 16, (byte) ':', (byte) 0, (byte) 0));
+            Assert.assertFalse(ByteScanner.containsDoubleSpace(buffer, 0, data.length));
+        }
+        for (int i = 0; i < 17; ++i) {
+            final byte[] spaces = "aaaaaaaaaaaaaaaaaa".getBytes();
+            spaces[i] = ' ';
+            spaces[i + 1] = ' ';
+            Assert.assertTrue(ByteScanner.containsDoubleSpace(ByteBuffer.wrap(spaces), 0, spaces.length));
+            Assert.assertTrue(ByteScanner.containsDoubleSpace(directBuffer(spaces, ByteOrder.LITTLE_ENDIAN), 0, spaces.length));
+            Assert.assertEquals(i, ByteScanner.scan(ByteBuffer.wrap(spaces), 0, spaces.length, (byte) ' ', (byte) 0, (byte) 0));
+            spaces[i] = (byte) 0xC3;
+            Assert.assertEquals(i, ByteScanner.scan(ByteBuffer.wrap(spaces), 0, spaces.length, (byte) ':', (byte) 0, (byte) 0));
+        }
+    }
+
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkParser() throws Exception {
+        final byte[] in = BENCHMARK_REQUEST.getBytes();
+        //splitting the request after the start of the path forces the rest of it through the state machine
+        final int split = "GET /".length();
+        final int requests = 1000000;
+        final ParseState state = new ParseState();
+        for (int warmup = 0; warmup < 3; ++warmup) {
+            long time = System.nanoTime();
+            for (int i = 0; i < requests; ++i) {
+                state.reset();
+                final ByteBuffer buffer = ByteBuffer.wrap(in);
+                buffer.limit(split);
+                parser.handle(buffer, state, new HttpServerExchange(null));
+                buffer.limit(in.length);
+                parser.handle(buffer, state, new HttpServerExchange(null));
+            }
+            System.out.println("State machine: " + (System.nanoTime() - time) / requests + "ns per request");
+
+            time = System.nanoTime();
+            for (int i = 0; i < requests; ++i) {
+                state.reset();
+                parser.handle(ByteBuffer.wrap(in), state, new HttpServerExchange(null));
+            }
+            System.out.println("Fast path: " + (System.nanoTime() - time) / requests + "ns per request");
+        }
+    }
+
+    private String parse(final ByteBuffer buffer) {
+        final ParseState state = new ParseState();
+        final HttpServerExchange exchange = new HttpServerExchange(null);
+        try {
+            parser.handle(buffer, state, exchange);
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+        return describe(exchange, state) + buffer.remaining();
+    }
+
+    private String parseOneByteAtATime(final byte[] in) {
+        final ParseState state = new ParseState();
+        final HttpServerExchange exchange = new HttpServerExchange(null);
+        final ByteBuffer buffer = ByteBuffer.wrap(in);
+        buffer.limit(0);
+        try {
+            while (!state.isComplete() && buffer.limit() < in.length) {
+                buffer.limit(buffer.limit() + 1);
+                parser.handle(buffer, state, exchange);
+            }
+        } catch (RuntimeException e) {
+            return e.getClass().getName();
+        }
+        buffer.limit(in.length);
+        return describe(exchange, state) + buffer.remaining();
+    }
+
+    private static String describe(final HttpServerExchange exchange, final ParseState state) {
+        final StringBuilder result = new StringBuilder();
+        result.append(exchange.getRequestMethod()).append(' ')
+                .append(exchange.getProtocol()).append(' ')
+                .append(exchange.getRequestURI()).append(' ')
+                .append(exchange.isHostIncludedInRequestURI()).append(' ')
+                .append(exchange.getRequestPath()).append(' ')
+                .append(exchange.getRelativePath()).append(' ')
+                .append(exchange.getQueryString()).append(' ')
+                .append(exchange.getQueryParameters()).append(' ')
+                .append(exchange.getPathParameters()).append('\n');
+        final Map<String, HttpString> interned = HttpRequestParser.httpStrings();
+        for (HttpString header : exchange.getRequestHeaders().getHeaderNames()) {
+            result.append(header).append(interned.get(header.toString()) == header ? " (interned)" : "")
+                    .append(": ").append(exchange.getRequestHeaders().get(header)).append('\n');
+        }
+        result.append(state.isComplete()).append(' ');
+        return result.toString();
+    }
+
+    private static ByteBuffer directBuffer(final byte[] data, final ByteOrder order) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+        buffer.put(data);
+        buffer.flip();
+        buffer.order(order);
+        return buffer;
+    }
+
+    private static String tooManyHeaders() {
+        final StringBuilder request = new StringBuilder("GET /path HTTP/1.1\r\n");
+        for (int i = 0; i < 250; ++i) {
+            request.append("X-Header-").append(i).append(": value\r\n");
+        }
+        return request.append("\r\n").toString();
+    }
+}
@@ -0,0 +1,144 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.session;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class ExpiryWheelTestCase {
+
+    private static final long TICK = 1000;
+
+    @Test
+    public void testExpiry() {
+        final long start = 1000000 * TICK;
+        final ExpiryWheel<String> wheel = new ExpiryWheel<>(TICK, start);
+        final ExpiryWheel.Node<String> a = new ExpiryWheel.Node<>("a");
+        final ExpiryWheel.Node<String> b = new ExpiryWheel.Node<>("b");
+        wheel.schedule(a, start + 5 * TICK);
+        wheel.schedule(b, start + 10 * TICK);
+        Assert.assertEquals(2, wheel.size());
+
+        final List<String> due = new ArrayList<>();
+        wheel.advance(start + 4 * TICK, due);
+        Assert.assertTrue(due.isEmpty());
+        wheel.advance(start + 5 * TICK, due);
+        Assert.assertEquals(1, due.size());
+        Assert.assertEquals("a", due.get(0));
+        Assert.assertFalse(a.isScheduled());
+        Assert.assertTrue(b.isScheduled());
+
+        due.clear();
+        wheel.advance(start + 10 * TICK, due);
+        Assert.assertEquals(1, due.size());
+        Assert.assertEquals("b", due.get(0));
+        Assert.assertTrue(wheel.isEmpty());
+    }
+
+    @Test
+    public void testRescheduleAndRemove() {
+        final long start = 1000000 * TICK;
+        final ExpiryWheel<String> wheel = new ExpiryWheel<>(TICK, start);
+        final ExpiryWheel.Node<String> a = new ExpiryWheel.Node<>("a");
+        final ExpiryWheel.Node<String> b = new ExpiryWheel.Node<>("b");
+        wheel.schedule(a, start + 5 * TICK);
+        wheel.schedule(a, start + 20 * TICK);
+        wheel.schedule(b, start + 5 * TICK);
+        wheel.remove(b);
+        Assert.assertEquals(1, wheel.size());
+
+        final List<String> due = new ArrayList<>();
+        wheel.advance(start + 19 * TICK, due);
+        Assert.assertTrue(due.isEmpty());
+        wheel.advance(start + 20 * TICK, due);
+        Assert.assertEquals(1, due.size());
+        Assert.assertEquals("a", due.get(0));
+    }
+
+    @Test
+    public void testCascadeAndLargeGaps() {
+        final long start = 1000000 * TICK + 17;
+        final ExpiryWheel<Long> wheel = new ExpiryWheel<>(TICK, start);
+        final long[] delays = {1, 63, 64, 65, 200, 4095, 4096, 5000, 300000};
+        for (long delay : delays) {
+            wheel.schedule(new ExpiryWheel.Node<>(delay), start + delay * TICK);
+        }
+        final List<Long> due = new ArrayList<>();
+        long now = start;
+        // Step a tick at a time for a while, then jump in large increments
+        for (int i = 0; i <= 5000; ++i) {
+            now += TICK;
+            final int before = due.size();
+            wheel.advance(now, due);
+            for (int j = before; j < due.size(); ++j) {
+                // Expiry is rounded up to the next tick, so a node is due at most one tick late
+                Assert.assertTrue(start + due.get(j) * TICK <= now);
+                Assert.assertTrue(start + due.get(j) * TICK + TICK >= now);
+            }
+        }
+        Assert.assertEquals(delays.length - 1, due.size());
+        wheel.advance(now + 100000 * TICK, due);
+        Assert.assertEquals(delays.length - 1, due.size());
+        wheel.advance(start + 300001 * TICK, due);
+        Assert.assertEquals(delays.length, due.size());
+        Assert.assertTrue(wheel.isEmpty());
+    }
+
+    /**
+     * Simulates a million sessions with random timeouts being scheduled, touched and expired.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkMillionSessions() {
+        final int sessions = 1000000;
+        final long start = System.currentTimeMillis();
+        final ExpiryWheel<Integer> wheel = new ExpiryWheel<>(TICK, start);
+        final List<ExpiryWheel.Node<Integer>> nodes = new ArrayList<>(sessions);
+        final Random random = new Random(1);
+        long time = System.nanoTime();
+        for (int i = 0; i < sessions; ++i) {
+            final ExpiryWheel.Node<Integer> node = new ExpiryWheel.Node<>(i);
+            nodes.add(node);
+            wheel.schedule(node, start + (60 + random.nextInt(1800)) * TICK);
+        }
+        System.out.println("Scheduled " + sessions + " sessions in " + (System.nanoTime() - time) / 1000000 + "ms");
+
+        time = System.nanoTime();
+        for (int i = 0; i < sessions; ++i) {
+            wheel.schedule(nodes.get(random.nextInt(sessions)), start + (60 + random.nextInt(1800)) * TICK);
+        }
+        System.out.println("Rescheduled " + sessions + " sessions in " + (System.nanoTime() - time) / 1000000 + "ms");
+
+        final List<Integer> due = new ArrayList<>();
+        time = System.nanoTime();
+        for (long now = start; now <= start + 1900 * TICK; now += TICK) {
+            wheel.advance(now, due);
+        }
+        System.out.println("Expired " + due.size() + " sessions in " + (System.nanoTime() - time) / 1000000 + "ms");
+        Assert.assertEquals(sessions, due.size());
+    }
+
+}
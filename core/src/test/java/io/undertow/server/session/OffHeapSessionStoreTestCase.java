@@ -0,0 +1,129 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.server.session;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class OffHeapSessionStoreTestCase {
+
+    @Test
+    public void testStoreAndLoad() throws IOException {
+        final OffHeapSessionStore store = new OffHeapSessionStore(16, 64, 1024, null, 0);
+        try {
+            final byte[] small = data(5);
+            final byte[] large = data(100);
+            final OffHeapSessionStore.Entry smallEntry = store.store(small, small.length);
+            final OffHeapSessionStore.Entry largeEntry = store.store(large, large.length);
+            Assert.assertArrayEquals(small, store.load(smallEntry));
+            Assert.assertArrayEquals(large, store.load(largeEntry));
+            Assert.assertEquals(2, store.getEntryCount());
+            Assert.assertEquals(105, store.getStoredBytes());
+            Assert.assertEquals(128, store.getDirectMemoryUsed());
+
+            store.free(largeEntry);
+            Assert.assertEquals(1, store.getEntryCount());
+            final OffHeapSessionStore.Entry reused = store.store(large, large.length);
+            Assert.assertArrayEquals(large, store.load(reused));
+            Assert.assertArrayEquals(small, store.load(smallEntry));
+            Assert.assertEquals(128, store.getDirectMemoryUsed());
+        } finally {
+            store.close();
+        }
+    }
+
+    @Test
+    public void testOverflowAndFull() throws IOException {
+        final File file = File.createTempFile("sessions", ".overflow");
+        final OffHeapSessionStore store = new OffHeapSessionStore(16, 64, 64, file, 64);
+        try {
+            final byte[] data = data(64);
+            final OffHeapSessionStore.Entry direct = store.store(data, data.length);
+            final OffHeapSessionStore.Entry overflow = store.store(data, data.length);
+            Assert.assertEquals(64, store.getDirectMemoryUsed());
+            Assert.assertEquals(64, store.getOverflowFileSize());
+            Assert.assertArrayEquals(data, store.load(direct));
+            Assert.assertArrayEquals(data, store.load(overflow));
+            try {
+                store.store(data, 1);
+                Assert.fail();
+            } catch (IllegalStateException expected) {
+            }
+            //freed direct blocks are used before overflow blocks
+            store.free(direct);
+            store.free(overflow);
+            final OffHeapSessionStore.Entry entry = store.store(data, data.length);
+            Assert.assertArrayEquals(data, store.load(entry));
+            store.free(entry);
+            Assert.assertEquals(0, store.getEntryCount());
+        } finally {
+            store.close();
+        }
+        Assert.assertFalse(file.exists());
+    }
+
+    @Test
+    public void testCodecs() throws IOException {
+        final Map<String, Object> attributes = new HashMap<>();
+        attributes.put("string", "value");
+        attributes.put("int", 1);
+        attributes.put("long", 2L);
+        attributes.put("boolean", true);
+        attributes.put("bytes", new byte[]{1, 2, 3});
+        attributes.put("list", new ArrayList<>(Arrays.asList("a", "b")));
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        SessionAttributeCodecs.defaultCodecs().write(attributes, new DataOutputStream(out));
+        final Map<String, Object> read = SessionAttributeCodecs.defaultCodecs().read(new DataInputStream(new ByteArrayInputStream(out.toByteArray())), getClass().getClassLoader());
+        Assert.assertEquals(attributes.size(), read.size());
+        Assert.assertEquals("value", read.get("string"));
+        Assert.assertEquals(1, read.get("int"));
+        Assert.assertEquals(2L, read.get("long"));
+        Assert.assertEquals(true, read.get("boolean"));
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) read.get("bytes"));
+        Assert.assertEquals(Arrays.asList("a", "b"), read.get("list"));
+
+        try {
+            SessionAttributeCodecs.defaultCodecs().writeAttribute("object", new Object(), new DataOutputStream(new ByteArrayOutputStream()));
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    private static byte[] data(final int length) {
+        final byte[] data = new byte[length];
+        for (int i = 0; i < length; ++i) {
+            data[i] = (byte) i;
+        }
+        return data;
+    }
+}
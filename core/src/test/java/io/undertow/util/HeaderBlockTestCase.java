@@ -0,0 +1,110 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.util;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class HeaderBlockTestCase {
+
+    private static final HeaderBlock BLOCK = HeaderBlock.builder()
+            .add(Headers.SERVER, "undertow")
+            .add(Headers.CONTENT_TYPE, "text/plain")
+            .add("X-Frame-Options", "DENY")
+            .build();
+
+    @Test
+    public void testPutAll() {
+        final HeaderMap headers = new HeaderMap();
+        headers.put(Headers.SERVER, "other");
+        headers.putAll(BLOCK);
+        Assert.assertSame(BLOCK, headers.getHeaderBlock());
+        Assert.assertEquals(3, headers.size());
+        Assert.assertEquals(1, headers.get(Headers.SERVER).size());
+        Assert.assertEquals("undertow", headers.getFirst(Headers.SERVER));
+        Assert.assertEquals("DENY", headers.getFirst("x-frame-options"));
+        Assert.assertTrue(BLOCK.isIntact(headers));
+
+        headers.clear();
+        Assert.assertNull(headers.getHeaderBlock());
+        Assert.assertFalse(BLOCK.isIntact(headers));
+    }
+
+    @Test
+    public void testModifiedBlockIsNotIntact() {
+        HeaderMap headers = new HeaderMap().putAll(BLOCK);
+        headers.put(Headers.CONTENT_TYPE, "text/html");
+        Assert.assertFalse(BLOCK.isIntact(headers));
+
+        headers = new HeaderMap().putAll(BLOCK);
+        headers.add(Headers.SERVER, "other");
+        Assert.assertFalse(BLOCK.isIntact(headers));
+
+        headers = new HeaderMap().putAll(BLOCK);
+        headers.remove(Headers.SERVER);
+        Assert.assertFalse(BLOCK.isIntact(headers));
+
+        //an equal value that was not added by the block can not be detected cheaply, so it is treated as modified
+        headers = new HeaderMap().putAll(BLOCK);
+        headers.put(Headers.SERVER, new String("undertow"));
+        Assert.assertFalse(BLOCK.isIntact(headers));
+
+        headers = new HeaderMap().putAll(BLOCK);
+        headers.put(Headers.DATE, "today");
+        Assert.assertTrue(BLOCK.isIntact(headers));
+    }
+
+    @Test
+    public void testContains() {
+        Assert.assertTrue(BLOCK.contains(Headers.CONTENT_TYPE));
+        Assert.assertTrue(BLOCK.contains(new HttpString("x-frame-options")));
+        Assert.assertFalse(BLOCK.contains(Headers.DATE));
+    }
+
+    @Test
+    public void testEncodingIsCachedPerEncoder() {
+        final int[] calls = new int[1];
+        final HeaderBlock.Encoder first = new HeaderBlock.Encoder() {
+            @Override
+            public byte[] encode(HeaderBlock block) {
+                ++calls[0];
+                return new byte[]{1};
+            }
+        };
+        final HeaderBlock.Encoder second = new HeaderBlock.Encoder() {
+            @Override
+            public byte[] encode(HeaderBlock block) {
+                ++calls[0];
+                return new byte[]{2};
+            }
+        };
+        final HeaderBlock block = HeaderBlock.builder().add(Headers.SERVER, "undertow").build();
+        Assert.assertEquals(1, block.getEncoded(first)[0]);
+        Assert.assertEquals(2, block.getEncoded(second)[0]);
+        Assert.assertSame(block.getEncoded(first), block.getEncoded(first));
+        Assert.assertEquals(2, calls[0]);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateHeader() {
+        HeaderBlock.builder().add(Headers.SERVER, "a").add("server", "b");
+    }
+}
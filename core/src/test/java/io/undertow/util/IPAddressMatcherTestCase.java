@@ -0,0 +1,192 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.util;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.net.InetAddress;
+import java.net.UnknownHostException;
+import java.util.Random;
+
+/**
+ * @author agent
+ */
+public class IPAddressMatcherTestCase {
+
+    @Test
+    public void testFirstMatchWins() throws UnknownHostException {
+        IPAddressMatcher matcher = IPAddressMatcher.builder()
+                .addDeny("10.1.2.3")
+                .addAllow("10.1.0.0/16")
+                .addDeny("10.0.0.0/8")
+                .addAllow("10.1.2.0/24")
+                .build();
+        Assert.assertEquals(0, matcher.match(InetAddress.getByName("10.1.2.3")));
+        Assert.assertEquals(1, matcher.match(InetAddress.getByName("10.1.2.4")));
+        Assert.assertEquals(2, matcher.match(InetAddress.getByName("10.2.2.4")));
+        Assert.assertEquals(-1, matcher.match(InetAddress.getByName("11.1.2.3")));
+        Assert.assertFalse(matcher.isAllowed(InetAddress.getByName("10.1.2.3"), true));
+        Assert.assertTrue(matcher.isAllowed(InetAddress.getByName("10.1.2.4"), false));
+        Assert.assertTrue(matcher.isAllowed(InetAddress.getByName("11.1.2.3"), true));
+    }
+
+    @Test
+    public void testNonContiguousWildcard() throws UnknownHostException {
+        IPAddressMatcher matcher = IPAddressMatcher.builder()
+                .addAllow("10.1.2.0/24")
+                .addDeny("10.*.2.*")
+                .addDeny("*.*.*.7")
+                .addAllow("FE45:00:00:000:0:AAA:FFFF:0/112")
+                .addDeny("FE45:*:00:000:0:AAA:FFFF:1")
+                .build();
+        Assert.assertEquals(0, matcher.match(InetAddress.getByName("10.1.2.7")));
+        Assert.assertEquals(1, matcher.match(InetAddress.getByName("10.9.2.7")));
+        Assert.assertEquals(2, matcher.match(InetAddress.getByName("10.9.3.7")));
+        Assert.assertEquals(-1, matcher.match(InetAddress.getByName("10.9.3.8")));
+        Assert.assertEquals(3, matcher.match(InetAddress.getByName("FE45:0:0:0:0:AAA:FFFF:1")));
+        Assert.assertEquals(4, matcher.match(InetAddress.getByName("FE45:1:0:0:0:AAA:FFFF:1")));
+        Assert.assertEquals(-1, matcher.match(InetAddress.getByName("FE45:1:0:0:0:AAA:FFFF:2")));
+    }
+
+    @Test
+    public void testMatchesLinearScan() throws UnknownHostException {
+        final Random random = new Random(7);
+        final Rules rules = randomRules(random, 2000, 8, true);
+        final IPAddressMatcher matcher = rules.build();
+        for (int i = 0; i < 100000; ++i) {
+            final int address = random.nextBoolean() ? random.nextInt() : rules.prefixes[random.nextInt(rules.prefixes.length)] ^ random.nextInt(0x10000);
+            Assert.assertEquals(rules.scan(address), matcher.match(toAddress(address)));
+        }
+    }
+
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkOneHundredThousandRules() throws UnknownHostException {
+        final Random random = new Random(7);
+        final Rules rules = randomRules(random, 100000, 16, false);
+        long start = System.nanoTime();
+        final IPAddressMatcher matcher = rules.build();
+        System.out.println("Built matcher for " + rules.prefixes.length + " rules in " + (System.nanoTime() - start) / 1000000 + "ms");
+
+        final InetAddress[] addresses = new InetAddress[10000];
+        final int[] ints = new int[addresses.length];
+        for (int i = 0; i < addresses.length; ++i) {
+            ints[i] = random.nextBoolean() ? random.nextInt() : rules.prefixes[random.nextInt(rules.prefixes.length)] ^ random.nextInt(0x100);
+            addresses[i] = toAddress(ints[i]);
+        }
+        for (int round = 0; round < 5; ++round) {
+            int matched = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < 100; ++i) {
+                for (InetAddress address : addresses) {
+                    if (matcher.match(address) != -1) {
+                        ++matched;
+                    }
+                }
+            }
+            System.out.println("Matcher: " + (System.nanoTime() - start) / (100 * addresses.length) + "ns per address, " + matched + " matched");
+            matched = 0;
+            start = System.nanoTime();
+            for (int i = 0; i < 100; ++i) {
+                for (int address : ints) {
+                    if (rules.scan(address) != -1) {
+                        ++matched;
+                    }
+                }
+            }
+            System.out.println("Linear scan: " + (System.nanoTime() - start) / (100 * addresses.length) + "ns per address, " + matched + " matched");
+        }
+    }
+
+    private static Rules randomRules(final Random random, final int count, final int minLength, final boolean wildcards) {
+        final Rules rules = new Rules(count);
+        for (int i = 0; i < count; ++i) {
+            final int type = random.nextInt(10);
+            final int address = random.nextInt();
+            final int length;
+            final String peer;
+            if (type == 0) {
+                length = 32;
+                peer = toString(address);
+            } else if (type == 1 && wildcards) {
+                //a wildcard with a literal part after it, which does not cover a contiguous block of addresses
+                rules.masks[i] = 0xFF00FF00;
+                rules.prefixes[i] = address & 0xFF00FF00;
+                rules.deny[i] = random.nextBoolean();
+                rules.peers[i] = (address >>> 24) + ".*." + ((address >>> 8) & 0xFF) + ".*";
+                continue;
+            } else {
+                length = minLength + random.nextInt(32 - minLength);
+                peer = toString(address & (-1 << (32 - length))) + "/" + length;
+            }
+            rules.masks[i] = -1 << (32 - length);
+            rules.prefixes[i] = address & rules.masks[i];
+            rules.deny[i] = random.nextBoolean();
+            rules.peers[i] = peer;
+        }
+        return rules;
+    }
+
+    private static InetAddress toAddress(final int address) throws UnknownHostException {
+        return InetAddress.getByAddress(new byte[]{(byte) (address >>> 24), (byte) (address >>> 16), (byte) (address >>> 8), (byte) address});
+    }
+
+    private static String toString(final int address) {
+        return (address >>> 24) + "." + ((address >>> 16) & 0xFF) + "." + ((address >>> 8) & 0xFF) + "." + (address & 0xFF);
+    }
+
+    private static final class Rules {
+        final int[] masks;
+        final int[] prefixes;
+        final boolean[] deny;
+        final String[] peers;
+
+        Rules(final int count) {
+            masks = new int[count];
+            prefixes = new int[count];
+            deny = new boolean[count];
+            peers = new String[count];
+        }
+
+        IPAddressMatcher build() {
+            final IPAddressMatcher.Builder builder = IPAddressMatcher.builder();
+            for (int i = 0; i < peers.length; ++i) {
+                if (deny[i]) {
+                    builder.addDeny(peers[i]);
+                } else {
+                    builder.addAllow(peers[i]);
+                }
+            }
+            return builder.build();
+        }
+
+        /**
+         * The rules checked one by one, the way the access control handler used to check them
+         */
+        int scan(final int address) {
+            for (int i = 0; i < masks.length; ++i) {
+                if ((address & masks[i]) == prefixes[i]) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
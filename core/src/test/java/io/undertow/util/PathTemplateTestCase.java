@@ -92,6 +92,16 @@ public class PathTemplateTestCase {
         Assert.assertTrue("Failed. Template: " + pathTemplate, pathTemplate.matches(path, params));
         Assert.assertEquals(expected, params);
 
+        //the matcher only creates the values when they are read
+        final PathTemplateMatcher.PathMatchResult<String> match = new PathTemplateMatcher<String>().add(template, "value").match(path);
+        Assert.assertNotNull("Failed. Template: " + pathTemplate, match);
+        Assert.assertEquals(expected.size(), match.getParameterCount());
+        for (Map.Entry<String, String> entry : expected.entrySet()) {
+            Assert.assertEquals(entry.getValue(), match.getParameter(entry.getKey()));
+        }
+        Assert.assertNull(match.getParameter("notAParameter"));
+        Assert.assertEquals(expected, match.getParameters());
+
     }
 
 }
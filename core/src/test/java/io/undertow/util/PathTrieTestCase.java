@@ -0,0 +1,235 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.util;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.TreeSet;
+
+/**
+ * @author agent
+ */
+public class PathTrieTestCase {
+
+    @Test
+    public void testPrefixMatch() {
+        final Map<String, String> prefixes = new HashMap<>();
+        prefixes.put("/foo", "foo");
+        prefixes.put("/foo/bar", "foobar");
+        prefixes.put("/foobar", "foobar2");
+        prefixes.put("/f", "f");
+        final PathTrie<String> trie = PathTrie.create(prefixes);
+
+        Assert.assertEquals("foo", trie.match("/foo").getValue());
+        Assert.assertEquals("foo", trie.match("/foo/").getValue());
+        Assert.assertEquals("foo", trie.match("/foo/ba").getValue());
+        Assert.assertEquals("foo", trie.match("/foo/barbaz").getValue());
+        Assert.assertEquals("foobar", trie.match("/foo/bar").getValue());
+        Assert.assertEquals("foobar", trie.match("/foo/bar/baz").getValue());
+        Assert.assertEquals("foobar2", trie.match("/foobar/baz").getValue());
+        Assert.assertEquals("f", trie.match("/f/oo").getValue());
+        Assert.assertNull(trie.match("/fo"));
+        Assert.assertNull(trie.match("/foob"));
+        Assert.assertNull(trie.match(""));
+        Assert.assertNull(trie.match("/"));
+
+        final PathTrie.Entry<String> entry = trie.match("/foo/bar/baz");
+        Assert.assertEquals("/foo/bar", entry.getPath());
+        Assert.assertEquals("/foo", entry.getShorter().getPath());
+        Assert.assertNull(entry.getShorter().getShorter());
+        Assert.assertEquals("/foo", trie.matchPrefix("/foo/bar/baz", 7).getPath());
+    }
+
+    @Test
+    public void testEmptyPrefix() {
+        final Map<String, String> prefixes = new HashMap<>();
+        prefixes.put("", "root");
+        prefixes.put("/foo", "foo");
+        final PathTrie<String> trie = PathTrie.create(prefixes);
+        Assert.assertEquals("root", trie.match("").getValue());
+        Assert.assertEquals("root", trie.match("/").getValue());
+        Assert.assertEquals("root", trie.match("/bar").getValue());
+        Assert.assertNull(trie.match("bar"));
+        Assert.assertEquals("foo", trie.match("/foo/bar").getValue());
+        Assert.assertEquals("root", trie.match("/foo/bar").getShorter().getValue());
+    }
+
+    @Test
+    public void testExactMatch() {
+        final Map<String, String> prefixes = new HashMap<>();
+        prefixes.put("/foo", "prefix");
+        final Map<String, String> exact = new HashMap<>();
+        exact.put("/foo", "exact");
+        exact.put("/foo/bar", "exactbar");
+        final PathTrie<String> trie = PathTrie.create(prefixes, exact);
+        Assert.assertEquals("exact", trie.match("/foo").getValue());
+        Assert.assertTrue(trie.match("/foo").isExact());
+        Assert.assertEquals("exact", trie.match("/foo//").getValue());
+        Assert.assertEquals("exactbar", trie.match("/foo/bar/").getValue());
+        Assert.assertEquals("prefix", trie.match("/foo/baz").getValue());
+        Assert.assertEquals("prefix", trie.match("/foo/bar/baz").getValue());
+        Assert.assertFalse(trie.match("/foo/bar/baz").isExact());
+    }
+
+    @Test
+    public void testMatchesLengthScan() {
+        final Random random = new Random(1);
+        final List<String> routes = createRoutes(random, 1000);
+        final Map<String, String> prefixes = new HashMap<>();
+        for (String route : routes) {
+            prefixes.put(route, route);
+        }
+        final PathTrie<String> trie = PathTrie.create(prefixes);
+        for (int i = 0; i < 10000; ++i) {
+            final String path = createRequestPath(random, routes);
+            final PathTrie.Entry<String> entry = trie.match(path);
+            Assert.assertEquals(path, lengthScan(prefixes, path), entry == null ? null : entry.getValue());
+        }
+    }
+
+    /**
+     * Compares the trie with a scan over the lengths of the registered paths, as the path matchers used to do, for
+     * 10000 routes.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkTenThousandRoutes() {
+        final Random random = new Random(1);
+        final List<String> routes = createRoutes(random, 10000);
+        final Map<String, String> prefixes = new HashMap<>();
+        for (String route : routes) {
+            prefixes.put(route, route);
+        }
+        final String[] paths = new String[100000];
+        for (int i = 0; i < paths.length; ++i) {
+            paths[i] = createRequestPath(random, routes);
+        }
+        long time = System.nanoTime();
+        final PathTrie<String> trie = PathTrie.create(prefixes);
+        System.out.println("Built trie of " + routes.size() + " routes in " + (System.nanoTime() - time) / 1000000 + "ms");
+        final int[] lengths = lengths(prefixes);
+        for (int run = 0; run < 5; ++run) {
+            int matched = 0;
+            time = System.nanoTime();
+            for (int i = 0; i < 10; ++i) {
+                for (String path : paths) {
+                    if (trie.match(path) != null) {
+                        ++matched;
+                    }
+                }
+            }
+            System.out.println("Trie: " + (System.nanoTime() - time) / (paths.length * 10) + "ns per match, " + matched + " matched");
+
+            matched = 0;
+            time = System.nanoTime();
+            for (int i = 0; i < 10; ++i) {
+                for (String path : paths) {
+                    if (lengthScan(prefixes, lengths, path) != null) {
+                        ++matched;
+                    }
+                }
+            }
+            System.out.println("Length scan: " + (System.nanoTime() - time) / (paths.length * 10) + "ns per match, " + matched + " matched");
+        }
+    }
+
+    private static List<String> createRoutes(final Random random, final int count) {
+        final String[] segments = {"api", "v1", "v2", "users", "orders", "items", "search", "admin", "static", "a", "b"};
+        final List<String> routes = new ArrayList<>();
+        for (int i = 0; i < count; ++i) {
+            final StringBuilder route = new StringBuilder();
+            final int depth = 1 + random.nextInt(4);
+            for (int j = 0; j < depth; ++j) {
+                route.append('/').append(segments[random.nextInt(segments.length)]);
+                if (random.nextBoolean()) {
+                    route.append(random.nextInt(100));
+                }
+            }
+            routes.add(route.toString());
+        }
+        return routes;
+    }
+
+    private static String createRequestPath(final Random random, final List<String> routes) {
+        final String route = routes.get(random.nextInt(routes.size()));
+        switch (random.nextInt(4)) {
+            case 0:
+                return route;
+            case 1:
+                return route + "/resource/" + random.nextInt(1000);
+            case 2:
+                return route.substring(0, random.nextInt(route.length()));
+            default:
+                return route + random.nextInt(10);
+        }
+    }
+
+    private static int[] lengths(final Map<String, String> prefixes) {
+        final Set<Integer> lengths = new TreeSet<>(Collections.reverseOrder());
+        for (String prefix : prefixes.keySet()) {
+            lengths.add(prefix.length());
+        }
+        final int[] ret = new int[lengths.size()];
+        int pos = 0;
+        for (int length : lengths) {
+            ret[pos++] = length;
+        }
+        return ret;
+    }
+
+    /**
+     * The lookup the path matchers did before they used a trie
+     */
+    private static String lengthScan(final Map<String, String> prefixes, final int[] lengths, final String path) {
+        for (int length : lengths) {
+            if (length == path.length()) {
+                final String value = prefixes.get(path);
+                if (value != null) {
+                    return value;
+                }
+            } else if (length < path.length() && path.charAt(length) == '/') {
+                final String value = prefixes.get(path.substring(0, length));
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String lengthScan(final Map<String, String> prefixes, final String path) {
+        for (int length = path.length(); length >= 0; --length) {
+            if (length == path.length() || path.charAt(length) == '/') {
+                final String value = prefixes.get(path.substring(0, length));
+                if (value != null) {
+                    return value;
+                }
+            }
+        }
+        return null;
+    }
+}
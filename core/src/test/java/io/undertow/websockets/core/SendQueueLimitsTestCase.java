@@ -0,0 +1,69 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.core;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class SendQueueLimitsTestCase {
+
+    @Test
+    public void testWaterMarks() {
+        final SendQueueLimits limits = new SendQueueLimits(1000, 500, 10, 5, SendQueueLimits.OverflowPolicy.NOTIFY);
+        Assert.assertFalse(limits.isAboveHighWaterMark(1000, 10));
+        Assert.assertTrue(limits.isAboveHighWaterMark(1001, 1));
+        Assert.assertTrue(limits.isAboveHighWaterMark(1, 11));
+        //both bytes and frames must drop back to the low water mark
+        Assert.assertFalse(limits.isAtLowWaterMark(400, 6));
+        Assert.assertFalse(limits.isAtLowWaterMark(600, 4));
+        Assert.assertTrue(limits.isAtLowWaterMark(500, 5));
+    }
+
+    @Test
+    public void testUnlimitedFrames() {
+        final SendQueueLimits limits = new SendQueueLimits(1000, 500, 0, 0, SendQueueLimits.OverflowPolicy.DROP_OLDEST);
+        Assert.assertFalse(limits.isAboveHighWaterMark(1000, Integer.MAX_VALUE));
+        Assert.assertTrue(limits.isAtLowWaterMark(500, Integer.MAX_VALUE));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testLowWaterMarkAboveHighWaterMark() {
+        new SendQueueLimits(1000, 2000, 0, 0, SendQueueLimits.OverflowPolicy.NOTIFY);
+    }
+
+    @Test
+    public void testMetrics() {
+        final SendQueueLimits limits = new SendQueueLimits(1000, 500, 10, 5, SendQueueLimits.OverflowPolicy.CLOSE);
+        limits.addQueuedBytes(300);
+        limits.channelOverWaterMark(true);
+        limits.channelOverWaterMark(true);
+        limits.channelOverWaterMark(false);
+        limits.messageSent(100);
+        limits.messageSent(300);
+        limits.addQueuedBytes(-200);
+        Assert.assertEquals(100, limits.getQueuedBytes());
+        Assert.assertEquals(1, limits.getChannelsOverWaterMark());
+        Assert.assertEquals(2, limits.getMessagesSent());
+        Assert.assertEquals(400, limits.getTotalSendLatency());
+        Assert.assertEquals(300, limits.getMaxSendLatency());
+        Assert.assertEquals(200, limits.getAverageSendLatency());
+    }
+}
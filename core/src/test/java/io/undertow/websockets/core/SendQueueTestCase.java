@@ -0,0 +1,248 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.core;
+
+import java.io.IOException;
+import java.net.URI;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpOneOnly;
+import io.undertow.websockets.WebSocketConnectionCallback;
+import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
+import io.undertow.websockets.client.WebSocketClient;
+import io.undertow.websockets.spi.WebSocketHttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.BufferAllocator;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+
+/**
+ * Tests the send queue limits of a channel whose peer is stalled. The server channel is corked, so the frames of the
+ * messages that are sent are queued on the channel but not written out until the channel is uncorked.
+ *
+ * @author agent
+ */
+@RunWith(DefaultServer.class)
+@HttpOneOnly
+public class SendQueueTestCase {
+
+    private final ByteBufferSlicePool bufferPool = new ByteBufferSlicePool(BufferAllocator.DIRECT_BYTE_BUFFER_ALLOCATOR, 512, 512 * 4);
+
+    private final BlockingQueue<WebSocketChannel> serverChannels = new LinkedBlockingDeque<>();
+    private final BlockingQueue<String> clientReceived = new LinkedBlockingDeque<>();
+    private final BlockingQueue<String> listenerEvents = new LinkedBlockingDeque<>();
+    private final Results results = new Results();
+    private WebSocketChannel client;
+    private WebSocketChannel channel;
+
+    @Before
+    public void connect() throws Exception {
+        DefaultServer.setRootHandler(new WebSocketProtocolHandshakeHandler(new WebSocketConnectionCallback() {
+            @Override
+            public void onConnect(final WebSocketHttpExchange exchange, final WebSocketChannel channel) {
+                channel.setSendQueueListener(new SendQueueListener() {
+                    @Override
+                    public void highWaterMark(WebSocketChannel channel) {
+                        listenerEvents.add("high");
+                    }
+
+                    @Override
+                    public void lowWaterMark(WebSocketChannel channel) {
+                        listenerEvents.add("low");
+                    }
+                });
+                channel.resumeReceives();
+                serverChannels.add(channel);
+            }
+        }));
+        client = WebSocketClient.connect(DefaultServer.getWorker(), bufferPool, OptionMap.EMPTY, new URI(DefaultServer.getDefaultServerURL()), WebSocketVersion.V13).get();
+        client.getReceiveSetter().set(new AbstractReceiveListener() {
+            @Override
+            protected void onFullTextMessage(WebSocketChannel channel, BufferedTextMessage message) throws IOException {
+                clientReceived.add(message.getData());
+            }
+        });
+        client.resumeReceives();
+        channel = serverChannels.poll(10, TimeUnit.SECONDS);
+        Assert.assertNotNull(channel);
+    }
+
+    @After
+    public void closeClient() {
+        IoUtils.safeClose(client);
+    }
+
+    @Test
+    public void testDropOldest() throws Exception {
+        final SendQueueLimits limits = new SendQueueLimits(0, 0, 2, 0, SendQueueLimits.OverflowPolicy.DROP_OLDEST);
+        channel.setSendQueueLimits(limits);
+        channel.cork();
+        send("m1", "m2", "m3", "m4", "m5");
+        //m1 and m2 are queued on the channel, m3 and m4 were held back and then dropped to make room for m5
+        Assert.assertEquals(Arrays.asList("high"), drainEvents());
+        Assert.assertEquals(2, limits.getMessagesDropped());
+        Assert.assertEquals(3, channel.getQueuedFrames());
+        Assert.assertTrue(channel.isSendQueueOverWaterMark());
+        results.assertResults("error m3", "error m4");
+
+        //m5 is released once the stalled messages have been written out
+        channel.uncork();
+        assertReceived("m1", "m2", "m5");
+        results.await(5);
+        results.assertResults("complete m1", "complete m2", "complete m5", "error m3", "error m4");
+        Assert.assertEquals(3, limits.getMessagesSent());
+        Assert.assertEquals(0, channel.getQueuedFrames());
+        Assert.assertEquals(0, limits.getQueuedBytes());
+        Assert.assertFalse(channel.isSendQueueOverWaterMark());
+        Assert.assertEquals(Arrays.asList("low"), drainEvents());
+    }
+
+    @Test
+    public void testClose() throws Exception {
+        final SendQueueLimits limits = new SendQueueLimits(0, 0, 2, 0, SendQueueLimits.OverflowPolicy.CLOSE);
+        channel.setSendQueueLimits(limits);
+        channel.cork();
+        send("m1", "m2", "m3");
+        Assert.assertFalse(channel.isOpen());
+        Assert.assertEquals(1, limits.getChannelsClosed());
+        Assert.assertEquals(Arrays.asList("high"), drainEvents());
+        //the message that went over the water mark fails straight away, as does anything sent after it
+        Assert.assertTrue(results.get().contains("error m3"));
+        send("m4");
+        Assert.assertTrue(results.get().contains("error m4"));
+        Assert.assertFalse(results.get().contains("complete m3"));
+        Assert.assertNull(clientReceived.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    @Test
+    public void testListener() throws Exception {
+        final SendQueueLimits limits = new SendQueueLimits(0, 0, 2, 1, SendQueueLimits.OverflowPolicy.NOTIFY);
+        channel.setSendQueueLimits(limits);
+        channel.cork();
+        send("m1", "m2", "m3");
+        Assert.assertEquals(Arrays.asList("high"), drainEvents());
+        Assert.assertEquals(3, channel.getQueuedFrames());
+        Assert.assertEquals(1, limits.getChannelsOverWaterMark());
+
+        channel.uncork();
+        assertReceived("m1", "m2", "m3");
+        results.await(3);
+        results.assertResults("complete m1", "complete m2", "complete m3");
+        Assert.assertEquals(Arrays.asList("low"), drainEvents());
+        Assert.assertEquals(0, limits.getChannelsOverWaterMark());
+        Assert.assertEquals(3, limits.getMessagesSent());
+    }
+
+    @Test
+    public void testReplacingLimitsReleasesHeldMessages() throws Exception {
+        final SendQueueLimits limits = new SendQueueLimits(0, 0, 1, 0, SendQueueLimits.OverflowPolicy.DROP_OLDEST);
+        channel.setSendQueueLimits(limits);
+        channel.cork();
+        send("m1", "m2", "m3");
+        results.assertResults("error m2");
+        Assert.assertEquals(2, channel.getQueuedFrames());
+
+        //m3 is still held back when the limits are removed, it must not be left behind in the old queue
+        channel.setSendQueueLimits(null);
+        send("m4");
+        channel.uncork();
+        assertReceived("m1", "m3", "m4");
+        results.await(4);
+        results.assertResults("complete m1", "complete m3", "complete m4", "error m2");
+        Assert.assertEquals(2, limits.getMessagesSent());
+        Assert.assertEquals(0, limits.getQueuedBytes());
+        Assert.assertEquals(0, limits.getChannelsOverWaterMark());
+    }
+
+    private void send(final String... messages) {
+        for (String message : messages) {
+            WebSockets.sendText(message, channel, results.callback(message));
+        }
+    }
+
+    private void assertReceived(final String... messages) throws InterruptedException {
+        for (String message : messages) {
+            Assert.assertEquals(message, clientReceived.poll(10, TimeUnit.SECONDS));
+        }
+        Assert.assertNull(clientReceived.poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    private List<String> drainEvents() {
+        final List<String> events = new ArrayList<>();
+        listenerEvents.drainTo(events);
+        return events;
+    }
+
+    /**
+     * Collects the outcome of every message. Messages complete on the IO thread, so the outcomes are compared in
+     * sorted order.
+     */
+    private static final class Results {
+
+        private final List<String> results = new ArrayList<>();
+
+        WebSocketCallback<Void> callback(final String message) {
+            return new WebSocketCallback<Void>() {
+                @Override
+                public void complete(WebSocketChannel channel, Void context) {
+                    add("complete " + message);
+                }
+
+                @Override
+                public void onError(WebSocketChannel channel, Void context, Throwable throwable) {
+                    add("error " + message);
+                }
+            };
+        }
+
+        private synchronized void add(final String result) {
+            results.add(result);
+            notifyAll();
+        }
+
+        synchronized List<String> get() {
+            final List<String> sorted = new ArrayList<>(results);
+            Collections.sort(sorted);
+            return sorted;
+        }
+
+        synchronized void await(final int count) throws InterruptedException {
+            final long end = System.currentTimeMillis() + 10000;
+            while (results.size() < count && System.currentTimeMillis() < end) {
+                wait(100);
+            }
+            Assert.assertEquals(count, results.size());
+        }
+
+        void assertResults(final String... expected) {
+            Assert.assertEquals(Arrays.asList(expected), get());
+        }
+    }
+}
@@ -0,0 +1,108 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.core;
+
+import java.io.UnsupportedEncodingException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class UTF8OutputTestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String TEXT = "plain ascii text that is longer than eight bytes, "
+            + "caf\u00e9 \u20ac 100 \ud83d\ude00 and some more ascii at the end";
+
+    @Test
+    public void testDecode() throws UnsupportedEncodingException {
+        final byte[] bytes = TEXT.getBytes(UTF_8);
+        Assert.assertEquals(TEXT, decode(ByteBuffer.wrap(bytes)));
+        Assert.assertEquals(TEXT, decode(direct(bytes, ByteOrder.BIG_ENDIAN)));
+        Assert.assertEquals(TEXT, decode(direct(bytes, ByteOrder.LITTLE_ENDIAN)));
+        Assert.assertEquals(TEXT, new UTF8Output(ByteBuffer.wrap(bytes)).extract());
+    }
+
+    @Test
+    public void testCodePointsSplitBetweenWrites() throws UnsupportedEncodingException {
+        final byte[] bytes = TEXT.getBytes(UTF_8);
+        for (int split = 0; split <= bytes.length; ++split) {
+            final UTF8Output output = new UTF8Output();
+            output.writeValidated(ByteBuffer.wrap(bytes, 0, split));
+            output.writeValidated(direct(bytes, ByteOrder.BIG_ENDIAN, split));
+            output.validateComplete();
+            Assert.assertEquals(TEXT, output.extract());
+        }
+    }
+
+    @Test
+    public void testInvalidData() {
+        assertInvalid(new byte[]{'a', 'b', (byte) 0xC0, (byte) 0x80});
+        assertInvalid(new byte[]{'a', 'b', 'c', 'd', 'e', 'f', 'g', 'h', 'i', (byte) 0xFF});
+        //an encoded surrogate
+        assertInvalid(new byte[]{(byte) 0xED, (byte) 0xA0, (byte) 0x80});
+        //truncated code point
+        assertInvalid(new byte[]{'a', (byte) 0xE2, (byte) 0x82});
+    }
+
+    @Test
+    public void testCharSequenceView() throws UnsupportedEncodingException {
+        final UTF8Output output = new UTF8Output();
+        output.writeValidated(ByteBuffer.wrap(TEXT.getBytes(UTF_8)));
+        final CharSequence view = output.extractCharSequence();
+        Assert.assertFalse(output.hasData());
+        output.writeValidated(ByteBuffer.wrap("other".getBytes(UTF_8)));
+        Assert.assertEquals(TEXT, view.toString());
+        Assert.assertEquals("other", output.extract());
+    }
+
+    private static void assertInvalid(final byte[] bytes) {
+        final UTF8Output output = new UTF8Output();
+        try {
+            output.writeValidated(ByteBuffer.wrap(bytes));
+            output.validateComplete();
+            Assert.fail();
+        } catch (UnsupportedEncodingException expected) {
+        }
+    }
+
+    private static String decode(final ByteBuffer buffer) throws UnsupportedEncodingException {
+        final UTF8Output output = new UTF8Output();
+        output.writeValidated(buffer);
+        output.validateComplete();
+        Assert.assertFalse(buffer.hasRemaining());
+        return output.extract();
+    }
+
+    private static ByteBuffer direct(final byte[] bytes, final ByteOrder order) {
+        return direct(bytes, order, 0);
+    }
+
+    private static ByteBuffer direct(final byte[] bytes, final ByteOrder order, final int offset) {
+        final ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length - offset).order(order);
+        buffer.put(bytes, offset, bytes.length - offset);
+        buffer.flip();
+        return buffer;
+    }
+}
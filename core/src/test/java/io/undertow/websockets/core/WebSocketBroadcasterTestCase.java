@@ -0,0 +1,278 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.core;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.TimeUnit;
+
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpOneOnly;
+import io.undertow.util.ReferenceCountedPooled;
+import io.undertow.websockets.WebSocketConnectionCallback;
+import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
+import io.undertow.websockets.client.WebSocketClient;
+import io.undertow.websockets.spi.WebSocketHttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.BufferAllocator;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+import org.xnio.Pooled;
+
+/**
+ * @author agent
+ */
+@RunWith(DefaultServer.class)
+@HttpOneOnly
+public class WebSocketBroadcasterTestCase {
+
+    private static final int CLIENTS = 3;
+
+    private final ByteBufferSlicePool bufferPool = new ByteBufferSlicePool(BufferAllocator.DIRECT_BYTE_BUFFER_ALLOCATOR, 512, 512 * 4);
+
+    private final BlockingQueue<WebSocketChannel> serverChannels = new LinkedBlockingDeque<>();
+    private final BlockingQueue<String> serverReceived = new LinkedBlockingDeque<>();
+    private final List<WebSocketChannel> clients = new ArrayList<>();
+    private final List<BlockingQueue<String>> clientReceived = new ArrayList<>();
+
+    @After
+    public void closeClients() {
+        for (WebSocketChannel client : clients) {
+            IoUtils.safeClose(client);
+        }
+    }
+
+    @Test
+    public void testFrameEncoding() {
+        checkFrame(WebSocketFrameType.TEXT, 5, new byte[]{(byte) 0x81, 5});
+        checkFrame(WebSocketFrameType.BINARY, 125, new byte[]{(byte) 0x82, 125});
+        checkFrame(WebSocketFrameType.BINARY, 126, new byte[]{(byte) 0x82, 126, 0, 126});
+        //larger than a pooled buffer
+        checkFrame(WebSocketFrameType.TEXT, 70000, new byte[]{(byte) 0x81, 127, 0, 0, 0, 0, 0, 1, 0x11, 0x70});
+    }
+
+    @Test
+    public void testFrameIsShared() {
+        final ReferenceCountedPooled<ByteBuffer> frame = WebSocketBroadcaster.encodeFrame(WebSocketFrameType.TEXT, payload(10), bufferPool);
+        final ByteBuffer view = frame.getResource().asReadOnlyBuffer();
+        final Pooled<ByteBuffer> pooledView = frame.createView(view);
+        //the frame stays usable until the last view is freed
+        frame.free();
+        Assert.assertEquals(12, pooledView.getResource().remaining());
+        Assert.assertEquals((byte) 0x81, pooledView.getResource().get(0));
+        pooledView.free();
+    }
+
+    @Test
+    public void testBroadcastFromServer() throws Exception {
+        final List<WebSocketChannel> channels = connect();
+        final WebSocketBroadcaster broadcaster = new WebSocketBroadcaster();
+        final CountingCallback callback = new CountingCallback();
+        broadcaster.sendText("hello", channels, callback);
+        broadcaster.sendBinary(payload(2000), channels, callback);
+        broadcaster.sendText("world", channels, callback);
+        for (BlockingQueue<String> received : clientReceived) {
+            Assert.assertEquals("hello", received.poll(10, TimeUnit.SECONDS));
+            Assert.assertEquals("binary 2000", received.poll(10, TimeUnit.SECONDS));
+            Assert.assertEquals("world", received.poll(10, TimeUnit.SECONDS));
+        }
+        callback.await(3 * CLIENTS);
+        Assert.assertEquals(3 * CLIENTS, broadcaster.getMessagesSent());
+        for (WebSocketChannel channel : channels) {
+            Assert.assertEquals(0, channel.getQueuedBroadcastBytes());
+        }
+    }
+
+    @Test
+    public void testBroadcastFromClients() throws Exception {
+        connect();
+        //client frames are masked, so they are encoded for every channel
+        final WebSocketBroadcaster broadcaster = new WebSocketBroadcaster();
+        broadcaster.sendText("from client", clients, null);
+        for (int i = 0; i < CLIENTS; ++i) {
+            Assert.assertEquals("from client", serverReceived.poll(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(CLIENTS, broadcaster.getMessagesSent());
+    }
+
+    @Test
+    public void testDropPolicy() throws Exception {
+        final List<WebSocketChannel> channels = connect();
+        final WebSocketBroadcaster broadcaster = new WebSocketBroadcaster(WebSocketBroadcaster.SlowConsumerPolicy.DROP, WebSocketBroadcaster.DEFAULT_MAX_QUEUED_BYTES);
+        //the first channel has not written out an earlier message yet
+        channels.get(0).addQueuedBroadcastBytes(10);
+        broadcaster.sendText("dropped for the first channel", channels, null);
+        channels.get(0).addQueuedBroadcastBytes(-10);
+        broadcaster.sendText("sent to all", channels, null);
+
+        Assert.assertEquals("sent to all", clientReceived.get(0).poll(10, TimeUnit.SECONDS));
+        for (int i = 1; i < CLIENTS; ++i) {
+            Assert.assertEquals("dropped for the first channel", clientReceived.get(i).poll(10, TimeUnit.SECONDS));
+            Assert.assertEquals("sent to all", clientReceived.get(i).poll(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals(1, broadcaster.getMessagesDropped());
+        Assert.assertEquals(2 * CLIENTS - 1, broadcaster.getMessagesSent());
+    }
+
+    @Test
+    public void testBufferPolicy() throws Exception {
+        final List<WebSocketChannel> channels = connect();
+        final WebSocketBroadcaster broadcaster = new WebSocketBroadcaster(WebSocketBroadcaster.SlowConsumerPolicy.BUFFER, 100);
+        //a small backlog is buffered, but a message that takes the backlog over the limit is dropped
+        channels.get(0).addQueuedBroadcastBytes(50);
+        channels.get(1).addQueuedBroadcastBytes(95);
+        broadcaster.sendText("0123456789", channels, null);
+        channels.get(0).addQueuedBroadcastBytes(-50);
+        channels.get(1).addQueuedBroadcastBytes(-95);
+        broadcaster.sendText("last", channels, null);
+
+        Assert.assertEquals("0123456789", clientReceived.get(0).poll(10, TimeUnit.SECONDS));
+        Assert.assertEquals("last", clientReceived.get(0).poll(10, TimeUnit.SECONDS));
+        Assert.assertEquals("last", clientReceived.get(1).poll(10, TimeUnit.SECONDS));
+        Assert.assertEquals("0123456789", clientReceived.get(2).poll(10, TimeUnit.SECONDS));
+        Assert.assertEquals(1, broadcaster.getMessagesDropped());
+        Assert.assertTrue(channels.get(1).isOpen());
+    }
+
+    @Test
+    public void testClosePolicy() throws Exception {
+        final List<WebSocketChannel> channels = connect();
+        final WebSocketBroadcaster broadcaster = new WebSocketBroadcaster(WebSocketBroadcaster.SlowConsumerPolicy.CLOSE, 100);
+        channels.get(0).addQueuedBroadcastBytes(95);
+        broadcaster.sendText("0123456789", channels, null);
+
+        Assert.assertFalse(channels.get(0).isOpen());
+        Assert.assertEquals(1, broadcaster.getChannelsClosed());
+        for (int i = 1; i < CLIENTS; ++i) {
+            Assert.assertEquals("0123456789", clientReceived.get(i).poll(10, TimeUnit.SECONDS));
+        }
+        Assert.assertNull(clientReceived.get(0).poll(100, TimeUnit.MILLISECONDS));
+    }
+
+    /**
+     * Connects the clients.
+     *
+     * @return The server side channels, in the order of the clients
+     */
+    private List<WebSocketChannel> connect() throws Exception {
+        DefaultServer.setRootHandler(new WebSocketProtocolHandshakeHandler(new WebSocketConnectionCallback() {
+            @Override
+            public void onConnect(final WebSocketHttpExchange exchange, final WebSocketChannel channel) {
+                channel.getReceiveSetter().set(new AbstractReceiveListener() {
+                    @Override
+                    protected void onFullTextMessage(WebSocketChannel channel, BufferedTextMessage message) throws IOException {
+                        serverReceived.add(message.getData());
+                    }
+                });
+                channel.resumeReceives();
+                serverChannels.add(channel);
+            }
+        }));
+        final List<WebSocketChannel> channels = new ArrayList<>();
+        for (int i = 0; i < CLIENTS; ++i) {
+            final WebSocketChannel client = WebSocketClient.connect(DefaultServer.getWorker(), bufferPool, OptionMap.EMPTY, new URI(DefaultServer.getDefaultServerURL()), WebSocketVersion.V13).get();
+            final BlockingQueue<String> received = new LinkedBlockingDeque<>();
+            client.getReceiveSetter().set(new AbstractReceiveListener() {
+                @Override
+                protected void onFullTextMessage(WebSocketChannel channel, BufferedTextMessage message) throws IOException {
+                    received.add(message.getData());
+                }
+
+                @Override
+                protected void onFullBinaryMessage(WebSocketChannel channel, BufferedBinaryMessage message) throws IOException {
+                    final Pooled<ByteBuffer[]> data = message.getData();
+                    try {
+                        long size = 0;
+                        for (ByteBuffer buffer : data.getResource()) {
+                            size += buffer.remaining();
+                        }
+                        received.add("binary " + size);
+                    } finally {
+                        data.free();
+                    }
+                }
+            });
+            client.resumeReceives();
+            clients.add(client);
+            clientReceived.add(received);
+            //the server side of the connection
+            channels.add(serverChannels.poll(10, TimeUnit.SECONDS));
+        }
+        return Collections.unmodifiableList(channels);
+    }
+
+    private static final class CountingCallback implements WebSocketCallback<Void> {
+
+        private int complete;
+
+        @Override
+        public synchronized void complete(final WebSocketChannel channel, final Void context) {
+            ++complete;
+            notifyAll();
+        }
+
+        @Override
+        public synchronized void onError(final WebSocketChannel channel, final Void context, final Throwable throwable) {
+            throwable.printStackTrace();
+        }
+
+        synchronized void await(final int count) throws InterruptedException {
+            final long end = System.currentTimeMillis() + 10000;
+            while (complete < count && System.currentTimeMillis() < end) {
+                wait(100);
+            }
+            Assert.assertEquals(count, complete);
+        }
+    }
+
+    private void checkFrame(final WebSocketFrameType type, final int size, final byte[] header) {
+        final ByteBuffer payload = payload(size);
+        final ReferenceCountedPooled<ByteBuffer> frame = WebSocketBroadcaster.encodeFrame(type, payload, bufferPool);
+        try {
+            final ByteBuffer buffer = frame.getResource().duplicate();
+            Assert.assertEquals(header.length + size, buffer.remaining());
+            for (byte b : header) {
+                Assert.assertEquals(b, buffer.get());
+            }
+            Assert.assertEquals(payload, buffer);
+            //the payload of the caller is not consumed
+            Assert.assertEquals(size, payload.remaining());
+        } finally {
+            frame.free();
+        }
+    }
+
+    private static ByteBuffer payload(final int size) {
+        final ByteBuffer payload = ByteBuffer.allocate(size);
+        for (int i = 0; i < size; ++i) {
+            payload.put((byte) ('a' + i % 26));
+        }
+        payload.flip();
+        return payload;
+    }
+}
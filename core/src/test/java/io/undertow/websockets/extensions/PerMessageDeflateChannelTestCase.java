@@ -0,0 +1,179 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.extensions;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpOneOnly;
+import io.undertow.websockets.WebSocketConnectionCallback;
+import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
+import io.undertow.websockets.client.WebSocketClient;
+import io.undertow.websockets.core.AbstractReceiveListener;
+import io.undertow.websockets.core.BufferedTextMessage;
+import io.undertow.websockets.core.StreamSinkFrameChannel;
+import io.undertow.websockets.core.StreamSourceFrameChannel;
+import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSocketFrameType;
+import io.undertow.websockets.core.WebSocketVersion;
+import io.undertow.websockets.core.WebSockets;
+import io.undertow.websockets.core.protocol.Handshake;
+import io.undertow.websockets.core.protocol.version13.Hybi13Handshake;
+import io.undertow.websockets.spi.WebSocketHttpExchange;
+import org.junit.AfterClass;
+import org.junit.Assert;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.BufferAllocator;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.Channels;
+import org.xnio.OptionMap;
+import org.xnio.Options;
+import org.xnio.Pool;
+import org.xnio.Xnio;
+import org.xnio.XnioWorker;
+
+/**
+ * Sends compressed messages that span several frames over a real connection.
+ *
+ * @author agent
+ */
+@RunWith(DefaultServer.class)
+@HttpOneOnly
+public class PerMessageDeflateChannelTestCase {
+
+    private static XnioWorker worker;
+
+    /**
+     * Small buffers, so that every compressed message is sent as several frames
+     */
+    private final Pool<ByteBuffer> buffer = new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 1024, 1024);
+
+    @BeforeClass
+    public static void setup() throws IOException {
+        Xnio xnio = Xnio.getInstance(DefaultServer.class.getClassLoader());
+        worker = xnio.createWorker(OptionMap.builder()
+                .set(Options.WORKER_IO_THREADS, 2)
+                .set(Options.WORKER_TASK_CORE_THREADS, 10)
+                .set(Options.WORKER_TASK_MAX_THREADS, 10)
+                .set(Options.TCP_NODELAY, true)
+                .getMap());
+    }
+
+    @AfterClass
+    public static void shutdown() {
+        worker.shutdown();
+    }
+
+    @Test
+    public void testFragmentedCompressedMessage() throws Exception {
+        final PerMessageDeflateHandshake serverDeflate = new PerMessageDeflateHandshake();
+        final AtomicInteger compressedReceived = new AtomicInteger();
+        DefaultServer.setRootHandler(new WebSocketProtocolHandshakeHandler(Collections.<Handshake>singleton(new Hybi13Handshake(Collections.<String>emptySet(), false, serverDeflate)), new WebSocketConnectionCallback() {
+            @Override
+            public void onConnect(final WebSocketHttpExchange exchange, final WebSocketChannel channel) {
+                channel.getReceiveSetter().set(new AbstractReceiveListener() {
+                    @Override
+                    protected void onText(WebSocketChannel webSocketChannel, StreamSourceFrameChannel messageChannel) throws IOException {
+                        if ((messageChannel.getRsv() & 4) != 0) {
+                            compressedReceived.incrementAndGet();
+                        }
+                        super.onText(webSocketChannel, messageChannel);
+                    }
+
+                    @Override
+                    protected void onFullTextMessage(WebSocketChannel channel, BufferedTextMessage message) throws IOException {
+                        WebSockets.sendText(message.getData(), channel, null);
+                    }
+                });
+                channel.resumeReceives();
+            }
+        }));
+
+        final WebSocketChannel webSocketChannel = WebSocketClient.connect(worker, null, buffer, OptionMap.EMPTY, new URI(DefaultServer.getDefaultServerURL()), WebSocketVersion.V13, null, new PerMessageDeflateHandshake()).get();
+        final CountDownLatch latch = new CountDownLatch(2);
+        final AtomicReference<String> first = new AtomicReference<>();
+        final AtomicReference<String> second = new AtomicReference<>();
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        webSocketChannel.getReceiveSetter().set(new AbstractReceiveListener() {
+            @Override
+            protected void onFullTextMessage(WebSocketChannel channel, BufferedTextMessage message) throws IOException {
+                if (!first.compareAndSet(null, message.getData())) {
+                    second.set(message.getData());
+                }
+                latch.countDown();
+            }
+
+            @Override
+            protected void onError(WebSocketChannel channel, Throwable error) {
+                failure.set(error);
+                super.onError(channel, error);
+                while (latch.getCount() > 0) {
+                    latch.countDown();
+                }
+            }
+        });
+        webSocketChannel.resumeReceives();
+
+        //two messages, so that the second one is decompressed with the context of the first
+        final String message1 = randomText(new Random(1), 32 * 1024);
+        final String message2 = randomText(new Random(2), 32 * 1024);
+        sendInPieces(webSocketChannel, message1);
+        sendInPieces(webSocketChannel, message2);
+
+        Assert.assertTrue(latch.await(10, TimeUnit.SECONDS));
+        Assert.assertNull(failure.get());
+        Assert.assertEquals(message1, first.get());
+        Assert.assertEquals(message2, second.get());
+        Assert.assertEquals(2, compressedReceived.get());
+        Assert.assertEquals(2, serverDeflate.getCompressedMessages());
+        webSocketChannel.sendClose();
+    }
+
+    private static void sendInPieces(final WebSocketChannel channel, final String message) throws IOException {
+        final byte[] data = message.getBytes(StandardCharsets.UTF_8);
+        final StreamSinkFrameChannel sink = channel.send(WebSocketFrameType.TEXT);
+        for (int i = 0; i < data.length; i += 1000) {
+            Channels.writeBlocking(sink, ByteBuffer.wrap(data, i, Math.min(1000, data.length - i)));
+        }
+        sink.shutdownWrites();
+        Channels.flushBlocking(sink);
+    }
+
+    /**
+     * Text that does not compress well, so the compressed message is larger than a single buffer
+     */
+    private static String randomText(final Random random, final int length) {
+        final StringBuilder builder = new StringBuilder(length);
+        for (int i = 0; i < length; ++i) {
+            builder.append((char) ('a' + random.nextInt(26)));
+        }
+        return builder.toString();
+    }
+}
@@ -0,0 +1,235 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.extensions;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.Collections;
+import java.util.List;
+import java.util.zip.Deflater;
+
+import io.undertow.websockets.WebSocketExtension;
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class PerMessageDeflateTestCase {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    @Test
+    public void testNegotiation() throws IOException {
+        final PerMessageDeflateHandshake handshake = new PerMessageDeflateHandshake(Deflater.DEFAULT_COMPRESSION, false, false, 10, PerMessageDeflateHandshake.DEFAULT_MAX_COMPRESSION_MEMORY);
+
+        //the first offer needs a smaller window than the JDK supports, so the second offer is used
+        WebSocketExtension accepted = handshake.accept(WebSocketExtension.parse("permessage-deflate; server_max_window_bits=10, permessage-deflate; client_max_window_bits; server_no_context_takeover"));
+        Assert.assertEquals("permessage-deflate; server_no_context_takeover; client_max_window_bits=10", WebSocketExtension.toExtensionHeader(Collections.singletonList(accepted)));
+
+        Assert.assertNull(handshake.accept(WebSocketExtension.parse("permessage-deflate; unknown_parameter")));
+        Assert.assertNull(handshake.accept(WebSocketExtension.parse("permessage-deflate; server_no_context_takeover; server_no_context_takeover")));
+        Assert.assertNull(handshake.accept(WebSocketExtension.parse("x-webkit-deflate-frame")));
+
+        final List<WebSocketExtension> selected = WebSocketExtension.parse("permessage-deflate; client_max_window_bits=15");
+        Assert.assertNotNull(handshake.createClientContext(selected));
+        try {
+            handshake.createClientContext(WebSocketExtension.parse("permessage-deflate; client_max_window_bits=10"));
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+        Assert.assertNull(handshake.createClientContext(WebSocketExtension.parse("x-webkit-deflate-frame")));
+    }
+
+    @Test
+    public void testRfcExample() throws IOException {
+        //the compressed 'Hello' from section 7.2.3.1 of RFC 7692
+        final PerMessageDeflate context = new PerMessageDeflateHandshake().createServerContext(WebSocketExtension.parse("permessage-deflate"));
+        final byte[] compressed = {(byte) 0xf2, 0x48, (byte) 0xcd, (byte) 0xc9, (byte) 0xc9, 0x07, 0x00};
+        Assert.assertEquals("Hello", new String(decompress(context, compressed), UTF_8));
+        //the same message again, which uses the context of the first message
+        final byte[] shared = {(byte) 0xf2, 0x00, 0x11, 0x00, 0x00};
+        Assert.assertEquals("Hello", new String(decompress(context, shared), UTF_8));
+        context.close();
+    }
+
+    @Test
+    public void testRoundTrip() throws IOException {
+        final PerMessageDeflateHandshake handshake = new PerMessageDeflateHandshake();
+        final PerMessageDeflate client = handshake.createClientContext(WebSocketExtension.parse("permessage-deflate"));
+        final PerMessageDeflate server = handshake.createServerContext(WebSocketExtension.parse("permessage-deflate"));
+
+        final byte[] message = json(100).getBytes(UTF_8);
+        final byte[] first = compress(client, message);
+        Assert.assertArrayEquals(message, decompress(server, first));
+        //context takeover means that the second copy of the message is much smaller
+        final byte[] second = compress(client, message);
+        Assert.assertTrue(second.length < first.length / 2);
+        Assert.assertArrayEquals(message, decompress(server, second));
+        Assert.assertArrayEquals(new byte[0], decompress(server, compress(client, new byte[0])));
+
+        Assert.assertEquals(3, handshake.getCompressedMessages());
+        Assert.assertEquals(message.length * 2, handshake.getUncompressedBytes());
+        client.close();
+        server.close();
+        Assert.assertEquals(0, handshake.getDeflatersInUse());
+        Assert.assertEquals(0, handshake.getInflatersInUse());
+    }
+
+    @Test
+    public void testNoContextTakeover() throws IOException {
+        final PerMessageDeflateHandshake handshake = new PerMessageDeflateHandshake();
+        final PerMessageDeflate client = handshake.createClientContext(WebSocketExtension.parse("permessage-deflate; client_no_context_takeover; server_no_context_takeover"));
+        final PerMessageDeflate server = handshake.createServerContext(WebSocketExtension.parse("permessage-deflate; client_no_context_takeover; server_no_context_takeover"));
+        final byte[] message = json(10).getBytes(UTF_8);
+        final byte[] first = compress(client, message);
+        Assert.assertArrayEquals(first, compress(client, message));
+        Assert.assertArrayEquals(message, decompress(server, first));
+        Assert.assertArrayEquals(message, decompress(server, first));
+        //nothing is held by the connections between messages
+        Assert.assertEquals(0, handshake.getDeflatersInUse());
+        Assert.assertEquals(0, handshake.getInflatersInUse());
+    }
+
+    @Test
+    public void testMemoryLimit() throws IOException {
+        final PerMessageDeflateHandshake handshake = new PerMessageDeflateHandshake(Deflater.DEFAULT_COMPRESSION, false, false, 0, DeflaterPool.DEFLATER_MEMORY);
+        final PerMessageDeflate first = handshake.createServerContext(WebSocketExtension.parse("permessage-deflate"));
+        final PerMessageDeflate second = handshake.createServerContext(WebSocketExtension.parse("permessage-deflate"));
+        final PerMessageDeflate.Compressor compressor = first.createCompressor();
+        Assert.assertNotNull(compressor);
+        //only one message can be compressed at a time on a connection
+        Assert.assertNull(first.createCompressor());
+        Assert.assertNull(second.createCompressor());
+        compressor.finish();
+        compressor.getOutput().position(compressor.getOutput().limit());
+        compressor.release();
+        //the first connection keeps its deflater for context takeover
+        Assert.assertNull(second.createCompressor());
+        first.close();
+        final PerMessageDeflate.Compressor secondCompressor = second.createCompressor();
+        Assert.assertNotNull(secondCompressor);
+        secondCompressor.release();
+        second.close();
+        Assert.assertEquals(3, handshake.getUncompressedMessages());
+        Assert.assertEquals(0, handshake.getDeflatersInUse());
+    }
+
+    /**
+     * Compares the size and the cost of compressing JSON messages, with and without context takeover.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkJsonMessages() throws IOException {
+        final byte[][] messages = new byte[100][];
+        for (int i = 0; i < messages.length; ++i) {
+            messages[i] = json(1 + i % 20).getBytes(UTF_8);
+        }
+        for (String parameters : new String[]{"permessage-deflate", "permessage-deflate; server_no_context_takeover"}) {
+            final PerMessageDeflateHandshake handshake = new PerMessageDeflateHandshake();
+            final PerMessageDeflate server = handshake.createServerContext(WebSocketExtension.parse(parameters));
+            final PerMessageDeflate client = handshake.createClientContext(WebSocketExtension.parse(parameters));
+            for (int warmup = 0; warmup < 200; ++warmup) {
+                for (byte[] message : messages) {
+                    decompress(client, compress(server, message));
+                }
+            }
+            final long start = System.nanoTime();
+            final long compressedBefore = handshake.getCompressedBytes();
+            final long uncompressedBefore = handshake.getUncompressedBytes();
+            final int iterations = 1000;
+            for (int i = 0; i < iterations; ++i) {
+                for (byte[] message : messages) {
+                    decompress(client, compress(server, message));
+                }
+            }
+            final long time = System.nanoTime() - start;
+            final long uncompressed = handshake.getUncompressedBytes() - uncompressedBefore;
+            final long compressed = handshake.getCompressedBytes() - compressedBefore;
+            System.out.println(parameters + ": ratio " + ((double) compressed / uncompressed) + ", " + (uncompressed * 1000.0 / time) + " MB/s, " + (time / (iterations * messages.length)) + "ns per message");
+            server.close();
+            client.close();
+        }
+    }
+
+    private static byte[] compress(final PerMessageDeflate context, final byte[] message) {
+        final PerMessageDeflate.Compressor compressor = context.createCompressor();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteBuffer src = ByteBuffer.wrap(message);
+        while (src.hasRemaining()) {
+            compressor.compress(src);
+            drain(compressor.getOutput(), out);
+        }
+        compressor.finish();
+        drain(compressor.getOutput(), out);
+        compressor.release();
+        return out.toByteArray();
+    }
+
+    private static void drain(final ByteBuffer buffer, final ByteArrayOutputStream out) {
+        while (buffer.hasRemaining()) {
+            out.write(buffer.get());
+        }
+    }
+
+    private static byte[] decompress(final PerMessageDeflate context, final byte[] data) throws IOException {
+        final PerMessageDeflate.Decompressor decompressor = context.createDecompressor();
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ByteBuffer src = ByteBuffer.wrap(data);
+        //a small direct buffer, so the output is produced in several parts
+        final ByteBuffer dst = ByteBuffer.allocateDirect(7);
+        for (; ; ) {
+            dst.clear();
+            final int count = decompressor.inflate(dst);
+            dst.flip();
+            drain(dst, out);
+            if (count > 0 || !decompressor.needsInput()) {
+                continue;
+            }
+            if (decompressor.isFinished()) {
+                break;
+            }
+            if (src.hasRemaining()) {
+                final ByteBuffer input = decompressor.getInputBuffer();
+                while (src.hasRemaining() && input.hasRemaining()) {
+                    input.put(src.get());
+                }
+                decompressor.setInput();
+            } else {
+                decompressor.finish();
+            }
+        }
+        decompressor.release();
+        return out.toByteArray();
+    }
+
+    private static String json(final int entries) {
+        final StringBuilder sb = new StringBuilder("{\"items\":[");
+        for (int i = 0; i < entries; ++i) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"id\":").append(i).append(",\"name\":\"item-").append(i).append("\",\"price\":").append(i * 3 % 17).append(".99,\"tags\":[\"new\",\"sale\"],\"available\":").append(i % 2 == 0).append('}');
+        }
+        return sb.append("]}").toString();
+    }
+}
@@ -202,4 +202,7 @@ public interface UndertowServletMessages {
 
     @Message(id = 10052, value = "Header name was null")
     NullPointerException headerNameWasNull();
+
+    @Message(id = 10053, value = "Interrupted while initializing components of deployment %s")
+    ServletException interruptedInitializingComponents(String deployment);
 }
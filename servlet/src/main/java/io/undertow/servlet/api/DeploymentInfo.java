@@ -93,6 +93,9 @@ public class DeploymentInfo implements Cloneable {
     private MetricsCollector metricsCollector = null;
     private SessionConfigWrapper sessionConfigWrapper = null;
     private boolean eagerFilterInit = false;
+    private int welcomeFileCacheSize = 0;
+    private int parallelInitThreads = 0;
+    private File deploymentIndexFile;
     private boolean disableCachingForSecuredPages = true;
     private boolean escapeErrorMessage = true;
     private ExceptionHandler exceptionHandler;
@@ -434,6 +437,61 @@ public class DeploymentInfo implements Cloneable {
         return this;
     }
 
+    public File getDeploymentIndexFile() {
+        return deploymentIndexFile;
+    }
+
+    /**
+     * Sets the file that the {@link io.undertow.servlet.util.DeploymentIndex} of this deployment is stored in. If the
+     * class path has not changed since the index was written the servlet extensions are loaded from the index instead
+     * of being discovered again.
+     *
+     * @param deploymentIndexFile The index file, or <code>null</code> to always discover the extensions
+     * @return this
+     */
+    public DeploymentInfo setDeploymentIndexFile(File deploymentIndexFile) {
+        this.deploymentIndexFile = deploymentIndexFile;
+        return this;
+    }
+
+    public int getParallelInitThreads() {
+        return parallelInitThreads;
+    }
+
+    /**
+     * Sets the number of threads that are used to initialize load on startup servlets and eager filters when the
+     * deployment is started. Servlets with the same load on startup number are initialized in parallel, while servlets
+     * with a lower number are always initialized first. If this is not larger than 1 components are initialized one
+     * at a time by the thread that starts the deployment.
+     *
+     * @param parallelInitThreads The maximum number of components that are initialized at the same time
+     * @return this
+     */
+    public DeploymentInfo setParallelInitThreads(int parallelInitThreads) {
+        this.parallelInitThreads = parallelInitThreads;
+        return this;
+    }
+
+    public int getWelcomeFileCacheSize() {
+        return welcomeFileCacheSize;
+    }
+
+    /**
+     * Sets the maximum number of resolved welcome file matches that are cached. If this is 0, which is the default,
+     * the welcome files are looked up on every request for a directory.
+     * <p/>
+     * If the resource manager supports change listeners the cache registers a listener to clear itself when resources
+     * change. For a {@link io.undertow.server.handlers.resource.FileResourceManager} this starts a file system watcher.
+     * Otherwise cached matches are kept until the servlet path matches are invalidated.
+     *
+     * @param welcomeFileCacheSize The maximum number of cached welcome file matches
+     * @return this
+     */
+    public DeploymentInfo setWelcomeFileCacheSize(int welcomeFileCacheSize) {
+        this.welcomeFileCacheSize = welcomeFileCacheSize;
+        return this;
+    }
+
     public DeploymentInfo addInitParameter(final String name, final String value) {
         initParameters.put(name, value);
         return this;
@@ -1119,6 +1177,9 @@ public class DeploymentInfo implements Cloneable {
         info.metricsCollector = metricsCollector;
         info.sessionConfigWrapper = sessionConfigWrapper;
         info.eagerFilterInit = eagerFilterInit;
+        info.welcomeFileCacheSize = welcomeFileCacheSize;
+        info.parallelInitThreads = parallelInitThreads;
+        info.deploymentIndexFile = deploymentIndexFile;
         info.disableCachingForSecuredPages = disableCachingForSecuredPages;
         info.exceptionHandler = exceptionHandler;
         info.escapeErrorMessage = escapeErrorMessage;
@@ -227,5 +227,6 @@ public class DeploymentImpl implements Deployment {
             servletContext.destroy();
         }
         servletContext = null;
+        servletPaths.destroy();
     }
 }
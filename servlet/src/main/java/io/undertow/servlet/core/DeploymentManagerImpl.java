@@ -82,6 +82,7 @@ import io.undertow.servlet.handlers.security.ServletSecurityConstraintHandler;
 import io.undertow.servlet.predicate.DispatcherTypePredicate;
 import io.undertow.servlet.spec.ServletContextImpl;
 import io.undertow.servlet.spec.SessionCookieConfigImpl;
+import io.undertow.servlet.util.DeploymentIndex;
 import io.undertow.util.MimeMappings;
 
 import javax.servlet.ServletContainerInitializer;
@@ -100,6 +101,14 @@ import java.util.Map;
 import java.util.ServiceLoader;
 import java.util.Set;
 import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import static javax.servlet.http.HttpServletRequest.BASIC_AUTH;
 import static javax.servlet.http.HttpServletRequest.CLIENT_CERT_AUTH;
@@ -232,11 +241,49 @@ public class DeploymentManagerImpl implements DeploymentManager {
     }
 
     private void handleExtensions(final DeploymentInfo deploymentInfo, final ServletContextImpl servletContext) {
+        final File indexFile = deploymentInfo.getDeploymentIndexFile();
+        final long fingerprint = indexFile == null ? 0 : DeploymentIndex.fingerprint(deploymentInfo.getClassLoader());
+        List<ServletExtension> extensions = null;
+        List<ServletExtension> containerExtensions = null;
+        if (fingerprint != 0) {
+            final DeploymentIndex index = DeploymentIndex.read(indexFile, fingerprint);
+            if (index != null) {
+                try {
+                    extensions = index.createExtensions(deploymentInfo.getClassLoader());
+                    containerExtensions = index.createContainerExtensions();
+                } catch (ReflectiveOperationException | RuntimeException e) {
+                    //the index is out of date, discover the extensions again
+                    UndertowServletLogger.ROOT_LOGGER.failedToReadDeploymentIndex(indexFile, e);
+                    extensions = null;
+                }
+            }
+        }
+        if (extensions == null) {
+            extensions = new ArrayList<>();
+            containerExtensions = new ArrayList<>();
+            discoverExtensions(deploymentInfo, extensions, containerExtensions);
+            if (fingerprint != 0) {
+                DeploymentIndex.create(fingerprint, extensions, containerExtensions).write(indexFile);
+            }
+        }
+
+        for (ServletExtension extension : extensions) {
+            extension.handleDeployment(deploymentInfo, servletContext);
+        }
+        for (ServletExtension extension : containerExtensions) {
+            extension.handleDeployment(deploymentInfo, servletContext);
+        }
+        for(ServletExtension extension : deploymentInfo.getServletExtensions()) {
+            extension.handleDeployment(deploymentInfo, servletContext);
+        }
+    }
+
+    private void discoverExtensions(final DeploymentInfo deploymentInfo, final List<ServletExtension> extensions, final List<ServletExtension> containerExtensions) {
         Set<Class<?>> loadedExtensions = new HashSet<>();
 
         for (ServletExtension extension : ServiceLoader.load(ServletExtension.class, deploymentInfo.getClassLoader())) {
             loadedExtensions.add(extension.getClass());
-            extension.handleDeployment(deploymentInfo, servletContext);
+            extensions.add(extension);
         }
 
         if (!ServletExtension.class.getClassLoader().equals(deploymentInfo.getClassLoader())) {
@@ -246,13 +293,10 @@ public class DeploymentManagerImpl implements DeploymentManager {
                 // and thus instantiated twice, but the handleDeployment() is executed only once.
 
                 if (!loadedExtensions.contains(extension.getClass())) {
-                    extension.handleDeployment(deploymentInfo, servletContext);
+                    containerExtensions.add(extension);
                 }
             }
         }
-        for(ServletExtension extension : deploymentInfo.getServletExtensions()) {
-            extension.handleDeployment(deploymentInfo, servletContext);
-        }
     }
 
     /**
@@ -499,15 +543,36 @@ public class DeploymentManagerImpl implements DeploymentManager {
                     list.add(servlet);
                 }
             }
-            for(Map.Entry<Integer, List<ManagedServlet>> load : loadOnStartup.entrySet()) {
-                for(ManagedServlet servlet : load.getValue()) {
-                    servlet.createServlet();
+            final ExecutorService initExecutor = createInitExecutor();
+            try {
+                for (Map.Entry<Integer, List<ManagedServlet>> load : loadOnStartup.entrySet()) {
+                    final List<ComponentInit> servlets = new ArrayList<>();
+                    for (final ManagedServlet servlet : load.getValue()) {
+                        servlets.add(new ComponentInit("servlet", servlet.getServletInfo().getName()) {
+                            @Override
+                            void create() throws ServletException {
+                                servlet.createServlet();
+                            }
+                        });
+                    }
+                    initComponents(initExecutor, servlets);
                 }
-            }
 
-            if (deployment.getDeploymentInfo().isEagerFilterInit()){
-                for(ManagedFilter filter: deployment.getFilters().getFilters().values()) {
-                    filter.createFilter();
+                if (deployment.getDeploymentInfo().isEagerFilterInit()) {
+                    final List<ComponentInit> filters = new ArrayList<>();
+                    for (final ManagedFilter filter : deployment.getFilters().getFilters().values()) {
+                        filters.add(new ComponentInit("filter", filter.getFilterInfo().getName()) {
+                            @Override
+                            void create() throws ServletException {
+                                filter.createFilter();
+                            }
+                        });
+                    }
+                    initComponents(initExecutor, filters);
+                }
+            } finally {
+                if (initExecutor != null) {
+                    initExecutor.shutdown();
                 }
             }
 
@@ -518,6 +583,103 @@ public class DeploymentManagerImpl implements DeploymentManager {
         }
     }
 
+    /**
+     * @return The executor that initializes components in parallel, or <code>null</code> if components are initialized
+     *         by the thread that starts the deployment
+     */
+    private ExecutorService createInitExecutor() {
+        final int threads = deployment.getDeploymentInfo().getParallelInitThreads();
+        if (threads <= 1) {
+            return null;
+        }
+        final String deploymentName = deployment.getDeploymentInfo().getDeploymentName();
+        return Executors.newFixedThreadPool(threads, new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                final Thread thread = new Thread(r, deploymentName + " init " + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    /**
+     * Initializes the given components, in parallel if an executor is available. This method does not return until
+     * all components have been initialized, and then throws the first failure if any component failed.
+     */
+    private void initComponents(final ExecutorService executor, final List<ComponentInit> components) throws ServletException {
+        if (executor == null || components.size() == 1) {
+            for (ComponentInit component : components) {
+                component.init();
+            }
+            return;
+        }
+        final List<Future<Void>> futures = new ArrayList<>(components.size());
+        for (final ComponentInit component : components) {
+            futures.add(executor.submit(new Callable<Void>() {
+                @Override
+                public Void call() throws Exception {
+                    final ThreadSetupAction.Handle handle = deployment.getThreadSetupAction().setup(null);
+                    try {
+                        component.init();
+                    } finally {
+                        handle.tearDown();
+                    }
+                    return null;
+                }
+            }));
+        }
+        Throwable failure = null;
+        for (Future<Void> future : futures) {
+            try {
+                future.get();
+            } catch (InterruptedException e) {
+                for (Future<Void> f : futures) {
+                    f.cancel(true);
+                }
+                Thread.currentThread().interrupt();
+                throw UndertowServletMessages.MESSAGES.interruptedInitializingComponents(deployment.getDeploymentInfo().getDeploymentName());
+            } catch (ExecutionException e) {
+                if (failure == null) {
+                    failure = e.getCause();
+                }
+            }
+        }
+        if (failure instanceof ServletException) {
+            throw (ServletException) failure;
+        } else if (failure instanceof RuntimeException) {
+            throw (RuntimeException) failure;
+        } else if (failure instanceof Error) {
+            throw (Error) failure;
+        } else if (failure != null) {
+            throw new ServletException(failure);
+        }
+    }
+
+    /**
+     * A servlet or filter that is initialized when the deployment is started
+     */
+    private abstract static class ComponentInit {
+
+        private final String type;
+        private final String name;
+
+        ComponentInit(final String type, final String name) {
+            this.type = type;
+            this.name = name;
+        }
+
+        void init() throws ServletException {
+            final long start = System.nanoTime();
+            create();
+            UndertowServletLogger.ROOT_LOGGER.debugf("Initialized %s %s in %sms", type, name, TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start));
+        }
+
+        abstract void create() throws ServletException;
+    }
+
     @Override
     public void stop() throws ServletException {
         ThreadSetupAction.Handle handle = deployment.getThreadSetupAction().setup(null);
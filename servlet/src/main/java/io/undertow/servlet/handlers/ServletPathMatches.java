@@ -20,7 +20,10 @@ package io.undertow.servlet.handlers;
 
 import io.undertow.server.HandlerWrapper;
 import io.undertow.server.HttpHandler;
+import io.undertow.server.handlers.cache.LRUCache;
 import io.undertow.server.handlers.resource.Resource;
+import io.undertow.server.handlers.resource.ResourceChangeEvent;
+import io.undertow.server.handlers.resource.ResourceChangeListener;
 import io.undertow.server.handlers.resource.ResourceManager;
 import io.undertow.servlet.UndertowServletMessages;
 import io.undertow.servlet.api.Deployment;
@@ -36,35 +39,71 @@ import io.undertow.servlet.handlers.security.ServletSecurityRoleHandler;
 import javax.servlet.DispatcherType;
 import java.io.IOException;
 import java.util.ArrayList;
+import java.util.Collection;
 import java.util.EnumMap;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.atomic.AtomicLongFieldUpdater;
 
 import static io.undertow.servlet.handlers.ServletPathMatch.Type.REDIRECT;
 import static io.undertow.servlet.handlers.ServletPathMatch.Type.REWRITE;
 
 /**
  * Facade around {@link ServletPathMatchesData}. This facade is responsible for re-generating the matches if anything changes.
+ * <p/>
+ * Resolving a path that may map to a welcome file requires a resource lookup for the path and for every welcome page,
+ * so if {@link io.undertow.servlet.api.DeploymentInfo#setWelcomeFileCacheSize(int)} is set the resolved matches are
+ * cached. The cache is cleared when the matches are invalidated, and when the resource manager reports that resources
+ * have changed.
  *
  * @author Stuart Douglas
  */
 public class ServletPathMatches {
 
     public static final String DEFAULT_SERVLET_NAME = "default";
+
+    private static final AtomicLongFieldUpdater<ServletPathMatches> welcomeFileCacheHitsUpdater = AtomicLongFieldUpdater.newUpdater(ServletPathMatches.class, "welcomeFileCacheHits");
+    private static final AtomicLongFieldUpdater<ServletPathMatches> welcomeFileCacheMissesUpdater = AtomicLongFieldUpdater.newUpdater(ServletPathMatches.class, "welcomeFileCacheMisses");
+
     private final Deployment deployment;
 
     private final String[] welcomePages;
     private final ResourceManager resourceManager;
+    private final int welcomeFileCacheSize;
 
     private volatile ServletPathMatchesData data;
 
+    /**
+     * The resolved matches of paths that required a welcome file match, or <code>null</code> if caching is disabled
+     */
+    private volatile LRUCache<String, ServletPathMatch> welcomeFileCache;
+
+    private final ResourceChangeListener changeListener = new ResourceChangeListener() {
+        @Override
+        public void handleChanges(Collection<ResourceChangeEvent> changes) {
+            clearWelcomeFileCache();
+        }
+    };
+    private boolean changeListenerRegistered;
+
+    @SuppressWarnings("unused")
+    private volatile long welcomeFileCacheHits;
+    @SuppressWarnings("unused")
+    private volatile long welcomeFileCacheMisses;
+
     public ServletPathMatches(final Deployment deployment) {
         this.deployment = deployment;
         this.welcomePages = deployment.getDeploymentInfo().getWelcomePages().toArray(new String[deployment.getDeploymentInfo().getWelcomePages().size()]);
         this.resourceManager = deployment.getDeploymentInfo().getResourceManager();
+        this.welcomeFileCacheSize = deployment.getDeploymentInfo().getWelcomeFileCacheSize();
+        clearWelcomeFileCache();
+        if (welcomeFileCache != null && resourceManager.isResourceChangeListenerSupported()) {
+            changeListenerRegistered = true;
+            resourceManager.registerResourceChangeListener(changeListener);
+        }
     }
 
     public ServletChain getServletHandlerByName(final String name) {
@@ -72,10 +111,28 @@ public class ServletPathMatches {
     }
 
     public ServletPathMatch getServletHandlerByPath(final String path) {
+        //the cache is read before the match is computed, so if the matches are invalidated in the meantime the result
+        //is added to the discarded cache
+        final LRUCache<String, ServletPathMatch> cache = this.welcomeFileCache;
         ServletPathMatch match = getData().getServletHandlerByPath(path);
         if (!match.isRequiredWelcomeFileMatch()) {
             return match;
         }
+        if (cache == null) {
+            return findWelcomeFileMatch(match);
+        }
+        ServletPathMatch result = cache.get(path);
+        if (result != null) {
+            welcomeFileCacheHitsUpdater.incrementAndGet(this);
+            return result;
+        }
+        welcomeFileCacheMissesUpdater.incrementAndGet(this);
+        result = findWelcomeFileMatch(match);
+        cache.add(path, result);
+        return result;
+    }
+
+    private ServletPathMatch findWelcomeFileMatch(final ServletPathMatch match) {
         try {
 
             String remaining = match.getRemaining() == null ? match.getMatched() : match.getRemaining();
@@ -110,6 +167,38 @@ public class ServletPathMatches {
 
     public void invalidate() {
         this.data = null;
+        clearWelcomeFileCache();
+    }
+
+    private void clearWelcomeFileCache() {
+        if (welcomeFileCacheSize > 0 && welcomePages.length > 0) {
+            this.welcomeFileCache = new LRUCache<>(welcomeFileCacheSize, -1);
+        }
+    }
+
+    /**
+     * Stops listening for resource changes, called when the deployment is destroyed.
+     */
+    public synchronized void destroy() {
+        if (changeListenerRegistered) {
+            changeListenerRegistered = false;
+            resourceManager.removeResourceChangeListener(changeListener);
+        }
+        welcomeFileCache = null;
+    }
+
+    /**
+     * @return The number of welcome file matches that were served from the cache
+     */
+    public long getWelcomeFileCacheHits() {
+        return welcomeFileCacheHits;
+    }
+
+    /**
+     * @return The number of welcome file matches that had to be resolved
+     */
+    public long getWelcomeFileCacheMisses() {
+        return welcomeFileCacheMisses;
     }
 
     private ServletPathMatchesData getData() {
@@ -19,6 +19,7 @@
 package io.undertow.servlet.handlers;
 
 import io.undertow.UndertowMessages;
+import io.undertow.util.PathTrie;
 
 import java.util.HashMap;
 import java.util.Map;
@@ -33,12 +34,12 @@ class ServletPathMatchesData {
 
     private final Map<String, ServletPathMatch> exactPathMatches;
 
-    private final Map<String, PathMatch> prefixMatches;
+    private final PathTrie<PathMatch> prefixMatches;
 
     private final Map<String, ServletChain> nameMatches;
 
     public ServletPathMatchesData(final Map<String, ServletChain> exactPathMatches, final Map<String, PathMatch> prefixMatches, final Map<String, ServletChain> nameMatches) {
-        this.prefixMatches = prefixMatches;
+        this.prefixMatches = PathTrie.create(prefixMatches);
         this.nameMatches = nameMatches;
         Map<String, ServletPathMatch> newExactPathMatches = new HashMap<>();
         for (Map.Entry<String, ServletChain> entry : exactPathMatches.entrySet()) {
@@ -61,26 +62,19 @@ class ServletPathMatchesData {
         if (exact != null) {
             return exact;
         }
-        PathMatch match = prefixMatches.get(path);
-        if (match != null) {
-            return handleMatch(path, match, path.lastIndexOf('.'));
+        final PathTrie.Entry<PathMatch> match = prefixMatches.match(path);
+        if (match == null) {
+            //this should never happen
+            //as the default servlet is aways registered under /*
+            throw UndertowMessages.MESSAGES.servletPathMatchFailed();
         }
-        int extensionPos = -1;
-        for (int i = path.length() - 1; i >= 0; --i) {
-            final char c = path.charAt(i);
-             if (c == '/') {
-                final String part = path.substring(0, i);
-                match = prefixMatches.get(part);
-                if (match != null) {
-                    return handleMatch(path, match, extensionPos);
-                }
-            } else if (c == '.' && extensionPos == -1) {
-                    extensionPos = i;
-            }
+        //the extension is taken from the part of the path after the prefix
+        final int prefixLength = match.getPath().length();
+        int extensionPos = path.lastIndexOf('.');
+        if (prefixLength != path.length() && extensionPos < prefixLength) {
+            extensionPos = -1;
         }
-        //this should never happen
-        //as the default servlet is aways registered under /*
-        throw UndertowMessages.MESSAGES.servletPathMatchFailed();
+        return handleMatch(path, match.getValue(), extensionPos);
     }
 
     private ServletPathMatch handleMatch(final String path, final PathMatch match, final int extensionPos) {
@@ -40,6 +40,8 @@ public class ServletPrintWriter {
 
     private static final char[] EMPTY_CHAR = {};
 
+    private static final int CHUNK_SIZE = 1024;
+
     private final ServletOutputStreamImpl outputStream;
     private final String charset;
     private CharsetEncoder charsetEncoder;
@@ -47,14 +49,27 @@ public class ServletPrintWriter {
     private boolean closed = false;
     private char[] underflow;
 
+    /**
+     * If the charset is UTF-8, otherwise it is ISO-8859-1 if there is no encoder
+     */
+    private final boolean utf8;
+    /**
+     * A high surrogate at the end of the last write, that is encoded together with the next character
+     */
+    private char highSurrogate;
+    /**
+     * Used to encode strings in chunks, so they do not have to be copied as a whole
+     */
+    private char[] chunk;
+
     public ServletPrintWriter(final ServletOutputStreamImpl outputStream, final String charset) throws UnsupportedEncodingException {
         this.charset = charset;
         this.outputStream = outputStream;
 
-        //for some known charset we get optimistic and hope that
-        //only ascii will be output
+        //for some known charsets we encode straight into the buffer of the stream
         //in this case we can avoid creating the encoder altogether
-        if (!charset.equalsIgnoreCase("utf-8") &&
+        this.utf8 = charset.equalsIgnoreCase("utf-8");
+        if (!utf8 &&
                 !charset.equalsIgnoreCase("iso-8859-1")) {
             createEncoder();
         }
@@ -93,7 +108,13 @@ public class ServletPrintWriter {
                 buffer = CharBuffer.wrap(underflow);
                 underflow = null;
             }
-            if (charsetEncoder != null) {
+            if (charsetEncoder == null) {
+                if (highSurrogate != 0) {
+                    //a high surrogate without a low surrogate is replaced in the same way as the encoder would
+                    highSurrogate = 0;
+                    writeDirect(new char[]{'?'}, 0, 1);
+                }
+            } else {
                 do {
                     ByteBuffer out = outputStream.underlyingBuffer();
                     if (out == null) {
@@ -125,6 +146,22 @@ public class ServletPrintWriter {
     }
 
     public void write(final CharBuffer input) {
+        if (charsetEncoder == null) {
+            if (input.hasArray()) {
+                writeDirect(input.array(), input.arrayOffset() + input.position(), input.remaining());
+                input.position(input.limit());
+            } else {
+                final char[] chunk = chunk();
+                while (input.hasRemaining()) {
+                    final int length = Math.min(chunk.length, input.remaining());
+                    input.get(chunk, 0, length);
+                    if (!writeDirect(chunk, 0, length)) {
+                        return;
+                    }
+                }
+            }
+            return;
+        }
         ByteBuffer buffer = outputStream.underlyingBuffer();
         if (buffer == null) {
             //stream has been closed
@@ -140,9 +177,6 @@ public class ServletPrintWriter {
                 }
             }
 
-            if (charsetEncoder == null) {
-                createEncoder();
-            }
             final CharBuffer cb;
             if (underflow == null) {
                 cb = input;
@@ -196,46 +230,9 @@ public class ServletPrintWriter {
     }
 
     public void write(final char[] buf, final int off, final int len) {
-        if(charsetEncoder == null) {
-            try {
-                ByteBuffer buffer = outputStream.underlyingBuffer();
-                if(buffer == null) {
-                    //already closed
-                    error = true;
-                    return;
-                }
-                //fast path, basically we are hoping this is ascii only
-                int remaining = buffer.remaining();
-                boolean ok = true;
-                //so we have a pure ascii buffer, just write it out and skip all the encoder cost
-
-                int end = off + len;
-                int i = off;
-                int fpos = i + remaining;
-                for (; i < end; ++i) {
-                    if (i == fpos) {
-                        outputStream.flushInternal();
-                        fpos = i + buffer.remaining();
-                    }
-                    char c = buf[i];
-                    if (c > 127) {
-                        ok = false;
-                        break;
-                    }
-                    buffer.put((byte) c);
-                }
-                outputStream.updateWritten(remaining - buffer.remaining());
-                if (ok) {
-                    return;
-                }
-                final CharBuffer cb = CharBuffer.wrap(buf, i, len - (i - off));
-                write(cb);
-                return;
-            } catch (IOException e) {
-                error = false;
-                return;
-            }
-
+        if (charsetEncoder == null) {
+            writeDirect(buf, off, len);
+            return;
         }
         final CharBuffer cb = CharBuffer.wrap(buf, off, len);
         write(cb);
@@ -246,50 +243,125 @@ public class ServletPrintWriter {
     }
 
     public void write(final String s, final int off, final int len) {
-        if(charsetEncoder == null) {
-            try {
-                ByteBuffer buffer = outputStream.underlyingBuffer();
-                if(buffer == null) {
-                    //already closed
-                    error = true;
+        if (charsetEncoder == null) {
+            final char[] chunk = chunk();
+            final int end = off + len;
+            for (int pos = off; pos < end; pos += chunk.length) {
+                final int length = Math.min(chunk.length, end - pos);
+                s.getChars(pos, pos + length, chunk, 0);
+                if (!writeDirect(chunk, 0, length)) {
                     return;
                 }
-                //fast path, basically we are hoping this is ascii only
-                int remaining = buffer.remaining();
-                boolean ok = true;
-                //so we have a pure ascii buffer, just write it out and skip all the encoder cost
-
-                int end = off + len;
-                int i = off;
-                int fpos = i + remaining;
-                for (; i < end; ++i) {
-                    if (i == fpos) {
-                        outputStream.flushInternal();
-                        fpos = i + buffer.remaining();
+            }
+            return;
+        }
+        final CharBuffer cb = CharBuffer.wrap(s, off, off + len);
+        write(cb);
+    }
+
+    private char[] chunk() {
+        if (chunk == null) {
+            chunk = new char[CHUNK_SIZE];
+        }
+        return chunk;
+    }
+
+    /**
+     * Encodes the characters as UTF-8 or ISO-8859-1 straight into the buffer of the output stream. Malformed and
+     * unmappable characters are replaced with a question mark, the same as they are by the encoder.
+     * <p/>
+     * The buffer is flushed whenever it does not have room for a complete code point, so a code point is never split
+     * between buffers. A surrogate pair that is split between writes is encoded by the next write.
+     *
+     * @return <code>false</code> if no more data can be written to the stream
+     */
+    private boolean writeDirect(final char[] buf, final int off, final int len) {
+        try {
+            final ByteBuffer buffer = outputStream.underlyingBuffer();
+            if (buffer == null) {
+                //stream has been closed
+                error = true;
+                return false;
+            }
+            final int end = off + len;
+            int i = off;
+            int start = buffer.position();
+            while (i < end) {
+                if (buffer.remaining() < 4) {
+                    outputStream.updateWritten(buffer.position() - start);
+                    if (outputStream.underlyingBuffer() == null) {
+                        //the content length has been reached
+                        return false;
+                    }
+                    outputStream.flushInternal();
+                    if (buffer.remaining() < 4) {
+                        error = true;
+                        return false;
                     }
-                    char c = s.charAt(i);
-                    if (c > 127) {
-                        ok = false;
-                        break;
+                    start = buffer.position();
+                }
+                if (highSurrogate != 0) {
+                    final char high = highSurrogate;
+                    highSurrogate = 0;
+                    if (Character.isLowSurrogate(buf[i])) {
+                        encodeCodePoint(buffer, Character.toCodePoint(high, buf[i++]));
+                    } else {
+                        buffer.put((byte) '?');
                     }
+                    continue;
+                }
+                //ascii fast path, that only has to check a single character at a time
+                final int asciiEnd = i + Math.min(end - i, buffer.remaining());
+                char c;
+                while (i < asciiEnd && (c = buf[i]) < 0x80) {
                     buffer.put((byte) c);
+                    ++i;
                 }
-                outputStream.updateWritten(remaining - buffer.remaining());
-                if (ok) {
-                    return;
+                if (i == asciiEnd || buffer.remaining() < 4) {
+                    continue;
+                }
+                c = buf[i++];
+                if (Character.isHighSurrogate(c)) {
+                    if (i == end) {
+                        highSurrogate = c;
+                    } else if (Character.isLowSurrogate(buf[i])) {
+                        encodeCodePoint(buffer, Character.toCodePoint(c, buf[i++]));
+                    } else {
+                        buffer.put((byte) '?');
+                    }
+                } else if (Character.isLowSurrogate(c)) {
+                    buffer.put((byte) '?');
+                } else {
+                    encodeCodePoint(buffer, c);
                 }
-                //wrap(String, off, len) acts wrong in the presence of multi byte characters
-                final CharBuffer cb = CharBuffer.wrap(s.toCharArray(), i, len - (i - off));
-                write(cb);
-                return;
-            } catch (IOException e) {
-                error = false;
-                return;
             }
+            outputStream.updateWritten(buffer.position() - start);
+            return true;
+        } catch (IOException e) {
+            error = true;
+            return false;
+        }
+    }
 
+    /**
+     * Encodes a non ascii code point, the buffer must have room for at least 4 bytes
+     */
+    private void encodeCodePoint(final ByteBuffer buffer, final int codePoint) {
+        if (!utf8) {
+            buffer.put(codePoint <= 0xFF ? (byte) codePoint : (byte) '?');
+        } else if (codePoint < 0x800) {
+            buffer.put((byte) (0xC0 | (codePoint >> 6)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+        } else if (codePoint < 0x10000) {
+            buffer.put((byte) (0xE0 | (codePoint >> 12)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
+        } else {
+            buffer.put((byte) (0xF0 | (codePoint >> 18)));
+            buffer.put((byte) (0x80 | ((codePoint >> 12) & 0x3F)));
+            buffer.put((byte) (0x80 | ((codePoint >> 6) & 0x3F)));
+            buffer.put((byte) (0x80 | (codePoint & 0x3F)));
         }
-        final CharBuffer cb = CharBuffer.wrap(s, off, off + len);
-        write(cb);
     }
 
     public void write(final String s) {
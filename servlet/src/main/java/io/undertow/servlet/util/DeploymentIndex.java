@@ -0,0 +1,277 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.servlet.util;
+
+import io.undertow.servlet.ServletExtension;
+import io.undertow.servlet.UndertowServletLogger;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * A compact summary of the {@link ServletExtension}s that are discovered using a {@link java.util.ServiceLoader} when a
+ * deployment is deployed, that can be stored on disk so later deployments of the same class path do not have to
+ * discover them again.
+ * <p/>
+ * An index is keyed by a fingerprint of the class path, and an index with a different fingerprint is ignored. The
+ * fingerprint can only be computed for {@link URLClassLoader}s; for other class loaders no index is used. If an
+ * indexed extension can no longer be loaded the extensions are discovered again.
+ *
+ * @author agent
+ */
+public final class DeploymentIndex {
+
+    private static final int MAGIC = 0x55544449;
+    private static final int VERSION = 2;
+
+    private static final String SERVICE_FILE = "META-INF/services/" + ServletExtension.class.getName();
+
+    private static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private final long fingerprint;
+    private final List<String> extensions;
+    private final List<String> containerExtensions;
+
+    /**
+     * @param fingerprint         The class path fingerprint
+     * @param extensions          The class names of the extensions loaded from the deployment class loader
+     * @param containerExtensions The class names of the extensions loaded from the container class loader
+     */
+    public DeploymentIndex(final long fingerprint, final List<String> extensions, final List<String> containerExtensions) {
+        this.fingerprint = fingerprint;
+        this.extensions = Collections.unmodifiableList(new ArrayList<>(extensions));
+        this.containerExtensions = Collections.unmodifiableList(new ArrayList<>(containerExtensions));
+    }
+
+    public static DeploymentIndex create(final long fingerprint, final List<ServletExtension> extensions, final List<ServletExtension> containerExtensions) {
+        return new DeploymentIndex(fingerprint, classNames(extensions), classNames(containerExtensions));
+    }
+
+    private static List<String> classNames(final List<?> instances) {
+        final List<String> ret = new ArrayList<>(instances.size());
+        for (Object instance : instances) {
+            ret.add(instance.getClass().getName());
+        }
+        return ret;
+    }
+
+    /**
+     * Computes the fingerprint of the class path of a deployment. The fingerprint covers the URLs of the class loader
+     * and its parents, the size and modification time of every jar, and the content of the
+     * <code>META-INF/services/io.undertow.servlet.ServletExtension</code> file of every directory. This is everything
+     * the {@link java.util.ServiceLoader} lookup that the index replaces reads, so directories are not walked.
+     *
+     * @param classLoader The deployment class loader
+     * @return The fingerprint, or 0 if no fingerprint can be computed for the class loader
+     */
+    public static long fingerprint(final ClassLoader classLoader) {
+        if (!(classLoader instanceof URLClassLoader)) {
+            return 0;
+        }
+        long hash = FNV_OFFSET;
+        final Set<ClassLoader> seen = new HashSet<>();
+        try {
+            hash = fingerprint(hash, classLoader, seen);
+            hash = fingerprint(hash, ServletExtension.class.getClassLoader(), seen);
+        } catch (IOException e) {
+            //a service file cannot be read, so whether the index is up to date cannot be told
+            return 0;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    private static long fingerprint(long hash, final ClassLoader classLoader, final Set<ClassLoader> seen) throws IOException {
+        for (ClassLoader cl = classLoader; cl != null && seen.add(cl); cl = cl.getParent()) {
+            if (!(cl instanceof URLClassLoader)) {
+                continue;
+            }
+            for (URL url : ((URLClassLoader) cl).getURLs()) {
+                hash = hash(hash, url.toExternalForm());
+                if (!"file".equals(url.getProtocol())) {
+                    continue;
+                }
+                try {
+                    final File file = new File(url.toURI());
+                    if (file.isDirectory()) {
+                        hash = hashServiceFile(hash, new File(file, SERVICE_FILE));
+                    } else {
+                        hash = hash(hash, file.length());
+                        hash = hash(hash, file.lastModified());
+                    }
+                } catch (URISyntaxException | IllegalArgumentException e) {
+                    //the URL alone is used
+                }
+            }
+        }
+        return hash;
+    }
+
+    /**
+     * Hashes the content of the service file of a class path directory. The content is hashed rather than the
+     * modification time, as build tools often rewrite resources with their original time stamp.
+     */
+    private static long hashServiceFile(long hash, final File file) throws IOException {
+        if (!file.isFile()) {
+            return hash(hash, -1);
+        }
+        try (InputStream in = new BufferedInputStream(new FileInputStream(file))) {
+            int b;
+            while ((b = in.read()) != -1) {
+                hash = (hash ^ b) * FNV_PRIME;
+            }
+            return hash(hash, file.length());
+        }
+    }
+
+    private static long hash(long hash, final String value) {
+        for (int i = 0; i < value.length(); ++i) {
+            hash = (hash ^ value.charAt(i)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    private static long hash(long hash, final long value) {
+        for (int i = 0; i < 64; i += 8) {
+            hash = (hash ^ ((value >>> i) & 0xFF)) * FNV_PRIME;
+        }
+        return hash;
+    }
+
+    /**
+     * Reads an index from disk.
+     *
+     * @param file        The index file
+     * @param fingerprint The fingerprint of the current class path
+     * @return The index, or <code>null</code> if the file does not exist, cannot be read, or was written for a
+     *         different class path
+     */
+    public static DeploymentIndex read(final File file, final long fingerprint) {
+        if (!file.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION || in.readLong() != fingerprint) {
+                return null;
+            }
+            final List<String> extensions = readNames(in);
+            final List<String> containerExtensions = readNames(in);
+            return new DeploymentIndex(fingerprint, extensions, containerExtensions);
+        } catch (IOException e) {
+            UndertowServletLogger.ROOT_LOGGER.failedToReadDeploymentIndex(file, e);
+            return null;
+        }
+    }
+
+    private static List<String> readNames(final DataInputStream in) throws IOException {
+        final int count = in.readInt();
+        final List<String> ret = new ArrayList<>(count);
+        for (int i = 0; i < count; ++i) {
+            ret.add(in.readUTF());
+        }
+        return ret;
+    }
+
+    /**
+     * Writes the index to disk. The index is written to a temporary file first, so a concurrent reader never sees a
+     * partially written index. Failures are logged, as the index is only an optimisation.
+     *
+     * @param file The index file
+     */
+    public void write(final File file) {
+        final File temp = new File(file.getPath() + ".tmp");
+        try {
+            final File parent = file.getAbsoluteFile().getParentFile();
+            if (parent != null) {
+                parent.mkdirs();
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeLong(fingerprint);
+                writeNames(out, extensions);
+                writeNames(out, containerExtensions);
+            }
+            if (file.exists() && !file.delete()) {
+                throw new IOException(file.getPath());
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException(temp.getPath());
+            }
+        } catch (IOException e) {
+            temp.delete();
+            UndertowServletLogger.ROOT_LOGGER.failedToWriteDeploymentIndex(file, e);
+        }
+    }
+
+    private static void writeNames(final DataOutputStream out, final List<String> names) throws IOException {
+        out.writeInt(names.size());
+        for (String name : names) {
+            out.writeUTF(name);
+        }
+    }
+
+    public long getFingerprint() {
+        return fingerprint;
+    }
+
+    public List<String> getExtensions() {
+        return extensions;
+    }
+
+    public List<String> getContainerExtensions() {
+        return containerExtensions;
+    }
+
+    /**
+     * Creates the indexed extensions that were loaded from the deployment class loader
+     */
+    public List<ServletExtension> createExtensions(final ClassLoader classLoader) throws ReflectiveOperationException {
+        return createExtensions(extensions, classLoader);
+    }
+
+    /**
+     * Creates the indexed extensions that were loaded from the container class loader
+     */
+    public List<ServletExtension> createContainerExtensions() throws ReflectiveOperationException {
+        return createExtensions(containerExtensions, ServletExtension.class.getClassLoader());
+    }
+
+    private static List<ServletExtension> createExtensions(final List<String> names, final ClassLoader classLoader) throws ReflectiveOperationException {
+        final List<ServletExtension> ret = new ArrayList<>(names.size());
+        for (String name : names) {
+            ret.add(Class.forName(name, true, classLoader).asSubclass(ServletExtension.class).newInstance());
+        }
+        return ret;
+    }
+}
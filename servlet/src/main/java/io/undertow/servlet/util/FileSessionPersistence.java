@@ -0,0 +1,165 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.servlet.util;
+
+import io.undertow.server.session.SessionAttributeCodecs;
+import io.undertow.servlet.UndertowServletLogger;
+import io.undertow.servlet.api.SessionPersistenceManager;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.net.URLEncoder;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Session persistence manager that writes sessions to a file in a directory, using {@link SessionAttributeCodecs} to
+ * encode the attributes rather than serializing the whole session.
+ * <p/>
+ * Every session is written with its length, so a session that cannot be read back (for example because a class is no
+ * longer present) is skipped without affecting the others. The codecs used to load the sessions must be the same as the
+ * codecs they were written with.
+ *
+ * @author agent
+ */
+public class FileSessionPersistence implements SessionPersistenceManager {
+
+    private static final int MAGIC = 0x55534553;
+    private static final int VERSION = 1;
+
+    private final File directory;
+    private final SessionAttributeCodecs codecs;
+
+    public FileSessionPersistence(final File directory) {
+        this(directory, SessionAttributeCodecs.defaultCodecs());
+    }
+
+    public FileSessionPersistence(final File directory, final SessionAttributeCodecs codecs) {
+        this.directory = directory;
+        this.codecs = codecs;
+    }
+
+    @Override
+    public void persistSessions(final String deploymentName, final Map<String, PersistentSession> sessionData) {
+        final File file = sessionFile(deploymentName);
+        final File temp = new File(file.getPath() + ".tmp");
+        try {
+            directory.mkdirs();
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(temp)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(sessionData.size());
+                final ByteArrayOutputStream attributes = new ByteArrayOutputStream();
+                final DataOutputStream attributesOut = new DataOutputStream(attributes);
+                for (Map.Entry<String, PersistentSession> sessionEntry : sessionData.entrySet()) {
+                    attributes.reset();
+                    int count = 0;
+                    for (Map.Entry<String, Object> sessionAttribute : sessionEntry.getValue().getSessionData().entrySet()) {
+                        try {
+                            codecs.writeAttribute(sessionAttribute.getKey(), sessionAttribute.getValue(), attributesOut);
+                            count++;
+                        } catch (Exception e) {
+                            UndertowServletLogger.ROOT_LOGGER.failedToPersistSessionAttribute(sessionAttribute.getKey(), sessionAttribute.getValue(), sessionEntry.getKey(), e);
+                        }
+                    }
+                    attributesOut.flush();
+                    out.writeUTF(sessionEntry.getKey());
+                    out.writeLong(sessionEntry.getValue().getExpiration().getTime());
+                    out.writeInt(attributes.size() + 4);
+                    out.writeInt(count);
+                    attributes.writeTo(out);
+                }
+            }
+            if (file.exists() && !file.delete()) {
+                throw new IOException(file.getPath());
+            }
+            if (!temp.renameTo(file)) {
+                throw new IOException(temp.getPath());
+            }
+        } catch (Exception e) {
+            temp.delete();
+            UndertowServletLogger.ROOT_LOGGER.failedToPersistSessions(e);
+        }
+    }
+
+    @Override
+    public Map<String, PersistentSession> loadSessionAttributes(final String deploymentName, final ClassLoader classLoader) {
+        final File file = sessionFile(deploymentName);
+        if (!file.exists()) {
+            return null;
+        }
+        try {
+            final long time = System.currentTimeMillis();
+            final Map<String, PersistentSession> ret = new HashMap<>();
+            try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(file)))) {
+                if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                    return null;
+                }
+                final int sessions = in.readInt();
+                for (int i = 0; i < sessions; ++i) {
+                    final String sessionId = in.readUTF();
+                    final long expiry = in.readLong();
+                    final byte[] data = new byte[in.readInt()];
+                    in.readFully(data);
+                    if (expiry <= time) {
+                        continue;
+                    }
+                    try {
+                        final Map<String, Object> session = codecs.read(new DataInputStream(new ByteArrayInputStream(data)), classLoader);
+                        ret.put(sessionId, new PersistentSession(new Date(expiry), session));
+                    } catch (IOException e) {
+                        UndertowServletLogger.ROOT_LOGGER.failedtoLoadPersistentSessions(e);
+                    }
+                }
+            } catch (EOFException e) {
+                UndertowServletLogger.ROOT_LOGGER.failedtoLoadPersistentSessions(e);
+            }
+            //the sessions are only restored once
+            file.delete();
+            return ret;
+        } catch (Exception e) {
+            UndertowServletLogger.ROOT_LOGGER.failedtoLoadPersistentSessions(e);
+        }
+        return null;
+    }
+
+    @Override
+    public void clear(final String deploymentName) {
+        sessionFile(deploymentName).delete();
+    }
+
+    private File sessionFile(final String deploymentName) {
+        try {
+            return new File(directory, URLEncoder.encode(deploymentName, "UTF-8") + ".sessions");
+        } catch (UnsupportedEncodingException e) {
+            throw new RuntimeException(e);
+        }
+    }
+}
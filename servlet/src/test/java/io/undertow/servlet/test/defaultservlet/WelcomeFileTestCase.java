@@ -24,6 +24,7 @@ import io.undertow.servlet.api.DeploymentManager;
 import io.undertow.servlet.api.FilterInfo;
 import io.undertow.servlet.api.ServletContainer;
 import io.undertow.servlet.api.ServletInfo;
+import io.undertow.servlet.handlers.ServletPathMatches;
 import io.undertow.servlet.test.path.ServletPathMappingTestCase;
 import io.undertow.servlet.test.util.PathTestServlet;
 import io.undertow.servlet.test.util.TestClassIntrospector;
@@ -48,6 +49,7 @@ import java.io.IOException;
 @RunWith(DefaultServer.class)
 public class WelcomeFileTestCase {
 
+    private static DeploymentManager welcomeFileCacheManager;
 
     @BeforeClass
     public static void setup() throws ServletException {
@@ -84,12 +86,14 @@ public class WelcomeFileTestCase {
                 .setDeploymentName("servletContext2.war")
                 .setResourceManager(new TestResourceLoader(WelcomeFileTestCase.class))
                 .addWelcomePages("doesnotexist.html", "index.do")
+                .setWelcomeFileCacheSize(16)
                 .addServlet(new ServletInfo("*.do", PathTestServlet.class)
                         .addMapping("*.do"));
 
         manager = container.addDeployment(builder);
         manager.deploy();
         root.addPrefixPath(builder.getContextPath(), manager.start());
+        welcomeFileCacheManager = manager;
         DefaultServer.setRootHandler(root);
     }
 
@@ -130,6 +134,25 @@ public class WelcomeFileTestCase {
         }
     }
 
+    @Test
+    public void testWelcomeFileMatchIsCached() throws IOException {
+        TestHttpClient client = new TestHttpClient();
+        try {
+            ServletPathMatches matches = welcomeFileCacheManager.getDeployment().getServletPaths();
+            long hits = matches.getWelcomeFileCacheHits();
+            for (int i = 0; i < 2; ++i) {
+                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/servletContext2/");
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                String response = HttpClientUtils.readResponse(result);
+                Assert.assertEquals("pathInfo:null queryString:null servletPath:/index.do requestUri:/servletContext2/index.do", response);
+            }
+            Assert.assertTrue(matches.getWelcomeFileCacheHits() > hits);
+        } finally {
+            client.getConnectionManager().shutdown();
+        }
+    }
+
     @Test
     public void testWelcomeServletRedirect() throws IOException {
         TestHttpClient client = new TestHttpClient();
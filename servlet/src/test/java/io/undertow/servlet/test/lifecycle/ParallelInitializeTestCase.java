@@ -0,0 +1,95 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.servlet.test.lifecycle;
+
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.api.DeploymentManager;
+import io.undertow.servlet.api.ServletContainer;
+import io.undertow.servlet.api.ServletInfo;
+import io.undertow.servlet.test.util.TestClassIntrospector;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.GenericServlet;
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletException;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * @author agent
+ */
+public class ParallelInitializeTestCase {
+
+    private static final int SERVLETS_PER_LEVEL = 4;
+
+    private static final AtomicInteger[] INITIALIZED = {new AtomicInteger(), new AtomicInteger(), new AtomicInteger()};
+    private static volatile ClassLoader deploymentClassLoader;
+    private static volatile boolean failed;
+
+    @Test
+    public void testServletsInitializedInParallelInOrder() throws ServletException {
+        deploymentClassLoader = ParallelInitializeTestCase.class.getClassLoader();
+        DeploymentInfo builder = new DeploymentInfo()
+                .setClassLoader(deploymentClassLoader)
+                .setContextPath("/servletContext")
+                .setClassIntrospecter(TestClassIntrospector.INSTANCE)
+                .setDeploymentName("parallel.war")
+                .setParallelInitThreads(3);
+        for (int level = 0; level < INITIALIZED.length; ++level) {
+            for (int i = 0; i < SERVLETS_PER_LEVEL; ++i) {
+                builder.addServlet(new ServletInfo("s" + level + "-" + i, OrderedServlet.class)
+                        .setLoadOnStartup(level)
+                        .addInitParam("level", Integer.toString(level)));
+            }
+        }
+        DeploymentManager manager = ServletContainer.Factory.newInstance().addDeployment(builder);
+        manager.deploy();
+        manager.start();
+        try {
+            Assert.assertFalse(failed);
+            for (AtomicInteger count : INITIALIZED) {
+                Assert.assertEquals(SERVLETS_PER_LEVEL, count.get());
+            }
+        } finally {
+            manager.stop();
+            manager.undeploy();
+        }
+    }
+
+    public static class OrderedServlet extends GenericServlet {
+
+        @Override
+        public void init(ServletConfig config) throws ServletException {
+            super.init(config);
+            int level = Integer.parseInt(config.getInitParameter("level"));
+            if (level > 0 && INITIALIZED[level - 1].get() != SERVLETS_PER_LEVEL) {
+                failed = true;
+            }
+            if (Thread.currentThread().getContextClassLoader() != deploymentClassLoader) {
+                failed = true;
+            }
+            INITIALIZED[level].incrementAndGet();
+        }
+
+        @Override
+        public void service(ServletRequest req, ServletResponse res) {
+        }
+    }
+}
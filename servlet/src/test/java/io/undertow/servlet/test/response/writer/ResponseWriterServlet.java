@@ -31,6 +31,12 @@ import java.io.PrintWriter;
 public class ResponseWriterServlet extends HttpServlet {
 
     public static final String CONTENT_LENGTH_FLUSH = "content-length-flush";
+    public static final String ENCODING = "encoding";
+
+    /**
+     * Mostly ascii text with some multi byte characters, and a surrogate pair that is written by separate writes
+     */
+    public static final String ENCODED_TEXT = "<p>caf\u00e9 \u20ac 100 \ud83d\ude00</p>";
 
     @Override
     protected void doGet(final HttpServletRequest req, final HttpServletResponse resp) throws ServletException, IOException {
@@ -38,6 +44,8 @@ public class ResponseWriterServlet extends HttpServlet {
         String test = req.getParameter("test");
         if (test.equals(CONTENT_LENGTH_FLUSH)) {
             contentLengthFlush(req, resp);
+        } else if (test.equals(ENCODING)) {
+            encoding(req, resp);
         } else {
             throw new IllegalArgumentException("not a test " + test);
         }
@@ -60,4 +68,14 @@ public class ResponseWriterServlet extends HttpServlet {
         pw.println(tmp);
         resp.addHeader("not-header", "not");
     }
+
+    private void encoding(HttpServletRequest req, HttpServletResponse resp) throws IOException {
+        resp.setCharacterEncoding(req.getParameter("charset"));
+        PrintWriter pw = resp.getWriter();
+        for (int i = 0; i < 1000; ++i) {
+            int split = ENCODED_TEXT.indexOf('\ude00');
+            pw.write(ENCODED_TEXT, 0, split);
+            pw.write(ENCODED_TEXT.substring(split).toCharArray());
+        }
+    }
 }
@@ -33,6 +33,7 @@ import io.undertow.servlet.api.DeploymentManager;
 import io.undertow.servlet.api.ServletContainer;
 import io.undertow.servlet.test.util.TestClassIntrospector;
 import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpClientUtils;
 import io.undertow.testutils.TestHttpClient;
 import io.undertow.util.FileUtils;
 
@@ -80,6 +81,26 @@ public class ResponseWriterTestCase {
     }
 
 
+    @Test
+    public void testEncodingWrittenToBuffer() throws Exception {
+        for (String charset : new String[]{"UTF-8", "ISO-8859-1"}) {
+            TestHttpClient client = new TestHttpClient();
+            try {
+                HttpGet get = new HttpGet(DefaultServer.getDefaultServerURL() + "/servletContext/resp?test=" + ResponseWriterServlet.ENCODING + "&charset=" + charset);
+                HttpResponse result = client.execute(get);
+                Assert.assertEquals(200, result.getStatusLine().getStatusCode());
+                byte[] data = HttpClientUtils.readRawResponse(result);
+                StringBuilder expected = new StringBuilder();
+                for (int i = 0; i < 1000; ++i) {
+                    expected.append(ResponseWriterServlet.ENCODED_TEXT);
+                }
+                Assert.assertArrayEquals(expected.toString().getBytes(charset), data);
+            } finally {
+                client.getConnectionManager().shutdown();
+            }
+        }
+    }
+
     @Test
     public void testWriterLargeResponse() throws Exception {
         TestHttpClient client = new TestHttpClient();
@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.servlet.test.util;
+
+import io.undertow.servlet.ServletExtension;
+import io.undertow.servlet.api.DeploymentInfo;
+import io.undertow.servlet.util.DeploymentIndex;
+import org.junit.Assert;
+import org.junit.Test;
+
+import javax.servlet.ServletContext;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * @author agent
+ */
+public class DeploymentIndexTestCase {
+
+    @Test
+    public void testIndexRoundTrip() throws Exception {
+        final File file = File.createTempFile("undertow", ".index");
+        try {
+            DeploymentIndex.create(42, Collections.<ServletExtension>singletonList(new IndexedExtension()), Collections.<ServletExtension>emptyList()).write(file);
+
+            Assert.assertNull(DeploymentIndex.read(file, 43));
+            final DeploymentIndex index = DeploymentIndex.read(file, 42);
+            Assert.assertNotNull(index);
+            Assert.assertEquals(Collections.singletonList(IndexedExtension.class.getName()), index.getExtensions());
+            Assert.assertTrue(index.getContainerExtensions().isEmpty());
+            final List<ServletExtension> read = index.createExtensions(getClass().getClassLoader());
+            Assert.assertEquals(1, read.size());
+            Assert.assertTrue(read.get(0) instanceof IndexedExtension);
+        } finally {
+            file.delete();
+        }
+    }
+
+    @Test
+    public void testMissingIndex() {
+        Assert.assertNull(DeploymentIndex.read(new File("does-not-exist.index"), 1));
+    }
+
+    @Test
+    public void testFingerprintChangesWithClassPath() throws IOException {
+        final File jar = File.createTempFile("undertow", ".jar");
+        try {
+            final URLClassLoader classLoader = new URLClassLoader(new URL[]{jar.toURI().toURL()}, null);
+            final long fingerprint = DeploymentIndex.fingerprint(classLoader);
+            Assert.assertTrue(fingerprint != 0);
+            Assert.assertEquals(fingerprint, DeploymentIndex.fingerprint(classLoader));
+            try (FileOutputStream out = new FileOutputStream(jar)) {
+                out.write(new byte[10]);
+            }
+            Assert.assertTrue(fingerprint != DeploymentIndex.fingerprint(classLoader));
+        } finally {
+            jar.delete();
+        }
+    }
+
+    @Test
+    public void testFingerprintChangesWithClassesDirectory() throws IOException {
+        final File dir = File.createTempFile("undertow", "classes");
+        dir.delete();
+        final File services = new File(dir, "META-INF/services");
+        final File packageDir = new File(dir, "org/example");
+        Assert.assertTrue(services.mkdirs());
+        Assert.assertTrue(packageDir.mkdirs());
+        final File service = new File(services, ServletExtension.class.getName());
+        final File classFile = new File(packageDir, "Example.class");
+        try {
+            final URLClassLoader classLoader = new URLClassLoader(new URL[]{dir.toURI().toURL()}, null);
+            write(classFile, "class");
+            final long initial = DeploymentIndex.fingerprint(classLoader);
+            Assert.assertEquals(initial, DeploymentIndex.fingerprint(classLoader));
+
+            //classes are not part of the service lookup, so the directory is not walked
+            write(classFile, "changed class");
+            Assert.assertEquals(initial, DeploymentIndex.fingerprint(classLoader));
+
+            //an extension is registered
+            write(service, "org.example.FirstExtension");
+            final long serviceAdded = DeploymentIndex.fingerprint(classLoader);
+            Assert.assertTrue(initial != serviceAdded);
+
+            //the registered extension changes, even if the size and time stamp stay the same
+            final long lastModified = service.lastModified();
+            write(service, "org.example.OtherExtension");
+            Assert.assertTrue(service.setLastModified(lastModified));
+            final long serviceChanged = DeploymentIndex.fingerprint(classLoader);
+            Assert.assertTrue(serviceAdded != serviceChanged);
+
+            //the service file is removed
+            Assert.assertTrue(service.delete());
+            Assert.assertEquals(initial, DeploymentIndex.fingerprint(classLoader));
+        } finally {
+            service.delete();
+            classFile.delete();
+            packageDir.delete();
+            packageDir.getParentFile().delete();
+            services.delete();
+            services.getParentFile().delete();
+            dir.delete();
+        }
+    }
+
+    private static void write(final File file, final String content) throws IOException {
+        try (FileOutputStream out = new FileOutputStream(file)) {
+            out.write(content.getBytes("UTF-8"));
+        }
+    }
+
+    public static class IndexedExtension implements ServletExtension {
+        @Override
+        public void handleDeployment(DeploymentInfo deploymentInfo, ServletContext servletContext) {
+        }
+    }
+}
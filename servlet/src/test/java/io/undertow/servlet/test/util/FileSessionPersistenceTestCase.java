@@ -0,0 +1,138 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.servlet.test.util;
+
+import io.undertow.servlet.api.SessionPersistenceManager.PersistentSession;
+import io.undertow.servlet.util.FileSessionPersistence;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * @author agent
+ */
+public class FileSessionPersistenceTestCase {
+
+    private static final String DEPLOYMENT = "test deployment";
+
+    private File directory;
+
+    @Before
+    public void setup() throws IOException {
+        directory = File.createTempFile("undertow", "sessions");
+        Assert.assertTrue(directory.delete());
+        Assert.assertTrue(directory.mkdir());
+    }
+
+    @After
+    public void tearDown() {
+        final File[] files = directory.listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.delete();
+    }
+
+    @Test
+    public void testRoundTrip() {
+        final FileSessionPersistence persistence = new FileSessionPersistence(directory);
+        final Date expiry = new Date(System.currentTimeMillis() + 60000);
+        final Map<String, PersistentSession> sessions = new HashMap<>();
+
+        final Map<String, Object> valid = new HashMap<>();
+        valid.put("string", "value");
+        valid.put("int", 42);
+        valid.put("bytes", new byte[]{1, 2, 3});
+        valid.put("list", new ArrayList<>(Arrays.asList("a", "b")));
+        //cannot be written, so it is left out and the rest of the session is kept
+        valid.put("notSerializable", new Object());
+        sessions.put("valid", new PersistentSession(expiry, valid));
+
+        final Map<String, Object> expired = new HashMap<>();
+        expired.put("string", "expired");
+        sessions.put("expired", new PersistentSession(new Date(System.currentTimeMillis() - 1000), expired));
+
+        //written fine but fails to read back, only this session is lost
+        final Map<String, Object> unreadable = new HashMap<>();
+        unreadable.put("string", "unreadable");
+        unreadable.put("bad", new UnreadableAttribute());
+        sessions.put("unreadable", new PersistentSession(expiry, unreadable));
+
+        persistence.persistSessions(DEPLOYMENT, sessions);
+
+        final Map<String, PersistentSession> loaded = persistence.loadSessionAttributes(DEPLOYMENT, getClass().getClassLoader());
+        Assert.assertNotNull(loaded);
+        Assert.assertEquals(1, loaded.size());
+        final PersistentSession session = loaded.get("valid");
+        Assert.assertEquals(expiry, session.getExpiration());
+        final Map<String, Object> data = session.getSessionData();
+        Assert.assertEquals(4, data.size());
+        Assert.assertEquals("value", data.get("string"));
+        Assert.assertEquals(42, data.get("int"));
+        Assert.assertArrayEquals(new byte[]{1, 2, 3}, (byte[]) data.get("bytes"));
+        Assert.assertEquals(Arrays.asList("a", "b"), data.get("list"));
+        Assert.assertFalse(data.containsKey("notSerializable"));
+
+        //the sessions are only restored once
+        Assert.assertNull(persistence.loadSessionAttributes(DEPLOYMENT, getClass().getClassLoader()));
+    }
+
+    @Test
+    public void testClear() {
+        final FileSessionPersistence persistence = new FileSessionPersistence(directory);
+        final Map<String, Object> data = new HashMap<>();
+        data.put("string", "value");
+        persistence.persistSessions(DEPLOYMENT, Collections.singletonMap("session", new PersistentSession(new Date(System.currentTimeMillis() + 60000), data)));
+        persistence.clear(DEPLOYMENT);
+        Assert.assertNull(persistence.loadSessionAttributes(DEPLOYMENT, getClass().getClassLoader()));
+    }
+
+    @Test
+    public void testEmptyDeployment() {
+        final FileSessionPersistence persistence = new FileSessionPersistence(directory);
+        Assert.assertNull(persistence.loadSessionAttributes(DEPLOYMENT, getClass().getClassLoader()));
+        persistence.persistSessions(DEPLOYMENT, new HashMap<String, PersistentSession>());
+        final Map<String, PersistentSession> loaded = persistence.loadSessionAttributes(DEPLOYMENT, getClass().getClassLoader());
+        Assert.assertNotNull(loaded);
+        Assert.assertTrue(loaded.isEmpty());
+    }
+
+    public static final class UnreadableAttribute implements Serializable {
+
+        private static final long serialVersionUID = 1L;
+
+        private void readObject(final ObjectInputStream in) throws IOException {
+            throw new InvalidObjectException("unreadable");
+        }
+    }
+}
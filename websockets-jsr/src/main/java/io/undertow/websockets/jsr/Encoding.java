@@ -99,14 +99,55 @@ public class Encoding implements Closeable {
     }
 
 
+    /**
+     * Returns the decoders for text messages of the given type, so they can be looked up once and then passed to
+     * {@link #decodeText(Class, Decoder[], String)} for every message.
+     *
+     * @param targetType The type
+     * @return The decoders, which is empty for primitive types and types without a decoder
+     */
+    public Decoder[] getTextDecoders(final Class<?> targetType) {
+        return instances(textDecoders.get(targetType));
+    }
+
+    /**
+     * Returns the decoders for binary messages of the given type, so they can be looked up once and then passed to
+     * {@link #decodeBinary(Class, Decoder[], byte[])} for every message.
+     *
+     * @param targetType The type
+     * @return The decoders, which is empty for types without a decoder
+     */
+    public Decoder[] getBinaryDecoders(final Class<?> targetType) {
+        return instances(binaryDecoders.get(targetType));
+    }
+
+    private static Decoder[] instances(final List<InstanceHandle<? extends Decoder>> handles) {
+        if (handles == null) {
+            return new Decoder[0];
+        }
+        final Decoder[] decoders = new Decoder[handles.size()];
+        for (int i = 0; i < decoders.length; ++i) {
+            decoders[i] = handles.get(i).getInstance();
+        }
+        return decoders;
+    }
+
     public Object decodeText(final Class<?> targetType, final String message) throws DecodeException {
         if (EncodingFactory.isPrimitiveOrBoxed(targetType)) {
             return decodePrimitive(targetType, message);
         }
-        List<InstanceHandle<? extends Decoder>> decoders = textDecoders.get(targetType);
+        return decodeText(targetType, getTextDecoders(targetType), message);
+    }
+
+    /**
+     * Decodes a text message using decoders that were returned by {@link #getTextDecoders(Class)}.
+     */
+    public Object decodeText(final Class<?> targetType, final Decoder[] decoders, final String message) throws DecodeException {
+        if (EncodingFactory.isPrimitiveOrBoxed(targetType)) {
+            return decodePrimitive(targetType, message);
+        }
         if (decoders != null) {
-            for (InstanceHandle<? extends Decoder> decoderHandle : decoders) {
-                Decoder decoder = decoderHandle.getInstance();
+            for (Decoder decoder : decoders) {
                 if (decoder instanceof Decoder.Text) {
                     if (((Decoder.Text) decoder).willDecode(message)) {
                         return ((Decoder.Text) decoder).decode(message);
@@ -148,10 +189,15 @@ public class Encoding implements Closeable {
     }
 
     public Object decodeBinary(final Class<?> targetType, final byte[] bytes) throws DecodeException {
-        List<InstanceHandle<? extends Decoder>> decoders = binaryDecoders.get(targetType);
+        return decodeBinary(targetType, getBinaryDecoders(targetType), bytes);
+    }
+
+    /**
+     * Decodes a binary message using decoders that were returned by {@link #getBinaryDecoders(Class)}.
+     */
+    public Object decodeBinary(final Class<?> targetType, final Decoder[] decoders, final byte[] bytes) throws DecodeException {
         if (decoders != null) {
-            for (InstanceHandle<? extends Decoder> decoderHandle : decoders) {
-                Decoder decoder = decoderHandle.getInstance();
+            for (Decoder decoder : decoders) {
                 if (decoder instanceof Decoder.Binary) {
                     if (((Decoder.Binary) decoder).willDecode(ByteBuffer.wrap(bytes))) {
                         return ((Decoder.Binary) decoder).decode(ByteBuffer.wrap(bytes));
@@ -80,6 +80,9 @@ public final class EndpointSessionHandler implements WebSocketConnectionCallback
             session.setMaxTextMessageBufferSize(getContainer().getDefaultMaxTextMessageBufferSize());
             session.setMaxIdleTimeout(getContainer().getDefaultMaxSessionIdleTimeout());
             session.getAsyncRemote().setSendTimeout(getContainer().getDefaultAsyncSendTimeout());
+            if (getContainer().getDefaultSendQueueLimits() != null) {
+                session.setSendQueueLimits(getContainer().getDefaultSendQueueLimits());
+            }
             try {
                 instance.getInstance().onOpen(session, config.getEndpointConfiguration());
             } catch (Exception e) {
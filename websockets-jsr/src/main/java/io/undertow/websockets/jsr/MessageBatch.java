@@ -0,0 +1,426 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.jsr;
+
+import io.undertow.websockets.core.WebSocketCallback;
+import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSockets;
+import org.xnio.IoUtils;
+import org.xnio.Pool;
+import org.xnio.Pooled;
+import org.xnio.XnioExecutor;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetEncoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The messages that have been sent by a {@link javax.websocket.RemoteEndpoint} while batching is allowed, but that
+ * have not been written out yet.
+ * <p/>
+ * Messages are copied into pooled buffers, and are written out when the batch is flushed, when the batch grows past
+ * the maximum batch size or when the first message has been in the batch for longer than the batch delay. The
+ * messages of a batch are queued while the channel is corked, so they are written out using a single gathering
+ * write instead of one write per message.
+ * <p/>
+ * Batches are always sent from the IO thread, in the order they were flushed. A flush only completes once every batch
+ * that was flushed before it has been written out.
+ *
+ * @author agent
+ */
+final class MessageBatch {
+
+    /**
+     * The batch size at which the batch is written out, the size of a single TLS record
+     */
+    static final int DEFAULT_MAX_BATCH_SIZE = 16 * 1024;
+
+    /**
+     * The maximum time in milliseconds that a message stays in the batch
+     */
+    static final int DEFAULT_BATCH_DELAY = 10;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final WebSocketChannel channel;
+    private final int maxBatchSize;
+    private final int batchDelay;
+
+    private final Runnable sendTask = new Runnable() {
+        @Override
+        public void run() {
+            sendDispatched();
+        }
+    };
+
+    private final Runnable timerTask = new Runnable() {
+        @Override
+        public void run() {
+            synchronized (MessageBatch.this) {
+                timerKey = null;
+            }
+            flush(null);
+        }
+    };
+
+    private List<Message> messages = new ArrayList<>();
+    private long size;
+    private XnioExecutor.Key timerKey;
+    /**
+     * The batches that have been flushed but not sent yet, in the order they were flushed
+     */
+    private final ArrayDeque<Flush> dispatched = new ArrayDeque<>();
+    /**
+     * The number of batches that have been flushed but not completely written out yet
+     */
+    private int unfinished;
+    /**
+     * If the IO thread is sending batches, only accessed by the IO thread
+     */
+    private boolean sending;
+    /**
+     * The last batch that was handed to the channel, only accessed by the IO thread. A flush with no messages of its own
+     * completes once this batch has been written out.
+     */
+    private BatchCompletion lastBatch;
+
+    MessageBatch(final WebSocketChannel channel) {
+        this(channel, DEFAULT_MAX_BATCH_SIZE, DEFAULT_BATCH_DELAY);
+    }
+
+    MessageBatch(final WebSocketChannel channel, final int maxBatchSize, final int batchDelay) {
+        this.channel = channel;
+        this.maxBatchSize = maxBatchSize;
+        this.batchDelay = batchDelay;
+    }
+
+    /**
+     * Adds a text message to the batch.
+     *
+     * @param text     The message
+     * @param callback The callback that is notified once the message has been written out, may be <code>null</code>
+     */
+    void addText(final String text, final WebSocketCallback<Void> callback) {
+        final List<Pooled<ByteBuffer>> buffers = new ArrayList<>(1);
+        final Pool<ByteBuffer> pool = channel.getBufferPool();
+        final CharsetEncoder encoder = UTF_8.newEncoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        final CharBuffer src = CharBuffer.wrap(text);
+        Pooled<ByteBuffer> current = allocate(pool, buffers);
+        while (encoder.encode(src, current.getResource(), true) == CoderResult.OVERFLOW) {
+            current = allocate(pool, buffers);
+        }
+        while (encoder.flush(current.getResource()) == CoderResult.OVERFLOW) {
+            current = allocate(pool, buffers);
+        }
+        add(new Message(true, buffers, callback));
+    }
+
+    /**
+     * Adds a binary message to the batch. The data is copied, so the buffer can be reused once this method returns.
+     *
+     * @param data     The message
+     * @param callback The callback that is notified once the message has been written out, may be <code>null</code>
+     */
+    void addBinary(final ByteBuffer data, final WebSocketCallback<Void> callback) {
+        final List<Pooled<ByteBuffer>> buffers = new ArrayList<>(1);
+        final Pool<ByteBuffer> pool = channel.getBufferPool();
+        final ByteBuffer src = data.duplicate();
+        Pooled<ByteBuffer> current = allocate(pool, buffers);
+        while (src.hasRemaining()) {
+            final ByteBuffer buffer = current.getResource();
+            if (!buffer.hasRemaining()) {
+                current = allocate(pool, buffers);
+                continue;
+            }
+            final int count = Math.min(src.remaining(), buffer.remaining());
+            final int limit = src.limit();
+            src.limit(src.position() + count);
+            buffer.put(src);
+            src.limit(limit);
+        }
+        add(new Message(false, buffers, callback));
+    }
+
+    private static Pooled<ByteBuffer> allocate(final Pool<ByteBuffer> pool, final List<Pooled<ByteBuffer>> buffers) {
+        final Pooled<ByteBuffer> pooled = pool.allocate();
+        pooled.getResource().clear();
+        buffers.add(pooled);
+        return pooled;
+    }
+
+    private void add(final Message message) {
+        final boolean full;
+        synchronized (this) {
+            messages.add(message);
+            size += message.size;
+            full = size >= maxBatchSize;
+            if (!full && timerKey == null) {
+                timerKey = channel.getIoThread().executeAfter(timerTask, batchDelay, TimeUnit.MILLISECONDS);
+            }
+        }
+        if (full) {
+            flush(null);
+        }
+    }
+
+    /**
+     * Writes out all messages of the batch.
+     *
+     * @param callback The callback that is notified once all messages have been written out, may be <code>null</code>
+     */
+    void flush(final WebSocketCallback<Void> callback) {
+        synchronized (this) {
+            if (timerKey != null) {
+                timerKey.remove();
+                timerKey = null;
+            }
+            if (messages.isEmpty() && unfinished == 0) {
+                if (callback != null) {
+                    callback.complete(channel, null);
+                }
+                return;
+            }
+            //earlier batches may still be waiting for the IO thread or being written, so we queue behind them to
+            //preserve message order, and complete after them
+            if (!messages.isEmpty()) {
+                ++unfinished;
+            }
+            dispatched.add(new Flush(messages, callback));
+            messages = new ArrayList<>();
+            size = 0;
+            if (channel.getIoThread() != Thread.currentThread()) {
+                channel.getIoThread().execute(sendTask);
+                return;
+            }
+        }
+        sendDispatched();
+    }
+
+    /**
+     * Sends all batches that have been flushed. This is only called from the IO thread, so a batch that is flushed
+     * while another one is being sent is always sent after it.
+     */
+    private void sendDispatched() {
+        if (sending) {
+            //a callback flushed the batch while a batch was being sent, the outer loop sends it
+            return;
+        }
+        sending = true;
+        try {
+            for (; ; ) {
+                final Flush flush;
+                synchronized (this) {
+                    flush = dispatched.poll();
+                }
+                if (flush == null) {
+                    return;
+                }
+                send(flush.messages, flush.callback);
+            }
+        } finally {
+            sending = false;
+        }
+    }
+
+    /**
+     * Writes out all messages of the batch, and waits until they have been written. If this is called from the IO
+     * thread the messages are queued but this method does not wait.
+     */
+    void flushBlocking() throws IOException {
+        if (channel.getIoThread() == Thread.currentThread()) {
+            flush(null);
+            return;
+        }
+        final SendResultFuture<Void> future = new SendResultFuture<>();
+        flush(future);
+        try {
+            future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) {
+                throw (IOException) e.getCause();
+            }
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private void send(final List<Message> messages, final WebSocketCallback<Void> callback) {
+        if (messages.isEmpty()) {
+            if (callback != null && (lastBatch == null || !lastBatch.addCallback(callback))) {
+                callback.complete(channel, null);
+            }
+            return;
+        }
+        final BatchCompletion completion = new BatchCompletion(messages.size(), callback);
+        lastBatch = completion;
+        channel.cork();
+        try {
+            for (Message message : messages) {
+                message.send(completion);
+            }
+        } finally {
+            channel.uncork();
+        }
+    }
+
+    /**
+     * A batch that has been flushed, and the callback of the flush.
+     */
+    private static final class Flush {
+
+        private final List<Message> messages;
+        private final WebSocketCallback<Void> callback;
+
+        private Flush(final List<Message> messages, final WebSocketCallback<Void> callback) {
+            this.messages = messages;
+            this.callback = callback;
+        }
+    }
+
+    private final class Message implements WebSocketCallback<Void> {
+
+        private final boolean text;
+        private final List<Pooled<ByteBuffer>> buffers;
+        private final WebSocketCallback<Void> callback;
+        private final long size;
+        private BatchCompletion completion;
+
+        private Message(final boolean text, final List<Pooled<ByteBuffer>> buffers, final WebSocketCallback<Void> callback) {
+            this.text = text;
+            this.buffers = buffers;
+            this.callback = callback;
+            long size = 0;
+            for (Pooled<ByteBuffer> buffer : buffers) {
+                buffer.getResource().flip();
+                size += buffer.getResource().remaining();
+            }
+            this.size = size;
+        }
+
+        void send(final BatchCompletion completion) {
+            this.completion = completion;
+            final ByteBuffer[] data = new ByteBuffer[buffers.size()];
+            for (int i = 0; i < data.length; ++i) {
+                data[i] = buffers.get(i).getResource();
+            }
+            if (text) {
+                WebSockets.sendText(data, channel, this);
+            } else {
+                WebSockets.sendBinary(data, channel, this);
+            }
+        }
+
+        private void free() {
+            for (Pooled<ByteBuffer> buffer : buffers) {
+                buffer.free();
+            }
+        }
+
+        @Override
+        public void complete(final WebSocketChannel channel, final Void context) {
+            free();
+            if (callback != null) {
+                callback.complete(channel, context);
+            }
+            if (completion != null) {
+                completion.messageComplete(null);
+            }
+        }
+
+        @Override
+        public void onError(final WebSocketChannel channel, final Void context, final Throwable throwable) {
+            free();
+            if (callback != null) {
+                callback.onError(channel, context, throwable);
+            } else {
+                IoUtils.safeClose(channel);
+            }
+            if (completion != null) {
+                completion.messageComplete(throwable);
+            }
+        }
+    }
+
+    /**
+     * Notifies the callbacks of a flush, and of any empty flushes that were queued behind it, once all messages of the
+     * batch have been written out.
+     */
+    private final class BatchCompletion {
+
+        private final List<WebSocketCallback<Void>> callbacks = new ArrayList<>(1);
+        private int remaining;
+        private Throwable failure;
+        private boolean done;
+
+        private BatchCompletion(final int remaining, final WebSocketCallback<Void> callback) {
+            this.remaining = remaining;
+            if (callback != null) {
+                callbacks.add(callback);
+            }
+        }
+
+        /**
+         * @return <code>false</code> if the batch has already been written out
+         */
+        synchronized boolean addCallback(final WebSocketCallback<Void> callback) {
+            if (done) {
+                return false;
+            }
+            callbacks.add(callback);
+            return true;
+        }
+
+        void messageComplete(final Throwable throwable) {
+            final Throwable failure;
+            synchronized (this) {
+                if (throwable != null && this.failure == null) {
+                    this.failure = throwable;
+                }
+                if (--remaining > 0) {
+                    return;
+                }
+                done = true;
+                failure = this.failure;
+            }
+            synchronized (MessageBatch.this) {
+                --unfinished;
+            }
+            for (WebSocketCallback<Void> callback : callbacks) {
+                if (failure == null) {
+                    callback.complete(channel, null);
+                } else {
+                    callback.onError(channel, null, failure);
+                }
+            }
+        }
+    }
+}
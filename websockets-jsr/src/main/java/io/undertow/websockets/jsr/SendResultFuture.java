@@ -58,6 +58,7 @@ final class SendResultFuture<T> implements Future<Void>, WebSocketCallback<T> {
         if (waiters > 0) {
             notifyAll();
         }
+        done = true;
     }
 
     /**
@@ -27,6 +27,7 @@ import io.undertow.util.PathTemplate;
 import io.undertow.websockets.WebSocketExtension;
 import io.undertow.websockets.client.WebSocketClient;
 import io.undertow.websockets.client.WebSocketClientNegotiation;
+import io.undertow.websockets.core.SendQueueLimits;
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSocketVersion;
 import io.undertow.websockets.jsr.annotated.AnnotatedEndpointFactory;
@@ -98,6 +99,7 @@ public class ServerWebSocketContainer implements ServerContainer, Closeable {
     private volatile long defaultMaxSessionIdleTimeout;
     private volatile int defaultMaxBinaryMessageBufferSize;
     private volatile int defaultMaxTextMessageBufferSize;
+    private volatile SendQueueLimits defaultSendQueueLimits;
     private volatile boolean deploymentComplete = false;
 
     private ServletContextImpl contextToAddFilter = null;
@@ -305,6 +307,18 @@ public class ServerWebSocketContainer implements ServerContainer, Closeable {
         this.defaultMaxTextMessageBufferSize = defaultMaxTextMessageBufferSize;
     }
 
+    public SendQueueLimits getDefaultSendQueueLimits() {
+        return defaultSendQueueLimits;
+    }
+
+    /**
+     * Sets the send queue limits of new sessions. The limits are shared by the sessions, so the metrics of the
+     * limits cover all of them.
+     */
+    public void setDefaultSendQueueLimits(SendQueueLimits defaultSendQueueLimits) {
+        this.defaultSendQueueLimits = defaultSendQueueLimits;
+    }
+
     @Override
     public Set<Extension> getInstalledExtensions() {
         return Collections.emptySet();
@@ -0,0 +1,142 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.jsr;
+
+import io.undertow.websockets.core.WebSocketBroadcaster;
+import io.undertow.websockets.core.WebSocketCallback;
+import io.undertow.websockets.core.WebSocketChannel;
+
+import javax.websocket.EncodeException;
+import javax.websocket.SendHandler;
+import javax.websocket.Session;
+import java.nio.ByteBuffer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Sends the same message to a set of sessions, encoding the message only once.
+ * <p/>
+ * Messages are written straight to the connections of the sessions using a {@link WebSocketBroadcaster}, so they
+ * bypass any messages that a session is batching. Sessions that were not created by Undertow are sent the message
+ * through their async remote endpoint.
+ *
+ * @author agent
+ */
+public class SessionBroadcaster {
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final WebSocketBroadcaster broadcaster;
+
+    public SessionBroadcaster() {
+        this(new WebSocketBroadcaster());
+    }
+
+    /**
+     * @param broadcaster The broadcaster, which determines how sessions that have fallen behind are handled
+     */
+    public SessionBroadcaster(final WebSocketBroadcaster broadcaster) {
+        this.broadcaster = broadcaster;
+    }
+
+    /**
+     * Sends a text message to all the given sessions.
+     *
+     * @param text     The message
+     * @param sessions The sessions
+     * @param handler  The handler that is notified for every session the message is written to, may be <code>null</code>
+     */
+    public void sendText(final String text, final Collection<Session> sessions, final SendHandler handler) {
+        final ByteBuffer data = ByteBuffer.wrap(text.getBytes(UTF_8));
+        final List<WebSocketChannel> channels = new ArrayList<>(sessions.size());
+        for (Session session : sessions) {
+            if (session instanceof UndertowSession) {
+                channels.add(((UndertowSession) session).getWebSocketChannel());
+            } else if (handler == null) {
+                session.getAsyncRemote().sendText(text);
+            } else {
+                session.getAsyncRemote().sendText(text, handler);
+            }
+        }
+        broadcaster.sendText(data, channels, callback(handler));
+    }
+
+    /**
+     * Sends a binary message to all the given sessions.
+     *
+     * @param data     The message
+     * @param sessions The sessions
+     * @param handler  The handler that is notified for every session the message is written to, may be <code>null</code>
+     */
+    public void sendBinary(final ByteBuffer data, final Collection<Session> sessions, final SendHandler handler) {
+        final List<WebSocketChannel> channels = new ArrayList<>(sessions.size());
+        for (Session session : sessions) {
+            if (session instanceof UndertowSession) {
+                channels.add(((UndertowSession) session).getWebSocketChannel());
+            } else if (handler == null) {
+                session.getAsyncRemote().sendBinary(data.duplicate());
+            } else {
+                session.getAsyncRemote().sendBinary(data.duplicate(), handler);
+            }
+        }
+        broadcaster.sendBinary(data, channels, callback(handler));
+    }
+
+    /**
+     * Sends an object to all the given sessions. The object is encoded once, using the encoders of the first session,
+     * so all the sessions should belong to the same endpoint.
+     *
+     * @param o        The object
+     * @param sessions The sessions
+     * @param handler  The handler that is notified for every session the message is written to, may be <code>null</code>
+     */
+    public void sendObject(final Object o, final Collection<Session> sessions, final SendHandler handler) throws EncodeException {
+        if (sessions.isEmpty()) {
+            return;
+        }
+        final Session first = sessions.iterator().next();
+        if (!(first instanceof UndertowSession)) {
+            for (Session session : sessions) {
+                if (handler == null) {
+                    session.getAsyncRemote().sendObject(o);
+                } else {
+                    session.getAsyncRemote().sendObject(o, handler);
+                }
+            }
+            return;
+        }
+        final Encoding encoding = ((UndertowSession) first).getEncoding();
+        if (encoding.canEncodeText(o.getClass())) {
+            sendText(encoding.encodeText(o), sessions, handler);
+        } else if (encoding.canEncodeBinary(o.getClass())) {
+            sendBinary(encoding.encodeBinary(o), sessions, handler);
+        } else {
+            throw new EncodeException(o, "No suitable encoder found");
+        }
+    }
+
+    private static WebSocketCallback<Void> callback(final SendHandler handler) {
+        return handler == null ? null : new SendHandlerAdapter(handler);
+    }
+
+    public WebSocketBroadcaster getBroadcaster() {
+        return broadcaster;
+    }
+}
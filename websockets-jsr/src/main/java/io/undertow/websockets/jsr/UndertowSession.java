@@ -20,6 +20,8 @@ package io.undertow.websockets.jsr;
 import io.undertow.server.session.SecureRandomSessionIdGenerator;
 import io.undertow.servlet.api.InstanceHandle;
 import io.undertow.websockets.core.CloseMessage;
+import io.undertow.websockets.core.SendQueueLimits;
+import io.undertow.websockets.core.SendQueueListener;
 import io.undertow.websockets.core.WebSocketChannel;
 import io.undertow.websockets.core.WebSockets;
 import org.xnio.ChannelListener;
@@ -202,6 +204,8 @@ public final class UndertowSession implements Session {
                 if(!webSocketChannel.isCloseFrameReceived()) {
                     //if we have already recieved a close frame then the close frame handler
                     //will deal with sending back the reason message
+                    //batched messages must be written before the close frame
+                    remote.flushBatch();
                     if (closeReason == null) {
                         webSocketChannel.sendClose();
                     } else {
@@ -305,4 +309,34 @@ public final class UndertowSession implements Session {
     public WebSocketChannel getWebSocketChannel() {
         return webSocketChannel;
     }
+
+    /**
+     * Sets the limits of the queue of messages that are sent using the async remote endpoint.
+     *
+     * @param limits The limits, or <code>null</code> to not limit the send queue
+     * @see WebSocketChannel#setSendQueueLimits(SendQueueLimits)
+     */
+    public void setSendQueueLimits(SendQueueLimits limits) {
+        webSocketChannel.setSendQueueLimits(limits);
+    }
+
+    public SendQueueLimits getSendQueueLimits() {
+        return webSocketChannel.getSendQueueLimits();
+    }
+
+    public void setSendQueueListener(SendQueueListener listener) {
+        webSocketChannel.setSendQueueListener(listener);
+    }
+
+    public long getQueuedBytes() {
+        return webSocketChannel.getQueuedBytes();
+    }
+
+    public int getQueuedFrames() {
+        return webSocketChannel.getQueuedFrames();
+    }
+
+    public boolean isSendQueueOverWaterMark() {
+        return webSocketChannel.isSendQueueOverWaterMark();
+    }
 }
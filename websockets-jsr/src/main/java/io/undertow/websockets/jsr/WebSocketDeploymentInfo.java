@@ -18,6 +18,7 @@
 
 package io.undertow.websockets.jsr;
 
+import io.undertow.websockets.core.SendQueueLimits;
 import org.xnio.Pool;
 import org.xnio.XnioWorker;
 
@@ -38,6 +39,7 @@ public class WebSocketDeploymentInfo {
     private XnioWorker worker;
     private Pool<ByteBuffer> buffers;
     private boolean dispatchToWorkerThread = false;
+    private SendQueueLimits sendQueueLimits;
     private final List<Class<?>> annotatedEndpoints = new ArrayList<>();
     private final List<ServerEndpointConfig> programaticEndpoints = new ArrayList<>();
     private final List<ContainerReadyListener> containerReadyListeners = new ArrayList<>();
@@ -97,6 +99,18 @@ public class WebSocketDeploymentInfo {
         this.dispatchToWorkerThread = dispatchToWorkerThread;
     }
 
+    public SendQueueLimits getSendQueueLimits() {
+        return sendQueueLimits;
+    }
+
+    /**
+     * Sets the send queue limits of all sessions of the deployment.
+     */
+    public WebSocketDeploymentInfo setSendQueueLimits(SendQueueLimits sendQueueLimits) {
+        this.sendQueueLimits = sendQueueLimits;
+        return this;
+    }
+
     public interface ContainerReadyListener {
         void ready(ServerWebSocketContainer container);
     }
@@ -52,11 +52,14 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
     private final Async async = new AsyncWebSocketSessionRemoteEndpoint();
     private final Basic basic = new BasicWebSocketSessionRemoteEndpoint();
     private final Encoding encoding;
+    private final MessageBatch batch;
+    private volatile boolean batchingAllowed;
 
     public WebSocketSessionRemoteEndpoint(WebSocketChannel webSocketChannel, EndpointConfig config, final Encoding encoding) {
         this.webSocketChannel = webSocketChannel;
         this.config = config;
         this.encoding = encoding;
+        this.batch = new MessageBatch(webSocketChannel);
     }
 
     public Async getAsync() {
@@ -67,19 +70,52 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
         return basic;
     }
 
+    /**
+     * Writes out all batched messages, and waits until they have been written.
+     * <p/>
+     * The basic and async endpoints share the batch, as they write to the same connection.
+     */
     @Override
-    public void flushBatch() {
-        // Do nothing
+    public void flushBatch() throws IOException {
+        batch.flushBlocking();
     }
 
     @Override
     public void setBatchingAllowed(final boolean allowed) throws IOException {
-
+        batchingAllowed = allowed;
+        if (!allowed) {
+            batch.flushBlocking();
+        }
     }
 
     @Override
     public boolean getBatchingAllowed() {
-        return false;
+        return batchingAllowed;
+    }
+
+    /**
+     * Makes sure that batched messages are written before a message that bypasses the batch. This also waits for
+     * batches that have been flushed but are still waiting for the IO thread, which returns straight away if there
+     * are none.
+     */
+    private void flushBatchIfRequired() throws IOException {
+        batch.flushBlocking();
+    }
+
+    private void sendTextAsync(final String text, final WebSocketCallback<Void> callback) {
+        if (batchingAllowed) {
+            batch.addText(text, callback);
+        } else {
+            WebSockets.sendText(text, webSocketChannel, callback);
+        }
+    }
+
+    private void sendBinaryAsync(final ByteBuffer data, final WebSocketCallback<Void> callback) {
+        if (batchingAllowed) {
+            batch.addBinary(data, callback);
+        } else {
+            WebSockets.sendBinary(data, webSocketChannel, callback);
+        }
     }
 
     @Override
@@ -107,26 +143,26 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
 
         @Override
         public void sendText(final String text, final SendHandler handler) {
-            WebSockets.sendText(text, webSocketChannel, new SendHandlerAdapter(handler));
+            sendTextAsync(text, new SendHandlerAdapter(handler));
         }
 
         @Override
         public Future<Void> sendText(final String text) {
             final SendResultFuture future = new SendResultFuture();
-            WebSockets.sendText(text, webSocketChannel, future);
+            sendTextAsync(text, future);
             return future;
         }
 
         @Override
         public Future<Void> sendBinary(final ByteBuffer data) {
             final SendResultFuture future = new SendResultFuture();
-            WebSockets.sendBinary(data, webSocketChannel, future);
+            sendBinaryAsync(data, future);
             return future;
         }
 
         @Override
         public void sendBinary(final ByteBuffer data, final SendHandler completion) {
-            WebSockets.sendBinary(data, webSocketChannel, new SendHandlerAdapter(completion));
+            sendBinaryAsync(data, new SendHandlerAdapter(completion));
         }
 
         @Override
@@ -144,9 +180,9 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
         private void sendObjectImpl(final Object o, final WebSocketCallback callback) {
             try {
                 if (encoding.canEncodeText(o.getClass())) {
-                    WebSockets.sendText(encoding.encodeText(o), webSocketChannel, callback);
+                    sendTextAsync(encoding.encodeText(o), callback);
                 } else if (encoding.canEncodeBinary(o.getClass())) {
-                    WebSockets.sendBinary(encoding.encodeBinary(o), webSocketChannel, callback);
+                    sendBinaryAsync(encoding.encodeBinary(o), callback);
                 } else {
                     // TODO: Replace on bug is fixed
                     // https://issues.jboss.org/browse/LOGTOOL-64
@@ -159,17 +195,17 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
 
         @Override
         public void setBatchingAllowed(final boolean allowed) throws IOException {
-
+            WebSocketSessionRemoteEndpoint.this.setBatchingAllowed(allowed);
         }
 
         @Override
         public boolean getBatchingAllowed() {
-            return false;
+            return batchingAllowed;
         }
 
         @Override
         public void flushBatch() throws IOException {
-
+            WebSocketSessionRemoteEndpoint.this.flushBatch();
         }
 
         @Override
@@ -198,13 +234,30 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
         @Override
         public void sendText(final String text) throws IOException {
             assertNotInFragment();
-            WebSockets.sendTextBlocking(text, webSocketChannel);
+            sendTextBlocking(text);
         }
 
         @Override
         public void sendBinary(final ByteBuffer data) throws IOException {
             assertNotInFragment();
-            WebSockets.sendBinaryBlocking(data, webSocketChannel);
+            sendBinaryBlocking(data);
+        }
+
+        private void sendTextBlocking(final String text) throws IOException {
+            if (batchingAllowed) {
+                //the message is written out with the batch, errors close the connection
+                batch.addText(text, null);
+            } else {
+                WebSockets.sendTextBlocking(text, webSocketChannel);
+            }
+        }
+
+        private void sendBinaryBlocking(final ByteBuffer data) throws IOException {
+            if (batchingAllowed) {
+                batch.addBinary(data, null);
+            } else {
+                WebSockets.sendBinaryBlocking(data, webSocketChannel);
+            }
         }
 
         @Override
@@ -213,6 +266,7 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
                 throw JsrWebSocketMessages.MESSAGES.cannotSendInMiddleOfFragmentedMessage();
             }
             if (textFrameSender == null) {
+                flushBatchIfRequired();
                 textFrameSender = webSocketChannel.send(WebSocketFrameType.TEXT);
             }
             try {
@@ -235,6 +289,7 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
                 throw JsrWebSocketMessages.MESSAGES.cannotSendInMiddleOfFragmentedMessage();
             }
             if (binaryFrameSender == null) {
+                flushBatchIfRequired();
                 binaryFrameSender = webSocketChannel.send(WebSocketFrameType.BINARY);
             }
             try {
@@ -253,6 +308,7 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
         @Override
         public OutputStream getSendStream() throws IOException {
             assertNotInFragment();
+            flushBatchIfRequired();
             //TODO: track fragment state
             return new BinaryOutputStream(webSocketChannel.send(WebSocketFrameType.BINARY));
         }
@@ -260,6 +316,7 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
         @Override
         public Writer getSendWriter() throws IOException {
             assertNotInFragment();
+            flushBatchIfRequired();
             return new OutputStreamWriter(new BinaryOutputStream(webSocketChannel.send(WebSocketFrameType.TEXT)), UTF_8);
         }
 
@@ -271,9 +328,9 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
         private void sendObjectImpl(final Object o) throws IOException {
             try {
                 if (encoding.canEncodeText(o.getClass())) {
-                    WebSockets.sendTextBlocking(encoding.encodeText(o), webSocketChannel);
+                    sendTextBlocking(encoding.encodeText(o));
                 } else if (encoding.canEncodeBinary(o.getClass())) {
-                    WebSockets.sendBinaryBlocking(encoding.encodeBinary(o), webSocketChannel);
+                    sendBinaryBlocking(encoding.encodeBinary(o));
                 } else {
                     // TODO: Replace on bug is fixed
                     // https://issues.jboss.org/browse/LOGTOOL-64
@@ -286,17 +343,17 @@ final class WebSocketSessionRemoteEndpoint implements RemoteEndpoint {
 
         @Override
         public void setBatchingAllowed(final boolean allowed) throws IOException {
-
+            WebSocketSessionRemoteEndpoint.this.setBatchingAllowed(allowed);
         }
 
         @Override
         public boolean getBatchingAllowed() {
-            return false;
+            return batchingAllowed;
         }
 
         @Override
         public void flushBatch() throws IOException {
-
+            WebSocketSessionRemoteEndpoint.this.flushBatch();
         }
 
         @Override
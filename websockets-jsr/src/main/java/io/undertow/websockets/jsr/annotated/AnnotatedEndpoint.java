@@ -37,6 +37,7 @@ import org.xnio.Pooled;
 
 import javax.websocket.CloseReason;
 import javax.websocket.DecodeException;
+import javax.websocket.Decoder;
 import javax.websocket.Endpoint;
 import javax.websocket.EndpointConfig;
 import javax.websocket.PongMessage;
@@ -49,8 +50,6 @@ import java.io.InputStream;
 import java.io.Reader;
 import java.io.StringReader;
 import java.nio.ByteBuffer;
-import java.util.HashMap;
-import java.util.Map;
 import java.util.concurrent.Executor;
 
 /**
@@ -89,16 +88,14 @@ public class AnnotatedEndpoint extends Endpoint {
         s.setReceiveListener(new AnnotatedEndpointFrameHandler((UndertowSession) session, partialText, partialBinary));
 
         if (webSocketOpen != null) {
-            final Map<Class<?>, Object> params = new HashMap<>();
-            params.put(Session.class, session);
-            params.put(EndpointConfig.class, endpointConfiguration);
-            params.put(Map.class, session.getPathParameters());
+            final Object[] params = BoundMethod.values(session, session.getPathParameters());
+            params[BoundMethod.ENDPOINT_CONFIG] = endpointConfiguration;
             invokeMethod(params, webSocketOpen, s);
         }
 
     }
 
-    private void invokeMethod(final Map<Class<?>, Object> params, final BoundMethod method, final UndertowSession session) {
+    private void invokeMethod(final Object[] params, final BoundMethod method, final UndertowSession session) {
         session.getContainer().invokeEndpointMethod(executor, new Runnable() {
             @Override
             public void run() {
@@ -114,10 +111,8 @@ public class AnnotatedEndpoint extends Endpoint {
     @Override
     public void onClose(final Session session, final CloseReason closeReason) {
         if (webSocketClose != null) {
-            final Map<Class<?>, Object> params = new HashMap<>();
-            params.put(Session.class, session);
-            params.put(Map.class, session.getPathParameters());
-            params.put(CloseReason.class, closeReason);
+            final Object[] params = BoundMethod.values(session, session.getPathParameters());
+            params[BoundMethod.CLOSE_REASON] = closeReason;
             invokeMethod(params, webSocketClose, (UndertowSession) session);
         }
     }
@@ -126,10 +121,8 @@ public class AnnotatedEndpoint extends Endpoint {
     public void onError(final Session session, final Throwable thr) {
 
         if (webSocketError != null) {
-            final Map<Class<?>, Object> params = new HashMap<>();
-            params.put(Session.class, session);
-            params.put(Throwable.class, thr);
-            params.put(Map.class, session.getPathParameters());
+            final Object[] params = BoundMethod.values(session, session.getPathParameters());
+            params[BoundMethod.THROWABLE] = thr;
             ((UndertowSession) session).getContainer().invokeEndpointMethod(executor, new Runnable() {
                 @Override
                 public void run() {
@@ -158,6 +151,11 @@ public class AnnotatedEndpoint extends Endpoint {
         private final UndertowSession session;
         private final boolean partialText;
         private final boolean partialBinary;
+        /**
+         * The decoders for the message types of this endpoint, resolved once per session
+         */
+        private final Decoder[] textDecoders;
+        private final Decoder[] binaryDecoders;
         private final SendHandler errorReportingSendHandler = new SendHandler() {
             @Override
             public void onResult(final SendResult result) {
@@ -171,6 +169,8 @@ public class AnnotatedEndpoint extends Endpoint {
             this.session = session;
             this.partialText = partialText;
             this.partialBinary = partialBinary;
+            this.textDecoders = textMessage != null && textMessage.isDecoderRequired() ? session.getEncoding().getTextDecoders(textMessage.getMessageType()) : null;
+            this.binaryDecoders = binaryMessage != null ? session.getEncoding().getBinaryDecoders(binaryMessage.getMessageType()) : null;
         }
 
         @Override
@@ -207,10 +207,8 @@ public class AnnotatedEndpoint extends Endpoint {
             try {
                 if (webSocketClose != null) {
                     try {
-                        final Map<Class<?>, Object> params = new HashMap<>();
-                        params.put(Session.class, session);
-                        params.put(Map.class, session.getPathParameters());
-                        params.put(CloseReason.class, new CloseReason(CloseReason.CloseCodes.getCloseCode(cm.getCode()), cm.getReason()));
+                        final Object[] params = BoundMethod.values(session, session.getPathParameters());
+                        params[BoundMethod.CLOSE_REASON] = new CloseReason(CloseReason.CloseCodes.getCloseCode(cm.getCode()), cm.getReason());
                         invokeMethod(params, webSocketClose, session);
                     } catch (Exception e) {
                         AnnotatedEndpoint.this.onError(session, e);
@@ -236,10 +234,8 @@ public class AnnotatedEndpoint extends Endpoint {
             Pooled<ByteBuffer[]> pooled = bufferedBinaryMessage.getData();
             try {
                 PongMessage message = DefaultPongMessage.create(WebSockets.mergeBuffers(pooled.getResource()));
-                final Map<Class<?>, Object> params = new HashMap<>();
-                params.put(Session.class, session);
-                params.put(Map.class, session.getPathParameters());
-                params.put(PongMessage.class, message);
+                final Object[] params = BoundMethod.values(session, session.getPathParameters());
+                params[BoundMethod.MESSAGE] = message;
                 session.getContainer().invokeEndpointMethod(executor, new Runnable() {
                     @Override
                     public void run() {
@@ -307,7 +303,7 @@ public class AnnotatedEndpoint extends Endpoint {
 
             if (textMessage.isDecoderRequired()) {
                 try {
-                    messageObject = session.getEncoding().decodeText(textMessage.getMessageType(), data);
+                    messageObject = session.getEncoding().decodeText(textMessage.getMessageType(), textDecoders, data);
                 } catch (DecodeException e) {
                     AnnotatedEndpoint.this.onError(session, e);
                     return;
@@ -318,11 +314,9 @@ public class AnnotatedEndpoint extends Endpoint {
                 messageObject = data;
             }
 
-            final Map<Class<?>, Object> params = new HashMap<>();
-            params.put(Session.class, session);
-            params.put(Map.class, session.getPathParameters());
-            params.put(textMessage.getMessageType(), messageObject);
-            params.put(boolean.class, finalFragment);
+            final Object[] params = BoundMethod.values(session, session.getPathParameters());
+            params[BoundMethod.MESSAGE] = messageObject;
+            params[BoundMethod.LAST] = finalFragment;
             session.getContainer().invokeEndpointMethod(executor, new Runnable() {
                 @Override
                 public void run() {
@@ -403,25 +397,23 @@ public class AnnotatedEndpoint extends Endpoint {
             }
             final Pooled<ByteBuffer[]> pooled = message.getData();
             try {
-                final Map<Class<?>, Object> params = new HashMap<>();
-                params.put(Session.class, session);
-                params.put(Map.class, session.getPathParameters());
+                final Object[] params = BoundMethod.values(session, session.getPathParameters());
                 if (binaryMessage.isDecoderRequired()) {
                     try {
-                        params.put(binaryMessage.getMessageType(), session.getEncoding().decodeBinary(binaryMessage.getMessageType(), toArray(pooled.getResource())));
+                        params[BoundMethod.MESSAGE] = session.getEncoding().decodeBinary(binaryMessage.getMessageType(), binaryDecoders, toArray(pooled.getResource()));
                     } catch (Exception e) {
                         AnnotatedEndpoint.this.onError(session, e);
                         return;
                     }
                 } else if (binaryMessage.getMessageType() == ByteBuffer.class) {
-                    params.put(ByteBuffer.class, WebSockets.mergeBuffers(pooled.getResource()));
+                    params[BoundMethod.MESSAGE] = WebSockets.mergeBuffers(pooled.getResource());
                 } else if (binaryMessage.getMessageType() == byte[].class) {
-                    params.put(byte[].class, toArray(pooled.getResource()));
+                    params[BoundMethod.MESSAGE] = toArray(pooled.getResource());
                 } else if (binaryMessage.getMessageType() == InputStream.class) {
-                    params.put(InputStream.class, new ByteArrayInputStream(toArray(pooled.getResource())));
+                    params[BoundMethod.MESSAGE] = new ByteArrayInputStream(toArray(pooled.getResource()));
                 } else {
                     try {
-                        params.put(binaryMessage.getMessageType(), session.getEncoding().decodeBinary(binaryMessage.getMessageType(), toArray(pooled.getResource())));
+                        params[BoundMethod.MESSAGE] = session.getEncoding().decodeBinary(binaryMessage.getMessageType(), binaryDecoders, toArray(pooled.getResource()));
                     } catch (DecodeException e) {
                         AnnotatedEndpoint.this.onError(session, e);
                         return;
@@ -429,7 +421,7 @@ public class AnnotatedEndpoint extends Endpoint {
                     //decoders
                     throw new RuntimeException("decoders are not implemented yet");
                 }
-                params.put(boolean.class, finalFragment);
+                params[BoundMethod.LAST] = finalFragment;
                 session.getContainer().invokeEndpointMethod(executor, new Runnable() {
                     @Override
                     public void run() {
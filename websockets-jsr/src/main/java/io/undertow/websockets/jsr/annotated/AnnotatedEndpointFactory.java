@@ -303,14 +303,17 @@ public class AnnotatedEndpointFactory implements InstanceFactory<Endpoint> {
 
         private final int position;
         private final Class<?> type;
+        private final int slot;
 
         public BoundSingleParameter(int position, final Class<?> type) {
             this.position = position;
             this.type = type;
+            this.slot = BoundMethod.MESSAGE;
         }
 
         public BoundSingleParameter(final Method method, final Class<?> type, final boolean optional) {
             this.type = type;
+            this.slot = BoundMethod.slot(type);
             int pos = -1;
             for (int i = 0; i < method.getParameterTypes().length; ++i) {
                 boolean pathParam = false;
@@ -347,11 +350,11 @@ public class AnnotatedEndpointFactory implements InstanceFactory<Endpoint> {
         }
 
 
-        public void populate(final Object[] params, final Map<Class<?>, Object> value) {
+        public void populate(final Object[] params, final Object[] values) {
             if (position == -1) {
                 return;
             }
-            params[position] = value.get(type);
+            params[position] = values[slot];
         }
 
         @Override
@@ -412,8 +415,8 @@ public class AnnotatedEndpointFactory implements InstanceFactory<Endpoint> {
         }
 
 
-        public void populate(final Object[] params, final Map<Class<?>, Object> value) throws DecodeException {
-            final Map<String, String> data = (Map<String, String>) value.get(Map.class);
+        public void populate(final Object[] params, final Object[] values) throws DecodeException {
+            final Map<String, String> data = (Map<String, String>) values[BoundMethod.PATH_PARAMETERS];
             for (int i = 0; i < positions.length; ++i) {
                 String name = positions[i];
                 if (name != null) {
@@ -19,25 +19,44 @@
 package io.undertow.websockets.jsr.annotated;
 
 import java.lang.annotation.Annotation;
-import java.lang.reflect.InvocationTargetException;
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
 import java.lang.reflect.Method;
-import java.util.ArrayList;
+import java.lang.reflect.Modifier;
 import java.util.HashSet;
-import java.util.List;
 import java.util.Map;
 import java.util.Set;
 
+import javax.websocket.CloseReason;
 import javax.websocket.DeploymentException;
+import javax.websocket.EndpointConfig;
+import javax.websocket.Session;
 
 import io.undertow.websockets.jsr.JsrWebSocketMessages;
 
 /**
  * A method with bound parameters
+ * <p/>
+ * The binding is resolved when the endpoint is deployed. Invocations pass their values in an array with a fixed
+ * layout (see {@link #SESSION} and the other slot constants), which the bound parameters copy into the parameter array
+ * of the method, and the method is called through a method handle rather than by reflection.
  */
 final class BoundMethod {
 
+    static final int SESSION = 0;
+    static final int ENDPOINT_CONFIG = 1;
+    static final int PATH_PARAMETERS = 2;
+    static final int CLOSE_REASON = 3;
+    static final int THROWABLE = 4;
+    static final int MESSAGE = 5;
+    static final int LAST = 6;
+    static final int SLOT_COUNT = 7;
+
     private final Method method;
-    private final List<BoundParameter> parameters = new ArrayList<>();
+    private final BoundParameter[] parameters;
+    private final int parameterCount;
+    private final MethodHandle invoker;
     private final Set<Class> paramTypes = new HashSet<>();
     private final Class<?> messageType;
     private final boolean decoderRequired;
@@ -48,13 +67,14 @@ final class BoundMethod {
         this.messageType = messageType;
         this.decoderRequired = decoderRequired;
         this.maxMessageSize = maxMessageSize;
+        this.parameters = params.clone();
+        this.parameterCount = method.getParameterTypes().length;
         final Set<Integer> allParams = new HashSet<>();
-        for (int i = 0; i < method.getParameterTypes().length; ++i) {
+        for (int i = 0; i < parameterCount; ++i) {
             allParams.add(i);
             paramTypes.add(method.getParameterTypes()[i]);
         }
         for (BoundParameter param : params) {
-            parameters.add(param);
             allParams.removeAll(param.positions());
         }
         if (!allParams.isEmpty()) {
@@ -76,23 +96,67 @@ final class BoundMethod {
             }
         }
         method.setAccessible(true);
+        this.invoker = createInvoker(method, parameterCount);
     }
 
-    public Object invoke(final Object instance, final Map<Class<?>, Object> values) throws Exception {
-        final Object[] params = new Object[method.getParameterTypes().length];
+    /**
+     * Creates a method handle of type <code>(Object instance, Object[] params)Object</code> for the method.
+     */
+    private static MethodHandle createInvoker(final Method method, final int parameterCount) {
+        MethodHandle handle;
+        try {
+            handle = MethodHandles.lookup().unreflect(method);
+        } catch (IllegalAccessException e) {
+            throw new RuntimeException(e);
+        }
+        if (Modifier.isStatic(method.getModifiers())) {
+            handle = MethodHandles.dropArguments(handle, 0, Object.class);
+        }
+        return handle.asType(MethodType.genericMethodType(parameterCount + 1))
+                .asSpreader(Object[].class, parameterCount);
+    }
+
+    /**
+     * Creates the values of an invocation, with the slots that every invocation uses filled in.
+     */
+    static Object[] values(final Session session, final Map<String, String> pathParameters) {
+        final Object[] values = new Object[SLOT_COUNT];
+        values[SESSION] = session;
+        values[PATH_PARAMETERS] = pathParameters;
+        return values;
+    }
+
+    /**
+     * @return The slot that holds values of the given type, for parameters that are bound by type
+     */
+    static int slot(final Class<?> type) {
+        if (type == Session.class) {
+            return SESSION;
+        } else if (type == EndpointConfig.class) {
+            return ENDPOINT_CONFIG;
+        } else if (type == Map.class) {
+            return PATH_PARAMETERS;
+        } else if (type == CloseReason.class) {
+            return CLOSE_REASON;
+        } else if (type == Throwable.class) {
+            return THROWABLE;
+        } else if (type == boolean.class) {
+            return LAST;
+        }
+        return MESSAGE;
+    }
+
+    public Object invoke(final Object instance, final Object[] values) throws Exception {
+        final Object[] params = new Object[parameterCount];
         for (BoundParameter param : parameters) {
             param.populate(params, values);
         }
         try {
-            return method.invoke(instance, params);
-        } catch (IllegalAccessException e) {
-            throw new RuntimeException(e);
-        } catch (InvocationTargetException e) {
-            if(e.getCause() instanceof Exception) {
-                throw (Exception)e.getCause();
-            } else {
-                throw new RuntimeException(e.getCause());
-            }
+            return (Object) invoker.invokeExact(instance, params);
+        } catch (Exception | Error e) {
+            throw e;
+        } catch (Throwable t) {
+            throw new RuntimeException(t);
         }
     }
 
@@ -18,7 +18,6 @@
 
 package io.undertow.websockets.jsr.annotated;
 
-import java.util.Map;
 import java.util.Set;
 
 import javax.websocket.DecodeException;
@@ -29,7 +28,13 @@ import javax.websocket.DecodeException;
 public interface BoundParameter {
     Set<Integer> positions();
 
-    void populate(final Object[] params, final Map<Class<?>, Object> value) throws DecodeException;
+    /**
+     * Copies the bound values into the parameters of the method.
+     *
+     * @param params The parameters of the method
+     * @param values The values of the invocation, laid out as described by {@link BoundMethod}
+     */
+    void populate(final Object[] params, final Object[] values) throws DecodeException;
 
     Class<?> getType();
 }
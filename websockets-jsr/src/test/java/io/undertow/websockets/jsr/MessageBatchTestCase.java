@@ -0,0 +1,197 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+
+package io.undertow.websockets.jsr;
+
+import java.io.IOException;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import io.undertow.testutils.DefaultServer;
+import io.undertow.testutils.HttpOneOnly;
+import io.undertow.websockets.WebSocketConnectionCallback;
+import io.undertow.websockets.WebSocketProtocolHandshakeHandler;
+import io.undertow.websockets.client.WebSocketClient;
+import io.undertow.websockets.core.AbstractReceiveListener;
+import io.undertow.websockets.core.BufferedTextMessage;
+import io.undertow.websockets.core.WebSocketCallback;
+import io.undertow.websockets.core.WebSocketChannel;
+import io.undertow.websockets.core.WebSocketVersion;
+import io.undertow.websockets.core.WebSockets;
+import io.undertow.websockets.spi.WebSocketHttpExchange;
+import org.junit.After;
+import org.junit.Assert;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+import org.xnio.BufferAllocator;
+import org.xnio.ByteBufferSlicePool;
+import org.xnio.IoUtils;
+import org.xnio.OptionMap;
+
+/**
+ * @author agent
+ */
+@RunWith(DefaultServer.class)
+@HttpOneOnly
+public class MessageBatchTestCase {
+
+    private final BlockingQueue<String> received = new LinkedBlockingDeque<>();
+    private WebSocketChannel channel;
+
+    @Before
+    public void connect() throws Exception {
+        DefaultServer.setRootHandler(new WebSocketProtocolHandshakeHandler(new WebSocketConnectionCallback() {
+            @Override
+            public void onConnect(final WebSocketHttpExchange exchange, final WebSocketChannel channel) {
+                channel.getReceiveSetter().set(new AbstractReceiveListener() {
+                    @Override
+                    protected void onFullTextMessage(WebSocketChannel channel, BufferedTextMessage message) throws IOException {
+                        received.add(message.getData());
+                    }
+                });
+                channel.resumeReceives();
+            }
+        }));
+        channel = WebSocketClient.connect(DefaultServer.getWorker(), new ByteBufferSlicePool(BufferAllocator.BYTE_BUFFER_ALLOCATOR, 1024, 1024 * 16), OptionMap.EMPTY, new URI(DefaultServer.getDefaultServerURL()), WebSocketVersion.V13).get();
+    }
+
+    @After
+    public void close() {
+        IoUtils.safeClose(channel);
+    }
+
+    @Test
+    public void testFlushedWhenFull() throws Exception {
+        final MessageBatch batch = new MessageBatch(channel, 100, 60000);
+        batch.addText("0123456789", null);
+        Assert.assertNull(received.poll(200, TimeUnit.MILLISECONDS));
+        for (int i = 0; i < 9; ++i) {
+            batch.addText("0123456789", null);
+        }
+        //the tenth message fills the batch
+        for (int i = 0; i < 10; ++i) {
+            Assert.assertEquals("0123456789", received.poll(10, TimeUnit.SECONDS));
+        }
+    }
+
+    @Test
+    public void testFlushedAfterDelay() throws Exception {
+        final MessageBatch batch = new MessageBatch(channel, 1024 * 1024, 50);
+        batch.addText("delayed", null);
+        batch.addBinary(ByteBuffer.wrap(new byte[]{1, 2, 3}), null);
+        batch.addText("after binary", null);
+        Assert.assertEquals("delayed", received.poll(10, TimeUnit.SECONDS));
+        Assert.assertEquals("after binary", received.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testOrderWithBatchesWaitingForIoThread() throws Exception {
+        final MessageBatch batch = new MessageBatch(channel, 1024 * 1024, 60000);
+        for (int i = 0; i < 100; ++i) {
+            batch.addText("batched " + i, null);
+            //every flush hands a batch to the IO thread, the next one is queued behind it
+            batch.flush(null);
+        }
+        //nothing is left in the batch, but the flush must still wait for the batches that have not been sent
+        batch.flushBlocking();
+        WebSockets.sendTextBlocking("direct", channel);
+        for (int i = 0; i < 100; ++i) {
+            Assert.assertEquals("batched " + i, received.poll(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals("direct", received.poll(10, TimeUnit.SECONDS));
+    }
+
+    @Test
+    public void testConcurrentFlushWaitsForEarlierBatches() throws Exception {
+        final MessageBatch batch = new MessageBatch(channel, 1024 * 1024, 60000);
+        final StringBuilder text = new StringBuilder();
+        for (int i = 0; i < 1000; ++i) {
+            text.append("0123456789");
+        }
+        final AtomicInteger written = new AtomicInteger();
+        final WebSocketCallback<Void> callback = new WebSocketCallback<Void>() {
+            @Override
+            public void complete(WebSocketChannel channel, Void context) {
+                written.incrementAndGet();
+            }
+
+            @Override
+            public void onError(WebSocketChannel channel, Void context, Throwable throwable) {
+            }
+        };
+        final CountDownLatch flushed = new CountDownLatch(1);
+        final AtomicReference<Throwable> failure = new AtomicReference<>();
+        final Thread flusher = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    for (int i = 0; i < 50; ++i) {
+                        batch.addText(text.toString(), null);
+                        batch.flush(callback);
+                    }
+                    flushed.countDown();
+                } catch (Throwable t) {
+                    failure.set(t);
+                }
+            }
+        });
+        flusher.start();
+        Assert.assertTrue(flushed.await(10, TimeUnit.SECONDS));
+        //this batch is empty, but earlier batches may still be waiting for or running on the IO thread
+        batch.flushBlocking();
+        Assert.assertEquals(50, written.get());
+        WebSockets.sendTextBlocking("direct", channel);
+        for (int i = 0; i < 50; ++i) {
+            Assert.assertEquals(text.toString(), received.poll(10, TimeUnit.SECONDS));
+        }
+        Assert.assertEquals("direct", received.poll(10, TimeUnit.SECONDS));
+        flusher.join();
+        Assert.assertNull(failure.get());
+    }
+
+    @Test
+    public void testErrorIsReported() throws Exception {
+        final MessageBatch batch = new MessageBatch(channel, 1024 * 1024, 60000);
+        final AtomicReference<Throwable> messageError = new AtomicReference<>();
+        channel.sendClose();
+        IoUtils.safeClose(channel);
+        batch.addText("lost", new WebSocketCallback<Void>() {
+            @Override
+            public void complete(WebSocketChannel channel, Void context) {
+            }
+
+            @Override
+            public void onError(WebSocketChannel channel, Void context, Throwable throwable) {
+                messageError.set(throwable);
+            }
+        });
+        try {
+            batch.flushBlocking();
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+        Assert.assertNotNull(messageError.get());
+    }
+}
@@ -0,0 +1,160 @@
+/*
+ * JBoss, Home of Professional Open Source.
+ * Copyright 2014 Red Hat, Inc., and individual contributors
+ * as indicated by the @author tags.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ *  Unless required by applicable law or agreed to in writing, software
+ *  distributed under the License is distributed on an "AS IS" BASIS,
+ *  WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ *  See the License for the specific language governing permissions and
+ *  limitations under the License.
+ */
+package io.undertow.websockets.jsr.annotated;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+import javax.websocket.DeploymentException;
+
+import org.junit.Assert;
+import org.junit.Ignore;
+import org.junit.Test;
+
+/**
+ * @author agent
+ */
+public class BoundMethodTestCase {
+
+    @Test
+    public void testInvoke() throws Exception {
+        final BoundMethod method = echoMethod();
+        final Object[] values = BoundMethod.values(null, Collections.<String, String>emptyMap());
+        values[BoundMethod.MESSAGE] = "hello";
+        values[BoundMethod.LAST] = true;
+        Assert.assertEquals("hello true", method.invoke(new EchoEndpoint(), values));
+        values[BoundMethod.LAST] = false;
+        Assert.assertEquals("hello false", method.invoke(new EchoEndpoint(), values));
+    }
+
+    @Test
+    public void testVoidAndStaticMethods() throws Exception {
+        final BoundMethod method = new BoundMethod(EchoEndpoint.class.getDeclaredMethod("close"), null, false, 0);
+        final EchoEndpoint endpoint = new EchoEndpoint();
+        Assert.assertNull(method.invoke(endpoint, BoundMethod.values(null, null)));
+        Assert.assertTrue(endpoint.closed);
+
+        final BoundMethod staticMethod = new BoundMethod(EchoEndpoint.class.getDeclaredMethod("length", String.class), String.class, false, 0, new Parameter(0, BoundMethod.MESSAGE));
+        final Object[] values = BoundMethod.values(null, null);
+        values[BoundMethod.MESSAGE] = "four";
+        Assert.assertEquals(4, staticMethod.invoke(null, values));
+    }
+
+    @Test
+    public void testExceptionIsNotWrapped() throws Exception {
+        final BoundMethod method = new BoundMethod(EchoEndpoint.class.getDeclaredMethod("fail"), null, false, 0);
+        try {
+            method.invoke(new EchoEndpoint(), BoundMethod.values(null, null));
+            Assert.fail();
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test(expected = DeploymentException.class)
+    public void testUnboundParameter() throws Exception {
+        new BoundMethod(EchoEndpoint.class.getDeclaredMethod("echo", String.class, boolean.class), String.class, false, 0, new Parameter(0, BoundMethod.MESSAGE));
+    }
+
+    /**
+     * Compares the invocation of an echo method through a bound method with reflection and a map of values, which
+     * is how messages used to be delivered.
+     */
+    @Test
+    @Ignore("benchmark")
+    public void benchmarkEchoInvocation() throws Exception {
+        final BoundMethod bound = echoMethod();
+        final Method method = EchoEndpoint.class.getDeclaredMethod("echo", String.class, boolean.class);
+        final EchoEndpoint endpoint = new EchoEndpoint();
+        final int iterations = 10000000;
+        for (int round = 0; round < 3; ++round) {
+            long start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                final Map<Class<?>, Object> values = new HashMap<>();
+                values.put(String.class, "message");
+                values.put(boolean.class, true);
+                method.invoke(endpoint, values.get(String.class), values.get(boolean.class));
+            }
+            final long reflection = System.nanoTime() - start;
+            start = System.nanoTime();
+            for (int i = 0; i < iterations; ++i) {
+                final Object[] values = BoundMethod.values(null, null);
+                values[BoundMethod.MESSAGE] = "message";
+                values[BoundMethod.LAST] = true;
+                bound.invoke(endpoint, values);
+            }
+            final long handles = System.nanoTime() - start;
+            System.out.println("reflection: " + (iterations * 1000000000L / reflection) + " messages/s, bound method: " + (iterations * 1000000000L / handles) + " messages/s");
+        }
+    }
+
+    private static BoundMethod echoMethod() throws Exception {
+        return new BoundMethod(EchoEndpoint.class.getDeclaredMethod("echo", String.class, boolean.class), String.class, false, 0,
+                new Parameter(0, BoundMethod.MESSAGE), new Parameter(1, BoundMethod.LAST));
+    }
+
+    private static final class Parameter implements BoundParameter {
+
+        private final int position;
+        private final int slot;
+
+        private Parameter(final int position, final int slot) {
+            this.position = position;
+            this.slot = slot;
+        }
+
+        @Override
+        public Set<Integer> positions() {
+            return Collections.singleton(position);
+        }
+
+        @Override
+        public void populate(final Object[] params, final Object[] values) {
+            params[position] = values[slot];
+        }
+
+        @Override
+        public Class<?> getType() {
+            return Object.class;
+        }
+    }
+
+    private static final class EchoEndpoint {
+
+        private boolean closed;
+
+        private String echo(final String message, final boolean last) {
+            return message + " " + last;
+        }
+
+        private void close() {
+            closed = true;
+        }
+
+        private void fail() throws IOException {
+            throw new IOException();
+        }
+
+        private static int length(final String message) {
+            return message.length();
+        }
+    }
+}